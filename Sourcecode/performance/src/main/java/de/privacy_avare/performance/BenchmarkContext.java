@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.performance;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.web.client.RestTemplate;
+
+import de.privacy_avare.repository.ProfileRepository;
+import de.privacy_avare.service.ContactService;
+import de.privacy_avare.service.IdService;
+import de.privacy_avare.service.NodeIdLeaseService;
+import de.privacy_avare.service.ProfilePoolService;
+import de.privacy_avare.service.ProfileService;
+
+/**
+ * Erzeugt einen minimalen Spring-Kontext mit den Services des Servers und dem
+ * InMemoryProfileRepository anstelle von CouchDB. Die Services werden dabei
+ * über dieselben @Autowired-Abhängigkeiten wie im Server verbunden.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see InMemoryProfileRepository
+ */
+public final class BenchmarkContext {
+
+	/**
+	 * Privater Konstruktor, da die Klasse lediglich statische Methoden enthält.
+	 */
+	private BenchmarkContext() {
+
+	}
+
+	/**
+	 * Erzeugt einen neuen Kontext mit leerem InMemoryProfileRepository.
+	 * 
+	 * @return Gestarteter Kontext.
+	 */
+	public static AnnotationConfigApplicationContext create() {
+		AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext();
+		context.register(InMemoryProfileRepository.class, ProfileService.class, IdService.class, ContactService.class,
+				ProfilePoolService.class, FixedNodeIdLeaseService.class, RestTemplate.class);
+		context.refresh();
+		return context;
+	}
+
+	/**
+	 * Liefert das Repository eines Kontexts.
+	 * 
+	 * @param context
+	 *            Mit create() erzeugter Kontext.
+	 * @return Repository im Arbeitsspeicher.
+	 */
+	public static ProfileRepository getRepository(AnnotationConfigApplicationContext context) {
+		return context.getBean(ProfileRepository.class);
+	}
+
+	/**
+	 * Verwendet ohne Zugriff auf CouchDB stets die Kennung 0.
+	 */
+	public static class FixedNodeIdLeaseService extends NodeIdLeaseService {
+
+		@Override
+		public int getNodeId() {
+			return 0;
+		}
+	}
+}
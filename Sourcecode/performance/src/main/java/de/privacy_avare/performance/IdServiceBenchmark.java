@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.performance;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import de.privacy_avare.service.IdService;
+
+/**
+ * Benchmarks der Erzeugung und Validierung von ProfileIds.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IdServiceBenchmark {
+
+	private AnnotationConfigApplicationContext context;
+	private IdService idService;
+	private String validId;
+	private String invalidId;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = BenchmarkContext.create();
+		idService = context.getBean(IdService.class);
+		validId = idService.generateId();
+		invalidId = validId.substring(1) + "-";
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	@Benchmark
+	public String generateId() {
+		return idService.generateId();
+	}
+
+	@Benchmark
+	public boolean validateValidId() {
+		return idService.validateId(validId);
+	}
+
+	@Benchmark
+	public boolean validateInvalidId() {
+		return idService.validateId(invalidId);
+	}
+}
@@ -0,0 +1,280 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.performance;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
+
+import de.privacy_avare.domain.Profile;
+import de.privacy_avare.exeption.NoProfilesInDatabaseException;
+import de.privacy_avare.exeption.ProfileAlreadyExistsException;
+import de.privacy_avare.exeption.ProfileNotFoundException;
+import de.privacy_avare.repository.ProfileRepository;
+
+/**
+ * Implementierung des ProfileRepository-Interface im Arbeitsspeicher. Dient als
+ * Ersatz für CouchDB in Benchmarks, damit ausschließlich die Laufzeit der
+ * Service- und Domänenlogik gemessen wird. Das Verhalten im Fehlerfall
+ * entspricht dem von ProfileRepositoryCouchDBImpl. Profile werden beim Lesen
+ * und Schreiben kopiert, sodass Änderungen erst durch save() sichtbar werden.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.repository.ProfileRepositoryCouchDBImpl
+ */
+public class InMemoryProfileRepository implements ProfileRepository {
+
+	/**
+	 * Gespeicherte Profile nach ProfileId.
+	 */
+	private final ConcurrentMap<String, Profile> profiles;
+
+	/**
+	 * default-Konstruktor, welcher ein leeres Repository erzeugt.
+	 */
+	public InMemoryProfileRepository() {
+		this.profiles = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Erzeugt eine Kopie eines Profils.
+	 * 
+	 * @param profile
+	 *            Zu kopierendes Profil.
+	 * @return Kopie oder null.
+	 */
+	private static Profile copy(Profile profile) {
+		if (profile == null) {
+			return null;
+		}
+		return new Profile(profile.get_id(), profile.getLastProfileChange(), profile.getLastProfileContact(),
+				profile.getPreferences());
+	}
+
+	@Override
+	public <S extends Profile> S save(S entity) {
+		profiles.put(entity.get_id(), copy(entity));
+		return entity;
+	}
+
+	@Override
+	public <S extends Profile> S save(S entity, Reader preferences) throws IOException {
+		StringWriter content = new StringWriter();
+		char[] buffer = new char[4096];
+		int read;
+		while ((read = preferences.read(buffer)) != -1) {
+			content.write(buffer, 0, read);
+		}
+		profiles.put(entity.get_id(), new Profile(entity.get_id(), entity.getLastProfileChange(),
+				entity.getLastProfileContact(), content.toString()));
+		return entity;
+	}
+
+	@Override
+	public Profile streamPreferences(String id, Predicate<Profile> filter, OutputStream out) throws IOException {
+		Profile profile = copy(profiles.get(id));
+		if (profile == null) {
+			return null;
+		}
+		String preferences = profile.getPreferences();
+		profile.setPreferences(null);
+		if (filter.test(profile) && preferences != null) {
+			out.write(preferences.getBytes(StandardCharsets.UTF_8));
+		}
+		return profile;
+	}
+
+	@Override
+	public <S extends Profile> S insert(S entity) throws ProfileAlreadyExistsException {
+		if (profiles.putIfAbsent(entity.get_id(), copy(entity)) != null) {
+			throw new ProfileAlreadyExistsException("UserID wird bereits in einem bestehenden Profil verwendet.");
+		}
+		return entity;
+	}
+
+	@Override
+	public List<String> insertAll(List<? extends Profile> entities) {
+		List<String> inserted = new ArrayList<>();
+		for (Profile entity : entities) {
+			if (profiles.putIfAbsent(entity.get_id(), copy(entity)) == null) {
+				inserted.add(entity.get_id());
+			}
+		}
+		return inserted;
+	}
+
+	@Override
+	public <S extends Profile> Iterable<S> save(Iterable<S> entities) {
+		for (S entity : entities) {
+			save(entity);
+		}
+		return entities;
+	}
+
+	@Override
+	public Profile findOne(String id) {
+		return copy(profiles.get(id));
+	}
+
+	@Override
+	public boolean exists(String id) {
+		return profiles.containsKey(id);
+	}
+
+	@Override
+	public Iterable<Profile> findAll() {
+		List<Profile> result = findAllByOrderByIdAsc();
+		if (result.isEmpty()) {
+			throw new NoProfilesInDatabaseException();
+		}
+		return result;
+	}
+
+	@Override
+	public Iterable<Profile> findAll(Iterable<String> ids) {
+		List<Profile> result = new ArrayList<>();
+		for (String id : ids) {
+			Profile profile = findOne(id);
+			if (profile != null) {
+				result.add(profile);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public long count() {
+		return profiles.size();
+	}
+
+	@Override
+	public void delete(String id) {
+		if (profiles.remove(id) == null) {
+			throw new ProfileNotFoundException();
+		}
+	}
+
+	@Override
+	public void delete(Profile entity) {
+		delete(entity.get_id());
+	}
+
+	@Override
+	public void delete(Iterable<? extends Profile> entities) {
+		for (Profile entity : entities) {
+			delete(entity);
+		}
+	}
+
+	@Override
+	public void deleteAll() {
+		profiles.clear();
+	}
+
+	@Override
+	public List<Profile> findAllByOrderByIdAsc() {
+		List<Profile> result = new ArrayList<>();
+		for (Profile profile : profiles.values()) {
+			result.add(copy(profile));
+		}
+		Collections.sort(result, new Comparator<Profile>() {
+			@Override
+			public int compare(Profile p1, Profile p2) {
+				return p1.get_id().compareTo(p2.get_id());
+			}
+		});
+		return result;
+	}
+
+	@Override
+	public List<Profile> findAllByLastProfileContactBefore(Date date) {
+		return findPageByLastProfileContactBefore(date, "", Integer.MAX_VALUE);
+	}
+
+	@Override
+	public List<Profile> findPageByLastProfileContactBefore(Date date, String startAfterId, int limit) {
+		List<Profile> result = new ArrayList<>();
+		for (Profile profile : findAllByOrderByIdAsc()) {
+			if (result.size() >= limit) {
+				break;
+			}
+			if (profile.get_id().compareTo(startAfterId) > 0 && profile.getLastProfileContact().before(date)) {
+				result.add(profile);
+			}
+		}
+		return result;
+	}
+
+	@Override
+	public Date findLastProfileContactById(String id) {
+		return getExisting(id).getLastProfileContact();
+	}
+
+	@Override
+	public Date findLastProfileChangeById(String id) {
+		return getExisting(id).getLastProfileChange();
+	}
+
+	@Override
+	public Profile findMetadataById(String id) {
+		Profile profile = copy(profiles.get(id));
+		if (profile != null) {
+			profile.setPreferences(null);
+		}
+		return profile;
+	}
+
+	@Override
+	public void updateLastProfileContactById(String id, Date lastProfileContact) {
+		Profile profile = copy(getExisting(id));
+		profile.setLastProfileContact(lastProfileContact);
+		profiles.put(id, profile);
+	}
+
+	@Override
+	public String findPreferencesById(String id) {
+		return getExisting(id).getPreferences();
+	}
+
+	/**
+	 * Liefert ein vorhandenes Profil.
+	 * 
+	 * @param id
+	 *            ProfileId des Profils.
+	 * @return Gespeichertes Profil.
+	 * @throws ProfileNotFoundException
+	 *             Kein Profil mit entsprechender ID gefunden.
+	 */
+	private Profile getExisting(String id) throws ProfileNotFoundException {
+		Profile profile = profiles.get(id);
+		if (profile == null) {
+			throw new ProfileNotFoundException("Kein Profil mit entsprechender ID gefunden.");
+		}
+		return profile;
+	}
+}
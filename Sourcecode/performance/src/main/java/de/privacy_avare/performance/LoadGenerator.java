@@ -0,0 +1,460 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.performance;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Lastgenerator, welcher das Synchronisationsprotokoll mehrerer Clientgeräte je
+ * Profil gegen einen lokal laufenden Server nachbildet. Zu Beginn werden
+ * 'profiles' Profile über /v1/newProfiles angelegt. Anschließend führen je
+ * Profil 'devices' simulierte Geräte Pulls mit ihrem clientProfileChange,
+ * gelegentliche Pushes und Löschungen (unSync) durch. Gelöschte Profile werden
+ * durch neu angelegte Profile ersetzt, sodass die Anzahl aktiver Profile
+ * konstant bleibt.
+ * 
+ * Die Aufrufe jeder Operation treffen als Poisson-Prozess mit der angegebenen
+ * Rate (Aufrufe pro Sekunde über alle Geräte) ein, unabhängig von der
+ * Antwortzeit des Servers (offenes Lastmodell). Nach der Aufwärmphase werden
+ * Durchsatz und Latenzen je Operation und Ergebnis ausgewertet.
+ * 
+ * Parameter werden als 'schluessel=wert' übergeben, z.B.:
+ * 
+ * <pre>
+ * mvn -f performance/pom.xml -Djmh.skip=true package exec:java
+ *     -Dexec.mainClass=de.privacy_avare.performance.LoadGenerator
+ *     -Dexec.args="baseUrl=http://localhost:8080 pullRate=200 duration=120"
+ * </pre>
+ * 
+ * Der Lastgenerator verweigert Ziele außerhalb von localhost.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see SyncClient
+ */
+public class LoadGenerator {
+
+	/**
+	 * Zustand eines simulierten Profils und seiner Geräte.
+	 */
+	private static class SimulatedProfile {
+		private final String id;
+		private volatile long serverProfileChange;
+		private final AtomicLongArray deviceProfileChange;
+
+		SimulatedProfile(String id, int devices) {
+			this.id = id;
+			this.serverProfileChange = 0;
+			this.deviceProfileChange = new AtomicLongArray(devices);
+		}
+	}
+
+	/**
+	 * Geplanter Startzeitpunkt des aktuell ausgeführten Aufrufs.
+	 */
+	private static final ThreadLocal<Long> CURRENT_START = new ThreadLocal<>();
+
+	private final SyncClient client;
+	private final int devices;
+	private final String preferences;
+	private final AtomicReferenceArray<SimulatedProfile> profiles;
+	private final OperationStatistics create;
+	private final OperationStatistics pull;
+	private final OperationStatistics push;
+	private final OperationStatistics delete;
+	private volatile boolean running;
+
+	/**
+	 * Erzeugt einen neuen Lastgenerator.
+	 * 
+	 * @param client
+	 *            Client für den Zugriff auf den Server.
+	 * @param profiles
+	 *            Anzahl aktiver Profile.
+	 * @param devices
+	 *            Anzahl Geräte je Profil.
+	 * @param preferencesSize
+	 *            Länge der übertragenen Präferenzen in Zeichen.
+	 */
+	public LoadGenerator(SyncClient client, int profiles, int devices, int preferencesSize) {
+		this.client = client;
+		this.devices = devices;
+		this.profiles = new AtomicReferenceArray<>(profiles);
+		StringBuilder builder = new StringBuilder("{\"settings\":\"");
+		while (builder.length() < preferencesSize - 2) {
+			builder.append((char) ('a' + builder.length() % 26));
+		}
+		this.preferences = builder.append("\"}").toString();
+		this.create = new OperationStatistics("create");
+		this.pull = new OperationStatistics("pull");
+		this.push = new OperationStatistics("push");
+		this.delete = new OperationStatistics("delete");
+	}
+
+	/**
+	 * Einstiegspunkt des Lastgenerators.
+	 * 
+	 * @param args
+	 *            Parameter im Format 'schluessel=wert'.
+	 * @throws Exception
+	 *             Ungültige Parameter oder Server nicht erreichbar.
+	 */
+	public static void main(String[] args) throws Exception {
+		Properties config = new Properties();
+		config.setProperty("baseUrl", "http://localhost:8080");
+		config.setProperty("profiles", "100");
+		config.setProperty("devices", "3");
+		config.setProperty("pullRate", "100");
+		config.setProperty("pushRate", "10");
+		config.setProperty("deleteRate", "0.2");
+		config.setProperty("threads", "32");
+		config.setProperty("warmup", "10");
+		config.setProperty("duration", "60");
+		config.setProperty("reportInterval", "10");
+		config.setProperty("preferencesSize", "512");
+		config.setProperty("timeout", "5000");
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator <= 0) {
+				throw new IllegalArgumentException("Parameter im Format schluessel=wert erwartet: " + arg);
+			}
+			config.setProperty(arg.substring(0, separator), arg.substring(separator + 1));
+		}
+
+		String baseUrl = config.getProperty("baseUrl");
+		if (InetAddress.getByName(new URL(baseUrl).getHost()).isLoopbackAddress() == false) {
+			throw new IllegalArgumentException("Lastgenerator darf nur gegen localhost laufen: " + baseUrl);
+		}
+
+		System.out.println("Lastgenerator mit folgenden Einstellungen gestartet:");
+		for (String key : new TreeSet<>(config.stringPropertyNames())) {
+			System.out.println("\t " + key + ": " + config.getProperty(key));
+		}
+		System.out.println("************************************************");
+
+		LoadGenerator generator = new LoadGenerator(
+				new SyncClient(baseUrl, Integer.parseInt(config.getProperty("timeout"))),
+				Integer.parseInt(config.getProperty("profiles")), Integer.parseInt(config.getProperty("devices")),
+				Integer.parseInt(config.getProperty("preferencesSize")));
+		generator.run(Integer.parseInt(config.getProperty("threads")),
+				Double.parseDouble(config.getProperty("pullRate")), Double.parseDouble(config.getProperty("pushRate")),
+				Double.parseDouble(config.getProperty("deleteRate")), Integer.parseInt(config.getProperty("warmup")),
+				Integer.parseInt(config.getProperty("duration")),
+				Integer.parseInt(config.getProperty("reportInterval")));
+	}
+
+	/**
+	 * Legt die Profile an und führt anschließend den Lasttest durch.
+	 * 
+	 * @param threads
+	 *            Anzahl paralleler Aufrufe.
+	 * @param pullRate
+	 *            Pulls pro Sekunde.
+	 * @param pushRate
+	 *            Pushes pro Sekunde.
+	 * @param deleteRate
+	 *            Löschungen pro Sekunde.
+	 * @param warmupSeconds
+	 *            Dauer der Aufwärmphase, deren Messwerte verworfen werden.
+	 * @param durationSeconds
+	 *            Dauer der Messung.
+	 * @param reportIntervalSeconds
+	 *            Abstand der Zwischenberichte.
+	 * @throws InterruptedException
+	 *             Unterbrechung des Lasttests.
+	 */
+	public void run(int threads, double pullRate, double pushRate, double deleteRate, int warmupSeconds,
+			int durationSeconds, int reportIntervalSeconds) throws InterruptedException {
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			createProfiles(executor);
+			System.out.println("Profile angelegt: " + profiles.length());
+
+			running = true;
+			List<Thread> dispatchers = new ArrayList<>();
+			dispatchers.add(startDispatcher("pull", pullRate, executor, new Runnable() {
+				@Override
+				public void run() {
+					pullAny();
+				}
+			}));
+			dispatchers.add(startDispatcher("push", pushRate, executor, new Runnable() {
+				@Override
+				public void run() {
+					pushAny();
+				}
+			}));
+			dispatchers.add(startDispatcher("delete", deleteRate, executor, new Runnable() {
+				@Override
+				public void run() {
+					deleteAny();
+				}
+			}));
+
+			TimeUnit.SECONDS.sleep(warmupSeconds);
+			for (OperationStatistics statistics : statistics()) {
+				statistics.reset();
+			}
+			System.out.println("Aufwaermphase beendet, Messung laeuft fuer " + durationSeconds + " Sekunden");
+
+			long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+			long intervalNanos = TimeUnit.SECONDS.toNanos(Math.max(reportIntervalSeconds, 1));
+			while (System.nanoTime() < end) {
+				TimeUnit.NANOSECONDS.sleep(Math.min(intervalNanos, end - System.nanoTime()));
+				printInterval(intervalNanos);
+			}
+
+			running = false;
+			for (Thread dispatcher : dispatchers) {
+				dispatcher.join();
+			}
+		} finally {
+			running = false;
+			executor.shutdown();
+			executor.awaitTermination(1, TimeUnit.MINUTES);
+		}
+		for (OperationStatistics statistics : statistics()) {
+			statistics.interval();
+		}
+		printSummary(durationSeconds);
+	}
+
+	/**
+	 * @return Statistiken aller Operationen.
+	 */
+	private OperationStatistics[] statistics() {
+		return new OperationStatistics[] { pull, push, delete, create };
+	}
+
+	/**
+	 * Legt alle Profile parallel an.
+	 */
+	private void createProfiles(ExecutorService executor) throws InterruptedException {
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (int i = 0; i < profiles.length(); i++) {
+			final int slot = i;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					while (profiles.get(slot) == null) {
+						profiles.set(slot, createProfile(System.nanoTime()));
+					}
+					return null;
+				}
+			});
+		}
+		executor.invokeAll(tasks);
+	}
+
+	/**
+	 * Startet einen Thread, welcher Aufrufe einer Operation als Poisson-Prozess
+	 * an den Executor übergibt.
+	 */
+	private Thread startDispatcher(String name, final double rate, final ExecutorService executor,
+			final Runnable operation) {
+		Thread dispatcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				if (rate <= 0) {
+					return;
+				}
+				long next = System.nanoTime();
+				while (running) {
+					next += (long) (-Math.log(1 - ThreadLocalRandom.current().nextDouble()) / rate * 1e9);
+					long wait = next - System.nanoTime();
+					if (wait > 0) {
+						try {
+							TimeUnit.NANOSECONDS.sleep(wait);
+						} catch (InterruptedException e) {
+							return;
+						}
+					}
+					final long intendedStart = next;
+					executor.execute(new Runnable() {
+						@Override
+						public void run() {
+							CURRENT_START.set(intendedStart);
+							operation.run();
+						}
+					});
+				}
+			}
+		}, "load-" + name);
+		dispatcher.setDaemon(true);
+		dispatcher.start();
+		return dispatcher;
+	}
+
+	/**
+	 * Liefert ein zufälliges aktives Profil.
+	 * 
+	 * @return Profil oder null, falls der Platz gerade neu belegt wird.
+	 */
+	private SimulatedProfile randomProfile() {
+		return profiles.get(ThreadLocalRandom.current().nextInt(profiles.length()));
+	}
+
+	/**
+	 * Pull eines zufälligen Geräts. Bei aktuelleren Serverpräferenzen übernimmt
+	 * das Gerät den Stand des Servers, andernfalls liefert der Server 409.
+	 */
+	private void pullAny() {
+		long start = CURRENT_START.get();
+		SimulatedProfile profile = randomProfile();
+		if (profile == null) {
+			return;
+		}
+		int device = ThreadLocalRandom.current().nextInt(devices);
+		try {
+			long serverProfileChange = profile.serverProfileChange;
+			SyncClient.Response response = client.pull(profile.id, profile.deviceProfileChange.get(device));
+			if (response.getStatus() == 200) {
+				profile.deviceProfileChange.set(device, serverProfileChange);
+			}
+			pull.record(String.valueOf(response.getStatus()), start);
+		} catch (IOException e) {
+			pull.record(outcome(e), start);
+		}
+	}
+
+	/**
+	 * Push eines zufälligen Geräts mit dem aktuellen Zeitpunkt als
+	 * clientProfileChange.
+	 */
+	private void pushAny() {
+		long start = CURRENT_START.get();
+		SimulatedProfile profile = randomProfile();
+		if (profile == null) {
+			return;
+		}
+		int device = ThreadLocalRandom.current().nextInt(devices);
+		long now = System.currentTimeMillis();
+		try {
+			SyncClient.Response response = client.push(profile.id, now, preferences);
+			if (response.getStatus() < 300) {
+				profile.serverProfileChange = now;
+				profile.deviceProfileChange.set(device, now);
+			}
+			push.record(String.valueOf(response.getStatus()), start);
+		} catch (IOException e) {
+			push.record(outcome(e), start);
+		}
+	}
+
+	/**
+	 * Setzt ein zufälliges Profil auf unSync und ersetzt es durch ein neues
+	 * Profil.
+	 */
+	private void deleteAny() {
+		long start = CURRENT_START.get();
+		int slot = ThreadLocalRandom.current().nextInt(profiles.length());
+		SimulatedProfile profile = profiles.get(slot);
+		if (profile == null || profiles.compareAndSet(slot, profile, null) == false) {
+			return;
+		}
+		try {
+			SyncClient.Response response = client.delete(profile.id, "{\"unSync\":true}");
+			delete.record(String.valueOf(response.getStatus()), start);
+		} catch (IOException e) {
+			delete.record(outcome(e), start);
+		}
+		SimulatedProfile replacement = null;
+		while (replacement == null && running) {
+			replacement = createProfile(System.nanoTime());
+		}
+		profiles.set(slot, replacement);
+	}
+
+	/**
+	 * Legt ein neues Profil an.
+	 * 
+	 * @param start
+	 *            Startzeitpunkt für die Latenzmessung.
+	 * @return Neues Profil oder null bei Fehlern.
+	 */
+	private SimulatedProfile createProfile(long start) {
+		try {
+			SyncClient.Response response = client.create();
+			create.record(String.valueOf(response.getStatus()), start);
+			if (response.getStatus() == 201) {
+				return new SimulatedProfile(response.getBody().trim(), devices);
+			}
+		} catch (IOException e) {
+			create.record(outcome(e), start);
+		}
+		return null;
+	}
+
+	/**
+	 * Bestimmt das Ergebnis eines fehlgeschlagenen Aufrufs.
+	 */
+	private static String outcome(IOException e) {
+		return e instanceof SocketTimeoutException ? "timeout" : "error";
+	}
+
+	/**
+	 * Gibt Durchsatz und p99 des vergangenen Intervalls aus.
+	 */
+	private void printInterval(long intervalNanos) {
+		StringBuilder line = new StringBuilder();
+		for (OperationStatistics statistics : statistics()) {
+			Histogram interval = statistics.interval();
+			line.append(String.format(Locale.ROOT, "%s %.1f/s p99 %.1fms  ", statistics.getName(),
+					interval.getTotalCount() / (intervalNanos / 1e9),
+					interval.getTotalCount() > 0 ? interval.getValueAtPercentile(99) / 1000.0 : 0.0));
+		}
+		System.out.println(line.toString().trim());
+	}
+
+	/**
+	 * Gibt den Abschlussbericht mit Durchsatz, Ergebnissen und Perzentilen je
+	 * Operation aus.
+	 */
+	private void printSummary(int durationSeconds) {
+		System.out.println("************************************************");
+		System.out.println(String.format(Locale.ROOT, "%-8s %9s %9s %9s %9s %9s %9s %9s  %s", "Op", "Anzahl", "Rate/s",
+				"p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "Ergebnisse"));
+		for (OperationStatistics statistics : statistics()) {
+			Histogram total = statistics.getTotal();
+			Map<String, Long> outcomes = statistics.getOutcomes();
+			System.out.println(String.format(Locale.ROOT, "%-8s %9d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f  %s",
+					statistics.getName(), total.getTotalCount(), total.getTotalCount() / (double) durationSeconds,
+					total.getValueAtPercentile(50) / 1000.0, total.getValueAtPercentile(90) / 1000.0,
+					total.getValueAtPercentile(99) / 1000.0, total.getValueAtPercentile(99.9) / 1000.0,
+					total.getMaxValue() / 1000.0, outcomes));
+		}
+		System.out.println("************************************************");
+	}
+}
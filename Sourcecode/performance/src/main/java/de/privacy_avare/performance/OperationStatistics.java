@@ -0,0 +1,122 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.performance;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latenzen und Ergebnisse einer Operation des Lastgenerators. Latenzen werden
+ * ab dem geplanten Startzeitpunkt eines Aufrufs gemessen, sodass Wartezeiten
+ * bei überlastetem Server bzw. Lastgenerator in die Messung eingehen
+ * (Vermeidung von Coordinated Omission).
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see LoadGenerator
+ */
+public class OperationStatistics {
+
+	private final String name;
+	private final Recorder recorder;
+	private final Histogram total;
+	private final ConcurrentMap<String, AtomicLong> outcomes;
+
+	/**
+	 * Erzeugt eine neue, leere Statistik.
+	 * 
+	 * @param name
+	 *            Name der Operation.
+	 */
+	public OperationStatistics(String name) {
+		this.name = name;
+		this.recorder = new Recorder(3);
+		this.total = new Histogram(3);
+		this.outcomes = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * @return Name der Operation.
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Erfasst einen abgeschlossenen Aufruf.
+	 * 
+	 * @param outcome
+	 *            Ergebnis, z.B. HTTP-Statuscode oder 'timeout'.
+	 * @param intendedStartNanos
+	 *            Geplanter Startzeitpunkt (System.nanoTime()).
+	 */
+	public void record(String outcome, long intendedStartNanos) {
+		recorder.recordValue(Math.max(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStartNanos), 0));
+		AtomicLong counter = outcomes.get(outcome);
+		if (counter == null) {
+			outcomes.putIfAbsent(outcome, new AtomicLong());
+			counter = outcomes.get(outcome);
+		}
+		counter.incrementAndGet();
+	}
+
+	/**
+	 * Liefert die Messwerte seit dem letzten Aufruf und übernimmt sie in die
+	 * Gesamtstatistik. Darf nur von einem Thread aufgerufen werden.
+	 * 
+	 * @return Histogramm des Intervalls in Mikrosekunden.
+	 */
+	public Histogram interval() {
+		Histogram interval = recorder.getIntervalHistogram();
+		total.add(interval);
+		return interval;
+	}
+
+	/**
+	 * Verwirft alle bisherigen Messwerte, z.B. nach der Aufwärmphase.
+	 */
+	public void reset() {
+		recorder.reset();
+		total.reset();
+		outcomes.clear();
+	}
+
+	/**
+	 * @return Histogramm aller übernommenen Messwerte in Mikrosekunden.
+	 */
+	public Histogram getTotal() {
+		return total;
+	}
+
+	/**
+	 * @return Anzahl der Aufrufe je Ergebnis.
+	 */
+	public Map<String, Long> getOutcomes() {
+		Map<String, Long> result = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> outcome : outcomes.entrySet()) {
+			result.put(outcome.getKey(), outcome.getValue().get());
+		}
+		return result;
+	}
+}
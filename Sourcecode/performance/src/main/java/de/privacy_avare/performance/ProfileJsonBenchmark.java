@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.performance;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.privacy_avare.couchDBDomain.ProfileCouchDB;
+import de.privacy_avare.domain.Profile;
+
+/**
+ * Benchmarks der JSON-Serialisierung von Profilen, wie sie bei jedem Zugriff auf
+ * CouchDB und bei jeder Antwort an einen Client erfolgt. Die Größe der
+ * Präferenzen wird über 'preferencesSize' in Zeichen festgelegt.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfileJsonBenchmark {
+
+	/**
+	 * Länge der Präferenzen in Zeichen.
+	 */
+	@Param({ "100", "10000" })
+	public int preferencesSize;
+
+	private ObjectMapper objectMapper;
+	private Profile profile;
+	private String profileJson;
+	private String couchDBJson;
+
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		objectMapper = new ObjectMapper();
+		StringBuilder preferences = new StringBuilder("{\"data\":\"");
+		while (preferences.length() < preferencesSize - 2) {
+			preferences.append('x');
+		}
+		preferences.append("\"}");
+		profile = new Profile("a1b2c3d4e5fghijk", new Date(), new Date(), preferences.toString());
+		profileJson = objectMapper.writeValueAsString(profile);
+
+		ProfileCouchDB dbProfile = objectMapper.readValue(profileJson, ProfileCouchDB.class);
+		dbProfile.set_rev("1-967a00dff5e02add41819138abb3284d");
+		couchDBJson = objectMapper.writeValueAsString(dbProfile);
+	}
+
+	@Benchmark
+	public String serializeProfile() throws IOException {
+		return objectMapper.writeValueAsString(profile);
+	}
+
+	@Benchmark
+	public Profile deserializeProfile() throws IOException {
+		return objectMapper.readValue(profileJson, Profile.class);
+	}
+
+	@Benchmark
+	public Profile roundTripCouchDBProfile() throws IOException {
+		ProfileCouchDB dbProfile = objectMapper.readValue(couchDBJson, ProfileCouchDB.class);
+		return objectMapper.readValue(objectMapper.writeValueAsString(dbProfile), ProfileCouchDB.class);
+	}
+}
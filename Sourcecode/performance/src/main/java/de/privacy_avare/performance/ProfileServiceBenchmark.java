@@ -0,0 +1,127 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.performance;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+
+import de.privacy_avare.domain.Profile;
+import de.privacy_avare.service.IdService;
+import de.privacy_avare.service.ProfileService;
+
+/**
+ * Benchmarks der Synchronisationsoperationen des ProfileService gegen das
+ * InMemoryProfileRepository. Vor der Messung werden 'profiles' Profile mit
+ * einem Zeitpunkt lastProfileChange in der Vergangenheit angelegt, auf welche
+ * zufällig zugegriffen wird.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProfileServiceBenchmark {
+
+	/**
+	 * Anzahl der vorab angelegten Profile.
+	 */
+	@Param({ "10000" })
+	public int profiles;
+
+	private AnnotationConfigApplicationContext context;
+	private ProfileService profileService;
+	private String[] ids;
+	private Date clientLastProfileChangeOld;
+	private String preferences;
+
+	/**
+	 * Zeitpunkt der letzten Änderung auf dem Client für pushProfileCompare. Jeder
+	 * Push liegt eine Stunde nach dem vorherigen, sodass auch wiederholte Pushs
+	 * auf dasselbe Profil den Mindestabstand 'server.minTimeDifference'
+	 * überschreiten.
+	 */
+	private AtomicLong clientLastProfileChangeNew;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		context = BenchmarkContext.create();
+		profileService = context.getBean(ProfileService.class);
+		IdService idService = context.getBean(IdService.class);
+
+		Date lastProfileChange = new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1));
+		ids = new String[profiles];
+		for (int i = 0; i < profiles; i++) {
+			ids[i] = idService.generateId();
+			BenchmarkContext.getRepository(context)
+					.save(new Profile(ids[i], lastProfileChange, new Date(), "{\"theme\":\"dark\"}"));
+		}
+		clientLastProfileChangeOld = new Date(0);
+		clientLastProfileChangeNew = new AtomicLong(System.currentTimeMillis() + TimeUnit.DAYS.toMillis(365));
+		preferences = "{\"theme\":\"light\",\"notifications\":true,\"language\":\"de\"}";
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		context.close();
+	}
+
+	/**
+	 * Liefert eine zufällige ProfileId der angelegten Profile.
+	 * 
+	 * @return ProfileId.
+	 */
+	private String randomId() {
+		return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+	}
+
+	@Benchmark
+	public void pushProfileOverwrite() {
+		profileService.pushProfile(randomId(), new Date(), preferences, true);
+	}
+
+	@Benchmark
+	public void pushProfileCompare() {
+		profileService.pushProfile(randomId(),
+				new Date(clientLastProfileChangeNew.addAndGet(TimeUnit.HOURS.toMillis(1))), preferences, false);
+	}
+
+	@Benchmark
+	public Profile getProfileByIdComparingLastChange() {
+		return profileService.getProfileByIdComparingLastChange(randomId(), clientLastProfileChangeOld);
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.performance;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * Minimaler HTTP-Client für das Synchronisationsprotokoll des Servers. Jede
+ * Methode entspricht einem Aufruf eines Clientgeräts und liefert den
+ * HTTP-Statuscode zurück. Verwendet ausschließlich HttpURLConnection, sodass
+ * der Lastgenerator keine weiteren Abhängigkeiten benötigt. Verbindungen werden
+ * über Keep-Alive wiederverwendet.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see LoadGenerator
+ */
+public class SyncClient {
+
+	/**
+	 * Format des Parameters clientProfileChange.
+	 */
+	private static final DateTimeFormatter CLIENT_PROFILE_CHANGE = DateTimeFormatter
+			.ofPattern("yyyy-MM-dd'T'HH-mm-ss-SSS").withZone(ZoneId.systemDefault());
+
+	private final String baseUrl;
+	private final int timeoutMillis;
+
+	/**
+	 * Ergebnis eines Aufrufs.
+	 */
+	public static class Response {
+		private final int status;
+		private final String body;
+
+		Response(int status, String body) {
+			this.status = status;
+			this.body = body;
+		}
+
+		/**
+		 * @return HTTP-Statuscode.
+		 */
+		public int getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return Body der Antwort.
+		 */
+		public String getBody() {
+			return body;
+		}
+	}
+
+	/**
+	 * Erzeugt einen neuen Client.
+	 * 
+	 * @param baseUrl
+	 *            Adresse des Servers, z.B. 'http://localhost:8080'.
+	 * @param timeoutMillis
+	 *            Verbindungs- und Lese-Timeout in Millisekunden.
+	 */
+	public SyncClient(String baseUrl, int timeoutMillis) {
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Formatiert einen Zeitpunkt als Parameter clientProfileChange.
+	 * 
+	 * @param epochMillis
+	 *            Zeitpunkt in Millisekunden seit 1970.
+	 * @return Formatierter Zeitpunkt.
+	 */
+	public static String formatProfileChange(long epochMillis) {
+		return CLIENT_PROFILE_CHANGE.format(Instant.ofEpochMilli(epochMillis));
+	}
+
+	/**
+	 * Erzeugt ein neues Profil (POST /v1/newProfiles).
+	 * 
+	 * @return Antwort mit der ProfileId im Body.
+	 * @throws IOException
+	 *             Verbindungsfehler.
+	 */
+	public Response create() throws IOException {
+		return execute("POST", "/v1/newProfiles", null);
+	}
+
+	/**
+	 * Lädt die Präferenzen eines Profils, falls diese aktueller als die des
+	 * Clients sind (GET /v1/profiles/{id}/{clientProfileChange}).
+	 * 
+	 * @param id
+	 *            ProfileId.
+	 * @param clientProfileChange
+	 *            lastProfileChange des Clients in Millisekunden.
+	 * @return Antwort, 200 mit Präferenzen oder 409 bei aktuellem Client.
+	 * @throws IOException
+	 *             Verbindungsfehler.
+	 */
+	public Response pull(String id, long clientProfileChange) throws IOException {
+		return execute("GET", "/v1/profiles/" + id + "/" + formatProfileChange(clientProfileChange), null);
+	}
+
+	/**
+	 * Überträgt die Präferenzen eines Clients ohne Überschreiben aktuellerer
+	 * Präferenzen (PUT /v1/profiles/{id}/{clientProfileChange}/false).
+	 * 
+	 * @param id
+	 *            ProfileId.
+	 * @param clientProfileChange
+	 *            lastProfileChange des Clients in Millisekunden.
+	 * @param preferences
+	 *            Präferenzen des Clients.
+	 * @return Antwort, 409 bei aktuellerem Serverprofil.
+	 * @throws IOException
+	 *             Verbindungsfehler.
+	 */
+	public Response push(String id, long clientProfileChange, String preferences) throws IOException {
+		return execute("PUT", "/v1/profiles/" + id + "/" + formatProfileChange(clientProfileChange) + "/false",
+				preferences);
+	}
+
+	/**
+	 * Setzt ein Profil auf unSync (DELETE /v1/profiles/{id}).
+	 * 
+	 * @param id
+	 *            ProfileId.
+	 * @param unSyncPreferences
+	 *            unSync-Präferenzen des Clients.
+	 * @return Antwort.
+	 * @throws IOException
+	 *             Verbindungsfehler.
+	 */
+	public Response delete(String id, String unSyncPreferences) throws IOException {
+		return execute("DELETE", "/v1/profiles/" + id, unSyncPreferences);
+	}
+
+	/**
+	 * Führt einen Aufruf aus und liest die Antwort vollständig, damit die
+	 * Verbindung wiederverwendet werden kann.
+	 */
+	private Response execute(String method, String path, String body) throws IOException {
+		HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+		connection.setRequestMethod(method);
+		connection.setConnectTimeout(timeoutMillis);
+		connection.setReadTimeout(timeoutMillis);
+		if (body != null) {
+			byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+			connection.setDoOutput(true);
+			connection.setRequestProperty("Content-Type", "text/plain;charset=UTF-8");
+			connection.setFixedLengthStreamingMode(bytes.length);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write(bytes);
+			}
+		}
+		int status = connection.getResponseCode();
+		InputStream in = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+		String responseBody = "";
+		if (in != null) {
+			try {
+				ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+				byte[] chunk = new byte[4096];
+				int n;
+				while ((n = in.read(chunk)) >= 0) {
+					buffer.write(chunk, 0, n);
+				}
+				responseBody = new String(buffer.toByteArray(), StandardCharsets.UTF_8);
+			} finally {
+				in.close();
+			}
+		}
+		return new Response(status, responseBody);
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.performance.couchdb;
+
+/**
+ * Fehler der CouchDB-Nachbildung, welcher als HTTP-Antwort im Format von
+ * CouchDB ({"error": ..., "reason": ...}) an den Client gesendet wird.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see CouchDBStandIn
+ */
+public class CouchDBError extends RuntimeException {
+	/**
+	 * Serial Version ID
+	 */
+	private static final long serialVersionUID = 1L;
+
+	private final int status;
+	private final String error;
+
+	/**
+	 * Erzeugt einen neuen Fehler.
+	 * 
+	 * @param status
+	 *            HTTP-Statuscode.
+	 * @param error
+	 *            Fehlerart, z.B. 'not_found' oder 'conflict'.
+	 * @param reason
+	 *            Beschreibung des Fehlers.
+	 */
+	public CouchDBError(int status, String error, String reason) {
+		super(reason, null, false, false);
+		this.status = status;
+		this.error = error;
+	}
+
+	/**
+	 * @return HTTP-Statuscode.
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return Fehlerart.
+	 */
+	public String getError() {
+		return error;
+	}
+
+	/**
+	 * @return Dokument nicht gefunden (404).
+	 */
+	static CouchDBError notFound(String reason) {
+		return new CouchDBError(404, "not_found", reason);
+	}
+
+	/**
+	 * @return Revisionskonflikt (409).
+	 */
+	static CouchDBError conflict() {
+		return new CouchDBError(409, "conflict", "Document update conflict.");
+	}
+
+	/**
+	 * @return Ungültige Anfrage (400).
+	 */
+	static CouchDBError badRequest(String reason) {
+		return new CouchDBError(400, "bad_request", reason);
+	}
+}
@@ -0,0 +1,501 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.performance.couchdb;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Im Prozess lauffähige Nachbildung der von diesem Projekt verwendeten
+ * Teilmenge der CouchDB-API. Dient dazu, den Server samt Repository ohne
+ * installierte CouchDB lokal zu testen und unter Last zu messen. Unterstützt
+ * werden:
+ * 
+ * <ul>
+ * <li>GET / sowie _active_tasks (stets leer)</li>
+ * <li>PUT, GET und DELETE einer Datenbank, wobei GET die db info mit sizes
+ * liefert</li>
+ * <li>GET, HEAD, PUT und DELETE von Dokumenten inklusive _local- und
+ * _design-Dokumenten, POST /{db}</li>
+ * <li>PUT, GET und HEAD von Attachments unter /{db}/{id}/{name}</li>
+ * <li>_all_docs, _bulk_docs, _purge, _compact, _find und _changes (normal und
+ * longpoll)</li>
+ * </ul>
+ * 
+ * Die Nachbildung lauscht ausschließlich auf der Loopback-Adresse. Aufruf als
+ * eigenständiger Prozess:
+ * 
+ * <pre>
+ * mvn -f performance/pom.xml -Djmh.skip=true package exec:java
+ *     -Dexec.mainClass=de.privacy_avare.performance.couchdb.CouchDBStandIn -Dexec.args="port=5984"
+ * </pre>
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see StandInDatabase
+ */
+public class CouchDBStandIn {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+	static {
+		// Ohne TCP_NODELAY verzögern Nagle-Algorithmus und Delayed ACK jede Antwort
+		// des HttpServers um bis zu 40 ms, da Header und Body getrennt gesendet werden
+		if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final ConcurrentMap<String, StandInDatabase> databases;
+
+	/**
+	 * Erzeugt und startet eine neue Nachbildung.
+	 * 
+	 * @param port
+	 *            Port auf der Loopback-Adresse, 0 für einen freien Port.
+	 * @param threads
+	 *            Anzahl der Threads zur Bearbeitung von Anfragen.
+	 * @throws IOException
+	 *             Port bereits belegt.
+	 */
+	public CouchDBStandIn(int port, int threads) throws IOException {
+		this.databases = new ConcurrentHashMap<>();
+		this.executor = Executors.newFixedThreadPool(threads);
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 1024);
+		this.server.setExecutor(executor);
+		this.server.createContext("/", new HttpHandler() {
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				CouchDBStandIn.this.handle(exchange);
+			}
+		});
+		this.server.start();
+	}
+
+	/**
+	 * Einstiegspunkt zum Start als eigenständiger Prozess.
+	 * 
+	 * @param args
+	 *            Optional 'port=...' (Default 5984), 'threads=...' (Default 16)
+	 *            und 'databases=a,b' zum Anlegen von Datenbanken beim Start.
+	 * @throws IOException
+	 *             Port bereits belegt.
+	 */
+	public static void main(String[] args) throws IOException {
+		Map<String, String> config = new HashMap<>();
+		config.put("port", "5984");
+		config.put("threads", "16");
+		config.put("databases", "profiles");
+		for (String arg : args) {
+			int separator = arg.indexOf('=');
+			if (separator <= 0) {
+				throw new IllegalArgumentException("Parameter im Format schluessel=wert erwartet: " + arg);
+			}
+			config.put(arg.substring(0, separator), arg.substring(separator + 1));
+		}
+		CouchDBStandIn standIn = new CouchDBStandIn(Integer.parseInt(config.get("port")),
+				Integer.parseInt(config.get("threads")));
+		for (String database : config.get("databases").split(",")) {
+			if (database.trim().isEmpty() == false) {
+				standIn.createDatabase(database.trim());
+			}
+		}
+		System.out.println("CouchDB-Nachbildung gestartet: http://localhost:" + standIn.getPort());
+	}
+
+	/**
+	 * @return Port, auf welchem die Nachbildung lauscht.
+	 */
+	public int getPort() {
+		return server.getAddress().getPort();
+	}
+
+	/**
+	 * Legt eine Datenbank an, falls diese noch nicht existiert.
+	 * 
+	 * @param name
+	 *            Name der Datenbank.
+	 * @return Datenbank.
+	 */
+	public StandInDatabase createDatabase(String name) {
+		databases.putIfAbsent(name, new StandInDatabase(name));
+		return databases.get(name);
+	}
+
+	/**
+	 * Beendet die Nachbildung.
+	 */
+	public void stop() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Bearbeitet eine Anfrage und sendet die Antwort.
+	 */
+	private void handle(HttpExchange exchange) throws IOException {
+		int status;
+		JsonNode body;
+		Response response = null;
+		try {
+			List<String> path = segments(exchange.getRequestURI().getRawPath());
+			Map<String, JsonNode> query = query(exchange.getRequestURI().getRawQuery());
+			if (isAttachment(path)) {
+				response = attachment(exchange.getRequestMethod(), path, query, exchange);
+			} else {
+				response = route(exchange.getRequestMethod(), path, query, readBody(exchange), exchange);
+			}
+			status = response.status;
+			body = response.body;
+		} catch (CouchDBError e) {
+			status = e.getStatus();
+			ObjectNode error = NODES.objectNode();
+			error.put("error", e.getError());
+			error.put("reason", e.getMessage());
+			body = error;
+		} catch (IOException | RuntimeException e) {
+			status = 500;
+			ObjectNode error = NODES.objectNode();
+			error.put("error", "internal_server_error");
+			error.put("reason", String.valueOf(e.getMessage()));
+			body = error;
+		}
+		boolean raw = response != null && response.content != null;
+		byte[] bytes = raw ? response.content : MAPPER.writeValueAsBytes(body);
+		exchange.getResponseHeaders().set("Content-Type", raw ? response.contentType : "application/json");
+		exchange.getResponseHeaders().set("Server", "CouchDB-StandIn");
+		if (exchange.getRequestMethod().equals("HEAD")) {
+			exchange.sendResponseHeaders(status, -1);
+		} else {
+			exchange.sendResponseHeaders(status, bytes.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(bytes);
+			}
+		}
+		exchange.close();
+	}
+
+	/**
+	 * Statuscode und Body einer Antwort. Attachments werden unverändert mit
+	 * ihrem Content-Type geliefert.
+	 */
+	private static class Response {
+		private final int status;
+		private final JsonNode body;
+		private final byte[] content;
+		private final String contentType;
+
+		Response(int status, JsonNode body) {
+			this.status = status;
+			this.body = body;
+			this.content = null;
+			this.contentType = null;
+		}
+
+		Response(byte[] content, String contentType) {
+			this.status = 200;
+			this.body = null;
+			this.content = content;
+			this.contentType = contentType;
+		}
+	}
+
+	/**
+	 * Prüft, ob ein Pfad ein Attachment eines regulären Dokuments bezeichnet.
+	 */
+	private static boolean isAttachment(List<String> path) {
+		return path.size() == 3 && path.get(1).startsWith("_") == false;
+	}
+
+	/**
+	 * Bearbeitet eine Anfrage an ein Attachment. Der Body eines PUT wird dabei
+	 * unverändert als Inhalt übernommen.
+	 */
+	private Response attachment(String method, List<String> path, Map<String, JsonNode> query,
+			HttpExchange exchange) throws IOException {
+		StandInDatabase database = database(path.get(0));
+		String id = path.get(1);
+		String name = path.get(2);
+		switch (method) {
+		case "GET":
+		case "HEAD":
+			StandInDatabase.Attachment attachment = database.getAttachment(id, name,
+					query.containsKey("rev") ? query.get("rev").asText() : null);
+			exchange.getResponseHeaders().set("ETag", "\"" + attachment.getDigest() + "\"");
+			return new Response(attachment.getData(), attachment.getContentType());
+		case "PUT":
+			String rev = query.containsKey("rev") ? query.get("rev").asText() : null;
+			String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+			if (rev == null && ifMatch != null) {
+				rev = ifMatch.replace("\"", "");
+			}
+			String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+			ObjectNode result = database.putAttachment(id, name, rev,
+					contentType == null ? "application/octet-stream" : contentType, readBytes(exchange));
+			exchange.getResponseHeaders().set("ETag", "\"" + result.get("rev").asText() + "\"");
+			return new Response(201, result);
+		default:
+			throw methodNotAllowed();
+		}
+	}
+
+	/**
+	 * Ordnet eine Anfrage dem entsprechenden Endpunkt zu.
+	 */
+	private Response route(String method, List<String> path, Map<String, JsonNode> query, JsonNode body,
+			HttpExchange exchange) {
+		if (path.isEmpty()) {
+			ObjectNode welcome = NODES.objectNode();
+			welcome.put("couchdb", "Welcome");
+			welcome.put("version", "2.1.0-standin");
+			return new Response(200, welcome);
+		}
+		String dbName = path.get(0);
+		if (dbName.equals("_active_tasks")) {
+			return new Response(200, NODES.arrayNode());
+		}
+		if (dbName.equals("_all_dbs")) {
+			return new Response(200, MAPPER.valueToTree(new ArrayList<>(databases.keySet())));
+		}
+
+		if (path.size() == 1) {
+			switch (method) {
+			case "PUT":
+				if (databases.putIfAbsent(dbName, new StandInDatabase(dbName)) != null) {
+					throw new CouchDBError(412, "file_exists", "The database could not be created, the file already exists.");
+				}
+				return new Response(201, ok());
+			case "DELETE":
+				if (databases.remove(dbName) == null) {
+					throw CouchDBError.notFound("Database does not exist.");
+				}
+				return new Response(200, ok());
+			case "GET":
+			case "HEAD":
+				return new Response(200, database(dbName).info());
+			case "POST":
+				return new Response(201, database(dbName).post(object(body)));
+			default:
+				throw methodNotAllowed();
+			}
+		}
+
+		StandInDatabase database = database(dbName);
+		String resource = path.get(1);
+		switch (resource) {
+		case "_all_docs":
+			if (method.equals("POST") && body.has("keys")) {
+				query.put("keys", body.get("keys"));
+			}
+			return new Response(200, database.allDocs(query));
+		case "_bulk_docs":
+			requireMethod(method, "POST");
+			return new Response(201, database.bulkDocs(body));
+		case "_purge":
+			requireMethod(method, "POST");
+			return new Response(201, database.purge(body));
+		case "_compact":
+			requireMethod(method, "POST");
+			database.compact();
+			return new Response(202, ok());
+		case "_find":
+			requireMethod(method, "POST");
+			return new Response(200, database.find(body));
+		case "_changes":
+			requireMethod(method, "GET");
+			try {
+				return new Response(200, database.changes(query));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException(e);
+			}
+		case "_ensure_full_commit":
+			return new Response(201, ok());
+		default:
+			break;
+		}
+
+		String id;
+		if ((resource.equals("_local") || resource.equals("_design")) && path.size() == 3) {
+			id = resource + "/" + path.get(2);
+		} else if (path.size() == 2) {
+			id = resource;
+		} else {
+			throw CouchDBError.notFound("Attachments are not supported.");
+		}
+		String rev = query.containsKey("rev") ? query.get("rev").asText() : null;
+		String ifMatch = exchange.getRequestHeaders().getFirst("If-Match");
+		if (rev == null && ifMatch != null) {
+			rev = ifMatch.replace("\"", "");
+		}
+		Response response;
+		switch (method) {
+		case "GET":
+		case "HEAD":
+			response = new Response(200, database.get(id));
+			break;
+		case "PUT":
+			response = new Response(201, database.put(id, object(body), rev));
+			break;
+		case "DELETE":
+			response = new Response(200, database.delete(id, rev));
+			break;
+		default:
+			throw methodNotAllowed();
+		}
+		String etag = response.body.has("_rev") ? response.body.get("_rev").asText()
+				: response.body.path("rev").asText(null);
+		if (etag != null) {
+			exchange.getResponseHeaders().set("ETag", "\"" + etag + "\"");
+		}
+		return response;
+	}
+
+	/**
+	 * Liefert eine vorhandene Datenbank.
+	 */
+	private StandInDatabase database(String name) {
+		StandInDatabase database = databases.get(name);
+		if (database == null) {
+			throw CouchDBError.notFound("Database does not exist.");
+		}
+		return database;
+	}
+
+	private static ObjectNode ok() {
+		return NODES.objectNode().put("ok", true);
+	}
+
+	private static ObjectNode object(JsonNode body) {
+		if (body.isObject() == false) {
+			throw CouchDBError.badRequest("Document must be a JSON object");
+		}
+		return (ObjectNode) body;
+	}
+
+	private static void requireMethod(String method, String expected) {
+		if (method.equals(expected) == false) {
+			throw methodNotAllowed();
+		}
+	}
+
+	private static CouchDBError methodNotAllowed() {
+		return new CouchDBError(405, "method_not_allowed", "Only the documented methods are supported.");
+	}
+
+	/**
+	 * Zerlegt den Pfad in dekodierte Segmente.
+	 */
+	private static List<String> segments(String rawPath) {
+		List<String> segments = new ArrayList<>();
+		for (String segment : rawPath.split("/")) {
+			if (segment.isEmpty() == false) {
+				segments.add(decode(segment));
+			}
+		}
+		return segments;
+	}
+
+	/**
+	 * Zerlegt die Query in Parameter. Werte werden als JSON interpretiert, z.B.
+	 * startkey="abc" oder limit=10, andernfalls als String übernommen.
+	 */
+	private static Map<String, JsonNode> query(String rawQuery) {
+		Map<String, JsonNode> params = new HashMap<>();
+		if (rawQuery == null) {
+			return params;
+		}
+		for (String pair : rawQuery.split("&")) {
+			int separator = pair.indexOf('=');
+			String key = decode(separator < 0 ? pair : pair.substring(0, separator));
+			String value = separator < 0 ? "" : decode(pair.substring(separator + 1));
+			JsonNode node;
+			try {
+				node = MAPPER.readTree(value);
+			} catch (IOException e) {
+				node = null;
+			}
+			params.put(key, node == null || node.isMissingNode() ? TextNode.valueOf(value) : node);
+		}
+		return params;
+	}
+
+	private static String decode(String value) {
+		try {
+			return URLDecoder.decode(value.replace("+", "%2B"), "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Liest den Body einer Anfrage als JSON. Ein leerer Body ergibt ein leeres
+	 * Objekt.
+	 */
+	private static JsonNode readBody(HttpExchange exchange) throws IOException {
+		byte[] bytes = readBytes(exchange);
+		if (bytes.length == 0) {
+			return NODES.objectNode();
+		}
+		try {
+			return MAPPER.readTree(bytes);
+		} catch (IOException e) {
+			throw CouchDBError.badRequest("invalid UTF-8 JSON");
+		}
+	}
+
+	/**
+	 * Liest den Body einer Anfrage vollständig.
+	 */
+	private static byte[] readBytes(HttpExchange exchange) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try (InputStream in = exchange.getRequestBody()) {
+			byte[] chunk = new byte[8192];
+			int n;
+			while ((n = in.read(chunk)) >= 0) {
+				buffer.write(chunk, 0, n);
+			}
+		}
+		return buffer.toByteArray();
+	}
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.performance.couchdb;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeType;
+
+/**
+ * Auswertung von Mango-Selektoren des _find-Endpunkts. Unterstützt werden
+ * Gleichheit auf Feldern sowie die Operatoren $eq, $ne, $gt, $gte, $lt, $lte,
+ * $exists, $in und $and, $or. Werte werden gemäß der Collation von CouchDB
+ * verglichen: null &lt; false &lt; true &lt; Zahlen &lt; Strings &lt; Arrays &lt;
+ * Objekte. Strings werden dabei nach Unicode-Codepoints verglichen.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see StandInDatabase#find(JsonNode)
+ */
+final class MangoSelector {
+
+	/**
+	 * Vergleicht JSON-Werte gemäß der Collation von CouchDB.
+	 */
+	static final Comparator<JsonNode> COLLATION = new Comparator<JsonNode>() {
+		@Override
+		public int compare(JsonNode a, JsonNode b) {
+			int rankA = rank(a);
+			int rankB = rank(b);
+			if (rankA != rankB) {
+				return Integer.compare(rankA, rankB);
+			}
+			switch (rankA) {
+			case 3:
+				return Double.compare(a.asDouble(), b.asDouble());
+			case 4:
+				return a.asText().compareTo(b.asText());
+			case 5:
+				for (int i = 0; i < Math.min(a.size(), b.size()); i++) {
+					int result = compare(a.get(i), b.get(i));
+					if (result != 0) {
+						return result;
+					}
+				}
+				return Integer.compare(a.size(), b.size());
+			default:
+				return 0;
+			}
+		}
+	};
+
+	/**
+	 * Privater Konstruktor, da die Klasse lediglich statische Methoden enthält.
+	 */
+	private MangoSelector() {
+
+	}
+
+	/**
+	 * Rang eines Werts in der Collation.
+	 */
+	private static int rank(JsonNode node) {
+		if (node == null || node.isMissingNode() || node.isNull()) {
+			return 0;
+		}
+		if (node.getNodeType() == JsonNodeType.BOOLEAN) {
+			return node.asBoolean() ? 2 : 1;
+		}
+		if (node.isNumber()) {
+			return 3;
+		}
+		if (node.isTextual()) {
+			return 4;
+		}
+		if (node.isArray()) {
+			return 5;
+		}
+		return 6;
+	}
+
+	/**
+	 * Prüft, ob ein Dokument einem Selektor entspricht.
+	 * 
+	 * @param selector
+	 *            Selektor als JSON-Objekt.
+	 * @param doc
+	 *            Zu prüfendes Dokument.
+	 * @return true, falls das Dokument dem Selektor entspricht.
+	 */
+	static boolean matches(JsonNode selector, JsonNode doc) {
+		Iterator<Map.Entry<String, JsonNode>> fields = selector.fields();
+		while (fields.hasNext()) {
+			Map.Entry<String, JsonNode> field = fields.next();
+			String name = field.getKey();
+			JsonNode condition = field.getValue();
+			if (name.equals("$and")) {
+				for (JsonNode part : condition) {
+					if (matches(part, doc) == false) {
+						return false;
+					}
+				}
+			} else if (name.equals("$or")) {
+				boolean any = false;
+				for (JsonNode part : condition) {
+					any = any || matches(part, doc);
+				}
+				if (any == false) {
+					return false;
+				}
+			} else if (name.startsWith("$")) {
+				throw CouchDBError.badRequest("Unsupported operator " + name);
+			} else if (matchesCondition(value(doc, name), condition) == false) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Liefert den Wert eines Felds, geschachtelte Felder werden per Punkt
+	 * getrennt angegeben.
+	 */
+	static JsonNode value(JsonNode doc, String path) {
+		JsonNode node = doc;
+		for (String part : path.split("\\.")) {
+			node = node.path(part);
+		}
+		return node;
+	}
+
+	/**
+	 * Prüft einen Feldwert gegen eine Bedingung. Bedingungen ohne Operator werden
+	 * als Gleichheit ausgewertet.
+	 */
+	private static boolean matchesCondition(JsonNode value, JsonNode condition) {
+		if (condition.isObject() == false || condition.size() == 0
+				|| condition.fieldNames().next().startsWith("$") == false) {
+			return value.isMissingNode() == false && COLLATION.compare(value, condition) == 0;
+		}
+		Iterator<Map.Entry<String, JsonNode>> operators = condition.fields();
+		while (operators.hasNext()) {
+			Map.Entry<String, JsonNode> operator = operators.next();
+			JsonNode operand = operator.getValue();
+			boolean missing = value.isMissingNode();
+			boolean result;
+			switch (operator.getKey()) {
+			case "$eq":
+				result = missing == false && COLLATION.compare(value, operand) == 0;
+				break;
+			case "$ne":
+				result = missing == false && COLLATION.compare(value, operand) != 0;
+				break;
+			case "$gt":
+				result = missing == false && COLLATION.compare(value, operand) > 0;
+				break;
+			case "$gte":
+				result = missing == false && COLLATION.compare(value, operand) >= 0;
+				break;
+			case "$lt":
+				result = missing == false && COLLATION.compare(value, operand) < 0;
+				break;
+			case "$lte":
+				result = missing == false && COLLATION.compare(value, operand) <= 0;
+				break;
+			case "$exists":
+				result = missing != operand.asBoolean();
+				break;
+			case "$in":
+				result = false;
+				for (JsonNode candidate : operand) {
+					result = result || (missing == false && COLLATION.compare(value, candidate) == 0);
+				}
+				break;
+			default:
+				throw CouchDBError.badRequest("Unsupported operator " + operator.getKey());
+			}
+			if (result == false) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Erzeugt aus dem sort-Parameter von _find einen Comparator für Dokumente.
+	 * Unterstützt werden Feldnamen sowie Objekte der Form {"feld": "asc"|"desc"}.
+	 * 
+	 * @param sort
+	 *            sort-Parameter oder MissingNode.
+	 * @return Comparator oder null, falls keine Sortierung angegeben ist.
+	 */
+	static Comparator<JsonNode> comparator(JsonNode sort) {
+		if (sort.isArray() == false || sort.size() == 0) {
+			return null;
+		}
+		final List<String> fields = new ArrayList<>();
+		final List<Boolean> descending = new ArrayList<>();
+		for (JsonNode entry : sort) {
+			if (entry.isTextual()) {
+				fields.add(entry.asText());
+				descending.add(false);
+			} else {
+				Map.Entry<String, JsonNode> field = entry.fields().next();
+				fields.add(field.getKey());
+				descending.add(field.getValue().asText().equalsIgnoreCase("desc"));
+			}
+		}
+		return new Comparator<JsonNode>() {
+			@Override
+			public int compare(JsonNode a, JsonNode b) {
+				for (int i = 0; i < fields.size(); i++) {
+					int result = COLLATION.compare(value(a, fields.get(i)), value(b, fields.get(i)));
+					if (result != 0) {
+						return descending.get(i) ? -result : result;
+					}
+				}
+				return 0;
+			}
+		};
+	}
+}
@@ -0,0 +1,837 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.performance.couchdb;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Datenbank der CouchDB-Nachbildung im Arbeitsspeicher. Dokumente werden mit
+ * Revisionen der Form 'N-md5' verwaltet: Änderungen und Löschungen erfordern
+ * die aktuelle Revision, andernfalls wird 409 Conflict gemeldet. Gelöschte
+ * Dokumente bleiben als Tombstone erhalten, bis sie über _purge entfernt
+ * werden. Lokale Dokumente (_local/...) besitzen eigene Revisionen der Form
+ * '0-N' und erscheinen weder in _all_docs noch in _find.
+ * 
+ * Attachments werden je Dokument gespeichert und im Dokument durch Stubs mit
+ * content_type, revpos, digest und length beschrieben. Ein Dokument behält ein
+ * Attachment nur, solange es dessen Stub enthält. Attachments können auch
+ * inline als Base64 im Feld 'data' mit dem Dokument geschrieben werden.
+ * 
+ * Über _changes lassen sich alle Änderungen seit einer Sequenznummer abfragen,
+ * wobei je Dokument nur die letzte Änderung geliefert wird.
+ * 
+ * Für Abfragen über db info wird die Dateigröße nachgebildet: Jede Schreib-
+ * operation vergrößert die Datei um die Größe des geschriebenen Dokuments, eine
+ * Compaction setzt die Dateigröße auf die Größe der aktuellen Dokumente zurück.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see CouchDBStandIn
+ */
+public class StandInDatabase {
+
+	/**
+	 * Gespeicherte Revision eines Dokuments.
+	 */
+	private static class Doc {
+		private final String id;
+		private final String rev;
+		private final ObjectNode body;
+		private final boolean deleted;
+		private final long seq;
+		private final int size;
+		private final Map<String, Attachment> attachments;
+
+		Doc(String id, String rev, ObjectNode body, boolean deleted, long seq, int size,
+				Map<String, Attachment> attachments) {
+			this.id = id;
+			this.rev = rev;
+			this.body = body;
+			this.deleted = deleted;
+			this.seq = seq;
+			this.size = size;
+			this.attachments = attachments;
+		}
+
+		int generation() {
+			if (rev.startsWith("0-")) {
+				return Integer.parseInt(rev.substring(2));
+			}
+			return Integer.parseInt(rev.substring(0, rev.indexOf('-')));
+		}
+	}
+
+	/**
+	 * Gespeichertes Attachment eines Dokuments.
+	 */
+	public static class Attachment {
+		private final String contentType;
+		private final byte[] data;
+		private final String digest;
+		private final int revpos;
+
+		Attachment(String contentType, byte[] data, int revpos) {
+			this.contentType = contentType;
+			this.data = data;
+			this.digest = digest(data);
+			this.revpos = revpos;
+		}
+
+		/**
+		 * @return Content-Type, mit welchem das Attachment gespeichert wurde.
+		 */
+		public String getContentType() {
+			return contentType;
+		}
+
+		/**
+		 * @return Inhalt des Attachments.
+		 */
+		public byte[] getData() {
+			return data;
+		}
+
+		/**
+		 * @return Digest der Form 'md5-{Base64}'.
+		 */
+		public String getDigest() {
+			return digest;
+		}
+	}
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+	private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+	private final String name;
+	private final NavigableMap<String, Doc> docs;
+	private final Map<String, Doc> localDocs;
+	private final ReadWriteLock lock;
+	private long updateSeq;
+	private long purgeSeq;
+
+	/**
+	 * Zuletzt vergebene Sequenznummer, lesbar ohne Sperre für wartende
+	 * Longpoll-Abfragen von _changes.
+	 */
+	private volatile long lastSeq;
+	private final Object changeSignal = new Object();
+	private long fileSize;
+	private long activeSize;
+
+	/**
+	 * Erzeugt eine neue, leere Datenbank.
+	 * 
+	 * @param name
+	 *            Name der Datenbank.
+	 */
+	public StandInDatabase(String name) {
+		this.name = name;
+		this.docs = new TreeMap<>();
+		this.localDocs = new HashMap<>();
+		this.lock = new ReentrantReadWriteLock();
+	}
+
+	/**
+	 * Liefert die Informationen der Datenbank im Format von GET /{db}.
+	 * 
+	 * @return Datenbankinformationen.
+	 */
+	public ObjectNode info() {
+		lock.readLock().lock();
+		try {
+			int docCount = 0;
+			int deletedCount = 0;
+			for (Doc doc : docs.values()) {
+				if (doc.deleted) {
+					deletedCount++;
+				} else {
+					docCount++;
+				}
+			}
+			ObjectNode info = NODES.objectNode();
+			info.put("db_name", name);
+			info.put("doc_count", docCount);
+			info.put("doc_del_count", deletedCount);
+			info.put("update_seq", String.valueOf(updateSeq));
+			info.put("purge_seq", purgeSeq);
+			info.put("compact_running", false);
+			info.put("disk_size", fileSize);
+			info.put("data_size", activeSize);
+			ObjectNode sizes = info.putObject("sizes");
+			sizes.put("file", fileSize);
+			sizes.put("active", activeSize);
+			sizes.put("external", activeSize);
+			return info;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Liefert ein Dokument (GET /{db}/{id}).
+	 * 
+	 * @param id
+	 *            _id des Dokuments, ggf. mit Präfix '_local/' oder '_design/'.
+	 * @return Dokument mit _id und _rev.
+	 * @throws CouchDBError
+	 *             404, falls das Dokument nicht existiert oder gelöscht ist.
+	 */
+	public ObjectNode get(String id) {
+		lock.readLock().lock();
+		try {
+			Doc doc = isLocal(id) ? localDocs.get(id) : docs.get(id);
+			if (doc == null) {
+				throw CouchDBError.notFound("missing");
+			}
+			if (doc.deleted) {
+				throw CouchDBError.notFound("deleted");
+			}
+			return doc.body.deepCopy();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Speichert ein Dokument (PUT /{db}/{id}). Existiert das Dokument bereits, so
+	 * muss die aktuelle Revision in _rev oder im Parameter rev angegeben sein.
+	 * 
+	 * @param id
+	 *            _id des Dokuments.
+	 * @param body
+	 *            Inhalt des Dokuments.
+	 * @param rev
+	 *            Revision aus Parameter oder If-Match, kann null sein.
+	 * @return Antwort der Form {"ok":true,"id":...,"rev":...}.
+	 * @throws CouchDBError
+	 *             409 bei Revisionskonflikt.
+	 */
+	public ObjectNode put(String id, ObjectNode body, String rev) {
+		lock.writeLock().lock();
+		try {
+			Doc doc = write(id, body, rev, body.path("_deleted").asBoolean(false));
+			return result(doc);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Speichert ein neues Dokument mit generierter _id (POST /{db}).
+	 * 
+	 * @param body
+	 *            Inhalt des Dokuments.
+	 * @return Antwort der Form {"ok":true,"id":...,"rev":...}.
+	 */
+	public ObjectNode post(ObjectNode body) {
+		String id = body.hasNonNull("_id") ? body.get("_id").asText() : UUID.randomUUID().toString().replace("-", "");
+		return put(id, body, null);
+	}
+
+	/**
+	 * Löscht ein Dokument (DELETE /{db}/{id}?rev=...). Es verbleibt ein Tombstone.
+	 * 
+	 * @param id
+	 *            _id des Dokuments.
+	 * @param rev
+	 *            Aktuelle Revision.
+	 * @return Antwort der Form {"ok":true,"id":...,"rev":...}.
+	 */
+	public ObjectNode delete(String id, String rev) {
+		lock.writeLock().lock();
+		try {
+			Doc current = isLocal(id) ? localDocs.get(id) : docs.get(id);
+			if (current == null || current.deleted) {
+				throw CouchDBError.notFound(current == null ? "missing" : "deleted");
+			}
+			return result(write(id, NODES.objectNode(), rev, true));
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Speichert ein Attachment (PUT /{db}/{id}/{name}?rev=...) und erzeugt dabei
+	 * eine neue Revision des Dokuments. Existiert das Dokument nicht, so wird es
+	 * ohne Revision angelegt.
+	 * 
+	 * @param id
+	 *            _id des Dokuments.
+	 * @param name
+	 *            Name des Attachments.
+	 * @param rev
+	 *            Aktuelle Revision des Dokuments, kann null sein.
+	 * @param contentType
+	 *            Content-Type des Attachments.
+	 * @param data
+	 *            Inhalt des Attachments.
+	 * @return Antwort der Form {"ok":true,"id":...,"rev":...}.
+	 * @throws CouchDBError
+	 *             409 bei Revisionskonflikt.
+	 */
+	public ObjectNode putAttachment(String id, String name, String rev, String contentType, byte[] data) {
+		if (isLocal(id)) {
+			throw CouchDBError.badRequest("Local documents cannot have attachments.");
+		}
+		lock.writeLock().lock();
+		try {
+			Doc current = docs.get(id);
+			ObjectNode body = current == null || current.deleted ? NODES.objectNode() : current.body.deepCopy();
+			body.remove("_rev");
+			int generation = current == null ? 1 : current.generation() + 1;
+			Doc doc = write(id, body, rev, false,
+					Collections.singletonMap(name, new Attachment(contentType, data, generation)));
+			return result(doc);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Liefert ein Attachment (GET /{db}/{id}/{name}?rev=...). Frühere
+	 * Revisionen werden wie nach einer Compaction nicht aufbewahrt, für sie wird
+	 * 404 gemeldet.
+	 * 
+	 * @param id
+	 *            _id des Dokuments.
+	 * @param name
+	 *            Name des Attachments.
+	 * @param rev
+	 *            Revision des Dokuments oder null für die aktuelle Revision.
+	 * @return Attachment.
+	 * @throws CouchDBError
+	 *             404, falls Dokument, Revision oder Attachment nicht existieren.
+	 */
+	public Attachment getAttachment(String id, String name, String rev) {
+		lock.readLock().lock();
+		try {
+			Doc doc = docs.get(id);
+			if (doc == null || doc.deleted) {
+				throw CouchDBError.notFound(doc == null ? "missing" : "deleted");
+			}
+			if (rev != null && doc.rev.equals(rev) == false) {
+				throw CouchDBError.notFound("missing");
+			}
+			Attachment attachment = doc.attachments.get(name);
+			if (attachment == null) {
+				throw CouchDBError.notFound("Document is missing attachment");
+			}
+			return attachment;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Verarbeitet mehrere Dokumente (POST /{db}/_bulk_docs). Konflikte werden je
+	 * Dokument gemeldet, ohne die übrigen Dokumente zu beeinflussen.
+	 * 
+	 * @param request
+	 *            Anfrage der Form {"docs":[...]}.
+	 * @return Ergebnis je Dokument.
+	 */
+	public ArrayNode bulkDocs(JsonNode request) {
+		ArrayNode results = NODES.arrayNode();
+		lock.writeLock().lock();
+		try {
+			for (JsonNode node : request.path("docs")) {
+				if (node.isObject() == false) {
+					throw CouchDBError.badRequest("Document must be a JSON object");
+				}
+				ObjectNode body = ((ObjectNode) node).deepCopy();
+				String id = body.hasNonNull("_id") ? body.get("_id").asText()
+						: UUID.randomUUID().toString().replace("-", "");
+				try {
+					results.add(result(write(id, body, null, body.path("_deleted").asBoolean(false))));
+				} catch (CouchDBError e) {
+					ObjectNode error = results.addObject();
+					error.put("id", id);
+					error.put("error", e.getError());
+					error.put("reason", e.getMessage());
+				}
+			}
+			return results;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Entfernt Revisionen endgültig (POST /{db}/_purge). Entspricht eine
+	 * angegebene Revision der aktuellen Revision, so wird das Dokument samt
+	 * Tombstone entfernt.
+	 * 
+	 * @param request
+	 *            Anfrage der Form {"id": ["rev", ...]}.
+	 * @return Antwort mit purge_seq und den entfernten Revisionen.
+	 */
+	public ObjectNode purge(JsonNode request) {
+		lock.writeLock().lock();
+		try {
+			ObjectNode response = NODES.objectNode();
+			ObjectNode purged = response.putObject("purged");
+			Iterator<Map.Entry<String, JsonNode>> entries = request.fields();
+			while (entries.hasNext()) {
+				Map.Entry<String, JsonNode> entry = entries.next();
+				ArrayNode revs = purged.putArray(entry.getKey());
+				Doc doc = docs.get(entry.getKey());
+				if (doc == null) {
+					continue;
+				}
+				for (JsonNode rev : entry.getValue()) {
+					if (rev.asText().equals(doc.rev)) {
+						docs.remove(doc.id);
+						if (doc.deleted == false) {
+							activeSize -= doc.size;
+						}
+						revs.add(doc.rev);
+						purgeSeq++;
+					}
+				}
+			}
+			response.put("purge_seq", purgeSeq);
+			return response;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Führt eine Compaction durch (POST /{db}/_compact). Die Nachbildung
+	 * komprimiert sofort und synchron.
+	 */
+	public void compact() {
+		lock.writeLock().lock();
+		try {
+			fileSize = activeSize;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Liefert die Änderungen seit einer Sequenznummer (GET /{db}/_changes).
+	 * Unterstützt werden since (Zahl oder 'now'), limit, feed=normal|longpoll und
+	 * timeout. Bei feed=longpoll wartet die Abfrage bis zu timeout Millisekunden
+	 * auf eine Änderung, falls noch keine vorliegt.
+	 * 
+	 * @param params
+	 *            Parameter als JSON-Werte.
+	 * @return Antwort mit results, last_seq und pending.
+	 * @throws InterruptedException
+	 *             Thread wurde während des Wartens unterbrochen.
+	 */
+	public ObjectNode changes(Map<String, JsonNode> params) throws InterruptedException {
+		String sinceValue = params.containsKey("since") ? params.get("since").asText() : "0";
+		long since = sinceValue.equals("now") ? lastSeq : parseSeq(sinceValue);
+		int limit = params.containsKey("limit") ? params.get("limit").asInt() : Integer.MAX_VALUE;
+		boolean longpoll = params.containsKey("feed") && params.get("feed").asText().equals("longpoll");
+		long timeout = params.containsKey("timeout") ? params.get("timeout").asLong() : 60000;
+
+		if (longpoll) {
+			long deadline = System.currentTimeMillis() + timeout;
+			synchronized (changeSignal) {
+				long remaining = timeout;
+				while (lastSeq <= since && remaining > 0) {
+					changeSignal.wait(remaining);
+					remaining = deadline - System.currentTimeMillis();
+				}
+			}
+		}
+
+		lock.readLock().lock();
+		try {
+			List<Doc> changed = new ArrayList<>();
+			for (Doc doc : docs.values()) {
+				if (doc.seq > since) {
+					changed.add(doc);
+				}
+			}
+			changed.sort((a, b) -> Long.compare(a.seq, b.seq));
+			ObjectNode response = NODES.objectNode();
+			ArrayNode results = response.putArray("results");
+			long last = since;
+			for (Doc doc : changed.subList(0, Math.min(limit, changed.size()))) {
+				ObjectNode row = results.addObject();
+				row.put("seq", String.valueOf(doc.seq));
+				row.put("id", doc.id);
+				row.putArray("changes").addObject().put("rev", doc.rev);
+				if (doc.deleted) {
+					row.put("deleted", true);
+				}
+				last = doc.seq;
+			}
+			response.put("last_seq", String.valueOf(last));
+			response.put("pending", Math.max(0, changed.size() - limit));
+			return response;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Liest die Zahl am Anfang einer Sequenznummer, z.B. '12' aus '12-g1AAAA'.
+	 */
+	private static long parseSeq(String seq) {
+		int end = 0;
+		while (end < seq.length() && Character.isDigit(seq.charAt(end))) {
+			end++;
+		}
+		return end == 0 ? 0 : Long.parseLong(seq.substring(0, end));
+	}
+
+	/**
+	 * Liefert Dokumente sortiert nach _id (GET|POST /{db}/_all_docs). Unterstützt
+	 * werden startkey, endkey, inclusive_end, keys, limit, skip, descending und
+	 * include_docs. Design-Dokumente sind enthalten, lokale Dokumente nicht.
+	 * 
+	 * @param params
+	 *            Parameter als JSON-Werte.
+	 * @return Antwort mit total_rows, offset und rows.
+	 */
+	public ObjectNode allDocs(Map<String, JsonNode> params) {
+		lock.readLock().lock();
+		try {
+			boolean includeDocs = params.containsKey("include_docs") && params.get("include_docs").asBoolean();
+			boolean descending = params.containsKey("descending") && params.get("descending").asBoolean();
+			int limit = params.containsKey("limit") ? params.get("limit").asInt() : Integer.MAX_VALUE;
+			int skip = params.containsKey("skip") ? params.get("skip").asInt() : 0;
+			ObjectNode response = NODES.objectNode();
+			int totalRows = 0;
+			for (Doc doc : docs.values()) {
+				if (doc.deleted == false) {
+					totalRows++;
+				}
+			}
+			response.put("total_rows", totalRows);
+			response.put("offset", skip);
+			ArrayNode rows = response.putArray("rows");
+
+			if (params.containsKey("keys")) {
+				for (JsonNode key : params.get("keys")) {
+					Doc doc = docs.get(key.asText());
+					ObjectNode row = rows.addObject();
+					row.put("key", key.asText());
+					if (doc == null) {
+						row.put("error", "not_found");
+						continue;
+					}
+					row.put("id", doc.id);
+					ObjectNode value = row.putObject("value");
+					value.put("rev", doc.rev);
+					if (doc.deleted) {
+						value.put("deleted", true);
+						row.putNull("doc");
+					} else if (includeDocs) {
+						row.set("doc", doc.body.deepCopy());
+					}
+				}
+				return response;
+			}
+
+			String startKey = params.containsKey("startkey") ? params.get("startkey").asText()
+					: params.containsKey("start_key") ? params.get("start_key").asText() : null;
+			String endKey = params.containsKey("endkey") ? params.get("endkey").asText()
+					: params.containsKey("end_key") ? params.get("end_key").asText() : null;
+			boolean inclusiveEnd = params.containsKey("inclusive_end") == false
+					|| params.get("inclusive_end").asBoolean();
+			NavigableMap<String, Doc> range = descending ? docs.descendingMap() : docs;
+			if (startKey != null) {
+				range = range.tailMap(startKey, true);
+			}
+			if (endKey != null) {
+				range = range.headMap(endKey, inclusiveEnd);
+			}
+			int skipped = 0;
+			for (Doc doc : range.values()) {
+				if (rows.size() >= limit) {
+					break;
+				}
+				if (doc.deleted) {
+					continue;
+				}
+				if (skipped++ < skip) {
+					continue;
+				}
+				ObjectNode row = rows.addObject();
+				row.put("id", doc.id);
+				row.put("key", doc.id);
+				row.putObject("value").put("rev", doc.rev);
+				if (includeDocs) {
+					row.set("doc", doc.body.deepCopy());
+				}
+			}
+			return response;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Sucht Dokumente über einen Mango-Selektor (POST /{db}/_find). Unterstützt
+	 * werden selector, fields, sort, limit (Default 25) und skip. Ein Index ist
+	 * nicht erforderlich.
+	 * 
+	 * @param request
+	 *            Anfrage im Format von _find.
+	 * @return Antwort mit docs und bookmark.
+	 */
+	public ObjectNode find(JsonNode request) {
+		JsonNode selector = request.path("selector");
+		if (selector.isObject() == false) {
+			throw CouchDBError.badRequest("selector must be a JSON object");
+		}
+		int limit = request.path("limit").asInt(25);
+		int skip = request.path("skip").asInt(0);
+		List<JsonNode> matches = new ArrayList<>();
+		lock.readLock().lock();
+		try {
+			for (Doc doc : docs.values()) {
+				if (doc.deleted == false && doc.id.startsWith("_design/") == false
+						&& MangoSelector.matches(selector, doc.body)) {
+					matches.add(doc.body);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		Comparator<JsonNode> comparator = MangoSelector.comparator(request.path("sort"));
+		if (comparator != null) {
+			Collections.sort(matches, comparator);
+		}
+
+		ObjectNode response = NODES.objectNode();
+		ArrayNode result = response.putArray("docs");
+		JsonNode fields = request.path("fields");
+		for (int i = skip; i < matches.size() && result.size() < limit; i++) {
+			JsonNode doc = matches.get(i);
+			if (fields.isArray() && fields.size() > 0) {
+				ObjectNode projected = result.addObject();
+				for (JsonNode field : fields) {
+					JsonNode value = doc.get(field.asText());
+					if (value != null) {
+						projected.set(field.asText(), value.deepCopy());
+					}
+				}
+			} else {
+				result.add(doc.deepCopy());
+			}
+		}
+		response.put("bookmark", "nil");
+		return response;
+	}
+
+	/**
+	 * Dekodiert ein inline im Dokument übergebenes Attachment.
+	 */
+	private static Attachment inlineAttachment(String id, String name, JsonNode entry, int generation) {
+		if (isLocal(id)) {
+			throw CouchDBError.badRequest("Local documents cannot have attachments.");
+		}
+		if (entry.path("data").isTextual() == false) {
+			throw CouchDBError.badRequest("Invalid attachment data for " + name);
+		}
+		byte[] data;
+		try {
+			data = Base64.getDecoder().decode(entry.get("data").asText());
+		} catch (IllegalArgumentException e) {
+			throw CouchDBError.badRequest("Invalid attachment data for " + name);
+		}
+		return new Attachment(entry.path("content_type").asText("application/octet-stream"), data, generation);
+	}
+
+	/**
+	 * Schreibt eine neue Revision. Muss unter der Schreibsperre aufgerufen
+	 * werden.
+	 */
+	private Doc write(String id, ObjectNode body, String rev, boolean deleted) {
+		return write(id, body, rev, deleted, Collections.<String, Attachment>emptyMap());
+	}
+
+	/**
+	 * Schreibt eine neue Revision wie write(String, ObjectNode, String, boolean)
+	 * und ergänzt die übergebenen Attachments. Bestehende Attachments bleiben nur
+	 * erhalten, sofern der Body deren Stubs enthält.
+	 */
+	private Doc write(String id, ObjectNode body, String rev, boolean deleted, Map<String, Attachment> added) {
+		boolean local = isLocal(id);
+		Doc current = local ? localDocs.get(id) : docs.get(id);
+		String givenRev = body.hasNonNull("_rev") ? body.get("_rev").asText() : rev;
+		if (current != null && current.deleted == false) {
+			if (current.rev.equals(givenRev) == false) {
+				throw CouchDBError.conflict();
+			}
+		} else if (current != null && givenRev != null && current.rev.equals(givenRev) == false) {
+			throw CouchDBError.conflict();
+		} else if (current == null && givenRev != null && local == false) {
+			throw CouchDBError.conflict();
+		}
+		if (deleted && (current == null || current.deleted)) {
+			throw CouchDBError.notFound(current == null ? "missing" : "deleted");
+		}
+
+		int generation = current == null ? 1 : current.generation() + 1;
+		ObjectNode stored = deleted ? NODES.objectNode() : body.deepCopy();
+		stored.remove("_rev");
+		stored.remove("_deleted");
+		JsonNode stubs = stored.remove("_attachments");
+		Map<String, Attachment> attachments = new TreeMap<>();
+		if (deleted == false && stubs != null) {
+			Iterator<String> names = stubs.fieldNames();
+			while (names.hasNext()) {
+				String attachmentName = names.next();
+				JsonNode entry = stubs.get(attachmentName);
+				if (entry.path("stub").asBoolean(false) == false) {
+					attachments.put(attachmentName, inlineAttachment(id, attachmentName, entry, generation));
+					continue;
+				}
+				Attachment kept = current == null || current.deleted ? null : current.attachments.get(attachmentName);
+				if (kept == null) {
+					throw new CouchDBError(412, "missing_stub",
+							"Invalid attachment stub in " + id + " for " + attachmentName);
+				}
+				attachments.put(attachmentName, kept);
+			}
+		}
+		attachments.putAll(added);
+		if (attachments.isEmpty() == false) {
+			ObjectNode stubNodes = stored.putObject("_attachments");
+			for (Map.Entry<String, Attachment> entry : attachments.entrySet()) {
+				Attachment attachment = entry.getValue();
+				ObjectNode stub = stubNodes.putObject(entry.getKey());
+				stub.put("content_type", attachment.contentType);
+				stub.put("revpos", attachment.revpos);
+				stub.put("digest", attachment.digest);
+				stub.put("length", attachment.data.length);
+				stub.put("stub", true);
+			}
+		}
+		stored.put("_id", id);
+		String newRev = local ? "0-" + generation : generation + "-" + md5(stored, generation);
+		stored.put("_rev", newRev);
+		if (deleted) {
+			stored.put("_deleted", true);
+		}
+		int size = serialize(stored).length;
+		for (Attachment attachment : attachments.values()) {
+			size += attachment.data.length;
+		}
+
+		Doc doc = new Doc(id, newRev, stored, deleted, local ? 0 : ++updateSeq, size, attachments);
+		if (local) {
+			if (deleted) {
+				localDocs.remove(id);
+			} else {
+				localDocs.put(id, doc);
+			}
+			return doc;
+		}
+		docs.put(id, doc);
+		lastSeq = doc.seq;
+		synchronized (changeSignal) {
+			changeSignal.notifyAll();
+		}
+		fileSize += size;
+		if (current != null && current.deleted == false) {
+			activeSize -= current.size;
+		}
+		if (deleted == false) {
+			activeSize += size;
+		}
+		return doc;
+	}
+
+	/**
+	 * Antwort auf eine Schreiboperation.
+	 */
+	private static ObjectNode result(Doc doc) {
+		ObjectNode result = NODES.objectNode();
+		result.put("ok", true);
+		result.put("id", doc.id);
+		result.put("rev", doc.rev);
+		return result;
+	}
+
+	/**
+	 * Prüft, ob eine _id ein lokales Dokument bezeichnet.
+	 */
+	private static boolean isLocal(String id) {
+		return id.startsWith("_local/");
+	}
+
+	/**
+	 * Serialisiert ein Dokument.
+	 */
+	private static byte[] serialize(JsonNode node) {
+		try {
+			return MAPPER.writeValueAsBytes(node);
+		} catch (JsonProcessingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Berechnet den Hash-Anteil einer Revision.
+	 */
+	private static String md5(JsonNode body, int generation) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			digest.update(String.valueOf(generation).getBytes(StandardCharsets.UTF_8));
+			byte[] hash = digest.digest(serialize(body));
+			StringBuilder hex = new StringBuilder();
+			for (byte b : hash) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Berechnet den Digest eines Attachments.
+	 */
+	private static String digest(byte[] data) {
+		try {
+			return "md5-" + Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(data));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.config;
+
+import java.util.Arrays;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.web.client.RestTemplate;
+
+import de.privacy_avare.metrics.CouchDBMetricsInterceptor;
+import de.privacy_avare.resilience.ConcurrencyLimitInterceptor;
+import de.privacy_avare.resilience.DeadlineClientInterceptor;
+import de.privacy_avare.resilience.DeadlineRequestFactory;
+import de.privacy_avare.resilience.NodeRoutingRequestFactory;
+import de.privacy_avare.resilience.StreamingRequestFactory;
+
+/**
+ * Konfiguration des HTTP-Clients für den Zugriff auf CouchDB. Alle Zugriffe des
+ * Repositorys und der Services verwenden dasselbe RestTemplate, sodass jeder
+ * Aufruf von den CouchDBMetrics erfasst wird und den Timeouts, der
+ * RequestDeadline sowie der Begrenzung gleichzeitiger Zugriffe unterliegt. Bei
+ * mehreren CouchDB-Knoten werden die Zugriffe auf die Knoten verteilt.
+ * 
+ * Schreibende Zugriffe mit gestreamtem Body laufen nicht über das RestTemplate,
+ * dessen Interceptoren den Body puffern, sondern über die
+ * StreamingRequestFactory, welche dieselben Einschränkungen ohne Pufferung
+ * anwendet.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.metrics.CouchDBMetrics
+ */
+@Configuration
+public class CouchDBClientConfig {
+
+	/**
+	 * Erzeugt die RequestFactory, welche die Zugriffe auf die in 'couchdb.nodes'
+	 * angegebenen Knoten verteilt.
+	 * 
+	 * @return RequestFactory für CouchDB.
+	 */
+	@Bean
+	public NodeRoutingRequestFactory couchDBRequestFactory() {
+		return new NodeRoutingRequestFactory(new DeadlineRequestFactory());
+	}
+
+	/**
+	 * Erzeugt das RestTemplate für die Zugriffe auf CouchDB.
+	 * 
+	 * @param requestFactory
+	 *            RequestFactory für die Verbindungen zu CouchDB.
+	 * 
+	 * @param deadlineInterceptor
+	 *            Interceptor zur Einhaltung der RequestDeadline.
+	 * @param concurrencyLimitInterceptor
+	 *            Interceptor zur Begrenzung gleichzeitiger Zugriffe.
+	 * @param metricsInterceptor
+	 *            Interceptor zur Erfassung der Kennzahlen.
+	 * @return RestTemplate für CouchDB.
+	 */
+	@Bean
+	public RestTemplate couchDBRestTemplate(NodeRoutingRequestFactory requestFactory,
+			DeadlineClientInterceptor deadlineInterceptor, ConcurrencyLimitInterceptor concurrencyLimitInterceptor,
+			CouchDBMetricsInterceptor metricsInterceptor) {
+		RestTemplate restTemplate = new RestTemplate(requestFactory);
+		restTemplate.setInterceptors(Arrays.<ClientHttpRequestInterceptor>asList(deadlineInterceptor,
+				concurrencyLimitInterceptor, metricsInterceptor));
+		return restTemplate;
+	}
+
+	/**
+	 * Erzeugt die RequestFactory für schreibende Zugriffe mit gestreamtem Body.
+	 * Der Body wird ohne Pufferung chunked an den Schreibknoten gesendet.
+	 * 
+	 * @param requestFactory
+	 *            RequestFactory, deren Schreibknoten verwendet wird.
+	 * @param concurrencyLimitInterceptor
+	 *            Interceptor zur Begrenzung gleichzeitiger Zugriffe.
+	 * @param metricsInterceptor
+	 *            Interceptor zur Erfassung der Kennzahlen.
+	 * @return RequestFactory für gestreamte Zugriffe auf CouchDB.
+	 */
+	@Bean
+	public StreamingRequestFactory couchDBStreamingRequestFactory(NodeRoutingRequestFactory requestFactory,
+			ConcurrencyLimitInterceptor concurrencyLimitInterceptor, CouchDBMetricsInterceptor metricsInterceptor) {
+		DeadlineRequestFactory streamingFactory = new DeadlineRequestFactory();
+		streamingFactory.setBufferRequestBody(false);
+		return new StreamingRequestFactory(requestFactory.forWrites(streamingFactory), concurrencyLimitInterceptor,
+				metricsInterceptor);
+	}
+}
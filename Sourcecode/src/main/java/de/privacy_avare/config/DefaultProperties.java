@@ -29,9 +29,80 @@ public class DefaultProperties extends Properties {
 		this.setProperty("couchdb.adress", "http://localhost");
 		this.setProperty("couchdb.port", "5984");
 		this.setProperty("couchdb.databaseName", "profiles");
+		this.setProperty("couchdb.contactsDatabaseName", "contacts");
+		this.setProperty("couchdb.connectTimeout", "2000");
+		this.setProperty("couchdb.readTimeout", "10000");
+		this.setProperty("couchdb.concurrencyLimiting", "true");
+		this.setProperty("couchdb.concurrencyLimit", "20");
+		this.setProperty("couchdb.concurrencyMinLimit", "4");
+		this.setProperty("couchdb.concurrencyMaxLimit", "200");
+		this.setProperty("couchdb.concurrencyLatencyThreshold", "250");
+		this.setProperty("couchdb.concurrencyBackoff", "0.9");
+		this.setProperty("couchdb.concurrencyMaxWait", "30000");
+		this.setProperty("couchdb.nodes", "");
+		this.setProperty("couchdb.hedgedReads", "false");
+		this.setProperty("couchdb.hedgePercentile", "95");
+		this.setProperty("couchdb.hedgeMinDelay", "10");
+		this.setProperty("couchdb.nodeRetryInterval", "5000");
+
+		// Festlegung der Kennung des Knotens für die Erzeugung von ProfileIds
+		this.setProperty("server.nodeId", "");
+		this.setProperty("server.idFormat", "v1");
+
+		// Festlegung der Werte für den Vorrat angelegter Profile
+		this.setProperty("server.profilePoolSize", "0");
+		this.setProperty("server.profilePoolLowWater", "50");
 
 		// Festlegung der Werte für Zeitvergleiche
 		this.setProperty("server.minTimeDifference", "5");
 		this.setProperty("server.monthsBeforeDeletion", "18");
+		this.setProperty("server.clockResolution", "10");
+
+		// Festlegung des Zeitbudgets von Anfragen
+		this.setProperty("server.requestTimeout", "5000");
+
+		// Festlegung der Prioritäten bei Überlast
+		this.setProperty("server.retryAfter", "1");
+		this.setProperty("server.highPriorityEndpoints",
+				"ExistingProfileController.deleteProfile,ExistingProfileController.pushProfilePreferences");
+		this.setProperty("server.lowPriorityEndpoints", "DevController.*");
+
+		// Festlegung der Werte für den Aufräumprozess
+		this.setProperty("server.clearancePageSize", "200");
+		this.setProperty("server.clearanceParallelism", "2");
+		this.setProperty("server.clearanceRateLimit", "20");
+		this.setProperty("server.clearanceMode", "weekly");
+		this.setProperty("server.clearanceSliceSize", "500");
+		this.setProperty("server.clearanceInterval", "600000");
+		this.setProperty("server.compactionThreshold", "0.3");
+		this.setProperty("server.compactionMinFileSize", "1048576");
+		this.setProperty("server.compactionInterval", "900000");
+
+		// Festlegung der Werte für die Kontaktverfolgung
+		this.setProperty("server.contactGranularity", "1440");
+		this.setProperty("server.contactTracking", "document");
+
+		// Festlegung der Werte für den Profil-Cache und den _changes-Feed
+		this.setProperty("server.profileCacheSize", "0");
+		this.setProperty("server.profileCacheTtl", "300");
+		this.setProperty("server.changesFeedTimeout", "30000");
+		this.setProperty("server.changesFeedBatchSize", "500");
+		this.setProperty("server.instanceName", "");
+
+		// Festlegung der Werte für Preferences als Attachment
+		this.setProperty("server.preferencesAttachmentThreshold", "0");
+		this.setProperty("server.preferencesAttachmentCompression", "true");
+
+		// Festlegung der Werte für die Latenzmessung
+		this.setProperty("server.latencyWindow", "300");
+		this.setProperty("server.latencyWindowSlices", "5");
+
+		// Festlegung der Werte für die Fault Injection (Spring-Profil faultInjection)
+		this.setProperty("server.faultInjection.seed", "0");
+		this.setProperty("server.faultInjection.latency", "none");
+		this.setProperty("server.faultInjection.errorRate", "0.0");
+		this.setProperty("server.faultInjection.conflictRate", "0.0");
+		this.setProperty("server.faultInjection.timeoutRate", "0.0");
+		this.setProperty("server.faultInjection.timeoutDuration", "5000");
 	}
 }
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import de.privacy_avare.metrics.LatencyInterceptor;
+
+/**
+ * Konfiguration der Latenzmessung. Registriert den LatencyInterceptor für alle
+ * REST-Schnittstellen des Servers.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.metrics.LatencyEndpoint
+ */
+@Configuration
+public class MetricsConfig extends WebMvcConfigurerAdapter {
+
+	@Autowired
+	private LatencyInterceptor latencyInterceptor;
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(latencyInterceptor).addPathPatterns("/v1/**");
+	}
+}
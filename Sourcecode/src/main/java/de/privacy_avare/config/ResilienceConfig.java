@@ -0,0 +1,51 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter;
+
+import de.privacy_avare.resilience.DeadlineHandlerInterceptor;
+import de.privacy_avare.resilience.LoadSheddingHandlerInterceptor;
+
+/**
+ * Konfiguration der Zeitbudgets und Prioritäten. Registriert den
+ * DeadlineHandlerInterceptor und den LoadSheddingHandlerInterceptor für alle
+ * REST-Schnittstellen des Servers.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.resilience.RequestDeadline
+ */
+@Configuration
+public class ResilienceConfig extends WebMvcConfigurerAdapter {
+
+	@Autowired
+	private DeadlineHandlerInterceptor deadlineHandlerInterceptor;
+
+	@Autowired
+	private LoadSheddingHandlerInterceptor loadSheddingHandlerInterceptor;
+
+	@Override
+	public void addInterceptors(InterceptorRegistry registry) {
+		registry.addInterceptor(deadlineHandlerInterceptor).addPathPatterns("/v1/**");
+		registry.addInterceptor(loadSheddingHandlerInterceptor).addPathPatterns("/v1/**");
+	}
+}
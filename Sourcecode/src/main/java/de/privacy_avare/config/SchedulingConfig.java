@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+/**
+ * Konfiguration der zeitgesteuerten Aufgaben. Ohne eigenen TaskScheduler führt
+ * Spring alle mit @Scheduled annotierten Methoden nacheinander in einem
+ * einzigen Thread aus. Ein gedrosselter Aufräumprozess, welcher Minuten bis
+ * Stunden dauern kann, würde dann das Schreiben der Kontakte, das Auffüllen
+ * des Profilvorrats und die Verlängerung der Knotenkennung blockieren.
+ *
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.scheduler.ScheduledTasks
+ */
+@Configuration
+public class SchedulingConfig {
+
+	/**
+	 * Anzahl der Threads des TaskSchedulers. Entspricht der Anzahl periodischer
+	 * Aufgaben in ScheduledTasks und LatencyRecorder, sodass keine Aufgabe auf
+	 * eine andere warten muss.
+	 */
+	private static final int POOL_SIZE = 7;
+
+	/**
+	 * Erzeugt den TaskScheduler, welcher die zeitgesteuerten Aufgaben
+	 * nebenläufig ausführt.
+	 *
+	 * @return TaskScheduler für @Scheduled.
+	 */
+	@Bean
+	public ThreadPoolTaskScheduler taskScheduler() {
+		ThreadPoolTaskScheduler taskScheduler = new ThreadPoolTaskScheduler();
+		taskScheduler.setPoolSize(POOL_SIZE);
+		taskScheduler.setThreadNamePrefix("scheduler-");
+		return taskScheduler;
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.couchDBDomain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Klasse dient zur Speicherung von Abfragen mehrerer Kontaktdokumente aus der
+ * Kontakt-Datenbank über _all_docs mit keys und include_docs=true.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see ProfileContact
+ */
+public class AllProfileContacts {
+	/**
+	 * Liste der abgefragten Kontaktdokumente.
+	 */
+	private List<ProfileContactRow> rows;
+
+	/**
+	 * default-Konstruktor ohne erweiterte Funktionalität.
+	 */
+	public AllProfileContacts() {
+		this.rows = new ArrayList<ProfileContactRow>();
+	}
+
+	/**
+	 * Ruft die Liste der abgefragten Kontaktdokumente ab.
+	 * 
+	 * @return Liste mit ProfileContactRow-Objekten.
+	 */
+	public List<ProfileContactRow> getRows() {
+		return rows;
+	}
+
+	/**
+	 * Setzt die Liste der abgefragten Kontaktdokumente.
+	 * 
+	 * @param rows
+	 *            Liste mit ProfileContactRow-Objekten.
+	 */
+	public void setRows(List<ProfileContactRow> rows) {
+		this.rows = rows;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.couchDBDomain;
+
+import java.util.Date;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Repräsentiert die zuletzt verarbeitete Sequenznummer des _changes-Feeds einer
+ * Serverinstanz. Der Checkpoint wird als lokales Dokument (_local) in der
+ * Profil-Datenbank gespeichert, sodass er weder repliziert noch bei Abfragen
+ * über _all_docs oder _find berücksichtigt wird.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.service.ChangesFeedService
+ */
+@JsonInclude(Include.NON_NULL)
+public class ChangesFeedCheckpoint {
+	/**
+	 * _id des lokalen Dokuments.
+	 */
+	private String _id;
+
+	/**
+	 * Von CouchDB verwaltete Revision des Dokuments.
+	 */
+	private String _rev;
+
+	/**
+	 * Sequenznummer der zuletzt verarbeiteten Änderung. CouchDB vergibt ab
+	 * Version 2 Sequenznummern als undurchsichtige Zeichenketten, welche
+	 * unverändert als 'since' übergeben werden.
+	 */
+	private String lastSeq;
+
+	/**
+	 * Zeitpunkt der letzten Aktualisierung des Checkpoints.
+	 */
+	private Date lastUpdate;
+
+	/**
+	 * default-Konstruktor ohne erweiterte Funktion.
+	 */
+	public ChangesFeedCheckpoint() {
+
+	}
+
+	/**
+	 * Ruft die _id des lokalen Dokuments ab.
+	 * 
+	 * @return _id des Dokuments.
+	 */
+	public String get_id() {
+		return _id;
+	}
+
+	/**
+	 * Setzt die _id des lokalen Dokuments.
+	 * 
+	 * @param _id
+	 *            _id des Dokuments.
+	 */
+	public void set_id(String _id) {
+		this._id = _id;
+	}
+
+	/**
+	 * Ruft die Revision des Dokuments ab.
+	 * 
+	 * @return Revision des Dokuments.
+	 */
+	public String get_rev() {
+		return _rev;
+	}
+
+	/**
+	 * Setzt die Revision des Dokuments.
+	 * 
+	 * @param _rev
+	 *            Revision des Dokuments.
+	 */
+	public void set_rev(String _rev) {
+		this._rev = _rev;
+	}
+
+	/**
+	 * Ruft die Sequenznummer der zuletzt verarbeiteten Änderung ab.
+	 * 
+	 * @return Sequenznummer.
+	 */
+	public String getLastSeq() {
+		return lastSeq;
+	}
+
+	/**
+	 * Setzt die Sequenznummer der zuletzt verarbeiteten Änderung.
+	 * 
+	 * @param lastSeq
+	 *            Sequenznummer.
+	 */
+	public void setLastSeq(String lastSeq) {
+		this.lastSeq = lastSeq;
+	}
+
+	/**
+	 * Ruft den Zeitpunkt der letzten Aktualisierung ab.
+	 * 
+	 * @return Zeitpunkt der letzten Aktualisierung.
+	 */
+	public Date getLastUpdate() {
+		return lastUpdate;
+	}
+
+	/**
+	 * Setzt den Zeitpunkt der letzten Aktualisierung.
+	 * 
+	 * @param lastUpdate
+	 *            Zeitpunkt der letzten Aktualisierung.
+	 */
+	public void setLastUpdate(Date lastUpdate) {
+		this.lastUpdate = lastUpdate;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.couchDBDomain;
+
+import java.util.Date;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Repräsentiert den Fortschritt des inkrementellen Aufräumprozesses. Der
+ * Checkpoint wird als lokales Dokument (_local) in der Profil-Datenbank
+ * gespeichert, sodass er weder repliziert noch bei Abfragen über _all_docs
+ * oder _find berücksichtigt wird.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.service.ClearanceService
+ */
+@JsonInclude(Include.NON_NULL)
+public class ClearanceCheckpoint {
+	/**
+	 * _id des lokalen Dokuments.
+	 */
+	private String _id;
+
+	/**
+	 * Von CouchDB verwaltete Revision des Dokuments.
+	 */
+	private String _rev;
+
+	/**
+	 * ProfileId des zuletzt verarbeiteten Profils. Ein leerer String entspricht
+	 * dem Beginn eines neuen Durchlaufs.
+	 */
+	private String lastProcessedId;
+
+	/**
+	 * Zeitpunkt der letzten Aktualisierung des Checkpoints.
+	 */
+	private Date lastUpdate;
+
+	/**
+	 * default-Konstruktor, welcher einen Checkpoint am Beginn eines Durchlaufs
+	 * erzeugt.
+	 */
+	public ClearanceCheckpoint() {
+		this.lastProcessedId = "";
+	}
+
+	/**
+	 * Ruft die _id des lokalen Dokuments ab.
+	 * 
+	 * @return _id des Dokuments.
+	 */
+	public String get_id() {
+		return _id;
+	}
+
+	/**
+	 * Setzt die _id des lokalen Dokuments.
+	 * 
+	 * @param _id
+	 *            _id des Dokuments.
+	 */
+	public void set_id(String _id) {
+		this._id = _id;
+	}
+
+	/**
+	 * Ruft die Revision des Dokuments ab.
+	 * 
+	 * @return Revision des Dokuments.
+	 */
+	public String get_rev() {
+		return _rev;
+	}
+
+	/**
+	 * Setzt die Revision des Dokuments.
+	 * 
+	 * @param _rev
+	 *            Revision des Dokuments.
+	 */
+	public void set_rev(String _rev) {
+		this._rev = _rev;
+	}
+
+	/**
+	 * Ruft die ProfileId des zuletzt verarbeiteten Profils ab.
+	 * 
+	 * @return ProfileId oder leerer String.
+	 */
+	public String getLastProcessedId() {
+		return lastProcessedId;
+	}
+
+	/**
+	 * Setzt die ProfileId des zuletzt verarbeiteten Profils.
+	 * 
+	 * @param lastProcessedId
+	 *            ProfileId oder leerer String.
+	 */
+	public void setLastProcessedId(String lastProcessedId) {
+		this.lastProcessedId = lastProcessedId;
+	}
+
+	/**
+	 * Ruft den Zeitpunkt der letzten Aktualisierung ab.
+	 * 
+	 * @return Zeitpunkt der letzten Aktualisierung.
+	 */
+	public Date getLastUpdate() {
+		return lastUpdate;
+	}
+
+	/**
+	 * Setzt den Zeitpunkt der letzten Aktualisierung.
+	 * 
+	 * @param lastUpdate
+	 *            Zeitpunkt der letzten Aktualisierung.
+	 */
+	public void setLastUpdate(Date lastUpdate) {
+		this.lastUpdate = lastUpdate;
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.couchDBDomain;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Klasse dient zur Speicherung von Abfragen über den _find-Endpunkt einer
+ * CouchDB-Datenbank. Die gefundenen Dokumente enthalten dabei lediglich die in
+ * der Abfrage angeforderten Felder.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ */
+public class FoundProfiles {
+	/**
+	 * Liste der gefundenen Dokumente.
+	 */
+	private List<ProfileCouchDB> docs;
+
+	/**
+	 * Von CouchDB gelieferte Marke zur Fortsetzung der Abfrage.
+	 */
+	private String bookmark;
+
+	/**
+	 * default-Konstruktor ohne erweiterte Funktionalität.
+	 */
+	public FoundProfiles() {
+		this.docs = new ArrayList<ProfileCouchDB>();
+	}
+
+	/**
+	 * Ruft die gefundenen Dokumente ab.
+	 * 
+	 * @return Liste der gefundenen Dokumente.
+	 */
+	public List<ProfileCouchDB> getDocs() {
+		return docs;
+	}
+
+	/**
+	 * Setzt die gefundenen Dokumente.
+	 * 
+	 * @param docs
+	 *            Liste der gefundenen Dokumente.
+	 */
+	public void setDocs(List<ProfileCouchDB> docs) {
+		this.docs = docs;
+	}
+
+	/**
+	 * Ruft die Marke zur Fortsetzung der Abfrage ab.
+	 * 
+	 * @return Marke zur Fortsetzung.
+	 */
+	public String getBookmark() {
+		return bookmark;
+	}
+
+	/**
+	 * Setzt die Marke zur Fortsetzung der Abfrage.
+	 * 
+	 * @param bookmark
+	 *            Marke zur Fortsetzung.
+	 */
+	public void setBookmark(String bookmark) {
+		this.bookmark = bookmark;
+	}
+}
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.couchDBDomain;
+
+import java.util.Date;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Repräsentiert die Vergabe einer Kennung des Knotens ('server.nodeId') an eine
+ * Serverinstanz. Je Kennung wird ein lokales Dokument (_local) in der
+ * Profil-Datenbank gespeichert. Eine Serverinstanz darf die Kennung bis zum
+ * Ablauf der Vergabe verwenden und muss die Vergabe vorher verlängern.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.service.NodeIdLeaseService
+ */
+@JsonInclude(Include.NON_NULL)
+public class NodeIdLease {
+	/**
+	 * _id des lokalen Dokuments.
+	 */
+	private String _id;
+
+	/**
+	 * Von CouchDB verwaltete Revision des Dokuments.
+	 */
+	private String _rev;
+
+	/**
+	 * Name der Serverinstanz, welche die Kennung verwendet.
+	 */
+	private String instanceName;
+
+	/**
+	 * Zeitpunkt, ab welchem die Kennung erneut vergeben werden darf.
+	 */
+	private Date expires;
+
+	/**
+	 * default-Konstruktor ohne erweiterte Funktion.
+	 */
+	public NodeIdLease() {
+
+	}
+
+	/**
+	 * Ruft die _id des lokalen Dokuments ab.
+	 * 
+	 * @return _id des Dokuments.
+	 */
+	public String get_id() {
+		return _id;
+	}
+
+	/**
+	 * Setzt die _id des lokalen Dokuments.
+	 * 
+	 * @param _id
+	 *            _id des Dokuments.
+	 */
+	public void set_id(String _id) {
+		this._id = _id;
+	}
+
+	/**
+	 * Ruft die Revision des Dokuments ab.
+	 * 
+	 * @return Revision des Dokuments.
+	 */
+	public String get_rev() {
+		return _rev;
+	}
+
+	/**
+	 * Setzt die Revision des Dokuments.
+	 * 
+	 * @param _rev
+	 *            Revision des Dokuments.
+	 */
+	public void set_rev(String _rev) {
+		this._rev = _rev;
+	}
+
+	/**
+	 * Ruft den Namen der Serverinstanz ab, welche die Kennung verwendet.
+	 * 
+	 * @return Name der Serverinstanz.
+	 */
+	public String getInstanceName() {
+		return instanceName;
+	}
+
+	/**
+	 * Setzt den Namen der Serverinstanz, welche die Kennung verwendet.
+	 * 
+	 * @param instanceName
+	 *            Name der Serverinstanz.
+	 */
+	public void setInstanceName(String instanceName) {
+		this.instanceName = instanceName;
+	}
+
+	/**
+	 * Ruft den Zeitpunkt ab, ab welchem die Kennung erneut vergeben werden darf.
+	 * 
+	 * @return Ablauf der Vergabe.
+	 */
+	public Date getExpires() {
+		return expires;
+	}
+
+	/**
+	 * Setzt den Zeitpunkt, ab welchem die Kennung erneut vergeben werden darf.
+	 * 
+	 * @param expires
+	 *            Ablauf der Vergabe.
+	 */
+	public void setExpires(Date expires) {
+		this.expires = expires;
+	}
+}
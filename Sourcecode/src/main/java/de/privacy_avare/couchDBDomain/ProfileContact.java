@@ -0,0 +1,140 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.couchDBDomain;
+
+import org.springframework.data.couchbase.core.mapping.Document;
+
+import com.couchbase.client.java.repository.annotation.Field;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/**
+ * Repräsentiert den letzten Kontakt eines Profils in der Kontakt-Datenbank. Je
+ * Profil existiert ein eigenes, kleines Dokument, dessen _id der ProfileId
+ * entspricht und welches den Tag des letzten Zugriffs im Format yyyy-MM-dd
+ * (UTC) enthält.
+ * 
+ * Durch die Auslagerung der Kontaktzeitpunkte müssen bei reinen Lesezugriffen
+ * die Profildokumente samt Preferences nicht neu geschrieben werden. Da jedes
+ * Profil ein eigenes Dokument besitzt, behindern sich mehrere Serverinstanzen
+ * beim Schreiben nur, wenn sie dasselbe Profil am selben Tag vermerken.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.service.ContactService
+ */
+@Document
+@JsonInclude(Include.NON_NULL)
+public class ProfileContact {
+	/**
+	 * ProfileId des kontaktierten Profils.
+	 */
+	@Field
+	private String _id;
+
+	/**
+	 * Von CouchDB verwaltete Revision des Dokuments. Ist für neue Dokumente null
+	 * und wird in diesem Fall nicht übertragen.
+	 */
+	@Field
+	private String _rev;
+
+	/**
+	 * Tag des letzten Kontakts im Format yyyy-MM-dd.
+	 */
+	@Field
+	private String day;
+
+	/**
+	 * default-Konstruktor ohne erweiterte Funktionalität. Wird für die
+	 * automatische Konvertierung zwischen JSON und POJOs benötigt.
+	 */
+	public ProfileContact() {
+
+	}
+
+	/**
+	 * Erzeugt ein neues Kontaktdokument.
+	 * 
+	 * @param id
+	 *            ProfileId des kontaktierten Profils.
+	 * @param day
+	 *            Tag des Kontakts im Format yyyy-MM-dd.
+	 */
+	public ProfileContact(String id, String day) {
+		this._id = id;
+		this.day = day;
+	}
+
+	/**
+	 * Ruft die ProfileId ab.
+	 * 
+	 * @return ProfileId des kontaktierten Profils.
+	 */
+	public String get_id() {
+		return _id;
+	}
+
+	/**
+	 * Setzt die ProfileId.
+	 * 
+	 * @param _id
+	 *            ProfileId des kontaktierten Profils.
+	 */
+	public void set_id(String _id) {
+		this._id = _id;
+	}
+
+	/**
+	 * Ruft die aktuelle Revision des Dokuments ab.
+	 * 
+	 * @return Revision des Dokuments.
+	 */
+	public String get_rev() {
+		return _rev;
+	}
+
+	/**
+	 * Setzt die aktuelle Revision des Dokuments.
+	 * 
+	 * @param _rev
+	 *            Zu setzende Revision.
+	 */
+	public void set_rev(String _rev) {
+		this._rev = _rev;
+	}
+
+	/**
+	 * Ruft den Tag des letzten Kontakts ab.
+	 * 
+	 * @return Tag im Format yyyy-MM-dd.
+	 */
+	public String getDay() {
+		return day;
+	}
+
+	/**
+	 * Setzt den Tag des letzten Kontakts.
+	 * 
+	 * @param day
+	 *            Tag im Format yyyy-MM-dd.
+	 */
+	public void setDay(String day) {
+		this.day = day;
+	}
+}
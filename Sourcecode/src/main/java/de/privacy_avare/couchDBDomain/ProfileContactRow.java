@@ -0,0 +1,84 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.couchDBDomain;
+
+/**
+ * Klasse dient als Bestandteil der Domain AllProfileContacts. Sie repräsentiert
+ * bei der Abfrage von _all_docs mit keys und include_docs=true ein einzelnes
+ * angefragtes Profil inklusive des zugehörigen Kontaktdokuments. Für Profile
+ * ohne bzw. mit gelöschtem Kontaktdokument ist doc null.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ */
+public class ProfileContactRow {
+	/**
+	 * Angefragte ProfileId.
+	 */
+	private String key;
+
+	/**
+	 * Das vollständige Kontaktdokument oder null.
+	 */
+	private ProfileContact doc;
+
+	/**
+	 * default-Konstruktor ohne zusätzliche Funktionalität.
+	 */
+	public ProfileContactRow() {
+
+	}
+
+	/**
+	 * Ruft die angefragte ProfileId ab.
+	 * 
+	 * @return ProfileId.
+	 */
+	public String getKey() {
+		return key;
+	}
+
+	/**
+	 * Setzt die angefragte ProfileId.
+	 * 
+	 * @param key
+	 *            ProfileId.
+	 */
+	public void setKey(String key) {
+		this.key = key;
+	}
+
+	/**
+	 * Ruft das Kontaktdokument ab.
+	 * 
+	 * @return Kontaktdokument oder null.
+	 */
+	public ProfileContact getDoc() {
+		return doc;
+	}
+
+	/**
+	 * Setzt das Kontaktdokument.
+	 * 
+	 * @param doc
+	 *            Kontaktdokument oder null.
+	 */
+	public void setDoc(ProfileContact doc) {
+		this.doc = doc;
+	}
+}
@@ -19,6 +19,9 @@ package de.privacy_avare.couchDBDomain;
 import org.springframework.data.couchbase.core.mapping.Document;
 
 import com.couchbase.client.java.repository.annotation.Field;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 import de.privacy_avare.domain.Profile;
 
@@ -37,16 +40,31 @@ public class ProfileCouchDB extends Profile {
 	/**
 	 * Repräsentiert die von CouchDB automatisch verwaltete Revision von Dokumenten.
 	 * Sie wird u.a. dazu verwendet, Update- und Änderungsbefehle an CouchDB zu
-	 * übermitteln.
+	 * übermitteln. Neue Dokumente besitzen keine Revision, der Wert wird dann
+	 * nicht übertragen.
 	 */
 	@Field
+	@JsonInclude(Include.NON_NULL)
 	String _rev;
 
 	/**
-	 * Default-Konstruktor ohne weitere Anpassungen.
+	 * Von CouchDB verwaltete Stubs der Attachments des Dokuments. Sind die
+	 * Preferences als Attachment ausgelagert, so enthält der Stub 'preferences'
+	 * u.a. content_type, length und digest. Ohne Attachments ist der Wert null
+	 * und wird nicht übertragen.
+	 */
+	@Field
+	@JsonInclude(Include.NON_NULL)
+	ObjectNode _attachments;
+
+	/**
+	 * Default-Konstruktor, welcher die Preferences auf null setzt. Fehlen die
+	 * Preferences in einem gelesenen Dokument, etwa weil sie als Attachment
+	 * gespeichert sind, so bleiben sie somit null.
 	 */
 	public ProfileCouchDB() {
 		super();
+		setPreferences(null);
 	}
 
 	/**
@@ -67,6 +85,25 @@ public class ProfileCouchDB extends Profile {
 		this._rev = _rev;
 	}
 
+	/**
+	 * Ruft die Attachment-Stubs des Profils ab.
+	 * 
+	 * @return Attachment-Stubs oder null.
+	 */
+	public ObjectNode get_attachments() {
+		return _attachments;
+	}
+
+	/**
+	 * Setzt die Attachment-Stubs des Profils.
+	 * 
+	 * @param _attachments
+	 *            Zu setzende Attachment-Stubs.
+	 */
+	public void set_attachments(ObjectNode _attachments) {
+		this._attachments = _attachments;
+	}
+
 	/**
 	 * Dient zur Überschreibung der Eigenschaften, welche ein Objekt von der Klasse
 	 * Profile geerbt hat (id, lastProfileChange, lastProfileContact, preferences).
@@ -20,13 +20,14 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
-import java.util.Locale;
 
 import org.springframework.data.couchbase.core.mapping.Document;
 
 import com.couchbase.client.java.repository.annotation.Field;
 import com.couchbase.client.java.repository.annotation.Id;
 
+import de.privacy_avare.util.SyncClock;
+
 /**
  * Die Klasse repräsentiert die Profildaten in der Datenbank. Diese beinhalten
  * die Eigenschaften _id, lastProfileChange, lastProfileContact und preferences.
@@ -90,7 +91,7 @@ public class Profile {
 		// Setze lastProfileChange auf 1. Jan. 1970
 		this.lastProfileChange = new Date(0L);
 		// Setze lastProfileContact auf aktuellen Zeitpunkt
-		this.lastProfileContact = GregorianCalendar.getInstance(Locale.GERMANY).getTime();
+		this.lastProfileContact = SyncClock.now();
 		this.preferences = "";
 	}
 
@@ -109,7 +110,7 @@ public class Profile {
 		// Setze lastProfileChange auf 1. Jan. 1970
 		this.lastProfileChange = new Date(0L);
 		// Setze lastProfileContact auf aktuellen Zeitpunkt
-		this.lastProfileContact = GregorianCalendar.getInstance(Locale.GERMANY).getTime();
+		this.lastProfileContact = SyncClock.now();
 		this.preferences = "";
 	}
 
@@ -16,7 +16,9 @@
 
 package de.privacy_avare.dto;
 
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
 
 import io.swagger.annotations.ApiModel;
@@ -82,9 +84,18 @@ public class ErrorInformation {
 	private String additionalInformation;
 
 	/**
-	 * Dient der Konvertierung von Zeitpunkten in Strings.
+	 * Dient der Konvertierung von Zeitpunkten in Strings. Im Gegensatz zu
+	 * SimpleDateFormat ist der Formatter threadsicher und wird von allen Instanzen
+	 * gemeinsam genutzt.
 	 */
-	private final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH-mm-ss-SSS");
+	public static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter
+			.ofPattern("yyyy-MM-dd'T'HH-mm-ss-SSS").withZone(ZoneId.systemDefault());
+
+	/**
+	 * Zuletzt formatierter Zeitpunkt. Fehler innerhalb derselben Millisekunde
+	 * verwenden den bereits formatierten String.
+	 */
+	private static volatile FormattedTimestamp lastTimestamp = new FormattedTimestamp(Long.MIN_VALUE, "");
 
 	/**
 	 * Default-Konstruktor
@@ -242,7 +253,7 @@ public class ErrorInformation {
 	 *            Zeitpunkt des Fehlers.
 	 */
 	public void setTimestamp(Date d) {
-		this.timestamp = this.format.format(d);
+		this.timestamp = formatTimestamp(d.getTime());
 	}
 
 	/**
@@ -263,4 +274,33 @@ public class ErrorInformation {
 		this.additionalInformation = additionalInformation;
 	}
 
+	/**
+	 * Wandelt einen Zeitpunkt in das Übertragungsformat um.
+	 * 
+	 * @param millis
+	 *            Zeitpunkt in Millisekunden seit 1970.
+	 * @return Zeitpunkt im Format yyyy-MM-dd'T'HH-mm-ss-SSS.
+	 */
+	public static String formatTimestamp(long millis) {
+		FormattedTimestamp last = lastTimestamp;
+		if (last.millis == millis) {
+			return last.text;
+		}
+		String text = TIMESTAMP_FORMAT.format(Instant.ofEpochMilli(millis));
+		lastTimestamp = new FormattedTimestamp(millis, text);
+		return text;
+	}
+
+	/**
+	 * Formatierter Zeitpunkt.
+	 */
+	private static class FormattedTimestamp {
+		private final long millis;
+		private final String text;
+
+		FormattedTimestamp(long millis, String text) {
+			this.millis = millis;
+			this.text = text;
+		}
+	}
 }
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.errorHandler;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+
+import de.privacy_avare.dto.ErrorInformation;
+import de.privacy_avare.util.SyncClock;
+
+/**
+ * Vorkodierte Fehlerantwort für häufig auftretende Fehler mit konstantem
+ * Inhalt. Titel, Exception, Status, Detail und zusätzliche Informationen
+ * werden einmalig als UTF-8 Bytes abgelegt; pro Antwort werden lediglich die
+ * aufgerufene URI und der Zeitpunkt eingefügt. Der erzeugte Body entspricht
+ * byteweise der Jackson-Serialisierung eines ErrorInformation-Objekts.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see ErrorInformation
+ */
+public final class ErrorResponseTemplate {
+
+	private static final byte[] TIMESTAMP_PREFIX = "\",\"timestamp\":\"".getBytes(StandardCharsets.UTF_8);
+
+	private final String detail;
+	private final HttpStatus status;
+	private final HttpHeaders headers;
+
+	/**
+	 * Bytes bis einschließlich des öffnenden Anführungszeichens der URI.
+	 */
+	private final byte[] prefix;
+
+	/**
+	 * Bytes ab dem schließenden Anführungszeichen des Zeitpunkts.
+	 */
+	private final byte[] suffix;
+
+	/**
+	 * Erzeugt eine Vorlage und kodiert alle konstanten Bestandteile vor.
+	 * 
+	 * @param title
+	 *            Titel des Fehlers.
+	 * @param exception
+	 *            Klasse der zugehörigen Exception.
+	 * @param status
+	 *            HTTP-Status der Antwort.
+	 * @param detail
+	 *            Detailnachricht des Fehlers.
+	 * @param additionalInformation
+	 *            Zusätzliche Informationen.
+	 */
+	public ErrorResponseTemplate(String title, Class<? extends Exception> exception, HttpStatus status, String detail,
+			String additionalInformation) {
+		this.detail = detail;
+		this.status = status;
+		this.prefix = ("{\"title\":" + quote(title) + ",\"exception\":" + quote(exception.getName()) + ",\"status\":"
+				+ status.value() + ",\"detail\":" + quote(detail) + ",\"requestedURI\":\"")
+						.getBytes(StandardCharsets.UTF_8);
+		this.suffix = ("\",\"additionalInformation\":" + quote(additionalInformation) + "}")
+				.getBytes(StandardCharsets.UTF_8);
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+		this.headers = HttpHeaders.readOnlyHttpHeaders(headers);
+	}
+
+	/**
+	 * Prüft, ob die Vorlage für eine Exception mit der übergebenen Nachricht
+	 * verwendet werden kann.
+	 * 
+	 * @param message
+	 *            Nachricht der Exception.
+	 * @return true, falls die Nachricht dem vorkodierten Detail entspricht.
+	 */
+	public boolean matches(String message) {
+		return detail.equals(message);
+	}
+
+	/**
+	 * Erzeugt die Fehlerantwort für den aktuellen Aufruf.
+	 * 
+	 * @param request
+	 *            Aufgerufene URI.
+	 * @return Antwort mit JSON-Body im Format von ErrorInformation.
+	 */
+	public ResponseEntity<byte[]> render(HttpServletRequest request) {
+		return new ResponseEntity<byte[]>(encode(request.getRequestURI(), SyncClock.millis()), headers,
+				status);
+	}
+
+	/**
+	 * Setzt den Body aus den vorkodierten Bestandteilen, der URI und dem
+	 * Zeitpunkt zusammen.
+	 * 
+	 * @param uri
+	 *            Aufgerufene URI.
+	 * @param millis
+	 *            Zeitpunkt des Fehlers in Millisekunden seit 1970.
+	 * @return JSON-Body als UTF-8 Bytes.
+	 */
+	byte[] encode(String uri, long millis) {
+		String timestamp = ErrorInformation.formatTimestamp(millis);
+		byte[] encodedUri = isPlainAscii(uri) ? null : JsonStringEncoder.getInstance().quoteAsUTF8(uri);
+		int uriLength = encodedUri == null ? uri.length() : encodedUri.length;
+		byte[] body = new byte[prefix.length + uriLength + TIMESTAMP_PREFIX.length + timestamp.length()
+				+ suffix.length];
+		int pos = copy(prefix, body, 0);
+		if (encodedUri == null) {
+			pos = copyAscii(uri, body, pos);
+		} else {
+			pos = copy(encodedUri, body, pos);
+		}
+		pos = copy(TIMESTAMP_PREFIX, body, pos);
+		pos = copyAscii(timestamp, body, pos);
+		copy(suffix, body, pos);
+		return body;
+	}
+
+	private static String quote(String value) {
+		return "\"" + new String(JsonStringEncoder.getInstance().quoteAsString(value)) + "\"";
+	}
+
+	/**
+	 * Prüft, ob ein String ohne Escaping in JSON übernommen werden kann.
+	 */
+	private static boolean isPlainAscii(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c < 0x20 || c > 0x7e || c == '"' || c == '\\') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static int copy(byte[] source, byte[] target, int pos) {
+		System.arraycopy(source, 0, target, pos, source.length);
+		return pos + source.length;
+	}
+
+	private static int copyAscii(String source, byte[] target, int pos) {
+		for (int i = 0; i < source.length(); i++) {
+			target[pos++] = (byte) source.charAt(i);
+		}
+		return pos;
+	}
+}
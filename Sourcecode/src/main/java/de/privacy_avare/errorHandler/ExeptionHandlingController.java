@@ -21,6 +21,7 @@ import java.util.Date;
 import javax.servlet.http.HttpServletRequest;
 
 import org.springframework.data.mapping.model.MappingException;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -32,12 +33,15 @@ import org.springframework.web.method.annotation.MethodArgumentTypeMismatchExcep
 
 import de.privacy_avare.dto.ErrorInformation;
 import de.privacy_avare.exeption.ClientPreferencesOutdatedException;
+import de.privacy_avare.exeption.DeadlineExceededException;
 import de.privacy_avare.exeption.MalformedProfileIdException;
 import de.privacy_avare.exeption.NoProfilesInDatabaseException;
 import de.privacy_avare.exeption.ProfileAlreadyExistsException;
 import de.privacy_avare.exeption.ProfileNotFoundException;
 import de.privacy_avare.exeption.ProfileSetOnDeletionException;
 import de.privacy_avare.exeption.ServerPreferencesOutdatedException;
+import de.privacy_avare.exeption.ServiceOverloadedException;
+import de.privacy_avare.service.SyncResult;
 
 /**
  * Klasse fängt Programmweit auftretende Exception ab und liefert an den
@@ -53,6 +57,75 @@ import de.privacy_avare.exeption.ServerPreferencesOutdatedException;
 @ControllerAdvice
 public class ExeptionHandlingController {
 
+	private static final String NOT_FOUND_TITLE = "Profil nicht gefunden";
+	private static final String SERVER_OUTDATED_TITLE = "Server Profil veraltet";
+	private static final String CLIENT_OUTDATED_TITLE = "Client Profil veraltet";
+
+	/**
+	 * Vorkodierte Antworten für die bei der Synchronisation regulär auftretenden
+	 * Fehler.
+	 */
+	private static final ErrorResponseTemplate NOT_FOUND = new ErrorResponseTemplate(NOT_FOUND_TITLE,
+			ProfileNotFoundException.class, HttpStatus.NOT_FOUND, "Kein Profil mit entsprechender ID gefunden.", "");
+	private static final ErrorResponseTemplate SERVER_OUTDATED = new ErrorResponseTemplate(SERVER_OUTDATED_TITLE,
+			ServerPreferencesOutdatedException.class, HttpStatus.CONFLICT, "Profil in DB älter als Clientprofil", "");
+	private static final ErrorResponseTemplate CLIENT_OUTDATED = new ErrorResponseTemplate(CLIENT_OUTDATED_TITLE,
+			ClientPreferencesOutdatedException.class, HttpStatus.CONFLICT, "Profil in DB aktueller als Clientprofile.",
+			"");
+
+	/**
+	 * Setzt ein SyncResult ohne Erfolg in dieselbe Antwort um, welche beim Werfen
+	 * der entsprechenden Exception geliefert wird. Die Controller sparen sich
+	 * damit das Werfen und Abfangen einer Exception für reguläre Ausgänge, der
+	 * Body wird aus einer vorkodierten Vorlage erzeugt.
+	 * 
+	 * @param result
+	 *            Ergebnis mit Ausgang NOT_FOUND, SERVER_OUTDATED oder
+	 *            CLIENT_OUTDATED.
+	 * @param request
+	 *            Aufgerufene URI.
+	 * @return Informationen zum Fehler.
+	 * @see SyncResult
+	 */
+	public static ResponseEntity<byte[]> syncResultResponse(SyncResult result, HttpServletRequest request) {
+		switch (result.getOutcome()) {
+		case NOT_FOUND:
+			return NOT_FOUND.render(request);
+		case SERVER_OUTDATED:
+			return SERVER_OUTDATED.render(request);
+		case CLIENT_OUTDATED:
+			return CLIENT_OUTDATED.render(request);
+		default:
+			throw new IllegalArgumentException("Kein Fehler: " + result.getOutcome());
+		}
+	}
+
+	/**
+	 * Erzeugt eine Antwort mit Fehlerinformationen ohne zusätzliche
+	 * Informationen.
+	 */
+	private static ResponseEntity<ErrorInformation> errorResponse(String title, String exception, HttpStatus status,
+			String detail, HttpServletRequest request) {
+		return errorResponse(title, exception, status, detail, "", null, request);
+	}
+
+	/**
+	 * Erzeugt eine Antwort mit Fehlerinformationen, zusätzlichen Informationen
+	 * und den übergebenen Headern.
+	 */
+	private static ResponseEntity<ErrorInformation> errorResponse(String title, String exception, HttpStatus status,
+			String detail, String additionalInformation, HttpHeaders headers, HttpServletRequest request) {
+		ErrorInformation errorInformation = new ErrorInformation();
+		errorInformation.setTitle(title);
+		errorInformation.setException(exception);
+		errorInformation.setStatus(status.value());
+		errorInformation.setDetail(detail);
+		errorInformation.setRequestedURI(request.getRequestURI());
+		errorInformation.setTimestamp(new Date());
+		errorInformation.setAdditionalInformation(additionalInformation);
+		return new ResponseEntity<ErrorInformation>(errorInformation, headers, status);
+	}
+
 	/**
 	 * Kümmert sich um das abfangen von ClientProfileOutdatedException.
 	 * 
@@ -64,19 +137,30 @@ public class ExeptionHandlingController {
 	 * @see ClientPreferencesOutdatedException
 	 */
 	@ExceptionHandler(value = ClientPreferencesOutdatedException.class)
-	public ResponseEntity<ErrorInformation> handleClientPreferencesOutdatedException(
-			ClientPreferencesOutdatedException cpoe, HttpServletRequest request) {
-		ErrorInformation errorInformation = new ErrorInformation();
-		errorInformation.setTitle("Client Profil veraltet");
-		errorInformation.setException(cpoe.getClass().getName());
-		errorInformation.setStatus(HttpStatus.CONFLICT.value());
-		errorInformation.setDetail(cpoe.getMessage());
-		errorInformation.setRequestedURI(request.getRequestURI());
-		errorInformation.setTimestamp(new Date());
-		errorInformation.setAdditionalInformation("");
-		ResponseEntity<ErrorInformation> responseEntity = new ResponseEntity<ErrorInformation>(errorInformation, null,
-				HttpStatus.CONFLICT);
-		return responseEntity;
+	public ResponseEntity<?> handleClientPreferencesOutdatedException(ClientPreferencesOutdatedException cpoe,
+			HttpServletRequest request) {
+		if (CLIENT_OUTDATED.matches(cpoe.getMessage())) {
+			return CLIENT_OUTDATED.render(request);
+		}
+		return errorResponse(CLIENT_OUTDATED_TITLE, cpoe.getClass().getName(), HttpStatus.CONFLICT,
+				cpoe.getMessage(), request);
+	}
+
+	/**
+	 * Kümmert sich um das abfangen von DeadlineExceededException.
+	 * 
+	 * @param dee
+	 *            Aufgetretene Exception.
+	 * @param request
+	 *            Aufgerufene URI.
+	 * @return Informationen zum Fehler.
+	 * @see DeadlineExceededException
+	 */
+	@ExceptionHandler(value = DeadlineExceededException.class)
+	public ResponseEntity<ErrorInformation> handleDeadlineExceededException(DeadlineExceededException dee,
+			HttpServletRequest request) {
+		return errorResponse("Zeitbudget überschritten", dee.getClass().getName(), HttpStatus.SERVICE_UNAVAILABLE,
+				dee.getMessage(), "Die Datenbank hat nicht innerhalb des Zeitbudgets geantwortet.", null, request);
 	}
 
 	/**
@@ -302,19 +386,13 @@ public class ExeptionHandlingController {
 	 * @see ProfileNotFoundException
 	 */
 	@ExceptionHandler(value = ProfileNotFoundException.class)
-	public ResponseEntity<ErrorInformation> handleProfileNotFoundException(ProfileNotFoundException pnfe,
+	public ResponseEntity<?> handleProfileNotFoundException(ProfileNotFoundException pnfe,
 			HttpServletRequest request) {
-		ErrorInformation errorInformation = new ErrorInformation();
-		errorInformation.setTitle("Profil nicht gefunden");
-		errorInformation.setException(pnfe.getClass().getName());
-		errorInformation.setStatus(HttpStatus.NOT_FOUND.value());
-		errorInformation.setDetail(pnfe.getMessage());
-		errorInformation.setRequestedURI(request.getRequestURI());
-		errorInformation.setTimestamp(new Date());
-		errorInformation.setAdditionalInformation("");
-		ResponseEntity<ErrorInformation> responseEntity = new ResponseEntity<ErrorInformation>(errorInformation, null,
-				HttpStatus.NOT_FOUND);
-		return responseEntity;
+		if (NOT_FOUND.matches(pnfe.getMessage())) {
+			return NOT_FOUND.render(request);
+		}
+		return errorResponse(NOT_FOUND_TITLE, pnfe.getClass().getName(), HttpStatus.NOT_FOUND, pnfe.getMessage(),
+				request);
 	}
 
 	/**
@@ -355,21 +433,35 @@ public class ExeptionHandlingController {
 	 * @see ServerPreferencesOutdatedException
 	 */
 	@ExceptionHandler(value = ServerPreferencesOutdatedException.class)
-	public ResponseEntity<ErrorInformation> handleServerPreferencesOutdatedException(
-			ServerPreferencesOutdatedException spoe, HttpServletRequest request) {
-		ErrorInformation errorInformation = new ErrorInformation();
-		errorInformation.setTitle("Server Profil veraltet");
-		errorInformation.setException(spoe.getClass().getName());
-		errorInformation.setStatus(HttpStatus.CONFLICT.value());
-		errorInformation.setDetail(spoe.getMessage());
-		errorInformation.setRequestedURI(request.getRequestURI());
-		errorInformation.setTimestamp(new Date());
-		errorInformation.setAdditionalInformation("");
-		ResponseEntity<ErrorInformation> responseEntity = new ResponseEntity<ErrorInformation>(errorInformation, null,
-				HttpStatus.CONFLICT);
-		return responseEntity;
+	public ResponseEntity<?> handleServerPreferencesOutdatedException(ServerPreferencesOutdatedException spoe,
+			HttpServletRequest request) {
+		if (SERVER_OUTDATED.matches(spoe.getMessage())) {
+			return SERVER_OUTDATED.render(request);
+		}
+		return errorResponse(SERVER_OUTDATED_TITLE, spoe.getClass().getName(), HttpStatus.CONFLICT,
+				spoe.getMessage(), request);
 	}
-	
+
+	/**
+	 * Kümmert sich um das abfangen von ServiceOverloadedException. Die
+	 * empfohlene Wartezeit wird im Header Retry-After übermittelt.
+	 * 
+	 * @param soe
+	 *            Aufgetretene Exception.
+	 * @param request
+	 *            Aufgerufene URI.
+	 * @return Informationen zum Fehler.
+	 * @see ServiceOverloadedException
+	 */
+	@ExceptionHandler(value = ServiceOverloadedException.class)
+	public ResponseEntity<ErrorInformation> handleServiceOverloadedException(ServiceOverloadedException soe,
+			HttpServletRequest request) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.set(HttpHeaders.RETRY_AFTER, String.valueOf(soe.getRetryAfter()));
+		return errorResponse("Server ausgelastet", soe.getClass().getName(), HttpStatus.SERVICE_UNAVAILABLE,
+				soe.getMessage(), "Anfrage nach " + soe.getRetryAfter() + " Sekunden wiederholen.", headers, request);
+	}
+
 	/**
 	 * Kümmert sich um das abfangen von allen restlichen Fehlern, die nicht explizit von anderen Exception Handlers abgefangen werden.
 	 * 
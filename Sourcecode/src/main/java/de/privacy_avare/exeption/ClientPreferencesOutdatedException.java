@@ -60,4 +60,15 @@ public class ClientPreferencesOutdatedException extends RuntimeException {
 	public ClientPreferencesOutdatedException(String message, Throwable cause) {
 		super(message, cause);
 	}
+
+	/**
+	 * Verzichtet auf den Stacktrace, da ein veraltetes Clientprofil ein regulärer
+	 * Ausgang beim Speichern von Preferences ist.
+	 * 
+	 * @return Diese Exception.
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
 }
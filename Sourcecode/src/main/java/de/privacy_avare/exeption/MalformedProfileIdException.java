@@ -64,4 +64,15 @@ public class MalformedProfileIdException extends RuntimeException {
 	public MalformedProfileIdException(String message, Throwable cause) {
 		super(message, cause);
 	}
+
+	/**
+	 * Verzichtet auf den Stacktrace, da die Exception lediglich eine ungültige
+	 * Eingabe des Clients meldet.
+	 * 
+	 * @return Diese Exception.
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
 }
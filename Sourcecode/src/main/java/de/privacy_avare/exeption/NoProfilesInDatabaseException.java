@@ -63,4 +63,15 @@ public class NoProfilesInDatabaseException extends RuntimeException {
 	public NoProfilesInDatabaseException(String message, Throwable cause) {
 		super(message, cause);
 	}
+
+	/**
+	 * Verzichtet auf den Stacktrace, da eine leere Datenbank kein Programmfehler
+	 * ist.
+	 * 
+	 * @return Diese Exception.
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
 }
@@ -64,4 +64,15 @@ public class ProfileAlreadyExistsException extends RuntimeException {
 	public ProfileAlreadyExistsException(String message, Throwable cause) {
 		super(message, cause);
 	}
+
+	/**
+	 * Verzichtet auf den Stacktrace, da eine bereits vergebene ProfileId lediglich
+	 * an den Client gemeldet bzw. mit einer neuen ProfileId wiederholt wird.
+	 * 
+	 * @return Diese Exception.
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
 }
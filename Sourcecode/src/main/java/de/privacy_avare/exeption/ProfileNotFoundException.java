@@ -65,4 +65,14 @@ public class ProfileNotFoundException extends RuntimeException {
 		super(message, cause);
 	}
 
+	/**
+	 * Verzichtet auf den Stacktrace. Unbekannte ProfileIds sind ein regulärer
+	 * Ausgang einer Anfrage, der Stack muss dafür nicht durchlaufen werden.
+	 * 
+	 * @return Diese Exception.
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
 }
@@ -65,4 +65,15 @@ public class ProfileSetOnDeletionException extends RuntimeException {
 	public ProfileSetOnDeletionException(String message, Throwable cause) {
 		super(message, cause);
 	}
+
+	/**
+	 * Verzichtet auf den Stacktrace, da die Exception lediglich den Zustand des
+	 * Profils an den Client meldet.
+	 * 
+	 * @return Diese Exception.
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
 }
@@ -63,4 +63,15 @@ public class ServerPreferencesOutdatedException extends RuntimeException {
 	public ServerPreferencesOutdatedException(String message, Throwable cause) {
 		super(message, cause);
 	}
+
+	/**
+	 * Verzichtet auf den Stacktrace. Ein veraltetes Serverprofil ist die häufigste
+	 * Antwort beim Abruf von Preferences und kein Programmfehler.
+	 * 
+	 * @return Diese Exception.
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
 }
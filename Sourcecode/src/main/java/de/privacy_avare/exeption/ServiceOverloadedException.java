@@ -0,0 +1,78 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.exeption;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * Tritt auf, wenn eine Anfrage wegen Überlast der Datenbank abgewiesen wird,
+ * bevor sie weitere Zugriffe auf CouchDB ausführt. Der Client soll die Anfrage
+ * frühestens nach retryAfter Sekunden wiederholen.
+ * 
+ * Der HTTP-Statuscode entspricht 503 Service Unavailable.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see RuntimeException
+ * @see de.privacy_avare.resilience.AdaptiveConcurrencyLimiter
+ */
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class ServiceOverloadedException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Empfohlene Wartezeit bis zur Wiederholung in Sekunden.
+	 */
+	private final long retryAfter;
+
+	/**
+	 * Ruft den entsprechenden Superkonstruktor von RutimeException auf.
+	 * 
+	 * @param message
+	 *            Beschreibung des Fehlers.
+	 * @param retryAfter
+	 *            Empfohlene Wartezeit bis zur Wiederholung in Sekunden.
+	 */
+	public ServiceOverloadedException(String message, long retryAfter) {
+		super(message);
+		this.retryAfter = retryAfter;
+	}
+
+	/**
+	 * Liefert die empfohlene Wartezeit bis zur Wiederholung.
+	 * 
+	 * @return Wartezeit in Sekunden.
+	 */
+	public long getRetryAfter() {
+		return retryAfter;
+	}
+
+	/**
+	 * Verzichtet auf den Stacktrace, damit das Abweisen von Anfragen bei Überlast
+	 * möglichst wenig Rechenzeit kostet.
+	 * 
+	 * @return Diese Exception.
+	 */
+	@Override
+	public synchronized Throwable fillInStackTrace() {
+		return this;
+	}
+}
@@ -16,26 +16,44 @@
 
 package de.privacy_avare.frontController;
 
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
+import java.util.List;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.HttpMessageNotReadableException;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
-import de.privacy_avare.domain.Profile;
 import de.privacy_avare.dto.ErrorInformation;
+import de.privacy_avare.errorHandler.ExeptionHandlingController;
 import de.privacy_avare.exeption.ClientPreferencesOutdatedException;
 import de.privacy_avare.exeption.ProfileNotFoundException;
 import de.privacy_avare.exeption.ServerPreferencesOutdatedException;
 import de.privacy_avare.service.ProfileService;
+import de.privacy_avare.service.SyncResult;
 
 import io.swagger.annotations.Api;
+import io.swagger.annotations.ApiImplicitParam;
+import io.swagger.annotations.ApiImplicitParams;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiParam;
 import io.swagger.annotations.ApiResponses;
@@ -151,8 +169,9 @@ public class ExistingProfileController {
 	 *            ProfileId des zu pushenden Profils.
 	 * @param clientLastProfileChange
 	 *            Letzter Änderungszeitpunkt der Client-Preferences.
-	 * @param preferences
-	 *            Zu pushende Preferences.
+	 * @param request
+	 *            Aufgerufene URI, der Body enthält die zu pushenden
+	 *            Preferences.
 	 * @return Leere ResponseEntity mit Statuscode 200 OK oder Fehlermeldung.
 	 * @see java.text.SimpleDateFormat
 	 * @throws ProfileNotFoundException
@@ -172,12 +191,17 @@ public class ExistingProfileController {
 			@ApiResponse(code = 400, message = "Ungültiger Parameter/ Falscher Datentyp \n \n Geworfene Exception: \n org.springframework.web.method.annotation. \n MethodArgumentTypeMismatchException", response = ErrorInformation.class),
 			@ApiResponse(code = 404, message = "Kein Profil mit entsprechender Id gefunden  \n \n Geworfene Exception: \n de.privacy_avare.exeption.ProfileNotFoundException", response = ErrorInformation.class),
 			@ApiResponse(code = 409, message = "ClientProfile veraltet \n \n Geworfene Exception: \n de.privacy_avare.exeption.ClientPreferencesOutdatedException und \n HttpMessageNotReadableException", response = ErrorInformation.class) })
-	public ResponseEntity<Void> pushProfilePreferences(
+	@ApiImplicitParams(@ApiImplicitParam(name = "preferences", value = "Client Preferences", required = true, paramType = "body", dataType = "string"))
+	public ResponseEntity<?> pushProfilePreferences(
 			@ApiParam(value = "ProfileId des zu pushenden Profils", required = true) @PathVariable("id") String id,
 			@ApiParam(value = "lastProfileChange der Clientseite", required = true) @PathVariable("clientProfileChange") @DateTimeFormat(pattern = "yyyy-MM-dd'T'HH-mm-ss-SSS") Date clientLastProfileChange,
-			@ApiParam(value = "Client Preferences", required = true) @RequestBody String preferences)
-			throws ProfileNotFoundException, ClientPreferencesOutdatedException {
-		profileService.pushProfile(id, clientLastProfileChange, preferences, false);
+			HttpServletRequest request)
+			throws ProfileNotFoundException, ClientPreferencesOutdatedException, IOException {
+		SyncResult result = profileService.tryPushProfile(id, clientLastProfileChange.getTime(), preferences(request),
+				false);
+		if (result.isOk() == false) {
+			return ExeptionHandlingController.syncResultResponse(result, request);
+		}
 		ResponseEntity<Void> response = new ResponseEntity<Void>(HttpStatus.OK);
 		return response;
 	}
@@ -210,10 +234,11 @@ public class ExistingProfileController {
 	 *            ProfileId des zu pushenden Profils.
 	 * @param clientLastProfileChange
 	 *            Letzter Änderungszeitpunkt der Nutzerpräferenzen.
-	 * @param preferences
-	 *            Zu pushende Nutzerpräferenzen.
 	 * @param overwrite
 	 *            Legt fest, ob ein neueres Profil in DB überschrieben werden soll.
+	 * @param request
+	 *            Aufgerufene URI, der Body enthält die zu pushenden
+	 *            Nutzerpräferenzen.
 	 * @return Leere ResponseEntity mit Statuscode 204 No Content.
 	 * @see java.text.SimpleDateFormat
 	 * @throws ProfileNotFoundException
@@ -234,13 +259,18 @@ public class ExistingProfileController {
 			@ApiResponse(code = 400, message = "Ungültiger Parameter/ Falscher Datentyp \n \n Geworfene Exception: \n org.springframework.web.method.annotation. \n MethodArgumentTypeMismatchException", response = ErrorInformation.class),
 			@ApiResponse(code = 404, message = "Kein Profil mit entsprechender Id gefunden  \n \n Geworfene Exception: \n de.privacy_avare.exeption.ProfileNotFoundException", response = ErrorInformation.class),
 			@ApiResponse(code = 409, message = "ClientProfile veraltet \n \n Geworfene Exception: \n de.privacy_avare.exeption.ClientPreferencesOutdatedException", response = ErrorInformation.class) })
-	public ResponseEntity<Void> pushProfilePreferences(
+	@ApiImplicitParams(@ApiImplicitParam(name = "preferences", value = "Client Preferences", required = true, paramType = "body", dataType = "string"))
+	public ResponseEntity<?> pushProfilePreferences(
 			@ApiParam(value = "ProfileId des zu pushenden Profils", required = true) @PathVariable("id") String id,
 			@ApiParam(value = "lastProfileChange der Clientseite", required = true) @PathVariable("clientProfileChange") @DateTimeFormat(pattern = "yyyy-MM-dd'T'HH-mm-ss-SSS") Date clientLastProfileChange,
-			@ApiParam(value = "Client Preferences", required = true) @RequestBody String preferences,
-			@ApiParam(value = "Bestehende, aktuellere Preferences überschreiben?", required = true) @PathVariable("overwrite") boolean overwrite)
-			throws ProfileNotFoundException, ClientPreferencesOutdatedException {
-		profileService.pushProfile(id, clientLastProfileChange, preferences, overwrite);
+			@ApiParam(value = "Bestehende, aktuellere Preferences überschreiben?", required = true) @PathVariable("overwrite") boolean overwrite,
+			HttpServletRequest request)
+			throws ProfileNotFoundException, ClientPreferencesOutdatedException, IOException {
+		SyncResult result = profileService.tryPushProfile(id, clientLastProfileChange.getTime(), preferences(request),
+				overwrite);
+		if (result.isOk() == false) {
+			return ExeptionHandlingController.syncResultResponse(result, request);
+		}
 		ResponseEntity<Void> response = new ResponseEntity<Void>(HttpStatus.OK);
 		return response;
 	}
@@ -271,7 +301,12 @@ public class ExistingProfileController {
 	 *            ProfileId des gesuchten Profils.
 	 * @param clientLastProfileChange
 	 *            Zeitpunkt der letzten Profilaktualisierung auf Clientseite.
-	 * @return Preferences des Profils in der Datenbank.
+	 * @param request
+	 *            Aufgerufene URI.
+	 * @param response
+	 *            Antwort, in welche die Preferences geschrieben werden.
+	 * @return Fehlermeldung oder null, falls die Preferences bereits in die
+	 *         Antwort geschrieben wurden.
 	 * @see java.text.SimpleDateFormat
 	 * @throws ProfileNotFoundException
 	 *             Kein Profil mit entsprechender ID gefunden.
@@ -290,13 +325,220 @@ public class ExistingProfileController {
 			@ApiResponse(code = 400, message = "Ungültiger Parameter/ Falscher Datentyp \n \n Geworfene Exception: \n org.springframework.web.method.annotation. \n MethodArgumentTypeMismatchException", response = ErrorInformation.class),
 			@ApiResponse(code = 404, message = "Kein Profil mit entsprechender Id gefunden  \n \n Geworfene Exception: \n de.privacy_avare.exeption.ProfileNotFoundException", response = ErrorInformation.class),
 			@ApiResponse(code = 409, message = "ServerProfile veraltet \n \n Geworfene Exception: \n de.privacy_avare.exeption.ServerPreferencesOutdatedException", response = ErrorInformation.class) })
-	public ResponseEntity<String> pullProfilePreferences(
+	public ResponseEntity<?> pullProfilePreferences(
 			@ApiParam(value = "ProfileId des zu pullenden Profils", required = true) @PathVariable("id") String id,
-			@ApiParam(value = "lastProfileChange der Clientseite", required = true) @PathVariable("clientProfileChange") @DateTimeFormat(pattern = "yyyy-MM-dd'T'HH-mm-ss-SSS") Date clientLastProfileChange)
-			throws ProfileNotFoundException, ServerPreferencesOutdatedException {
-		Profile serverProfile = profileService.getProfileByIdComparingLastChange(id, clientLastProfileChange);
-		ResponseEntity<String> response = new ResponseEntity<String>(serverProfile.getPreferences(), HttpStatus.OK);
+			@ApiParam(value = "lastProfileChange der Clientseite", required = true) @PathVariable("clientProfileChange") @DateTimeFormat(pattern = "yyyy-MM-dd'T'HH-mm-ss-SSS") Date clientLastProfileChange,
+			HttpServletRequest request, HttpServletResponse response)
+			throws ProfileNotFoundException, ServerPreferencesOutdatedException, IOException {
+		return pullProfilePreferences(id, clientLastProfileChange.getTime(), request, response);
+	}
+
+	/**
+	 * Entspricht pushProfilePreferences(String, Date, String, boolean), der
+	 * Zeitpunkt clientLastProfileChange wird jedoch in Millisekunden seit 1970
+	 * übergeben. Das Parsen eines formatierten Zeitstempels entfällt.
+	 * 
+	 * @param id
+	 *            ProfileId des zu pushenden Profils.
+	 * @param clientLastProfileChange
+	 *            Letzter Änderungszeitpunkt der Nutzerpräferenzen in Millisekunden
+	 *            seit 1970.
+	 * @param overwrite
+	 *            Legt fest, ob ein neueres Profil in DB überschrieben werden soll.
+	 * @param request
+	 *            Aufgerufene URI, der Body enthält die zu pushenden
+	 *            Nutzerpräferenzen.
+	 * @return Leere ResponseEntity mit Statuscode 200 OK oder Fehlermeldung.
+	 */
+	@RequestMapping(value = "/{id}/millis/{clientProfileChange}/{overwrite}", method = RequestMethod.PUT)
+	@ApiOperation(value = "Speichert Preferences in DB", notes = "Entspricht <b>PUT /v1/profiles/{id}/{clientProfileChange}/{overwrite}</b>, "
+			+ "Parameter clientProfileChange wird jedoch in <b>Millisekunden seit dem 1. Jan. 1970 (UTC)</b> übergeben. "
+			+ "\n \n Zeitstempel lastProfileContact wird aktualisiert.", response = Void.class)
+	@ApiResponses(value = {
+			@ApiResponse(code = 200, message = "Preferences erfolgreich ersetzt", response = Void.class),
+			@ApiResponse(code = 400, message = "Ungültiger Parameter/ Falscher Datentyp \n \n Geworfene Exception: \n org.springframework.web.method.annotation. \n MethodArgumentTypeMismatchException", response = ErrorInformation.class),
+			@ApiResponse(code = 404, message = "Kein Profil mit entsprechender Id gefunden  \n \n Geworfene Exception: \n de.privacy_avare.exeption.ProfileNotFoundException", response = ErrorInformation.class),
+			@ApiResponse(code = 409, message = "ClientProfile veraltet \n \n Geworfene Exception: \n de.privacy_avare.exeption.ClientPreferencesOutdatedException", response = ErrorInformation.class) })
+	@ApiImplicitParams(@ApiImplicitParam(name = "preferences", value = "Client Preferences", required = true, paramType = "body", dataType = "string"))
+	public ResponseEntity<?> pushProfilePreferences(
+			@ApiParam(value = "ProfileId des zu pushenden Profils", required = true) @PathVariable("id") String id,
+			@ApiParam(value = "lastProfileChange der Clientseite in Millisekunden", required = true) @PathVariable("clientProfileChange") long clientLastProfileChange,
+			@ApiParam(value = "Bestehende, aktuellere Preferences überschreiben?", required = true) @PathVariable("overwrite") boolean overwrite,
+			HttpServletRequest request) throws IOException {
+		SyncResult result = profileService.tryPushProfile(id, clientLastProfileChange, preferences(request),
+				overwrite);
+		if (result.isOk() == false) {
+			return ExeptionHandlingController.syncResultResponse(result, request);
+		}
+		ResponseEntity<Void> response = new ResponseEntity<Void>(HttpStatus.OK);
 		return response;
 	}
 
+	/**
+	 * Entspricht pushProfilePreferences(String, long, String, boolean) mit
+	 * overwrite = false.
+	 * 
+	 * @param id
+	 *            ProfileId des zu pushenden Profils.
+	 * @param clientLastProfileChange
+	 *            Letzter Änderungszeitpunkt der Client-Preferences in
+	 *            Millisekunden seit 1970.
+	 * @param request
+	 *            Aufgerufene URI, der Body enthält die zu pushenden
+	 *            Preferences.
+	 * @return Leere ResponseEntity mit Statuscode 200 OK oder Fehlermeldung.
+	 */
+	@RequestMapping(value = "/{id}/millis/{clientProfileChange}", method = RequestMethod.PUT)
+	@ApiOperation(value = "Speichert Preferences in DB", notes = "Entspricht <b>PUT /v1/profiles/{id}/{clientProfileChange}</b>, "
+			+ "Parameter clientProfileChange wird jedoch in <b>Millisekunden seit dem 1. Jan. 1970 (UTC)</b> übergeben. "
+			+ "\n \n Zeitstempel lastProfileContact wird aktualisiert.", response = Void.class)
+	@ApiResponses(value = { @ApiResponse(code = 200, message = "Preferences erfolgreich ersetzt"),
+			@ApiResponse(code = 400, message = "Ungültiger Parameter/ Falscher Datentyp \n \n Geworfene Exception: \n org.springframework.web.method.annotation. \n MethodArgumentTypeMismatchException", response = ErrorInformation.class),
+			@ApiResponse(code = 404, message = "Kein Profil mit entsprechender Id gefunden  \n \n Geworfene Exception: \n de.privacy_avare.exeption.ProfileNotFoundException", response = ErrorInformation.class),
+			@ApiResponse(code = 409, message = "ClientProfile veraltet \n \n Geworfene Exception: \n de.privacy_avare.exeption.ClientPreferencesOutdatedException", response = ErrorInformation.class) })
+	@ApiImplicitParams(@ApiImplicitParam(name = "preferences", value = "Client Preferences", required = true, paramType = "body", dataType = "string"))
+	public ResponseEntity<?> pushProfilePreferences(
+			@ApiParam(value = "ProfileId des zu pushenden Profils", required = true) @PathVariable("id") String id,
+			@ApiParam(value = "lastProfileChange der Clientseite in Millisekunden", required = true) @PathVariable("clientProfileChange") long clientLastProfileChange,
+			HttpServletRequest request) throws IOException {
+		return pushProfilePreferences(id, clientLastProfileChange, false, request);
+	}
+
+	/**
+	 * Entspricht pullProfilePreferences(String, Date), der Zeitpunkt
+	 * clientLastProfileChange wird jedoch in Millisekunden seit 1970 übergeben.
+	 * 
+	 * @param id
+	 *            ProfileId des gesuchten Profils.
+	 * @param clientLastProfileChange
+	 *            Zeitpunkt der letzten Profilaktualisierung auf Clientseite in
+	 *            Millisekunden seit 1970.
+	 * @param request
+	 *            Aufgerufene URI.
+	 * @param response
+	 *            Antwort, in welche die Preferences ohne Zwischenspeicherung als
+	 *            String geschrieben werden.
+	 * @return Fehlermeldung oder null, falls die Preferences bereits in die
+	 *         Antwort geschrieben wurden.
+	 */
+	@RequestMapping(value = "/{id}/millis/{clientProfileChange}", method = RequestMethod.GET)
+	@ApiOperation(value = "Liest Preferences aus DB mit Vergleich der Zeitstempel", notes = "Entspricht <b>GET /v1/profiles/{id}/{clientProfileChange}</b>, "
+			+ "Parameter clientProfileChange wird jedoch in <b>Millisekunden seit dem 1. Jan. 1970 (UTC)</b> übergeben. "
+			+ "\n \n Zeitstempel lastProfileContact wird aktualisiert.", response = String.class)
+	@ApiResponses(value = {
+			@ApiResponse(code = 200, message = "Preferences erfolgreich geladen", response = String.class),
+			@ApiResponse(code = 400, message = "Ungültiger Parameter/ Falscher Datentyp \n \n Geworfene Exception: \n org.springframework.web.method.annotation. \n MethodArgumentTypeMismatchException", response = ErrorInformation.class),
+			@ApiResponse(code = 404, message = "Kein Profil mit entsprechender Id gefunden  \n \n Geworfene Exception: \n de.privacy_avare.exeption.ProfileNotFoundException", response = ErrorInformation.class),
+			@ApiResponse(code = 409, message = "ServerProfile veraltet \n \n Geworfene Exception: \n de.privacy_avare.exeption.ServerPreferencesOutdatedException", response = ErrorInformation.class) })
+	public ResponseEntity<?> pullProfilePreferences(
+			@ApiParam(value = "ProfileId des zu pullenden Profils", required = true) @PathVariable("id") String id,
+			@ApiParam(value = "lastProfileChange der Clientseite in Millisekunden", required = true) @PathVariable("clientProfileChange") long clientLastProfileChange,
+			HttpServletRequest request, HttpServletResponse response) throws IOException {
+		PreferencesOutputStream preferences = new PreferencesOutputStream(request, response);
+		SyncResult result = profileService.tryPullProfile(id, clientLastProfileChange, preferences);
+		if (result.isOk() == false) {
+			return ExeptionHandlingController.syncResultResponse(result, request);
+		}
+		preferences.open();
+		// Antwort wurde bereits vollständig geschrieben
+		return null;
+	}
+
+	/**
+	 * Liefert die im Body der Anfrage übermittelten Preferences als Reader,
+	 * ohne sie vorab vollständig einzulesen. Die Zeichen werden wie bei
+	 * {@code @RequestBody String} gemäß dem Charset des Content-Type dekodiert,
+	 * standardmäßig als UTF-8.
+	 * 
+	 * @param request
+	 *            Anfrage mit den Preferences im Body.
+	 * @return Reader über die Preferences.
+	 * @throws IOException
+	 *             Fehler beim Lesen des Bodys.
+	 * @throws HttpMessageNotReadableException
+	 *             Body der Anfrage ist leer.
+	 */
+	private static Reader preferences(HttpServletRequest request) throws IOException {
+		Charset charset = StandardCharsets.UTF_8;
+		if (request.getContentType() != null) {
+			try {
+				Charset requested = MediaType.parseMediaType(request.getContentType()).getCharset();
+				if (requested != null) {
+					charset = requested;
+				}
+			} catch (InvalidMediaTypeException e) {
+				// Ungültiger Content-Type, Dekodierung als UTF-8
+			}
+		}
+		PushbackReader reader = new PushbackReader(new InputStreamReader(request.getInputStream(), charset));
+		int first = reader.read();
+		if (first == -1) {
+			throw new HttpMessageNotReadableException("Required request body is missing: Client Preferences");
+		}
+		reader.unread(first);
+		return reader;
+	}
+
+	/**
+	 * Stream auf den Body der Antwort eines Pulls. Status und Content-Type werden
+	 * erst beim ersten Schreiben gesetzt, sodass bis dahin weiterhin eine
+	 * Fehlermeldung geliefert werden kann. Der Content-Type richtet sich wie bei
+	 * einer Antwort vom Typ String nach dem Accept-Header.
+	 */
+	private static class PreferencesOutputStream extends OutputStream {
+		private final HttpServletRequest request;
+		private final HttpServletResponse response;
+		private OutputStream out;
+
+		PreferencesOutputStream(HttpServletRequest request, HttpServletResponse response) {
+			this.request = request;
+			this.response = response;
+		}
+
+		/**
+		 * Setzt Status und Content-Type der Antwort, falls noch nicht geschehen.
+		 */
+		void open() throws IOException {
+			if (out == null) {
+				response.setStatus(HttpStatus.OK.value());
+				response.setContentType(contentType());
+				out = response.getOutputStream();
+			}
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			open();
+			out.write(b);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (len > 0) {
+				open();
+				out.write(b, off, len);
+			}
+		}
+
+		private String contentType() {
+			String accept = request.getHeader(HttpHeaders.ACCEPT);
+			if (accept != null) {
+				try {
+					List<MediaType> types = MediaType.parseMediaTypes(accept);
+					MediaType.sortBySpecificityAndQuality(types);
+					for (MediaType type : types) {
+						if (type.includes(MediaType.TEXT_PLAIN)) {
+							break;
+						}
+						if (type.includes(MediaType.APPLICATION_JSON)) {
+							return MediaType.APPLICATION_JSON_UTF8_VALUE;
+						}
+					}
+				} catch (InvalidMediaTypeException e) {
+					// Ungültiger Accept-Header, Antwort als text/plain
+				}
+			}
+			return "text/plain;charset=UTF-8";
+		}
+	}
 }
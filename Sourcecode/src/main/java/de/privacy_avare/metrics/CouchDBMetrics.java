@@ -0,0 +1,160 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.metrics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+/**
+ * Sammelt Kennzahlen über die HTTP-Aufrufe an CouchDB je Operation (get, put,
+ * head, delete, bulk, purge, compact, find, ...): Anzahl der Aufrufe,
+ * übertragene Bytes in beide Richtungen, Statuscodes, Timeouts und
+ * Verbindungsfehler. Die Zähler werden über den Actuator-Endpunkt '/metrics'
+ * unter dem Präfix 'couchdb.' veröffentlicht. Die Latenzen werden im
+ * LatencyRecorder unter 'CouchDB.operation' erfasst und erscheinen damit im
+ * Endpunkt '/latency' neben den Latenzen der REST-Schnittstellen.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see CouchDBMetricsInterceptor
+ */
+@Component
+public class CouchDBMetrics implements PublicMetrics {
+
+	/**
+	 * Präfix der Operationen im LatencyRecorder.
+	 */
+	private static final String LATENCY_PREFIX = "CouchDB.";
+
+	@Autowired
+	private LatencyRecorder latencyRecorder;
+
+	/**
+	 * Zähler je Metrikname, z.B. 'couchdb.get.status.200'.
+	 */
+	private final ConcurrentMap<String, AtomicLong> counters;
+
+	/**
+	 * default-Konstruktor.
+	 */
+	public CouchDBMetrics() {
+		this.counters = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Erfasst einen abgeschlossenen Aufruf, für welchen CouchDB eine Antwort
+	 * geliefert hat.
+	 * 
+	 * @param operation
+	 *            Name der Operation.
+	 * @param status
+	 *            HTTP-Statuscode der Antwort.
+	 * @param bytesOut
+	 *            Anzahl gesendeter Bytes.
+	 * @param nanos
+	 *            Latenz bis zum Eintreffen der Antwort in Nanosekunden.
+	 */
+	public void recordResponse(String operation, int status, long bytesOut, long nanos) {
+		increment("couchdb." + operation + ".requests", 1);
+		increment("couchdb." + operation + ".status." + status, 1);
+		increment("couchdb." + operation + ".bytesOut", bytesOut);
+		latencyRecorder.record(LATENCY_PREFIX + operation, String.valueOf(status), nanos);
+	}
+
+	/**
+	 * Erfasst einen Aufruf, welcher ohne Antwort von CouchDB abgebrochen wurde.
+	 * 
+	 * @param operation
+	 *            Name der Operation.
+	 * @param timeout
+	 *            true bei Zeitüberschreitung, false bei sonstigen
+	 *            Verbindungsfehlern.
+	 * @param bytesOut
+	 *            Anzahl gesendeter Bytes.
+	 * @param nanos
+	 *            Dauer bis zum Abbruch in Nanosekunden.
+	 */
+	public void recordFailure(String operation, boolean timeout, long bytesOut, long nanos) {
+		String outcome = timeout ? "timeout" : "ioError";
+		increment("couchdb." + operation + ".requests", 1);
+		increment("couchdb." + operation + "." + outcome + "s", 1);
+		increment("couchdb." + operation + ".bytesOut", bytesOut);
+		latencyRecorder.record(LATENCY_PREFIX + operation, outcome, nanos);
+	}
+
+	/**
+	 * Erfasst die aus einer Antwort gelesenen Bytes.
+	 * 
+	 * @param operation
+	 *            Name der Operation.
+	 * @param bytesIn
+	 *            Anzahl empfangener Bytes.
+	 */
+	public void recordBytesIn(String operation, long bytesIn) {
+		increment("couchdb." + operation + ".bytesIn", bytesIn);
+	}
+
+	/**
+	 * Erhöht einen Zähler.
+	 * 
+	 * @param name
+	 *            Name der Metrik.
+	 * @param delta
+	 *            Betrag der Erhöhung.
+	 */
+	private void increment(String name, long delta) {
+		AtomicLong counter = counters.get(name);
+		if (counter == null) {
+			counters.putIfAbsent(name, new AtomicLong());
+			counter = counters.get(name);
+		}
+		counter.addAndGet(delta);
+	}
+
+	/**
+	 * Liefert alle Zähler als Momentaufnahme.
+	 * 
+	 * @return Sortierte Map Metrikname -> Wert.
+	 */
+	public Map<String, Long> getCounters() {
+		Map<String, Long> result = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> counter : counters.entrySet()) {
+			result.put(counter.getKey(), counter.getValue().get());
+		}
+		return result;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<>();
+		for (Map.Entry<String, Long> counter : getCounters().entrySet()) {
+			metrics.add(new Metric<Long>(counter.getKey(), counter.getValue()));
+		}
+		return metrics;
+	}
+}
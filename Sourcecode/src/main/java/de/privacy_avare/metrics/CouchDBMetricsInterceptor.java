@@ -0,0 +1,222 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.metrics;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+/**
+ * Interceptor für das RestTemplate der CouchDB-Zugriffe. Ermittelt für jeden
+ * Aufruf die Operation anhand von HTTP-Methode und Pfad und erfasst Latenz,
+ * Statuscode, gesendete und empfangene Bytes sowie Timeouts in den
+ * CouchDBMetrics.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.config.CouchDBClientConfig
+ */
+@Component
+public class CouchDBMetricsInterceptor implements ClientHttpRequestInterceptor {
+
+	@Autowired
+	private CouchDBMetrics couchDBMetrics;
+
+	@Override
+	public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+			throws IOException {
+		String operation = operation(request.getMethod().name(), request.getURI());
+		long start = System.nanoTime();
+		ClientHttpResponse response;
+		try {
+			response = execution.execute(request, body);
+		} catch (IOException e) {
+			recordFailure(operation, e, body.length, start);
+			throw e;
+		}
+		return recordResponse(operation, response, body.length, start);
+	}
+
+	/**
+	 * Erfasst einen Aufruf, für welchen CouchDB eine Antwort geliefert hat. Wird
+	 * neben intercept() von der StreamingRequestFactory verwendet, deren Aufrufe
+	 * nicht über die Interceptoren laufen.
+	 * 
+	 * @param operation
+	 *            Name der Operation.
+	 * @param response
+	 *            Antwort von CouchDB.
+	 * @param bytesOut
+	 *            Anzahl gesendeter Bytes.
+	 * @param start
+	 *            Beginn des Aufrufs (System.nanoTime()).
+	 * @return Antwort, welche die empfangenen Bytes beim Schließen erfasst.
+	 * @throws IOException
+	 *             Statuscode der Antwort nicht lesbar.
+	 */
+	public ClientHttpResponse recordResponse(String operation, ClientHttpResponse response, long bytesOut, long start)
+			throws IOException {
+		couchDBMetrics.recordResponse(operation, response.getRawStatusCode(), bytesOut, System.nanoTime() - start);
+		return new CountingResponse(response, operation);
+	}
+
+	/**
+	 * Erfasst einen Aufruf, welcher ohne Antwort von CouchDB abgebrochen wurde.
+	 * 
+	 * @param operation
+	 *            Name der Operation.
+	 * @param e
+	 *            Fehler des Aufrufs.
+	 * @param bytesOut
+	 *            Anzahl gesendeter Bytes.
+	 * @param start
+	 *            Beginn des Aufrufs (System.nanoTime()).
+	 */
+	public void recordFailure(String operation, IOException e, long bytesOut, long start) {
+		couchDBMetrics.recordFailure(operation, e instanceof SocketTimeoutException, bytesOut,
+				System.nanoTime() - start);
+	}
+
+	/**
+	 * Bestimmt den Namen der Operation eines Aufrufs. Spezielle Endpunkte von
+	 * CouchDB wie _bulk_docs oder _purge werden anhand des Pfads erkannt, alle
+	 * übrigen Aufrufe anhand der HTTP-Methode.
+	 * 
+	 * @param method
+	 *            HTTP-Methode.
+	 * @param uri
+	 *            URI des Aufrufs.
+	 * @return Name der Operation, z.B. 'get' oder 'bulk'.
+	 */
+	public static String operation(String method, URI uri) {
+		String path = uri.getRawPath() == null ? "" : uri.getRawPath();
+		if (path.contains("/_bulk_docs")) {
+			return "bulk";
+		} else if (path.contains("/_purge")) {
+			return "purge";
+		} else if (path.contains("/_compact")) {
+			return "compact";
+		} else if (path.contains("/_find")) {
+			return "find";
+		} else if (path.contains("/_all_docs")) {
+			return "allDocs";
+		} else if (path.contains("/_changes")) {
+			return "changes";
+		} else if (path.contains("/_active_tasks")) {
+			return "activeTasks";
+		}
+		return method.toLowerCase();
+	}
+
+	/**
+	 * Antwort, welche die aus dem Body gelesenen Bytes zählt und beim Schließen in
+	 * den CouchDBMetrics erfasst.
+	 */
+	private class CountingResponse implements ClientHttpResponse {
+		private final ClientHttpResponse response;
+		private final String operation;
+		private CountingInputStream body;
+
+		CountingResponse(ClientHttpResponse response, String operation) {
+			this.response = response;
+			this.operation = operation;
+		}
+
+		@Override
+		public InputStream getBody() throws IOException {
+			if (body == null) {
+				body = new CountingInputStream(response.getBody());
+			}
+			return body;
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return response.getHeaders();
+		}
+
+		@Override
+		public HttpStatus getStatusCode() throws IOException {
+			return response.getStatusCode();
+		}
+
+		@Override
+		public int getRawStatusCode() throws IOException {
+			return response.getRawStatusCode();
+		}
+
+		@Override
+		public String getStatusText() throws IOException {
+			return response.getStatusText();
+		}
+
+		@Override
+		public void close() {
+			if (body != null) {
+				couchDBMetrics.recordBytesIn(operation, body.count);
+			}
+			response.close();
+		}
+	}
+
+	/**
+	 * InputStream, welcher die gelesenen Bytes zählt.
+	 */
+	private static class CountingInputStream extends FilterInputStream {
+		private long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b >= 0) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int n = super.read(b, off, len);
+			if (n > 0) {
+				count += n;
+			}
+			return n;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+	}
+}
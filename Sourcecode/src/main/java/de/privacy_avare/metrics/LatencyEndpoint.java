@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.AbstractEndpoint;
+import org.springframework.stereotype.Component;
+
+/**
+ * Actuator-Endpunkt '/latency', welcher Anzahl, p50, p95, p99 und Maximum der
+ * Latenzen in Millisekunden je Handler-Methode und HTTP-Statuscode über das
+ * gleitende Zeitfenster des LatencyRecorders veröffentlicht.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see LatencyRecorder
+ */
+@Component
+public class LatencyEndpoint extends AbstractEndpoint<Map<String, Object>> {
+
+	@Autowired
+	private LatencyRecorder latencyRecorder;
+
+	/**
+	 * Konstruktor, welcher den Endpunkt unter der Id 'latency' registriert.
+	 */
+	public LatencyEndpoint() {
+		super("latency");
+	}
+
+	@Override
+	public Map<String, Object> invoke() {
+		Map<String, Object> result = new LinkedHashMap<>();
+		result.put("windowSeconds", latencyRecorder.getWindowSeconds());
+		result.put("unit", "ms");
+		result.put("latencies", latencyRecorder.snapshot());
+		return result;
+	}
+}
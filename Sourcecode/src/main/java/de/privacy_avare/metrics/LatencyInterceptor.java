@@ -0,0 +1,79 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.metrics;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+/**
+ * Interceptor, welcher die Latenz jedes Aufrufs eines Controllers aus dem Paket
+ * frontController erfasst. Die Messwerte werden je Handler-Methode und
+ * HTTP-Statuscode im LatencyRecorder abgelegt. Der Statuscode wird nach der
+ * Behandlung eventueller Exceptions durch den ExeptionHandlingController
+ * ermittelt, sodass z.B. 404 und 409 getrennt von 200 erfasst werden.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.config.MetricsConfig
+ */
+@Component
+public class LatencyInterceptor extends HandlerInterceptorAdapter {
+
+	/**
+	 * Name des Request-Attributs, in welchem der Startzeitpunkt abgelegt wird.
+	 */
+	private static final String START_ATTRIBUTE = LatencyInterceptor.class.getName() + ".start";
+
+	/**
+	 * Paket der zu erfassenden Controller.
+	 */
+	private static final String CONTROLLER_PACKAGE = "de.privacy_avare.frontController";
+
+	@Autowired
+	private LatencyRecorder latencyRecorder;
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) {
+		Object start = request.getAttribute(START_ATTRIBUTE);
+		if (start == null || handler instanceof HandlerMethod == false) {
+			return;
+		}
+		HandlerMethod handlerMethod = (HandlerMethod) handler;
+		Class<?> controller = handlerMethod.getBeanType();
+		if (controller.getName().startsWith(CONTROLLER_PACKAGE) == false) {
+			return;
+		}
+		int status = response.getStatus();
+		if (ex != null && status < 400) {
+			status = 500;
+		}
+		String operation = controller.getSimpleName() + "." + handlerMethod.getMethod().getName();
+		latencyRecorder.record(operation, String.valueOf(status), System.nanoTime() - (Long) start);
+	}
+}
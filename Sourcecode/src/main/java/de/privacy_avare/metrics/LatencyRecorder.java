@@ -0,0 +1,178 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.metrics;
+
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.HdrHistogram.Histogram;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import de.privacy_avare.config.DefaultProperties;
+
+/**
+ * Erfasst Latenzen getrennt nach Operation und Ergebnis (z.B. HTTP-Statuscode)
+ * in gleitenden HdrHistogrammen. Die Länge des Zeitfensters sowie die Anzahl
+ * seiner Abschnitte werden über 'server.latencyWindow' (in Sekunden) und
+ * 'server.latencyWindowSlices' in den application.properties festgelegt.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see LatencyEndpoint
+ * @see LatencyInterceptor
+ */
+@Component
+public class LatencyRecorder {
+
+	private static int windowSeconds;
+	private static int windowSlices;
+
+	/**
+	 * Static-Block, welcher aus application.properties die Länge des
+	 * Zeitfensters und die Anzahl der Abschnitte ausliest.
+	 */
+	static {
+		InputStream inputStream = null;
+		try {
+			inputStream = LatencyRecorder.class.getResourceAsStream("/application.properties");
+			Properties properties = new Properties(new DefaultProperties());
+			properties.load(inputStream);
+
+			windowSeconds = Integer.valueOf(properties.getProperty("server.latencyWindow"));
+			windowSlices = Integer.valueOf(properties.getProperty("server.latencyWindowSlices"));
+		} catch (Exception e) {
+			e.printStackTrace();
+			windowSeconds = 300;
+			windowSlices = 5;
+		} finally {
+			try {
+				inputStream.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			windowSlices = Math.max(windowSlices, 1);
+			windowSeconds = Math.max(windowSeconds, windowSlices);
+		}
+	}
+
+	/**
+	 * Histogramme je Operation und Ergebnis.
+	 */
+	private final ConcurrentMap<String, ConcurrentMap<String, RollingLatencyHistogram>> histograms;
+
+	/**
+	 * default-Konstruktor.
+	 */
+	public LatencyRecorder() {
+		this.histograms = new ConcurrentHashMap<>();
+	}
+
+	/**
+	 * Liefert die Länge des Zeitfensters.
+	 * 
+	 * @return Länge des Zeitfensters in Sekunden.
+	 */
+	public int getWindowSeconds() {
+		return windowSeconds;
+	}
+
+	/**
+	 * Erfasst die Latenz einer Operation.
+	 * 
+	 * @param operation
+	 *            Name der Operation, z.B. 'ExistingProfileController.getProfile'.
+	 * @param outcome
+	 *            Ergebnis der Operation, z.B. der HTTP-Statuscode.
+	 * @param nanos
+	 *            Latenz in Nanosekunden.
+	 */
+	public void record(String operation, String outcome, long nanos) {
+		ConcurrentMap<String, RollingLatencyHistogram> byOutcome = histograms.get(operation);
+		if (byOutcome == null) {
+			histograms.putIfAbsent(operation, new ConcurrentHashMap<String, RollingLatencyHistogram>());
+			byOutcome = histograms.get(operation);
+		}
+		RollingLatencyHistogram histogram = byOutcome.get(outcome);
+		if (histogram == null) {
+			byOutcome.putIfAbsent(outcome, new RollingLatencyHistogram(windowSlices,
+					TimeUnit.SECONDS.toNanos(windowSeconds) / windowSlices));
+			histogram = byOutcome.get(outcome);
+		}
+		histogram.record(TimeUnit.NANOSECONDS.toMicros(nanos));
+	}
+
+	/**
+	 * Übernimmt regelmäßig die erfassten Messwerte in die Abschnitte der
+	 * Zeitfenster. Aufruf jede Sekunde, der Abschnittswechsel erfolgt innerhalb
+	 * der Histogramme.
+	 */
+	@Scheduled(fixedRate = 1000)
+	public void rotate() {
+		for (Map<String, RollingLatencyHistogram> byOutcome : histograms.values()) {
+			for (RollingLatencyHistogram histogram : byOutcome.values()) {
+				histogram.rotate();
+			}
+		}
+	}
+
+	/**
+	 * Liefert Anzahl, p50, p95, p99 und Maximum in Millisekunden je Operation und
+	 * Ergebnis über das aktuelle Zeitfenster. Operationen ohne Messwerte im
+	 * Zeitfenster werden nicht aufgeführt.
+	 * 
+	 * @return Sortierte Map Operation -> Ergebnis -> Kennzahlen.
+	 */
+	public Map<String, Map<String, Map<String, Object>>> snapshot() {
+		Map<String, Map<String, Map<String, Object>>> result = new TreeMap<>();
+		for (Map.Entry<String, ConcurrentMap<String, RollingLatencyHistogram>> operation : histograms.entrySet()) {
+			Map<String, Map<String, Object>> byOutcome = new TreeMap<>();
+			for (Map.Entry<String, RollingLatencyHistogram> outcome : operation.getValue().entrySet()) {
+				Histogram histogram = outcome.getValue().snapshot();
+				if (histogram.getTotalCount() > 0) {
+					byOutcome.put(outcome.getKey(), summarize(histogram));
+				}
+			}
+			if (byOutcome.isEmpty() == false) {
+				result.put(operation.getKey(), byOutcome);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Fasst ein Histogramm zu Kennzahlen in Millisekunden zusammen.
+	 * 
+	 * @param histogram
+	 *            Histogramm in Mikrosekunden.
+	 * @return Map mit count, p50, p95, p99 und max.
+	 */
+	private static Map<String, Object> summarize(Histogram histogram) {
+		Map<String, Object> summary = new TreeMap<>();
+		summary.put("count", histogram.getTotalCount());
+		summary.put("p50", histogram.getValueAtPercentile(50) / 1000.0);
+		summary.put("p95", histogram.getValueAtPercentile(95) / 1000.0);
+		summary.put("p99", histogram.getValueAtPercentile(99) / 1000.0);
+		summary.put("max", histogram.getMaxValue() / 1000.0);
+		return summary;
+	}
+}
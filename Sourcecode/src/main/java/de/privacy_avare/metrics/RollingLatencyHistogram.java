@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+/**
+ * Latenz-Histogramm über ein gleitendes Zeitfenster. Das Zeitfenster ist in
+ * mehrere gleich lange Abschnitte unterteilt. Messwerte werden wartefrei in
+ * einem Recorder erfasst und bei jedem Abschnittswechsel sowie bei jeder
+ * Abfrage in den aktuellen Abschnitt übernommen. Beim Wechsel wird der älteste
+ * Abschnitt verworfen, sodass eine Abfrage stets die Messwerte der letzten
+ * Abschnitte umfasst.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see LatencyRecorder
+ */
+class RollingLatencyHistogram {
+	/**
+	 * Genauigkeit der Histogramme in signifikanten Dezimalstellen.
+	 */
+	static final int SIGNIFICANT_DIGITS = 3;
+
+	/**
+	 * Recorder, in welchem neue Messwerte erfasst werden.
+	 */
+	private final Recorder recorder;
+
+	/**
+	 * Abschnitte des Zeitfensters als Ringpuffer.
+	 */
+	private final Histogram[] slices;
+
+	/**
+	 * Dauer eines Abschnitts in Nanosekunden.
+	 */
+	private final long sliceNanos;
+
+	/**
+	 * Index des aktuellen Abschnitts.
+	 */
+	private int current;
+
+	/**
+	 * Beginn des aktuellen Abschnitts in Nanosekunden (System.nanoTime()).
+	 */
+	private long currentSliceStart;
+
+	/**
+	 * Vom Recorder zurückgegebenes Histogramm zur Wiederverwendung.
+	 */
+	private Histogram recycled;
+
+	/**
+	 * Erzeugt ein neues gleitendes Histogramm.
+	 * 
+	 * @param sliceCount
+	 *            Anzahl der Abschnitte des Zeitfensters.
+	 * @param sliceNanos
+	 *            Dauer eines Abschnitts in Nanosekunden.
+	 */
+	RollingLatencyHistogram(int sliceCount, long sliceNanos) {
+		this.recorder = new Recorder(SIGNIFICANT_DIGITS);
+		this.slices = new Histogram[sliceCount];
+		for (int i = 0; i < sliceCount; i++) {
+			this.slices[i] = new Histogram(SIGNIFICANT_DIGITS);
+		}
+		this.sliceNanos = sliceNanos;
+		this.current = 0;
+		this.currentSliceStart = System.nanoTime();
+	}
+
+	/**
+	 * Erfasst einen Messwert. Die Methode ist wartefrei und kann von beliebig
+	 * vielen Threads gleichzeitig aufgerufen werden.
+	 * 
+	 * @param micros
+	 *            Latenz in Mikrosekunden.
+	 */
+	void record(long micros) {
+		recorder.recordValue(Math.max(micros, 0));
+	}
+
+	/**
+	 * Wechselt gegebenenfalls zum nächsten Abschnitt und übernimmt die seit dem
+	 * letzten Aufruf erfassten Messwerte in den aktuellen Abschnitt.
+	 */
+	synchronized void rotate() {
+		long now = System.nanoTime();
+		long elapsedSlices = (now - currentSliceStart) / sliceNanos;
+		if (elapsedSlices >= slices.length) {
+			for (Histogram slice : slices) {
+				slice.reset();
+			}
+			currentSliceStart = now;
+		} else {
+			for (long i = 0; i < elapsedSlices; i++) {
+				current = (current + 1) % slices.length;
+				slices[current].reset();
+				currentSliceStart += sliceNanos;
+			}
+		}
+
+		recycled = recorder.getIntervalHistogram(recycled);
+		slices[current].add(recycled);
+	}
+
+	/**
+	 * Liefert ein Histogramm mit allen Messwerten des Zeitfensters.
+	 * 
+	 * @return Zusammengefasstes Histogramm.
+	 */
+	synchronized Histogram snapshot() {
+		rotate();
+		Histogram sum = new Histogram(SIGNIFICANT_DIGITS);
+		for (Histogram slice : slices) {
+			sum.add(slice);
+		}
+		return sum;
+	}
+}
@@ -0,0 +1,522 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.repository;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import de.privacy_avare.config.DefaultProperties;
+import de.privacy_avare.domain.Profile;
+import de.privacy_avare.exeption.DeadlineExceededException;
+import de.privacy_avare.exeption.ProfileAlreadyExistsException;
+import de.privacy_avare.resilience.RequestDeadline;
+
+/**
+ * Decorator des ProfileRepository, welcher vor jedem Datenbankzugriff
+ * künstliche Latenzen und Fehler einfügt. Damit lässt sich ein langsames oder
+ * unzuverlässiges CouchDB reproduzierbar nachstellen, um Timeouts, Retries und
+ * Caches unter Last zu überprüfen.
+ * 
+ * Der Decorator ist nur bei aktivem Spring-Profil 'faultInjection' vorhanden
+ * (z.B. --spring.profiles.active=faultInjection) und ersetzt dann durch @Primary
+ * die Implementierung ProfileRepositoryCouchDBImpl bei allen Services. Die
+ * eigentlichen Zugriffe werden an ProfileRepositoryCouchDBImpl weitergereicht.
+ * 
+ * Die Zugriffe werden in die Operationen 'read' (Einzelabfragen), 'write'
+ * (Speichern), 'delete' (Löschen) und 'query' (Abfragen über mehrere Profile)
+ * eingeteilt. Für jede Operation lassen sich in application.properties mit
+ * 'server.faultInjection.{operation}.{einstellung}' eigene Werte festlegen,
+ * ansonsten gelten die allgemeinen Werte 'server.faultInjection.{einstellung}':
+ * <ul>
+ * <li>latency: Verteilung der Latenz in Millisekunden, siehe
+ * {@link LatencyDistribution#parse(String)}.</li>
+ * <li>errorRate: Anteil der Zugriffe, welche mit 503 Service Unavailable
+ * fehlschlagen.</li>
+ * <li>conflictRate: Anteil der Schreib- und Löschzugriffe, welche mit 409
+ * Conflict fehlschlagen.</li>
+ * <li>timeoutRate: Anteil der Zugriffe, welche nach 'timeoutDuration'
+ * Millisekunden mit einem Read Timeout abbrechen.</li>
+ * </ul>
+ * Die Fehler entsprechen den Exceptions, welche RestTemplate bei echten Fehlern
+ * von CouchDB wirft. Ein fehlgeschlagener Zugriff wird nicht an die Datenbank
+ * weitergereicht. Mit 'server.faultInjection.seed' ungleich 0 ist die Folge der
+ * Zufallswerte reproduzierbar.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see ProfileRepositoryCouchDBImpl
+ */
+
+@Service
+@Primary
+@org.springframework.context.annotation.Profile("faultInjection")
+public class FaultInjectingProfileRepository implements ProfileRepository {
+
+	private static Fault read;
+	private static Fault write;
+	private static Fault delete;
+	private static Fault query;
+	private static long seed;
+
+	/**
+	 * Static-Block, welcher aus application.properties die Einstellungen der
+	 * einzelnen Operationen ausliest.
+	 */
+	static {
+		InputStream inputStream = null;
+		Properties properties = new Properties(new DefaultProperties());
+		try {
+			inputStream = FaultInjectingProfileRepository.class.getResourceAsStream("/application.properties");
+			properties.load(inputStream);
+		} catch (Exception e) {
+			e.printStackTrace();
+			System.out.println("Einstellungen der Fault Injection auf default-Werte gesetzt");
+		} finally {
+			try {
+				inputStream.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		seed = Long.valueOf(properties.getProperty("server.faultInjection.seed"));
+		read = Fault.fromProperties(properties, "read", false);
+		write = Fault.fromProperties(properties, "write", true);
+		delete = Fault.fromProperties(properties, "delete", true);
+		query = Fault.fromProperties(properties, "query", false);
+
+		System.out.println("Fault Injection fuer Datenbankzugriffe aktiv:");
+		System.out.println("\t read: " + read);
+		System.out.println("\t write: " + write);
+		System.out.println("\t delete: " + delete);
+		System.out.println("\t query: " + query);
+		System.out.println("************************************************");
+	}
+
+	/**
+	 * Eigentliche Implementierung der Datenbankzugriffe.
+	 */
+	@Autowired
+	private ProfileRepositoryCouchDBImpl delegate;
+
+	/**
+	 * Zufallsgenerator für Latenzen und Fehler.
+	 */
+	private final Random random;
+
+	/**
+	 * default-Konstruktor, welcher den Zufallsgenerator initialisiert.
+	 */
+	public FaultInjectingProfileRepository() {
+		this.random = (seed != 0) ? new Random(seed) : new Random();
+	}
+
+	@Override
+	public <S extends Profile> S save(S entity) {
+		inject(write);
+		return delegate.save(entity);
+	}
+
+	@Override
+	public <S extends Profile> S insert(S entity) throws ProfileAlreadyExistsException {
+		try {
+			inject(write);
+		} catch (HttpClientErrorException e) {
+			// Konflikte beim Anlegen werden wie von ProfileRepositoryCouchDBImpl gemeldet
+			throw new ProfileAlreadyExistsException("UserID wird bereits in einem bestehenden Profil verwendet.");
+		}
+		return delegate.insert(entity);
+	}
+
+	@Override
+	public List<String> insertAll(List<? extends Profile> entities) {
+		inject(write);
+		return delegate.insertAll(entities);
+	}
+
+	@Override
+	public <S extends Profile> S save(S entity, Reader preferences) throws IOException {
+		inject(write);
+		return delegate.save(entity, preferences);
+	}
+
+	@Override
+	public Profile streamPreferences(String id, Predicate<Profile> filter, OutputStream out) throws IOException {
+		inject(read);
+		return delegate.streamPreferences(id, filter, out);
+	}
+
+	@Override
+	public <S extends Profile> Iterable<S> save(Iterable<S> entities) {
+		for (Profile profile : entities) {
+			this.save(profile);
+		}
+		return entities;
+	}
+
+	@Override
+	public Profile findOne(String id) {
+		inject(read);
+		return delegate.findOne(id);
+	}
+
+	@Override
+	public boolean exists(String id) {
+		inject(read);
+		return delegate.exists(id);
+	}
+
+	@Override
+	public Iterable<Profile> findAll() {
+		inject(query);
+		return delegate.findAll();
+	}
+
+	@Override
+	public Iterable<Profile> findAll(Iterable<String> ids) {
+		List<Profile> list = new ArrayList<Profile>();
+		for (String id : ids) {
+			Profile profile = this.findOne(id);
+			if (profile != null) {
+				list.add(profile);
+			}
+		}
+		return list;
+	}
+
+	@Override
+	public long count() {
+		inject(query);
+		return delegate.count();
+	}
+
+	@Override
+	public void delete(String id) {
+		inject(delete);
+		delegate.delete(id);
+	}
+
+	@Override
+	public void delete(Profile entity) {
+		inject(delete);
+		delegate.delete(entity);
+	}
+
+	@Override
+	public void delete(Iterable<? extends Profile> entities) {
+		for (Profile profile : entities) {
+			this.delete(profile);
+		}
+	}
+
+	@Override
+	public void deleteAll() {
+		inject(query);
+		delegate.deleteAll();
+	}
+
+	@Override
+	public List<Profile> findAllByOrderByIdAsc() {
+		inject(query);
+		return delegate.findAllByOrderByIdAsc();
+	}
+
+	@Override
+	public List<Profile> findAllByLastProfileContactBefore(Date date) {
+		inject(query);
+		return delegate.findAllByLastProfileContactBefore(date);
+	}
+
+	@Override
+	public List<Profile> findPageByLastProfileContactBefore(Date date, String startAfterId, int limit) {
+		inject(query);
+		return delegate.findPageByLastProfileContactBefore(date, startAfterId, limit);
+	}
+
+	@Override
+	public Date findLastProfileContactById(String id) {
+		inject(read);
+		return delegate.findLastProfileContactById(id);
+	}
+
+	@Override
+	public Date findLastProfileChangeById(String id) {
+		inject(read);
+		return delegate.findLastProfileChangeById(id);
+	}
+
+	@Override
+	public Profile findMetadataById(String id) {
+		inject(read);
+		return delegate.findMetadataById(id);
+	}
+
+	@Override
+	public void updateLastProfileContactById(String id, Date lastProfileContact) {
+		inject(write);
+		delegate.updateLastProfileContactById(id, lastProfileContact);
+	}
+
+	@Override
+	public String findPreferencesById(String id) {
+		inject(read);
+		return delegate.findPreferencesById(id);
+	}
+
+	/**
+	 * Verzögert den aktuellen Zugriff gemäß der Latenzverteilung der Operation
+	 * und wirft gegebenenfalls einen künstlichen Fehler.
+	 * 
+	 * @param fault
+	 *            Einstellungen der Operation.
+	 */
+	private void inject(Fault fault) {
+		long latency;
+		double roll;
+		synchronized (random) {
+			latency = fault.latency.sampleMillis(random);
+			roll = random.nextDouble();
+		}
+		sleepWithinDeadline(latency);
+
+		if (roll < fault.timeoutRate) {
+			sleepWithinDeadline(fault.timeoutDuration);
+			throw new ResourceAccessException("I/O error on " + fault.operation + " (injected)",
+					new SocketTimeoutException("Read timed out"));
+		}
+		roll -= fault.timeoutRate;
+		if (roll < fault.errorRate) {
+			throw new HttpServerErrorException(HttpStatus.SERVICE_UNAVAILABLE, "injected");
+		}
+		roll -= fault.errorRate;
+		if (roll < fault.conflictRate) {
+			throw new HttpClientErrorException(HttpStatus.CONFLICT, "injected");
+		}
+	}
+
+	/**
+	 * Hält den aktuellen Thread für die angegebene Dauer an, höchstens jedoch bis
+	 * zum Ablauf der RequestDeadline. Läuft die Deadline währenddessen ab, so wird
+	 * der Zugriff wie bei einem durch die Deadline verkürzten Timeout abgebrochen.
+	 * 
+	 * @param millis
+	 *            Dauer in Millisekunden.
+	 * @throws DeadlineExceededException
+	 *             Deadline ist während der Wartezeit abgelaufen.
+	 */
+	private static void sleepWithinDeadline(long millis) throws DeadlineExceededException {
+		long remaining = RequestDeadline.remainingMillis();
+		if (millis >= remaining) {
+			sleep(remaining);
+			throw new DeadlineExceededException("Zeitbudget der Anfrage während Zugriff auf CouchDB aufgebraucht.");
+		}
+		sleep(millis);
+	}
+
+	/**
+	 * Hält den aktuellen Thread für die angegebene Dauer an. Eine Unterbrechung
+	 * beendet die Wartezeit vorzeitig.
+	 * 
+	 * @param millis
+	 *            Dauer in Millisekunden.
+	 */
+	private static void sleep(long millis) {
+		if (millis <= 0) {
+			return;
+		}
+		try {
+			TimeUnit.MILLISECONDS.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Einstellungen der Fault Injection für eine einzelne Operation.
+	 */
+	private static class Fault {
+		private final String operation;
+		private final LatencyDistribution latency;
+		private final double errorRate;
+		private final double conflictRate;
+		private final double timeoutRate;
+		private final long timeoutDuration;
+
+		private Fault(String operation, LatencyDistribution latency, double errorRate, double conflictRate,
+				double timeoutRate, long timeoutDuration) {
+			this.operation = operation;
+			this.latency = latency;
+			this.errorRate = errorRate;
+			this.conflictRate = conflictRate;
+			this.timeoutRate = timeoutRate;
+			this.timeoutDuration = timeoutDuration;
+		}
+
+		/**
+		 * Liest die Einstellungen einer Operation aus. Fehlt ein operationsbezogener
+		 * Wert, so wird der allgemeine Wert verwendet.
+		 */
+		private static Fault fromProperties(Properties properties, String operation, boolean conflicts) {
+			String prefix = "server.faultInjection.";
+			String latency = properties.getProperty(prefix + operation + ".latency",
+					properties.getProperty(prefix + "latency"));
+			double errorRate = Double.valueOf(properties.getProperty(prefix + operation + ".errorRate",
+					properties.getProperty(prefix + "errorRate")));
+			double conflictRate = Double.valueOf(properties.getProperty(prefix + operation + ".conflictRate",
+					properties.getProperty(prefix + "conflictRate")));
+			double timeoutRate = Double.valueOf(properties.getProperty(prefix + operation + ".timeoutRate",
+					properties.getProperty(prefix + "timeoutRate")));
+			long timeoutDuration = Long.valueOf(properties.getProperty(prefix + operation + ".timeoutDuration",
+					properties.getProperty(prefix + "timeoutDuration")));
+			return new Fault(operation, LatencyDistribution.parse(latency), errorRate,
+					conflicts ? conflictRate : 0.0, timeoutRate, timeoutDuration);
+		}
+
+		@Override
+		public String toString() {
+			return "latency=" + latency + ", errorRate=" + errorRate + ", conflictRate=" + conflictRate
+					+ ", timeoutRate=" + timeoutRate + ", timeoutDuration=" + timeoutDuration;
+		}
+	}
+
+	/**
+	 * Verteilung der künstlichen Latenz eines Zugriffs in Millisekunden.
+	 */
+	public static class LatencyDistribution {
+		private final String type;
+		private final double a;
+		private final double b;
+
+		private LatencyDistribution(String type, double a, double b) {
+			this.type = type;
+			this.a = a;
+			this.b = b;
+		}
+
+		/**
+		 * Erzeugt eine Verteilung aus ihrer textuellen Beschreibung. Unterstützt
+		 * werden:
+		 * <ul>
+		 * <li>'none': keine Latenz.</li>
+		 * <li>'fixed:{ms}': konstante Latenz.</li>
+		 * <li>'uniform:{min}-{max}': gleichverteilte Latenz.</li>
+		 * <li>'exponential:{mittelwert}': exponentialverteilte Latenz.</li>
+		 * <li>'lognormal:{median},{sigma}': logarithmisch normalverteilte Latenz mit
+		 * langem Tail.</li>
+		 * </ul>
+		 * 
+		 * @param spec
+		 *            Beschreibung der Verteilung.
+		 * @return Verteilung.
+		 * @throws IllegalArgumentException
+		 *             Beschreibung ist ungültig.
+		 */
+		public static LatencyDistribution parse(String spec) {
+			String value = spec.trim();
+			int colon = value.indexOf(':');
+			String type = (colon < 0 ? value : value.substring(0, colon)).toLowerCase();
+			String args = colon < 0 ? "" : value.substring(colon + 1);
+			try {
+				switch (type) {
+				case "none":
+					return new LatencyDistribution(type, 0, 0);
+				case "fixed":
+				case "exponential":
+					return new LatencyDistribution(type, Double.valueOf(args), 0);
+				case "uniform": {
+					String[] bounds = args.split("-");
+					double min = Double.valueOf(bounds[0]);
+					double max = Double.valueOf(bounds[1]);
+					if (max < min) {
+						throw new IllegalArgumentException("Obergrenze kleiner als Untergrenze: " + spec);
+					}
+					return new LatencyDistribution(type, min, max);
+				}
+				case "lognormal": {
+					String[] params = args.split(",");
+					return new LatencyDistribution(type, Double.valueOf(params[0]), Double.valueOf(params[1]));
+				}
+				default:
+					throw new IllegalArgumentException("Unbekannte Latenzverteilung: " + spec);
+				}
+			} catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+				throw new IllegalArgumentException("Ungueltige Latenzverteilung: " + spec, e);
+			}
+		}
+
+		/**
+		 * Zieht eine Latenz aus der Verteilung.
+		 * 
+		 * @param random
+		 *            Zufallsgenerator.
+		 * @return Latenz in Millisekunden, nie negativ.
+		 */
+		public long sampleMillis(Random random) {
+			double millis;
+			switch (type) {
+			case "fixed":
+				millis = a;
+				break;
+			case "uniform":
+				millis = a + (b - a) * random.nextDouble();
+				break;
+			case "exponential":
+				millis = -a * Math.log(1.0 - random.nextDouble());
+				break;
+			case "lognormal":
+				millis = a * Math.exp(b * random.nextGaussian());
+				break;
+			default:
+				millis = 0;
+			}
+			return Math.max(0L, Math.round(millis));
+		}
+
+		@Override
+		public String toString() {
+			switch (type) {
+			case "fixed":
+			case "exponential":
+				return type + ":" + a;
+			case "uniform":
+				return type + ":" + a + "-" + b;
+			case "lognormal":
+				return type + ":" + a + "," + b;
+			default:
+				return type;
+			}
+		}
+	}
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.repository;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Kopiert den Inhalt eines JSON-Strings aus einem UTF-8 kodierten Stream in
+ * einen anderen Stream und hebt dabei die Maskierung auf. Der Eingabestream
+ * muss unmittelbar hinter dem öffnenden Anführungszeichen stehen; gelesen wird
+ * bis einschließlich des schließenden Anführungszeichens. Unmaskierte Bytes
+ * werden unverändert blockweise übernommen, \\uXXXX-Sequenzen werden als UTF-8
+ * geschrieben.
+ * 
+ * Die Lesepuffer werden in einem Pool vorgehalten und wiederverwendet.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ */
+public final class JsonStringCopier {
+
+	private static final int BUFFER_SIZE = 8192;
+
+	/**
+	 * Vorrat an Lesepuffern. Ist der Vorrat leer, so wird ein neuer Puffer
+	 * angelegt; bei vollem Vorrat wird ein zurückgegebener Puffer verworfen.
+	 */
+	private static final ArrayBlockingQueue<byte[]> POOL = new ArrayBlockingQueue<>(64);
+
+	private JsonStringCopier() {
+
+	}
+
+	/**
+	 * Kopiert einen JSON-String ohne Maskierung.
+	 * 
+	 * @param in
+	 *            Stream, positioniert hinter dem öffnenden Anführungszeichen.
+	 * @param out
+	 *            Ziel der UTF-8 kodierten Zeichen.
+	 * @throws IOException
+	 *             Fehler beim Lesen oder Schreiben bzw. ungültiger JSON-String.
+	 */
+	public static void copy(InputStream in, OutputStream out) throws IOException {
+		byte[] buffer = POOL.poll();
+		if (buffer == null) {
+			buffer = new byte[BUFFER_SIZE];
+		}
+		try {
+			copy(in, out, buffer);
+		} finally {
+			POOL.offer(buffer);
+		}
+	}
+
+	private static void copy(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+		boolean escape = false;
+		int hexDigits = -1;
+		int codeUnit = 0;
+		int highSurrogate = -1;
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			int start = 0;
+			for (int i = 0; i < read; i++) {
+				int b = buffer[i] & 0xff;
+				if (hexDigits >= 0) {
+					codeUnit = (codeUnit << 4) | hexValue(b);
+					if (++hexDigits == 4) {
+						hexDigits = -1;
+						highSurrogate = writeCodeUnit(codeUnit, highSurrogate, out);
+						start = i + 1;
+					}
+				} else if (escape) {
+					escape = false;
+					start = i + 1;
+					if (b == 'u') {
+						hexDigits = 0;
+						codeUnit = 0;
+						continue;
+					}
+					highSurrogate = flushSurrogate(highSurrogate, out);
+					out.write(unescape(b));
+				} else if (b == '\\' || b == '"') {
+					out.write(buffer, start, i - start);
+					if (b == '"') {
+						flushSurrogate(highSurrogate, out);
+						return;
+					}
+					escape = true;
+				} else if (highSurrogate >= 0) {
+					highSurrogate = flushSurrogate(highSurrogate, out);
+				}
+			}
+			if (escape == false && hexDigits < 0) {
+				out.write(buffer, start, read - start);
+			}
+		}
+		throw new EOFException("JSON-String nicht abgeschlossen");
+	}
+
+	/**
+	 * Schreibt ein per \\uXXXX maskiertes Zeichen. Ein High-Surrogate wird
+	 * zurückgehalten, bis das zugehörige Low-Surrogate gelesen wurde.
+	 * 
+	 * @return Zurückgehaltenes High-Surrogate oder -1.
+	 */
+	private static int writeCodeUnit(int codeUnit, int highSurrogate, OutputStream out) throws IOException {
+		if (highSurrogate >= 0 && Character.isLowSurrogate((char) codeUnit)) {
+			writeUtf8(Character.toCodePoint((char) highSurrogate, (char) codeUnit), out);
+			return -1;
+		}
+		flushSurrogate(highSurrogate, out);
+		if (Character.isHighSurrogate((char) codeUnit)) {
+			return codeUnit;
+		}
+		writeUtf8(codeUnit, out);
+		return -1;
+	}
+
+	/**
+	 * Schreibt ein unvollständiges Surrogate wie ein String-Encoder als '?'.
+	 */
+	private static int flushSurrogate(int highSurrogate, OutputStream out) throws IOException {
+		if (highSurrogate >= 0) {
+			out.write('?');
+		}
+		return -1;
+	}
+
+	private static void writeUtf8(int codePoint, OutputStream out) throws IOException {
+		if (Character.isSurrogate((char) codePoint) && codePoint <= 0xffff) {
+			out.write('?');
+		} else if (codePoint < 0x80) {
+			out.write(codePoint);
+		} else if (codePoint < 0x800) {
+			out.write(0xc0 | (codePoint >> 6));
+			out.write(0x80 | (codePoint & 0x3f));
+		} else if (codePoint < 0x10000) {
+			out.write(0xe0 | (codePoint >> 12));
+			out.write(0x80 | ((codePoint >> 6) & 0x3f));
+			out.write(0x80 | (codePoint & 0x3f));
+		} else {
+			out.write(0xf0 | (codePoint >> 18));
+			out.write(0x80 | ((codePoint >> 12) & 0x3f));
+			out.write(0x80 | ((codePoint >> 6) & 0x3f));
+			out.write(0x80 | (codePoint & 0x3f));
+		}
+	}
+
+	private static int unescape(int b) throws IOException {
+		switch (b) {
+		case '"':
+		case '\\':
+		case '/':
+			return b;
+		case 'b':
+			return '\b';
+		case 'f':
+			return '\f';
+		case 'n':
+			return '\n';
+		case 'r':
+			return '\r';
+		case 't':
+			return '\t';
+		default:
+			throw new IOException("Ungültige Maskierung im JSON-String: \\" + (char) b);
+		}
+	}
+
+	private static int hexValue(int b) throws IOException {
+		int value = Character.digit(b, 16);
+		if (value < 0) {
+			throw new IOException("Ungültige \\u-Maskierung im JSON-String");
+		}
+		return value;
+	}
+}
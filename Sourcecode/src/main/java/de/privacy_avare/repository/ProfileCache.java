@@ -0,0 +1,294 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.repository;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Component;
+
+import de.privacy_avare.config.DefaultProperties;
+import de.privacy_avare.domain.Profile;
+
+/**
+ * Cache für Profile im Arbeitsspeicher der Serverinstanz. Der Cache hält
+ * höchstens 'server.profileCacheSize' Profile (0 deaktiviert den Cache) und
+ * verdrängt jeweils das am längsten nicht verwendete Profil. Einträge verfallen
+ * spätestens nach 'server.profileCacheTtl' Sekunden.
+ * 
+ * Da mehrere Serverinstanzen dieselbe Datenbank verwenden, werden Einträge über
+ * den _changes-Feed der Datenbank invalidiert. Der Cache liefert nur dann
+ * Einträge, wenn der ChangesFeedService den Feed verfolgt. Fällt der Feed aus,
+ * so wird der Cache geleert und bis zur nächsten erfolgreichen Abfrage des
+ * Feeds umgangen.
+ * 
+ * Damit ein Lesezugriff, welcher vor einer Invalidierung begonnen hat, keinen
+ * veralteten Stand in den Cache schreibt, wird vor dem Lesen die aktuelle
+ * Epoche mit epoch() abgefragt. put() verwirft das Profil, falls seitdem eine
+ * Invalidierung stattgefunden hat.
+ * 
+ * Durch _purge entfernte Profile erscheinen nicht zuverlässig im Feed anderer
+ * Instanzen und verbleiben dort höchstens bis zum Ablauf der Gültigkeitsdauer.
+ * 
+ * Der Cache liefert und speichert Kopien, sodass Änderungen der Aufrufer an
+ * Profilen den Cache nicht beeinflussen.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.service.ChangesFeedService
+ */
+@Component
+public class ProfileCache implements PublicMetrics {
+
+	private static int maxSize;
+	private static long ttlNanos;
+
+	/**
+	 * Static-Block, welcher aus application.properties Größe und Gültigkeitsdauer
+	 * des Caches ausliest.
+	 */
+	static {
+		InputStream inputStream = null;
+		try {
+			inputStream = ProfileCache.class.getResourceAsStream("/application.properties");
+			Properties properties = new Properties(new DefaultProperties());
+			properties.load(inputStream);
+
+			maxSize = Integer.valueOf(properties.getProperty("server.profileCacheSize"));
+			ttlNanos = TimeUnit.SECONDS.toNanos(Long.valueOf(properties.getProperty("server.profileCacheTtl")));
+		} catch (Exception e) {
+			e.printStackTrace();
+			maxSize = 0;
+			ttlNanos = TimeUnit.SECONDS.toNanos(300);
+		} finally {
+			try {
+				inputStream.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			System.out.println("Folgende Einstellungen des Profil-Caches wurden festgelegt:");
+			System.out.println("\t Maximale Anzahl Profile: " + maxSize + ", Gueltigkeit in Sekunden: "
+					+ TimeUnit.NANOSECONDS.toSeconds(ttlNanos));
+			System.out.println("************************************************");
+		}
+	}
+
+	/**
+	 * Zwischengespeicherte Profile in der Reihenfolge ihrer letzten Verwendung.
+	 */
+	private final LinkedHashMap<String, CachedProfile> entries;
+
+	/**
+	 * Anzahl der bisherigen Invalidierungen.
+	 */
+	private long epoch;
+
+	/**
+	 * true, solange der _changes-Feed verfolgt wird.
+	 */
+	private volatile boolean active;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+
+	/**
+	 * default-Konstruktor, welcher den leeren Cache erzeugt.
+	 */
+	public ProfileCache() {
+		this.entries = new LinkedHashMap<String, CachedProfile>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, CachedProfile> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	/**
+	 * Prüft, ob der Cache in application.properties aktiviert ist.
+	 * 
+	 * @return true, falls der Cache aktiviert ist.
+	 */
+	public boolean isEnabled() {
+		return maxSize > 0;
+	}
+
+	/**
+	 * Prüft, ob der Cache derzeit Profile liefert.
+	 * 
+	 * @return true, falls der Cache aktiviert ist und der _changes-Feed verfolgt
+	 *         wird.
+	 */
+	public boolean isActive() {
+		return active;
+	}
+
+	/**
+	 * Legt fest, ob der _changes-Feed verfolgt wird. Bei Deaktivierung wird der
+	 * Cache geleert.
+	 * 
+	 * @param active
+	 *            true, falls der Feed verfolgt wird.
+	 */
+	public void setActive(boolean active) {
+		this.active = active && isEnabled();
+		if (active == false) {
+			invalidateAll();
+		}
+	}
+
+	/**
+	 * Liefert eine Kopie des zwischengespeicherten Profils.
+	 * 
+	 * @param id
+	 *            ProfileId des Profils.
+	 * @return Kopie des Profils oder null, falls das Profil nicht im Cache ist.
+	 */
+	public Profile get(String id) {
+		if (active == false) {
+			return null;
+		}
+		CachedProfile entry;
+		synchronized (this) {
+			entry = entries.get(id);
+			if (entry != null && System.nanoTime() - entry.created > ttlNanos) {
+				entries.remove(id);
+				entry = null;
+			}
+		}
+		if (entry == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		hits.incrementAndGet();
+		return copy(entry.profile);
+	}
+
+	/**
+	 * Liefert die aktuelle Epoche. Muss vor dem Lesen eines Profils aus der
+	 * Datenbank abgefragt und an put() übergeben werden.
+	 * 
+	 * @return Anzahl der bisherigen Invalidierungen.
+	 */
+	public synchronized long epoch() {
+		return epoch;
+	}
+
+	/**
+	 * Legt eine Kopie eines aus der Datenbank gelesenen Profils im Cache ab,
+	 * sofern seit Beginn des Lesezugriffs keine Invalidierung stattgefunden hat.
+	 * 
+	 * @param id
+	 *            ProfileId des Profils.
+	 * @param profile
+	 *            Gelesenes Profil.
+	 * @param readEpoch
+	 *            Epoche zu Beginn des Lesezugriffs.
+	 */
+	public void put(String id, Profile profile, long readEpoch) {
+		if (active == false || profile == null) {
+			return;
+		}
+		CachedProfile entry = new CachedProfile(copy(profile), System.nanoTime());
+		synchronized (this) {
+			if (readEpoch == epoch) {
+				entries.put(id, entry);
+			}
+		}
+	}
+
+	/**
+	 * Entfernt ein Profil aus dem Cache.
+	 * 
+	 * @param id
+	 *            ProfileId des Profils.
+	 */
+	public void invalidate(String id) {
+		synchronized (this) {
+			epoch++;
+			entries.remove(id);
+		}
+		invalidations.incrementAndGet();
+	}
+
+	/**
+	 * Entfernt alle Profile aus dem Cache.
+	 */
+	public void invalidateAll() {
+		synchronized (this) {
+			epoch++;
+			entries.clear();
+		}
+		invalidations.incrementAndGet();
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<>();
+		if (isEnabled() == false) {
+			return metrics;
+		}
+		int size;
+		synchronized (this) {
+			size = entries.size();
+		}
+		metrics.add(new Metric<Integer>("profileCache.active", active ? 1 : 0));
+		metrics.add(new Metric<Integer>("profileCache.size", size));
+		metrics.add(new Metric<Long>("profileCache.hits", hits.get()));
+		metrics.add(new Metric<Long>("profileCache.misses", misses.get()));
+		metrics.add(new Metric<Long>("profileCache.invalidations", invalidations.get()));
+		return metrics;
+	}
+
+	/**
+	 * Erzeugt eine unabhängige Kopie eines Profils.
+	 */
+	private static Profile copy(Profile profile) {
+		return new Profile(profile.get_id(), copy(profile.getLastProfileChange()),
+				copy(profile.getLastProfileContact()), profile.getPreferences());
+	}
+
+	private static Date copy(Date date) {
+		return date == null ? null : new Date(date.getTime());
+	}
+
+	/**
+	 * Eintrag des Caches mit dem Zeitpunkt seiner Erzeugung.
+	 */
+	private static class CachedProfile {
+		private final Profile profile;
+		private final long created;
+
+		CachedProfile(Profile profile, long created) {
+			this.profile = profile;
+			this.created = created;
+		}
+	}
+}
@@ -16,8 +16,12 @@
 
 package de.privacy_avare.repository;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Predicate;
 
 /**
  * Interface definiert Methoden zum Datenbankzugriff. 
@@ -34,6 +38,8 @@ import org.springframework.data.couchbase.core.query.N1qlPrimaryIndexed;
 import org.springframework.data.repository.CrudRepository;
 
 import de.privacy_avare.domain.Profile;
+import de.privacy_avare.exeption.ProfileAlreadyExistsException;
+import de.privacy_avare.exeption.ProfileNotFoundException;
 
 /**
  * Interface definiert diverse Methoden zur Interaktion zwischen Serverprogramm
@@ -66,6 +72,65 @@ public interface ProfileRepository extends CrudRepository<Profile, String> {
 	 */
 	List<Profile> findAllByOrderByIdAsc();
 
+	/**
+	 * Legt ein neues Profil in der Datenbank an, sofern noch kein Profil mit
+	 * derselben ProfileId existiert. Anders als bei save(Profile) wird ein
+	 * bestehendes Profil nie überschrieben.
+	 * 
+	 * @param entity
+	 *            Anzulegendes Profil.
+	 * @return Angelegtes Profil (entspricht Parameter).
+	 * @throws ProfileAlreadyExistsException
+	 *             ProfileId bereits vergeben.
+	 */
+	<S extends Profile> S insert(S entity) throws ProfileAlreadyExistsException;
+
+	/**
+	 * Legt mehrere neue Profile mit einem einzelnen Datenbankzugriff an. Bereits
+	 * vergebene ProfileIds werden nicht überschrieben, sondern ausgelassen.
+	 * 
+	 * @param entities
+	 *            Anzulegende Profile.
+	 * @return ProfileIds der tatsächlich angelegten Profile.
+	 */
+	List<String> insertAll(List<? extends Profile> entities);
+
+	/**
+	 * Speichert ein Profil wie save(Profile), die Preferences werden jedoch nicht
+	 * dem Profil entnommen, sondern während des Schreibens aus dem übergebenen
+	 * Reader in die Anfrage an die Datenbank kopiert. Die Preferences des
+	 * übergebenen Profils bleiben unverändert.
+	 * 
+	 * @param entity
+	 *            Zu speicherndes Profil.
+	 * @param preferences
+	 *            Zu speichernde Preferences.
+	 * @return Gespeichertes Profil (entspricht Parameter).
+	 * @throws IOException
+	 *             Fehler beim Lesen der Preferences.
+	 */
+	<S extends Profile> S save(S entity, Reader preferences) throws IOException;
+
+	/**
+	 * Liest ein Profil und schreibt dessen Preferences UTF-8 kodiert in den
+	 * übergebenen Stream, ohne sie als String aufzubauen. Vor dem Schreiben wird
+	 * der Filter mit dem Profil ohne Preferences aufgerufen; nur wenn dieser true
+	 * liefert, werden die Preferences geschrieben.
+	 * 
+	 * @param id
+	 *            ProfileId des Profils.
+	 * @param filter
+	 *            Entscheidet anhand der Metadaten, ob die Preferences geschrieben
+	 *            werden.
+	 * @param out
+	 *            Ziel der Preferences.
+	 * @return Profil ohne Preferences oder null, falls kein Profil vorhanden
+	 *         ist.
+	 * @throws IOException
+	 *             Fehler beim Schreiben der Preferences.
+	 */
+	Profile streamPreferences(String id, Predicate<Profile> filter, OutputStream out) throws IOException;
+
 	/**
 	 * Liefert alle Profile aus der Datenbank, bei welchen der Zeitstempel
 	 * lastProfileContact vor dem Zeitpunkt des Parameters date liegt.
@@ -76,6 +141,27 @@ public interface ProfileRepository extends CrudRepository<Profile, String> {
 	 */
 	List<Profile> findAllByLastProfileContactBefore(Date date);
 
+	/**
+	 * Liefert eine Seite von Profilen, bei welchen der Zeitstempel
+	 * lastProfileContact vor dem Zeitpunkt des Parameters date liegt. Die Profile
+	 * werden aufsteigend nach ProfileId sortiert und beginnen mit der ersten
+	 * ProfileId nach startAfterId. Die Preferences der Profile werden nicht
+	 * geladen.
+	 * 
+	 * Durch wiederholten Aufruf mit der letzten ProfileId der vorherigen Seite
+	 * lassen sich alle Profile mit begrenztem Speicherbedarf durchlaufen.
+	 * 
+	 * @param date
+	 *            Zeitpunkt, bis zu welchem alle Profile gesucht werden.
+	 * @param startAfterId
+	 *            ProfileId, nach welcher die Seite beginnt. Leerer String für die
+	 *            erste Seite.
+	 * @param limit
+	 *            Maximale Anzahl an Profilen der Seite.
+	 * @return Profile mit lastProfileContact vor Zeitpunkt des Parameters.
+	 */
+	List<Profile> findPageByLastProfileContactBefore(Date date, String startAfterId, int limit);
+
 	/**
 	 * Liefert den Zeitpunkt lastProfileContact eines einzelnen Profils zurück.
 	 * 
@@ -94,6 +180,29 @@ public interface ProfileRepository extends CrudRepository<Profile, String> {
 	 */
 	Date findLastProfileChangeById(String id);
 
+	/**
+	 * Liefert die Metadaten eines Profils ohne dessen Preferences zurück. Die
+	 * Preferences werden dabei nicht vollständig gelesen.
+	 * 
+	 * @param id
+	 *            ProfileId des gesuchten Profils.
+	 * @return Profil mit den Zeitstempeln, jedoch ohne Preferences, oder null.
+	 */
+	Profile findMetadataById(String id);
+
+	/**
+	 * Schreibt den Zeitpunkt lastProfileContact eines einzelnen Profils, ohne
+	 * dessen Preferences zu übertragen oder neu zu schreiben.
+	 * 
+	 * @param id
+	 *            ProfileId des Profils.
+	 * @param lastProfileContact
+	 *            Neuer Zeitpunkt lastProfileContact.
+	 * @throws ProfileNotFoundException
+	 *             Kein Profil mit entsprechender ID gefunden.
+	 */
+	void updateLastProfileContactById(String id, Date lastProfileContact) throws ProfileNotFoundException;
+
 	/**
 	 * Liefert die preferences eines Profils zurück.
 	 * 
@@ -16,35 +16,89 @@
 
 package de.privacy_avare.repository;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PushbackReader;
+import java.io.Reader;
+import java.io.SequenceInputStream;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Properties;
+import java.util.function.Predicate;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StreamUtils;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.RequestCallback;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.ResponseErrorHandler;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import de.privacy_avare.config.DefaultProperties;
 import de.privacy_avare.couchDBDomain.AllProfiles;
+import de.privacy_avare.couchDBDomain.FoundProfiles;
 import de.privacy_avare.couchDBDomain.ProfileCouchDB;
 import de.privacy_avare.domain.Profile;
 import de.privacy_avare.exeption.NoProfilesInDatabaseException;
+import de.privacy_avare.exeption.ProfileAlreadyExistsException;
 import de.privacy_avare.exeption.ProfileNotFoundException;
+import de.privacy_avare.resilience.StreamingRequestFactory;
 
 /**
  * Klasse entspricht der Implementierung des ProfileRepository-Interface für die
  * Interaktion mit CouchDB. Die Realisierung ist vollständig mithilfe von
  * REST-Anfragen umgesetzt, um eine flexible Anbindung zu ermöglichen.
  * 
+ * Preferences mit mehr als 'server.preferencesAttachmentThreshold' Zeichen
+ * werden nicht im Profildokument, sondern im Attachment 'preferences' abgelegt,
+ * bei 'server.preferencesAttachmentCompression = true' mit gzip komprimiert.
+ * Das Dokument enthält dann lediglich die Zeitstempel und den Stub des
+ * Attachments, sodass Lese- und Kontaktzugriffe auf die Metadaten die
+ * Preferences weder übertragen noch neu schreiben.
+ * 
+ * Das Attachment wird stets inline (Base64 im Feld 'data') mit demselben PUT
+ * wie das Dokument geschrieben, sodass Preferences im Dokument und Attachment
+ * in keiner Revision gemeinsam vorkommen. Enthält ein Dokument dennoch beides,
+ * so haben beim Lesen die Preferences im Dokument Vorrang.
+ * 
  * @author Lukas Struppek
  * @version 1.0
  * @see <a href="https://swagger.io/license/">Swagger License</a>
@@ -58,6 +112,47 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 	private static int port;
 	private static String database;
 	private static String url;
+	private static int attachmentThreshold;
+	private static boolean attachmentCompression;
+
+	/**
+	 * Name des Attachments, in welchem große Preferences abgelegt werden.
+	 */
+	private static final String ATTACHMENT = "preferences";
+
+	/**
+	 * Maximale Anzahl an Lesevorgängen eines Dokuments, dessen Attachment in der
+	 * gelesenen Revision nicht mehr vorhanden ist.
+	 */
+	private static final int MAX_ATTACHMENT_READS = 3;
+
+	/**
+	 * Content-Type komprimierter Attachments.
+	 */
+	private static final MediaType GZIP = MediaType.parseMediaType("application/gzip");
+
+	/**
+	 * Content-Type unkomprimierter Attachments.
+	 */
+	private static final MediaType PLAIN = new MediaType("text", "plain", StandardCharsets.UTF_8);
+
+	/**
+	 * RestTemplate für die Zugriffe auf CouchDB.
+	 */
+	@Autowired
+	private RestTemplate restTemplate;
+
+	/**
+	 * Cache für gelesene Profile.
+	 */
+	@Autowired
+	private ProfileCache profileCache;
+
+	/**
+	 * RequestFactory für schreibende Zugriffe mit gestreamtem Body.
+	 */
+	@Autowired
+	private StreamingRequestFactory streamingRequestFactory;
 
 	/**
 	 * Static-Block, welcher versucht, sich aus der Datei application.properties die
@@ -80,10 +175,14 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 			address = properties.getProperty("couchdb.adress");
 			port = Integer.valueOf(properties.getProperty("couchdb.port"));
 			database = properties.getProperty("couchdb.databaseName");
+			attachmentThreshold = Integer.valueOf(properties.getProperty("server.preferencesAttachmentThreshold"));
+			attachmentCompression = Boolean.valueOf(properties.getProperty("server.preferencesAttachmentCompression"));
 		} catch (Exception e) {
 			address = "http://localhost";
 			port = 5984;
 			database = "profiles";
+			attachmentThreshold = 0;
+			attachmentCompression = true;
 
 			e.printStackTrace();
 			System.out.println("Verbindungseinstellungen mit CouchDB auf default-Werte gesetzt");
@@ -165,27 +264,584 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 	 * Profil noch nicht in der Datenbank abgelegt ist, wird ein neues Dokument
 	 * entsprechend erstellt.
 	 * 
+	 * Große Preferences werden als Attachment gespeichert. Stimmt der Digest des
+	 * vorhandenen Attachments mit den Preferences überein, so wird lediglich das
+	 * Dokument mit den Metadaten neu geschrieben.
+	 * 
 	 * @param entity
 	 *            Zu speicherndes Profil.
 	 * @return Zu speicherndes Profil (entspricht Parameter).
 	 */
 	@Override
 	public <S extends Profile> S save(S entity) {
-		RestTemplate restTemplate = new RestTemplate();
 		try {
 			ProfileCouchDB dbProfile = restTemplate.getForObject(url + entity.get_id(), ProfileCouchDB.class);
 			dbProfile.setDetails(entity);
+			attachPreferences(dbProfile);
 			restTemplate.put(url + entity.get_id(), dbProfile);
 		} catch (HttpClientErrorException hcee) {
+			Object document = entity;
+			if (isAttachmentSize(entity.getPreferences())) {
+				ProfileCouchDB dbProfile = new ProfileCouchDB();
+				dbProfile.setDetails(entity);
+				attachPreferences(dbProfile);
+				document = dbProfile;
+			}
 			try {
-				restTemplate.put(url + entity.get_id(), entity);
+				restTemplate.put(url + entity.get_id(), document);
 			} catch (Exception e) {
-				restTemplate.put(url + entity.get_id(), entity);
+				restTemplate.put(url + entity.get_id(), document);
+			}
+		} finally {
+			profileCache.invalidate(entity.get_id());
+		}
+		return entity;
+	}
+
+	/**
+	 * Speichert das im Parameter übergebene Profil, wobei die Preferences
+	 * zeichenweise aus dem Reader in den Body des PUT kopiert werden. Die
+	 * Preferences liegen somit zu keinem Zeitpunkt vollständig als String oder
+	 * als serialisiertes Profil im Speicher.
+	 * 
+	 * Die aktuelle Revision wird über HEAD ermittelt. Ist das Profil nicht
+	 * vorhanden, so wird es ohne Revision angelegt. Da der Reader beim Schreiben
+	 * verbraucht wird, erfolgt bei einem Konflikt keine Wiederholung. Der PUT
+	 * läuft über die StreamingRequestFactory, sodass der Body ohne Pufferung
+	 * chunked an CouchDB geht.
+	 * 
+	 * Überschreiten die Preferences den Schwellwert für Attachments, so werden
+	 * sie kodiert und Base64-kodiert als inline Attachment in denselben Body
+	 * gestreamt. Gepuffert werden dabei höchstens Schwellwert + 1 Zeichen.
+	 * 
+	 * @param entity
+	 *            Zu speicherndes Profil.
+	 * @param preferences
+	 *            Zu speichernde Preferences.
+	 * @return Zu speicherndes Profil (entspricht Parameter).
+	 * @throws IOException
+	 *             Fehler beim Lesen der Preferences.
+	 */
+	@Override
+	public <S extends Profile> S save(S entity, Reader preferences) throws IOException {
+		boolean attached = false;
+		if (attachmentThreshold > 0) {
+			PushbackReader pushback = new PushbackReader(preferences, attachmentThreshold + 1);
+			char[] buffer = new char[attachmentThreshold + 1];
+			int length = 0;
+			int read;
+			while (length < buffer.length && (read = pushback.read(buffer, length, buffer.length - length)) != -1) {
+				length += read;
+			}
+			pushback.unread(buffer, 0, length);
+			preferences = pushback;
+			attached = length > attachmentThreshold;
+		}
+		LinkedHashMap<String, Object> envelope = new LinkedHashMap<>();
+		envelope.put("_id", entity.get_id());
+		String rev = currentRevision(entity.get_id());
+		if (rev != null) {
+			envelope.put("_rev", rev);
+		}
+		envelope.put("lastProfileChange", entity.getLastProfileChange());
+		envelope.put("lastProfileContact", entity.getLastProfileContact());
+		try {
+			if (attached) {
+				putAttached(entity.get_id(), envelope, preferences);
+			} else {
+				putInline(entity.get_id(), envelope, preferences);
+			}
+		} finally {
+			profileCache.invalidate(entity.get_id());
+		}
+		return entity;
+	}
+
+	/**
+	 * Schreibt das Dokument mit einem PUT, wobei die Preferences maskiert hinter
+	 * die Felder des Umschlags kopiert werden.
+	 */
+	private void putInline(String id, LinkedHashMap<String, Object> envelope, Reader preferences)
+			throws IOException {
+		byte[] head = objectMapper().writeValueAsBytes(envelope);
+		putStreaming(URI.create(url + id), request -> {
+			request.getHeaders().setContentType(MediaType.APPLICATION_JSON_UTF8);
+			OutputStream body = request.getBody();
+			// Schließende Klammer durch das Feld preferences ersetzen
+			body.write(head, 0, head.length - 1);
+			Writer writer = new OutputStreamWriter(body, StandardCharsets.UTF_8);
+			writer.write(",\"preferences\":\"");
+			writeJsonEscaped(preferences, writer);
+			writer.write("\"}");
+			writer.flush();
+		});
+	}
+
+	/**
+	 * Schreibt das Dokument mit einem PUT, wobei die Preferences kodiert und
+	 * Base64-kodiert als inline Attachment hinter die Felder des Umschlags
+	 * kopiert werden.
+	 */
+	private void putAttached(String id, LinkedHashMap<String, Object> envelope, Reader preferences)
+			throws IOException {
+		byte[] head = objectMapper().writeValueAsBytes(envelope);
+		putStreaming(URI.create(url + id), request -> {
+			request.getHeaders().setContentType(MediaType.APPLICATION_JSON_UTF8);
+			OutputStream body = request.getBody();
+			// Schließende Klammer durch das Feld _attachments ersetzen
+			body.write(head, 0, head.length - 1);
+			body.write((",\"_attachments\":{\"" + ATTACHMENT + "\":{\"content_type\":\"" + attachmentContentType()
+					+ "\",\"data\":\"").getBytes(StandardCharsets.UTF_8));
+			OutputStream data = Base64.getEncoder().wrap(StreamUtils.nonClosing(body));
+			encodePreferences(preferences, data);
+			// Schreibt die restlichen Zeichen und das Padding
+			data.close();
+			body.write("\"}}}".getBytes(StandardCharsets.UTF_8));
+		});
+	}
+
+	/**
+	 * Führt einen PUT über die StreamingRequestFactory aus. Fehler werden wie vom
+	 * RestTemplate gemeldet: Verbindungsfehler und Fehler beim Schreiben des Body
+	 * als ResourceAccessException, Statuscodes ab 400 über den ErrorHandler des
+	 * RestTemplates.
+	 * 
+	 * @return Antwort von CouchDB mit der neuen Revision.
+	 */
+	private JsonNode putStreaming(URI uri, RequestCallback body) {
+		ClientHttpRequest request = null;
+		try {
+			request = streamingRequestFactory.createRequest(uri, HttpMethod.PUT);
+			body.doWithRequest(request);
+			try (ClientHttpResponse response = request.execute()) {
+				ResponseErrorHandler errorHandler = restTemplate.getErrorHandler();
+				if (errorHandler.hasError(response)) {
+					errorHandler.handleError(response);
+				}
+				return objectMapper().readTree(response.getBody());
+			}
+		} catch (IOException e) {
+			throw new ResourceAccessException("I/O error on PUT request for \"" + uri + "\": " + e.getMessage(), e);
+		} finally {
+			if (request instanceof Closeable) {
+				try {
+					((Closeable) request).close();
+				} catch (IOException e) {
+					// Zugriff ist bereits abgeschlossen
+				}
+			}
+		}
+	}
+
+	/**
+	 * Ermittelt die aktuelle Revision eines Dokuments über HEAD.
+	 * 
+	 * @return Revision oder null, falls das Dokument nicht existiert.
+	 */
+	private String currentRevision(String id) {
+		try {
+			String etag = restTemplate.headForHeaders(url + id).getETag();
+			return etag == null ? null : etag.replace("\"", "");
+		} catch (HttpClientErrorException e) {
+			if (e.getStatusCode() != HttpStatus.NOT_FOUND) {
+				throw e;
+			}
+			return null;
+		}
+	}
+
+	/**
+	 * Prüft, ob Preferences den Schwellwert für Attachments überschreiten.
+	 */
+	private static boolean isAttachmentSize(String preferences) {
+		return attachmentThreshold > 0 && preferences != null && preferences.length() > attachmentThreshold;
+	}
+
+	/**
+	 * Bereitet ein Dokument für das Speichern vor. Große Preferences werden aus
+	 * dem Dokument entfernt und, sofern sich der Digest des vorhandenen
+	 * Attachments von dem der kodierten Preferences unterscheidet, als inline
+	 * Attachment eingefügt. Andernfalls behält das Dokument den Stub des
+	 * vorhandenen Attachments. Kleine Preferences verbleiben im Dokument, ein
+	 * vorhandenes Attachment entfällt mit dem folgenden PUT.
+	 */
+	private void attachPreferences(ProfileCouchDB dbProfile) {
+		ObjectNode attachments = dbProfile.get_attachments();
+		if (isAttachmentSize(dbProfile.getPreferences()) == false) {
+			if (attachments != null) {
+				attachments.remove(ATTACHMENT);
+				dbProfile.set_attachments(attachments.size() == 0 ? null : attachments);
+			}
+			return;
+		}
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		try {
+			encodePreferences(new StringReader(dbProfile.getPreferences()), content);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		byte[] bytes = content.toByteArray();
+		JsonNode stub = attachments == null ? null : attachments.get(ATTACHMENT);
+		if (attachments == null) {
+			attachments = JsonNodeFactory.instance.objectNode();
+		}
+		if (stub == null || digest(bytes).equals(stub.path("digest").asText()) == false) {
+			attachments.putObject(ATTACHMENT).put("content_type", attachmentContentType()).put("data",
+					Base64.getEncoder().encodeToString(bytes));
+		}
+		dbProfile.set_attachments(attachments);
+		dbProfile.setPreferences(null);
+	}
+
+	/**
+	 * Content-Type, mit welchem Attachments geschrieben werden.
+	 */
+	private static String attachmentContentType() {
+		return (attachmentCompression ? GZIP : PLAIN).toString();
+	}
+
+	/**
+	 * Kodiert Preferences als UTF-8 und komprimiert sie, sofern die Kompression
+	 * von Attachments aktiviert ist. Der Zielstream wird nicht geschlossen.
+	 * 
+	 * @param in
+	 *            Zu kodierende Preferences.
+	 * @param out
+	 *            Ziel der kodierten Bytes.
+	 * @throws IOException
+	 *             Fehler beim Lesen oder Schreiben.
+	 */
+	static void encodePreferences(Reader in, OutputStream out) throws IOException {
+		GZIPOutputStream gzip = attachmentCompression ? new GZIPOutputStream(out, 8192) : null;
+		Writer writer = new OutputStreamWriter(gzip == null ? out : gzip, StandardCharsets.UTF_8);
+		char[] buffer = new char[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			writer.write(buffer, 0, read);
+		}
+		writer.flush();
+		if (gzip != null) {
+			gzip.finish();
+		}
+	}
+
+	/**
+	 * Berechnet den Digest im Format der Attachment-Stubs von CouchDB.
+	 * 
+	 * @param content
+	 *            Gespeicherte Bytes des Attachments.
+	 * @return Digest der Form 'md5-{Base64}'.
+	 */
+	static String digest(byte[] content) {
+		try {
+			return "md5-" + Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(content));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Fehler für ein Attachment, welches in keiner der gelesenen Revisionen
+	 * vorhanden war. Das Profil selbst existiert, der Fehler wird daher nicht als
+	 * 404 gemeldet.
+	 */
+	private static ResourceAccessException attachmentMissing(String id, HttpClientErrorException e) {
+		return new ResourceAccessException("Attachment von Profil " + id + " in " + MAX_ATTACHMENT_READS
+				+ " gelesenen Revisionen nicht vorhanden", new IOException(e));
+	}
+
+	/**
+	 * Adresse des Attachments in der übergebenen Revision des Dokuments.
+	 */
+	private static URI attachmentUri(String id, String rev) {
+		return UriComponentsBuilder.fromHttpUrl(url + id + "/" + ATTACHMENT).queryParam("rev", rev).build().encode()
+				.toUri();
+	}
+
+	/**
+	 * Liest das Attachment einer Revision des Dokuments vollständig als String.
+	 */
+	private String readAttachment(String id, String rev) {
+		return restTemplate.execute(attachmentUri(id, rev), HttpMethod.GET, null, response -> {
+			ByteArrayOutputStream content = new ByteArrayOutputStream();
+			copyAttachment(response, content);
+			return new String(content.toByteArray(), StandardCharsets.UTF_8);
+		});
+	}
+
+	/**
+	 * Kopiert den Inhalt eines Attachments und entpackt ihn anhand des
+	 * Content-Type bei Bedarf.
+	 */
+	private static void copyAttachment(ClientHttpResponse response, OutputStream out) throws IOException {
+		InputStream in = response.getBody();
+		if (GZIP.includes(response.getHeaders().getContentType())) {
+			in = new GZIPInputStream(in, 8192);
+		}
+		StreamUtils.copy(in, out);
+	}
+
+	/**
+	 * Liest ein Profil und schreibt dessen Preferences direkt in den übergebenen
+	 * Stream. Ist der Cache aktiv, so werden die Preferences dem
+	 * zwischengespeicherten bzw. dabei gelesenen Profil entnommen. Andernfalls
+	 * wird das Dokument mit einem Streaming-Parser gelesen: Die vor den
+	 * Preferences stehenden Zeitstempel werden dem Filter übergeben, die
+	 * maskierten Bytes der Preferences anschließend ohne Umweg über einen String
+	 * aus der Antwort von CouchDB kopiert.
+	 * 
+	 * Stehen die Preferences wider Erwarten vor den Zeitstempeln im Dokument, so
+	 * werden sie zwischengespeichert, bis die Zeitstempel gelesen sind. Enthält
+	 * das Dokument statt der Preferences den Stub des Attachments, so wird das
+	 * Attachment der gelesenen Revision im Anschluss abgerufen und entpackt in
+	 * den Stream kopiert. Ist es in dieser Revision nicht mehr vorhanden, etwa
+	 * weil zwischenzeitlich ein Push das Dokument ersetzt hat, so wird das
+	 * Dokument erneut gelesen. Wie bei fetch(String) haben Preferences im
+	 * Dokument Vorrang vor dem Attachment.
+	 * 
+	 * @param id
+	 *            ProfileId des Profils.
+	 * @param filter
+	 *            Entscheidet anhand der Metadaten, ob die Preferences geschrieben
+	 *            werden.
+	 * @param out
+	 *            Ziel der Preferences.
+	 * @return Profil ohne Preferences oder null.
+	 * @throws IOException
+	 *             Fehler beim Schreiben der Preferences.
+	 */
+	@Override
+	public Profile streamPreferences(String id, Predicate<Profile> filter, OutputStream out) throws IOException {
+		if (profileCache.isActive()) {
+			Profile profile = findOne(id);
+			if (profile == null) {
+				return null;
+			}
+			String preferences = profile.getPreferences();
+			profile.setPreferences(null);
+			if (filter.test(profile) && preferences != null) {
+				out.write(preferences.getBytes(StandardCharsets.UTF_8));
+			}
+			return profile;
+		}
+		for (int reads = 1;; ++reads) {
+			ProfileCouchDB profile;
+			try {
+				profile = restTemplate.execute(url + id, HttpMethod.GET, null,
+						response -> readPreferences(response.getBody(), filter, out));
+			} catch (HttpClientErrorException e) {
+				if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+					return null;
+				}
+				throw e;
 			}
+			if (profile.get_attachments() == null) {
+				return profile;
+			}
+			try {
+				restTemplate.execute(attachmentUri(id, profile.get_rev()), HttpMethod.GET, null, response -> {
+					copyAttachment(response, out);
+					return null;
+				});
+			} catch (HttpClientErrorException e) {
+				if (e.getStatusCode() != HttpStatus.NOT_FOUND) {
+					throw e;
+				}
+				if (reads >= MAX_ATTACHMENT_READS) {
+					throw attachmentMissing(id, e);
+				}
+				continue;
+			}
+			profile.set_attachments(null);
+			return profile;
+		}
+	}
+
+	/**
+	 * Liest ein Profildokument aus dem Stream und kopiert die Preferences gemäß
+	 * streamPreferences(String, Predicate, OutputStream). Sind die Preferences
+	 * als Attachment gespeichert und lässt der Filter sie zu, so enthält das
+	 * gelieferte Profil die Attachment-Stubs und die Revision des Dokuments.
+	 */
+	private ProfileCouchDB readPreferences(InputStream in, Predicate<Profile> filter, OutputStream out)
+			throws IOException {
+		ObjectMapper mapper = objectMapper();
+		ProfileCouchDB profile = new ProfileCouchDB();
+		profile.setPreferences(null);
+		boolean changeRead = false;
+		boolean contactRead = false;
+		String bufferedPreferences = null;
+		JsonNode attachments = null;
+		JsonParser parser = mapper.getFactory().createParser(in);
+		try {
+			parser.disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+			if (parser.nextToken() != JsonToken.START_OBJECT) {
+				throw new IOException("Profildokument ist kein JSON-Objekt");
+			}
+			while (parser.nextToken() == JsonToken.FIELD_NAME) {
+				String field = parser.getCurrentName();
+				JsonToken value = parser.nextToken();
+				if ("_id".equals(field)) {
+					profile.set_id(parser.getText());
+				} else if ("_rev".equals(field)) {
+					profile.set_rev(parser.getText());
+				} else if ("lastProfileChange".equals(field)) {
+					profile.setLastProfileChange(mapper.readValue(parser, Date.class));
+					changeRead = true;
+				} else if ("lastProfileContact".equals(field)) {
+					profile.setLastProfileContact(mapper.readValue(parser, Date.class));
+					contactRead = true;
+				} else if ("preferences".equals(field) && value == JsonToken.VALUE_STRING) {
+					if (changeRead == false || contactRead == false) {
+						bufferedPreferences = parser.getText();
+						continue;
+					}
+					if (filter.test(profile)) {
+						// Parser steht hinter dem öffnenden Anführungszeichen, der String
+						// selbst wurde noch nicht dekodiert
+						ByteArrayOutputStream buffered = new ByteArrayOutputStream();
+						parser.releaseBuffered(buffered);
+						JsonStringCopier.copy(
+								new SequenceInputStream(new ByteArrayInputStream(buffered.toByteArray()), in), out);
+					}
+					return profile;
+				} else if ("_attachments".equals(field) && value == JsonToken.START_OBJECT) {
+					attachments = mapper.readTree(parser);
+				} else {
+					parser.skipChildren();
+				}
+			}
+		} finally {
+			parser.close();
+		}
+		if (filter.test(profile)) {
+			if (bufferedPreferences != null) {
+				out.write(bufferedPreferences.getBytes(StandardCharsets.UTF_8));
+			} else if (attachments != null && attachments.has(ATTACHMENT)) {
+				profile.set_attachments((ObjectNode) attachments);
+			}
+		}
+		return profile;
+	}
+
+	/**
+	 * Kopiert Zeichen aus einem Reader und maskiert sie dabei für die Verwendung
+	 * innerhalb eines JSON-Strings. Maskiert werden wie von Jackson lediglich
+	 * Anführungszeichen, Backslashes und Steuerzeichen.
+	 * 
+	 * @param in
+	 *            Zu kopierende Zeichen.
+	 * @param out
+	 *            Ziel der maskierten Zeichen.
+	 * @throws IOException
+	 *             Fehler beim Lesen oder Schreiben.
+	 */
+	static void writeJsonEscaped(Reader in, Writer out) throws IOException {
+		char[] buffer = new char[4096];
+		int read;
+		while ((read = in.read(buffer)) != -1) {
+			int start = 0;
+			for (int i = 0; i < read; i++) {
+				char c = buffer[i];
+				if (c >= 0x20 && c != '"' && c != '\\') {
+					continue;
+				}
+				out.write(buffer, start, i - start);
+				start = i + 1;
+				switch (c) {
+				case '"':
+					out.write("\\\"");
+					break;
+				case '\\':
+					out.write("\\\\");
+					break;
+				case '\b':
+					out.write("\\b");
+					break;
+				case '\f':
+					out.write("\\f");
+					break;
+				case '\n':
+					out.write("\\n");
+					break;
+				case '\r':
+					out.write("\\r");
+					break;
+				case '\t':
+					out.write("\\t");
+					break;
+				default:
+					out.write(String.format("\\u%04X", (int) c));
+				}
+			}
+			out.write(buffer, start, read - start);
+		}
+	}
+
+	/**
+	 * Liefert den ObjectMapper, mit welchem das RestTemplate Profile
+	 * serialisiert. Zeitpunkte werden somit im selben Format geschrieben wie bei
+	 * save(Profile).
+	 */
+	private ObjectMapper objectMapper() {
+		for (HttpMessageConverter<?> converter : restTemplate.getMessageConverters()) {
+			if (converter instanceof MappingJackson2HttpMessageConverter) {
+				return ((MappingJackson2HttpMessageConverter) converter).getObjectMapper();
+			}
+		}
+		return new ObjectMapper();
+	}
+
+	/**
+	 * Legt das im Parameter übergebene Profil mit einem einzelnen PUT ohne
+	 * Revision an. Existiert bereits ein Dokument mit derselben ProfileId, so
+	 * lehnt CouchDB das Anlegen mit 409 Conflict ab.
+	 * 
+	 * @param entity
+	 *            Anzulegendes Profil.
+	 * @return Angelegtes Profil (entspricht Parameter).
+	 * @throws ProfileAlreadyExistsException
+	 *             ProfileId bereits vergeben.
+	 */
+	@Override
+	public <S extends Profile> S insert(S entity) throws ProfileAlreadyExistsException {
+		try {
+			restTemplate.put(url + entity.get_id(), entity);
+		} catch (HttpClientErrorException e) {
+			if (e.getStatusCode() == HttpStatus.CONFLICT) {
+				throw new ProfileAlreadyExistsException("UserID wird bereits in einem bestehenden Profil verwendet.");
+			}
+			throw e;
 		}
 		return entity;
 	}
 
+	/**
+	 * Legt die übergebenen Profile mit einem einzelnen Aufruf von _bulk_docs ohne
+	 * Revision an. CouchDB meldet für bereits vorhandene Dokumente je Dokument
+	 * einen Konflikt, diese Profile werden ausgelassen.
+	 * 
+	 * @param entities
+	 *            Anzulegende Profile.
+	 * @return ProfileIds der tatsächlich angelegten Profile.
+	 */
+	@Override
+	public List<String> insertAll(List<? extends Profile> entities) {
+		List<String> inserted = new ArrayList<>();
+		if (entities.isEmpty()) {
+			return inserted;
+		}
+		HashMap<String, Object> request = new HashMap<>();
+		request.put("docs", entities);
+		JsonNode results = restTemplate.postForObject(url + "_bulk_docs", request, JsonNode.class);
+		for (JsonNode result : results) {
+			if (result.has("error") == false) {
+				inserted.add(result.path("id").asText());
+			}
+		}
+		return inserted;
+	}
+
 	/**
 	 * Speichert eine Liste mit Profilen in der Datenbank. Für jedes einzelne Profil
 	 * wird auf die Methode save(Profile) der Klasse zurückgegriffen.
@@ -213,10 +869,9 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 	 */
 	@Override
 	public Profile findOne(String id) {
-		RestTemplate restTemplate = new RestTemplate();
 		Profile profile;
 		try {
-			profile = restTemplate.getForObject(url + id, Profile.class);
+			profile = fetch(id);
 		} catch (HttpClientErrorException e) {
 			profile = null;
 		}
@@ -225,7 +880,8 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 
 	/**
 	 * Sucht in der Datenbank nach einem Profil mit der im Parameter spezifizierten
-	 * ProfileId und prüft dessen Existenz.
+	 * ProfileId und prüft dessen Existenz. Ist das Profil nicht im Cache
+	 * vorhanden, so genügt ein HEAD auf das Dokument.
 	 * 
 	 * @param id
 	 *            ProfileId des zu suchenden Profils.
@@ -233,15 +889,14 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 	 */
 	@Override
 	public boolean exists(String id) {
-		RestTemplate restTemplate = new RestTemplate();
-		Profile profile;
+		if (profileCache.get(id) != null) {
+			return true;
+		}
 		try {
-			profile = restTemplate.getForObject(url + id, Profile.class);
+			return currentRevision(id) != null;
 		} catch (HttpClientErrorException e) {
-			profile = null;
+			return false;
 		}
-		boolean exists = (profile != null);
-		return exists;
 	}
 
 	/**
@@ -254,7 +909,6 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 	 */
 	@Override
 	public Iterable<Profile> findAll() {
-		RestTemplate restTemplate = new RestTemplate();
 		AllProfiles allProfiles = new AllProfiles();
 		List<Profile> list = new ArrayList<Profile>();
 
@@ -298,7 +952,6 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 	 */
 	@Override
 	public long count() throws HttpClientErrorException {
-		RestTemplate restTemplate = new RestTemplate();
 		long counter = 0L;
 		AllProfiles allProfiles = restTemplate.getForObject(url + "_all_docs", AllProfiles.class);
 		counter = allProfiles.getTotal_rows();
@@ -317,19 +970,35 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 	 */
 	@Override
 	public void delete(String id) {
-		RestTemplate restTemplate = new RestTemplate();
 		try {
 			String rev = restTemplate.getForEntity(url + id, Profile.class).getHeaders().get("etag").get(0);
 			rev = rev.substring(1, rev.length() - 1);
+			deleteRevision(id, rev);
+		} catch (HttpClientErrorException e) {
+			throw new ProfileNotFoundException(e.getMessage());
+		} catch (HttpServerErrorException e) {
+		}
+	}
+
+	/**
+	 * Löscht die übergebene Revision eines Profils und entfernt diese
+	 * anschließend mittels _purge endgültig aus der Datenbank.
+	 * 
+	 * @param id
+	 *            ProfileId des zu löschenden Profils.
+	 * @param rev
+	 *            Aktuelle Revision des zu löschenden Profils.
+	 */
+	private void deleteRevision(String id, String rev) {
+		try {
 			UriComponentsBuilder builder = UriComponentsBuilder.fromHttpUrl(url + id).queryParam("rev", rev);
 			restTemplate.delete(builder.build().encode().toUri());
 			HashMap<String, String[]> hashMap = new HashMap<String, String[]>();
 			hashMap.put(id, new String[] { rev });
 			ResponseEntity<String> response = restTemplate.postForEntity(url + "_purge", hashMap, String.class);
 			System.out.println(response.getBody());
-		} catch (HttpClientErrorException e) {
-			throw new ProfileNotFoundException(e.getMessage());
-		} catch (HttpServerErrorException e) {
+		} finally {
+			profileCache.invalidate(id);
 		}
 	}
 
@@ -338,12 +1007,26 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 	 * falls vorhanden. Der Löschvorgang entspricht dem des Methodenaufrufs von
 	 * delete(String id).
 	 * 
+	 * Handelt es sich um ein ProfileCouchDB mit bekannter Revision, so entfällt
+	 * der vorherige Abruf des Profils. Wurde das Profil seit dem Abruf der
+	 * Revision verändert, so wird es nicht gelöscht und eine
+	 * ProfileNotFoundException geworfen.
+	 * 
 	 * @param entity
 	 *            Profil, welches aus der DB gelöscht werden soll.
 	 */
 	@Override
 	public void delete(Profile entity) {
-		this.delete(entity.get_id());
+		if (entity instanceof ProfileCouchDB && ((ProfileCouchDB) entity).get_rev() != null) {
+			try {
+				deleteRevision(entity.get_id(), ((ProfileCouchDB) entity).get_rev());
+			} catch (HttpClientErrorException e) {
+				throw new ProfileNotFoundException(e.getMessage());
+			} catch (HttpServerErrorException e) {
+			}
+		} else {
+			this.delete(entity.get_id());
+		}
 	}
 
 	/**
@@ -391,7 +1074,9 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 	/**
 	 * Sucht alle Profile, welche einen lastProfileContact vor dem im Parameter
 	 * spezifizierten Zeitpunkt besitzen. Entsprechende Profile werden
-	 * zurückgeliefert.
+	 * zurückgeliefert. Die Suche erfolgt seitenweise über
+	 * findPageByLastProfileContactBefore(Date, String, int), die Preferences der
+	 * Profile werden daher nicht geladen.
 	 * 
 	 * @param date
 	 *            lastProfileContact, gemäß welchem die Profile gesucht werden.
@@ -401,14 +1086,54 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 	@Override
 	public List<Profile> findAllByLastProfileContactBefore(Date date) {
 		List<Profile> list = new ArrayList<Profile>();
-		for (Profile profile : this.findAll()) {
-			if (profile.getLastProfileContact().before(date) == true) {
-				list.add(profile);
+		List<Profile> page;
+		String startAfterId = "";
+		do {
+			page = this.findPageByLastProfileContactBefore(date, startAfterId, 1000);
+			list.addAll(page);
+			if (page.isEmpty() == false) {
+				startAfterId = page.get(page.size() - 1).get_id();
 			}
-		}
+		} while (page.size() == 1000);
 		return list;
 	}
 
+	/**
+	 * Sucht mithilfe des _find-Endpunkts von CouchDB eine Seite von Profilen,
+	 * welche einen lastProfileContact vor dem im Parameter spezifizierten
+	 * Zeitpunkt besitzen. Es werden lediglich die Felder _id, _rev,
+	 * lastProfileChange und lastProfileContact abgerufen. Die zurückgelieferten
+	 * Profile sind Instanzen von ProfileCouchDB und enthalten die Revision, sodass
+	 * sie ohne erneuten Abruf gelöscht werden können.
+	 * 
+	 * @param date
+	 *            lastProfileContact, gemäß welchem die Profile gesucht werden.
+	 * @param startAfterId
+	 *            ProfileId, nach welcher die Seite beginnt.
+	 * @param limit
+	 *            Maximale Anzahl an Profilen der Seite.
+	 * @return Aufsteigend nach ProfileId sortierte Seite von Profilen.
+	 */
+	@Override
+	public List<Profile> findPageByLastProfileContactBefore(Date date, String startAfterId, int limit) {
+		HashMap<String, Object> idCondition = new HashMap<String, Object>();
+		idCondition.put("$gt", startAfterId == null ? "" : startAfterId);
+		HashMap<String, Object> contactCondition = new HashMap<String, Object>();
+		contactCondition.put("$lt", date.getTime());
+		HashMap<String, Object> selector = new HashMap<String, Object>();
+		selector.put("_id", idCondition);
+		selector.put("lastProfileContact", contactCondition);
+
+		HashMap<String, Object> query = new HashMap<String, Object>();
+		query.put("selector", selector);
+		query.put("fields", Arrays.asList("_id", "_rev", "lastProfileChange", "lastProfileContact"));
+		query.put("sort", Collections.singletonList(Collections.singletonMap("_id", "asc")));
+		query.put("limit", limit);
+
+		FoundProfiles foundProfiles = restTemplate.postForObject(url + "_find", query, FoundProfiles.class);
+		return new ArrayList<Profile>(foundProfiles.getDocs());
+	}
+
 	/**
 	 * Sucht nach einem Profil mit der im Parameter spezifizierten Id und liefert,
 	 * sofern vorhanden, den Wert von lastProfileContact zurück.
@@ -420,10 +1145,9 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 	 */
 	@Override
 	public Date findLastProfileContactById(String id) {
-		RestTemplate restTemplate = new RestTemplate();
 		Profile profile = new Profile();
 		try {
-			profile = restTemplate.getForObject(url + id, Profile.class);
+			profile = fetchMetadata(id);
 		} catch (HttpClientErrorException e) {
 			throw new ProfileNotFoundException(e.getMessage());
 		}
@@ -443,10 +1167,9 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 	 */
 	@Override
 	public Date findLastProfileChangeById(String id) throws ProfileNotFoundException {
-		RestTemplate restTemplate = new RestTemplate();
 		Profile profile = new Profile();
 		try {
-			profile = restTemplate.getForObject(url + id, Profile.class);
+			profile = fetchMetadata(id);
 		} catch (HttpClientErrorException e) {
 			throw new ProfileNotFoundException(e.getMessage());
 		}
@@ -455,6 +1178,59 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 		return lastProfileChange;
 	}
 
+	/**
+	 * Sucht nach einem Profil mit der im Parameter spezifizierten Id und liefert
+	 * dessen Metadaten ohne Preferences zurück. Wird kein Profil gefunden, so
+	 * wird null zurückgeliefert.
+	 * 
+	 * @param id
+	 *            ProfileId des zu suchenden Profils.
+	 * @return Profil ohne Preferences oder null.
+	 */
+	@Override
+	public Profile findMetadataById(String id) {
+		try {
+			return fetchMetadata(id);
+		} catch (HttpClientErrorException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Schreibt den Zeitpunkt lastProfileContact in das Profildokument. Das
+	 * Dokument wird dazu ohne Attachment gelesen und mit geändertem Zeitpunkt
+	 * zurückgeschrieben. Ein vorhandenes Attachment bleibt über dessen Stub
+	 * erhalten, die Preferences werden somit weder übertragen noch neu kodiert.
+	 * 
+	 * Schlägt das Schreiben mit 409 Conflict fehl, so wurde das Profil zwischen
+	 * Lesen und Schreiben verändert. Da jeder Schreibzugriff selbst einem
+	 * Kontakt entspricht, wird der Konflikt ignoriert.
+	 * 
+	 * @param id
+	 *            ProfileId des Profils.
+	 * @param lastProfileContact
+	 *            Neuer Zeitpunkt lastProfileContact.
+	 * @throws ProfileNotFoundException
+	 *             Kein Profil mit entsprechender ID gefunden.
+	 */
+	@Override
+	public void updateLastProfileContactById(String id, Date lastProfileContact) throws ProfileNotFoundException {
+		try {
+			ProfileCouchDB document = restTemplate.getForObject(url + id, ProfileCouchDB.class);
+			document.setLastProfileContact(lastProfileContact);
+			restTemplate.put(url + id, document);
+		} catch (HttpClientErrorException e) {
+			if (e.getStatusCode() == HttpStatus.NOT_FOUND) {
+				throw new ProfileNotFoundException(e.getMessage());
+			}
+			if (e.getStatusCode() != HttpStatus.CONFLICT) {
+				throw e;
+			}
+		} finally {
+			profileCache.invalidate(id);
+		}
+	}
+
 	/**
 	 * Sucht nach einem Profil mit der im Parameter spezifizierten Id und liefert,
 	 * sofern vorhanden, den Wert von preferences zurück.
@@ -466,10 +1242,9 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 	 */
 	@Override
 	public String findPreferencesById(String id) throws ProfileNotFoundException {
-		RestTemplate restTemplate = new RestTemplate();
 		Profile profile = new Profile();
 		try {
-			profile = restTemplate.getForObject(url + id, Profile.class);
+			profile = fetch(id);
 		} catch (HttpClientErrorException e) {
 			throw new ProfileNotFoundException(e.getMessage());
 		}
@@ -478,13 +1253,90 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 		return preferences;
 	}
 
+	/**
+	 * Liest ein Profil aus dem ProfileCache oder, falls es dort nicht vorhanden
+	 * ist, aus der Datenbank und legt es anschließend im Cache ab. Als Attachment
+	 * gespeicherte Preferences werden dabei aus der gelesenen Revision
+	 * nachgeladen, sofern das Dokument selbst keine Preferences enthält. Ist das
+	 * Attachment in dieser Revision nicht mehr vorhanden, so wird das Dokument
+	 * erneut gelesen.
+	 * 
+	 * @param id
+	 *            ProfileId des gesuchten Profils.
+	 * @return Gelesenes Profil.
+	 * @throws HttpClientErrorException
+	 *             Profil ist nicht in der Datenbank vorhanden.
+	 */
+	private Profile fetch(String id) throws HttpClientErrorException {
+		Profile profile = profileCache.get(id);
+		if (profile != null) {
+			return profile;
+		}
+		long epoch = profileCache.epoch();
+		ProfileCouchDB document;
+		String preferences;
+		for (int reads = 1;; ++reads) {
+			document = restTemplate.getForObject(url + id, ProfileCouchDB.class);
+			preferences = document.getPreferences();
+			if (hasAttachment(document) == false) {
+				break;
+			}
+			try {
+				preferences = readAttachment(id, document.get_rev());
+				break;
+			} catch (HttpClientErrorException e) {
+				if (e.getStatusCode() != HttpStatus.NOT_FOUND) {
+					throw e;
+				}
+				if (reads >= MAX_ATTACHMENT_READS) {
+					throw attachmentMissing(id, e);
+				}
+			}
+		}
+		profile = new Profile(document.get_id(), document.getLastProfileChange(), document.getLastProfileContact(),
+				preferences);
+		profileCache.put(id, profile, epoch);
+		return profile;
+	}
+
+	/**
+	 * Liest die Metadaten eines Profils aus dem ProfileCache oder aus der
+	 * Datenbank. Das Dokument wird dabei wie bei streamPreferences(String,
+	 * Predicate, OutputStream) mit einem Streaming-Parser gelesen, welcher hinter
+	 * den Zeitstempeln abbricht. Die Preferences werden somit weder als String
+	 * aufgebaut noch aus dem Attachment geladen, das gelieferte Profil enthält
+	 * keine Preferences und wird nicht im Cache abgelegt.
+	 * 
+	 * @param id
+	 *            ProfileId des gesuchten Profils.
+	 * @return Gelesenes Profil ohne Preferences.
+	 * @throws HttpClientErrorException
+	 *             Profil ist nicht in der Datenbank vorhanden.
+	 */
+	private Profile fetchMetadata(String id) throws HttpClientErrorException {
+		Profile profile = profileCache.get(id);
+		if (profile == null) {
+			profile = restTemplate.execute(url + id, HttpMethod.GET, null,
+					response -> readPreferences(response.getBody(), metadata -> false, new ByteArrayOutputStream()));
+		}
+		return new Profile(profile.get_id(), profile.getLastProfileChange(), profile.getLastProfileContact(), null);
+	}
+
+	/**
+	 * Prüft, ob die Preferences eines Dokuments als Attachment gespeichert sind.
+	 * Enthält das Dokument zusätzlich Preferences, so haben diese Vorrang.
+	 */
+	private static boolean hasAttachment(ProfileCouchDB document) {
+		return document.getPreferences() == null && document.get_attachments() != null
+				&& document.get_attachments().has(ATTACHMENT);
+	}
+
 	/**
 	 * Prüft, ob im angebundenen CouchDB-System eine Datenbank mit dem spezifizierten Namen vorhanden ist.
 	 * @param databaseName Zu suchende Datenbank
 	 * @return Vorhandensein der Datenbank
 	 */
 	public boolean existsDatabase(String databaseName) {
-		RestTemplate restTemplate = new RestTemplate();
 		ResponseEntity<String> responseEntity = restTemplate.getForEntity(address + ":" + port + "/" + "_all_dbs",
 				String.class);
 		boolean isExisting = false;
@@ -507,7 +1359,6 @@ public class ProfileRepositoryCouchDBImpl implements ProfileRepository {
 	 * @throws Exception Datenbank bereits vorhanden oder System nicht erreichbar
 	 */
 	public String createDatabase(String databaseName) throws Exception {
-		RestTemplate restTemplate = new RestTemplate();
 		String url = address + ":" + port + "/" + databaseName;
 		ResponseEntity<String> responseEntity = restTemplate.exchange(url, HttpMethod.PUT, null, String.class);
 		return responseEntity.getBody();
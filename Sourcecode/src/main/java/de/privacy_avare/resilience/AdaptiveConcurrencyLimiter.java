@@ -0,0 +1,198 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptiver Limiter für die Anzahl gleichzeitiger Zugriffe auf CouchDB nach dem
+ * AIMD-Verfahren (Additive Increase, Multiplicative Decrease). Solange die
+ * Zugriffe schneller als die festgelegte Latenzschwelle beantwortet werden und
+ * das Limit ausgeschöpft wird, steigt das Limit um 1 je vollem Limit an
+ * Zugriffen. Überschreitet ein Zugriff die Schwelle oder schlägt er fehl, so
+ * wird das Limit mit dem Backoff-Faktor multipliziert, höchstens jedoch einmal
+ * je Latenzschwelle, damit eine einzelne Überlastphase das Limit nicht
+ * mehrfach reduziert.
+ * 
+ * Jede RequestPriority darf nur ihren Anteil am Limit belegen. Bei steigender
+ * Auslastung werden daher zuerst Zugriffe niedriger Priorität abgewiesen.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see RequestPriority
+ */
+public class AdaptiveConcurrencyLimiter {
+	private final int minLimit;
+	private final int maxLimit;
+	private final long latencyThresholdNanos;
+	private final double backoff;
+
+	/**
+	 * Aktuelles Limit gleichzeitiger Zugriffe.
+	 */
+	private double limit;
+
+	/**
+	 * Anzahl der laufenden Zugriffe.
+	 */
+	private int inFlight;
+
+	/**
+	 * Zeitpunkt (System.nanoTime()) der letzten Reduzierung des Limits.
+	 */
+	private long lastDecrease;
+
+	/**
+	 * Erzeugt einen neuen Limiter.
+	 * 
+	 * @param initialLimit
+	 *            Limit zu Beginn.
+	 * @param minLimit
+	 *            Untergrenze des Limits.
+	 * @param maxLimit
+	 *            Obergrenze des Limits.
+	 * @param latencyThresholdMillis
+	 *            Latenz in Millisekunden, ab welcher ein Zugriff als Überlast
+	 *            gewertet wird.
+	 * @param backoff
+	 *            Faktor zwischen 0 und 1, mit welchem das Limit bei Überlast
+	 *            multipliziert wird.
+	 */
+	public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, long latencyThresholdMillis,
+			double backoff) {
+		this.minLimit = Math.max(1, minLimit);
+		this.maxLimit = Math.max(this.minLimit, maxLimit);
+		this.latencyThresholdNanos = TimeUnit.MILLISECONDS.toNanos(latencyThresholdMillis);
+		this.backoff = backoff;
+		this.limit = Math.min(this.maxLimit, Math.max(this.minLimit, initialLimit));
+		this.lastDecrease = System.nanoTime() - this.latencyThresholdNanos;
+	}
+
+	/**
+	 * Prüft, ob ein Zugriff der angegebenen Priorität derzeit zugelassen würde.
+	 * 
+	 * @param priority
+	 *            Priorität des Zugriffs.
+	 * @return true, falls der Zugriff zugelassen würde.
+	 */
+	public synchronized boolean admits(RequestPriority priority) {
+		return inFlight < capacity(priority);
+	}
+
+	/**
+	 * Belegt ohne zu warten einen Platz für einen Zugriff der angegebenen
+	 * Priorität.
+	 * 
+	 * @param priority
+	 *            Priorität des Zugriffs.
+	 * @return true, falls der Zugriff zugelassen wurde. In diesem Fall muss
+	 *         anschließend release() aufgerufen werden.
+	 */
+	public synchronized boolean tryAcquire(RequestPriority priority) {
+		if (inFlight < capacity(priority)) {
+			inFlight++;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Belegt einen Platz für einen Zugriff der angegebenen Priorität und wartet
+	 * dafür höchstens die angegebene Zeit.
+	 * 
+	 * @param priority
+	 *            Priorität des Zugriffs.
+	 * @param timeoutMillis
+	 *            Maximale Wartezeit in Millisekunden.
+	 * @return true, falls der Zugriff zugelassen wurde. In diesem Fall muss
+	 *         anschließend release() aufgerufen werden.
+	 * @throws InterruptedException
+	 *             Thread wurde während des Wartens unterbrochen.
+	 */
+	public synchronized boolean acquire(RequestPriority priority, long timeoutMillis) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		while (inFlight >= capacity(priority)) {
+			long remaining = deadline - System.nanoTime();
+			if (remaining <= 0) {
+				return false;
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		inFlight++;
+		return true;
+	}
+
+	/**
+	 * Gibt den Platz eines abgeschlossenen Zugriffs frei und passt das Limit
+	 * anhand der beobachteten Latenz an.
+	 * 
+	 * @param latencyNanos
+	 *            Dauer des Zugriffs in Nanosekunden.
+	 * @param failed
+	 *            true, falls der Zugriff wegen Überlast fehlgeschlagen ist (z.B.
+	 *            Timeout oder 5xx).
+	 */
+	public synchronized void release(long latencyNanos, boolean failed) {
+		int concurrent = inFlight;
+		inFlight--;
+		if (failed || latencyNanos > latencyThresholdNanos) {
+			long now = System.nanoTime();
+			if (now - lastDecrease >= latencyThresholdNanos) {
+				limit = Math.max(minLimit, limit * backoff);
+				lastDecrease = now;
+			}
+		} else if (concurrent * 2 >= limit) {
+			limit = Math.min(maxLimit, limit + 1.0 / limit);
+		}
+		notifyAll();
+	}
+
+	/**
+	 * Gibt den Platz eines Zugriffs frei, welcher nicht an CouchDB gesendet wurde.
+	 * Das Limit bleibt unverändert.
+	 */
+	public synchronized void cancel() {
+		inFlight--;
+		notifyAll();
+	}
+
+	/**
+	 * Liefert das aktuelle Limit.
+	 * 
+	 * @return Limit gleichzeitiger Zugriffe.
+	 */
+	public synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	/**
+	 * Liefert die Anzahl der laufenden Zugriffe.
+	 * 
+	 * @return Laufende Zugriffe.
+	 */
+	public synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	/**
+	 * Anzahl gleichzeitiger Zugriffe, welche eine Priorität belegen darf.
+	 */
+	private int capacity(RequestPriority priority) {
+		return Math.max(1, (int) (limit * priority.getShare()));
+	}
+}
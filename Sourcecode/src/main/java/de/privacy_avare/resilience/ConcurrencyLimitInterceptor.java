@@ -0,0 +1,273 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.resilience;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import de.privacy_avare.config.DefaultProperties;
+import de.privacy_avare.exeption.ServiceOverloadedException;
+import de.privacy_avare.metrics.CouchDBMetricsInterceptor;
+
+/**
+ * Interceptor für das RestTemplate der CouchDB-Zugriffe, welcher jeden Zugriff
+ * durch den AdaptiveConcurrencyLimiter begrenzt. Die Priorität des Zugriffs
+ * ergibt sich aus der RequestPriority des aktuellen Threads.
+ * 
+ * Zugriffe aus Anfragen der Clients werden bei ausgeschöpftem Limit sofort mit
+ * einer ServiceOverloadedException abgewiesen. Hintergrundprozesse wie der
+ * Aufräumprozess warten dagegen bis zu 'couchdb.concurrencyMaxWait'
+ * Millisekunden auf einen freien Platz.
+ * 
+ * Timeouts, Verbindungsfehler sowie die Statuscodes 500, 502, 503 und 504
+ * werden als Überlast gewertet. Limit, laufende Zugriffe und abgewiesene
+ * Zugriffe je Priorität werden unter 'couchdb.concurrency.*' im
+ * Actuator-Endpunkt /metrics ausgegeben.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.config.CouchDBClientConfig
+ */
+@Component
+public class ConcurrencyLimitInterceptor implements ClientHttpRequestInterceptor, PublicMetrics {
+
+	private static boolean enabled;
+	private static int initialLimit;
+	private static int minLimit;
+	private static int maxLimit;
+	private static long latencyThreshold;
+	private static double backoff;
+	private static long maxWait;
+	private static long retryAfter;
+
+	/**
+	 * Static-Block, welcher aus application.properties die Einstellungen des
+	 * Limiters ausliest.
+	 */
+	static {
+		InputStream inputStream = null;
+		try {
+			inputStream = ConcurrencyLimitInterceptor.class.getResourceAsStream("/application.properties");
+			Properties properties = new Properties(new DefaultProperties());
+			properties.load(inputStream);
+
+			enabled = Boolean.valueOf(properties.getProperty("couchdb.concurrencyLimiting").trim());
+			initialLimit = Integer.valueOf(properties.getProperty("couchdb.concurrencyLimit"));
+			minLimit = Integer.valueOf(properties.getProperty("couchdb.concurrencyMinLimit"));
+			maxLimit = Integer.valueOf(properties.getProperty("couchdb.concurrencyMaxLimit"));
+			latencyThreshold = Long.valueOf(properties.getProperty("couchdb.concurrencyLatencyThreshold"));
+			backoff = Double.valueOf(properties.getProperty("couchdb.concurrencyBackoff"));
+			maxWait = Long.valueOf(properties.getProperty("couchdb.concurrencyMaxWait"));
+			retryAfter = Long.valueOf(properties.getProperty("server.retryAfter"));
+		} catch (Exception e) {
+			e.printStackTrace();
+			enabled = true;
+			initialLimit = 20;
+			minLimit = 4;
+			maxLimit = 200;
+			latencyThreshold = 250;
+			backoff = 0.9;
+			maxWait = 30000;
+			retryAfter = 1;
+		} finally {
+			try {
+				inputStream.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			System.out.println("Folgende Begrenzung gleichzeitiger Zugriffe auf CouchDB wurde festgelegt:");
+			System.out.println("\t Aktiv: " + enabled);
+			System.out.println("\t Limit: " + initialLimit + " (" + minLimit + " - " + maxLimit + ")");
+			System.out.println("\t Latenzschwelle in Millisekunden: " + latencyThreshold + ", Backoff: " + backoff);
+			System.out.println("************************************************");
+		}
+	}
+
+	private final AdaptiveConcurrencyLimiter limiter;
+
+	/**
+	 * Anzahl abgewiesener Zugriffe je Priorität.
+	 */
+	private final Map<RequestPriority, AtomicLong> shed;
+
+	/**
+	 * Konstruktor, welcher den Limiter mit den Einstellungen aus
+	 * application.properties erzeugt.
+	 */
+	public ConcurrencyLimitInterceptor() {
+		this.limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, latencyThreshold, backoff);
+		this.shed = new EnumMap<RequestPriority, AtomicLong>(RequestPriority.class);
+		for (RequestPriority priority : RequestPriority.values()) {
+			shed.put(priority, new AtomicLong());
+		}
+	}
+
+	@Override
+	public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+			throws IOException {
+		if (acquire(request.getMethod(), request.getURI()) == false) {
+			return execution.execute(request, body);
+		}
+		long start = System.nanoTime();
+		ClientHttpResponse response;
+		try {
+			response = execution.execute(request, body);
+		} catch (IOException e) {
+			release(System.nanoTime() - start, true);
+			throw e;
+		} catch (RuntimeException e) {
+			cancel();
+			throw e;
+		}
+		release(System.nanoTime() - start, isOverloaded(response.getRawStatusCode()));
+		return response;
+	}
+
+	/**
+	 * Belegt einen Platz für einen Zugriff gemäß der Priorität des Threads. Wird
+	 * neben intercept() von der StreamingRequestFactory verwendet, deren Zugriffe
+	 * nicht über die Interceptoren laufen.
+	 * 
+	 * @param method
+	 *            HTTP-Methode des Zugriffs.
+	 * @param uri
+	 *            URI des Zugriffs.
+	 * @return true, falls ein Platz belegt wurde, welcher mit release(long,
+	 *         boolean) oder cancel() freigegeben werden muss; false, falls der
+	 *         Zugriff nicht begrenzt wird.
+	 * @throws ServiceOverloadedException
+	 *             Limit für die Priorität ist ausgeschöpft.
+	 */
+	public boolean acquire(HttpMethod method, URI uri) throws ServiceOverloadedException {
+		// Longpolls des _changes-Feeds belegen keinen Slot, ihre Dauer ist keine
+		// Latenz
+		if (enabled == false || "changes".equals(CouchDBMetricsInterceptor.operation(method.name(), uri))) {
+			return false;
+		}
+		acquire();
+		return true;
+	}
+
+	/**
+	 * Gibt den Platz eines abgeschlossenen Zugriffs frei.
+	 * 
+	 * @param nanos
+	 *            Latenz des Zugriffs in Nanosekunden.
+	 * @param overloaded
+	 *            true, falls der Zugriff auf eine Überlast hinweist.
+	 */
+	public void release(long nanos, boolean overloaded) {
+		limiter.release(nanos, overloaded);
+	}
+
+	/**
+	 * Gibt den Platz eines Zugriffs frei, welcher ohne Aussage über die Last von
+	 * CouchDB abgebrochen wurde.
+	 */
+	public void cancel() {
+		limiter.cancel();
+	}
+
+	/**
+	 * Prüft, ob ein Statuscode als Überlast gewertet wird.
+	 * 
+	 * @param status
+	 *            HTTP-Statuscode der Antwort.
+	 * @return true bei 500, 502, 503 und 504.
+	 */
+	public static boolean isOverloaded(int status) {
+		return status == 500 || status == 502 || status == 503 || status == 504;
+	}
+
+	/**
+	 * Prüft, ob eine neue Anfrage der angegebenen Priorität derzeit angenommen
+	 * werden sollte.
+	 * 
+	 * @param priority
+	 *            Priorität der Anfrage.
+	 * @throws ServiceOverloadedException
+	 *             Limit für die Priorität ist ausgeschöpft.
+	 */
+	public void checkAdmission(RequestPriority priority) throws ServiceOverloadedException {
+		if (enabled == true && limiter.admits(priority) == false) {
+			shed.get(priority).incrementAndGet();
+			throw new ServiceOverloadedException("Datenbank ausgelastet, Anfrage wurde abgewiesen.", retryAfter);
+		}
+	}
+
+	/**
+	 * Belegt einen Platz für den aktuellen Zugriff gemäß der Priorität des
+	 * Threads.
+	 */
+	private void acquire() throws ServiceOverloadedException {
+		RequestPriority priority = RequestPriority.current();
+		boolean acquired;
+		if (RequestPriority.isSet() == true) {
+			acquired = limiter.tryAcquire(priority);
+		} else {
+			try {
+				acquired = limiter.acquire(priority, maxWait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				acquired = false;
+			}
+		}
+		if (acquired == false) {
+			shed.get(priority).incrementAndGet();
+			throw new ServiceOverloadedException("Datenbank ausgelastet, Zugriff wurde abgewiesen.", retryAfter);
+		}
+	}
+
+	/**
+	 * Liefert den Limiter der CouchDB-Zugriffe.
+	 * 
+	 * @return Limiter.
+	 */
+	public AdaptiveConcurrencyLimiter getLimiter() {
+		return limiter;
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<>();
+		metrics.add(new Metric<Integer>("couchdb.concurrency.limit", limiter.getLimit()));
+		metrics.add(new Metric<Integer>("couchdb.concurrency.inFlight", limiter.getInFlight()));
+		for (Map.Entry<RequestPriority, AtomicLong> entry : shed.entrySet()) {
+			metrics.add(new Metric<Long>("couchdb.concurrency.shed." + entry.getKey().name().toLowerCase(),
+					entry.getValue().get()));
+		}
+		return metrics;
+	}
+}
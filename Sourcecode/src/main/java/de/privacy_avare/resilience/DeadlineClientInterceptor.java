@@ -0,0 +1,72 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.resilience;
+
+import java.io.IOException;
+
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.stereotype.Component;
+
+import de.privacy_avare.exeption.DeadlineExceededException;
+
+/**
+ * Interceptor für das RestTemplate der CouchDB-Zugriffe, welcher Zugriffe nach
+ * Ablauf der RequestDeadline nicht mehr ausführt. Bricht ein Zugriff wegen
+ * eines durch die Deadline verkürzten Timeouts ab, so wird statt einer
+ * ResourceAccessException eine DeadlineExceededException geworfen, welche als
+ * 503 Service Unavailable an den Client geht.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see DeadlineRequestFactory
+ */
+@Component
+public class DeadlineClientInterceptor implements ClientHttpRequestInterceptor {
+
+	@Override
+	public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution)
+			throws IOException {
+		RequestDeadline.check();
+		try {
+			return execution.execute(request, body);
+		} catch (IOException e) {
+			throw translate(e);
+		}
+	}
+
+	/**
+	 * Ersetzt den Fehler eines Zugriffs, welcher wegen eines durch die Deadline
+	 * verkürzten Timeouts abgebrochen ist, durch eine DeadlineExceededException.
+	 * 
+	 * @param e
+	 *            Fehler des Zugriffs.
+	 * @return Übergebener Fehler, falls das Zeitbudget nicht aufgebraucht ist.
+	 * @throws DeadlineExceededException
+	 *             Zeitbudget während des Zugriffs aufgebraucht.
+	 */
+	static IOException translate(IOException e) throws DeadlineExceededException {
+		// Timeouts werden auf ganze Millisekunden des Zeitbudgets gesetzt
+		if (RequestDeadline.remainingMillis() == 0) {
+			throw new DeadlineExceededException("Zeitbudget der Anfrage während Zugriff auf CouchDB aufgebraucht.", e);
+		}
+		return e;
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.resilience;
+
+import java.io.InputStream;
+import java.util.Properties;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import de.privacy_avare.config.DefaultProperties;
+
+/**
+ * Interceptor, welcher zu Beginn jeder Anfrage an die REST-Schnittstellen das
+ * Zeitbudget festlegt und als RequestDeadline im bearbeitenden Thread ablegt.
+ * Nach Abschluss der Anfrage wird die Deadline wieder entfernt.
+ * 
+ * Das Zeitbudget ergibt sich aus 'server.requestTimeout' bzw. für einzelne
+ * Endpunkte aus 'server.requestTimeout.{Controller}.{Methode}', z.B.
+ * 'server.requestTimeout.ExistingProfileController.pushProfile'. Ein Wert von 0
+ * deaktiviert die Deadline. Clients können mit dem Header 'X-Request-Timeout'
+ * ein kürzeres Zeitbudget in Millisekunden anfordern, ein längeres als das
+ * konfigurierte wird nicht gewährt.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.config.ResilienceConfig
+ */
+@Component
+public class DeadlineHandlerInterceptor extends HandlerInterceptorAdapter {
+
+	/**
+	 * Header, mit welchem ein Client ein kürzeres Zeitbudget anfordern kann.
+	 */
+	public static final String TIMEOUT_HEADER = "X-Request-Timeout";
+
+	private static Properties properties;
+	private static long requestTimeout;
+
+	/**
+	 * Static-Block, welcher aus application.properties das Zeitbudget der Anfragen
+	 * ausliest.
+	 */
+	static {
+		InputStream inputStream = null;
+		properties = new Properties(new DefaultProperties());
+		try {
+			inputStream = DeadlineHandlerInterceptor.class.getResourceAsStream("/application.properties");
+			properties.load(inputStream);
+			requestTimeout = Long.valueOf(properties.getProperty("server.requestTimeout"));
+		} catch (Exception e) {
+			e.printStackTrace();
+			requestTimeout = 5000;
+		} finally {
+			try {
+				inputStream.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			System.out.println("Folgendes Zeitbudget fuer Anfragen wurde festgelegt:");
+			System.out.println("\t Zeitbudget in Millisekunden: " + requestTimeout);
+			System.out.println("************************************************");
+		}
+	}
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		long budget = requestTimeout;
+		if (handler instanceof HandlerMethod) {
+			HandlerMethod handlerMethod = (HandlerMethod) handler;
+			budget = budget(handlerMethod.getBeanType().getSimpleName() + "." + handlerMethod.getMethod().getName(),
+					request.getHeader(TIMEOUT_HEADER));
+		}
+		if (budget > 0) {
+			RequestDeadline.start(budget);
+		}
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) {
+		RequestDeadline.clear();
+	}
+
+	/**
+	 * Bestimmt das Zeitbudget eines Endpunkts unter Berücksichtigung des vom
+	 * Client angeforderten Zeitbudgets.
+	 * 
+	 * @param endpoint
+	 *            Endpunkt in der Form {Controller}.{Methode}.
+	 * @param header
+	 *            Wert des Headers 'X-Request-Timeout' oder null.
+	 * @return Zeitbudget in Millisekunden, 0 falls keine Deadline gilt.
+	 */
+	public static long budget(String endpoint, String header) {
+		long budget = requestTimeout;
+		String configured = properties.getProperty("server.requestTimeout." + endpoint);
+		if (configured != null) {
+			try {
+				budget = Long.valueOf(configured.trim());
+			} catch (NumberFormatException e) {
+				budget = requestTimeout;
+			}
+		}
+		if (header != null) {
+			try {
+				long requested = Long.valueOf(header.trim());
+				if (requested > 0 && (budget <= 0 || requested < budget)) {
+					budget = requested;
+				}
+			} catch (NumberFormatException e) {
+				// Ungültige Angaben des Clients werden ignoriert
+			}
+		}
+		return budget;
+	}
+}
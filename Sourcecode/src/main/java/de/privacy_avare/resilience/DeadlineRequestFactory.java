@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.resilience;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URISyntaxException;
+import java.util.Properties;
+
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+
+import de.privacy_avare.config.DefaultProperties;
+import de.privacy_avare.exeption.DeadlineExceededException;
+import de.privacy_avare.metrics.CouchDBMetricsInterceptor;
+
+/**
+ * RequestFactory für die Zugriffe auf CouchDB, welche jeder Verbindung einen
+ * Connect- und Read-Timeout setzt. Die Timeouts werden aus
+ * 'couchdb.connectTimeout' und 'couchdb.readTimeout' gelesen und lassen sich
+ * für einzelne Operationen mit 'couchdb.readTimeout.{operation}' überschreiben,
+ * z.B. 'couchdb.readTimeout.find'. Die Operationen entsprechen denen der
+ * CouchDBMetrics.
+ * 
+ * Ist im aktuellen Thread eine RequestDeadline festgelegt, so werden die
+ * Timeouts auf das verbleibende Zeitbudget begrenzt. Ist das Zeitbudget bereits
+ * aufgebraucht, so wird keine Verbindung mehr aufgebaut.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.config.CouchDBClientConfig
+ */
+public class DeadlineRequestFactory extends SimpleClientHttpRequestFactory {
+
+	private static Properties properties;
+	private static int connectTimeout;
+	private static int readTimeout;
+
+	/**
+	 * Static-Block, welcher aus application.properties die Timeouts der Zugriffe
+	 * auf CouchDB ausliest.
+	 */
+	static {
+		InputStream inputStream = null;
+		properties = new Properties(new DefaultProperties());
+		try {
+			inputStream = DeadlineRequestFactory.class.getResourceAsStream("/application.properties");
+			properties.load(inputStream);
+			connectTimeout = Integer.valueOf(properties.getProperty("couchdb.connectTimeout"));
+			readTimeout = Integer.valueOf(properties.getProperty("couchdb.readTimeout"));
+		} catch (Exception e) {
+			e.printStackTrace();
+			connectTimeout = 2000;
+			readTimeout = 10000;
+		} finally {
+			try {
+				inputStream.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			System.out.println("Folgende Timeouts fuer Zugriffe auf CouchDB wurden festgelegt:");
+			System.out.println("\t Connect-Timeout in Millisekunden: " + connectTimeout);
+			System.out.println("\t Read-Timeout in Millisekunden: " + readTimeout);
+			System.out.println("************************************************");
+		}
+	}
+
+	@Override
+	protected void prepareConnection(HttpURLConnection connection, String httpMethod) throws IOException {
+		super.prepareConnection(connection, httpMethod);
+
+		String operation;
+		try {
+			operation = CouchDBMetricsInterceptor.operation(httpMethod, connection.getURL().toURI());
+		} catch (URISyntaxException e) {
+			operation = httpMethod.toLowerCase();
+		}
+		long connect = connectTimeout;
+		long read = readTimeout(operation);
+		if (RequestDeadline.isSet()) {
+			long remaining = RequestDeadline.remainingMillis();
+			if (remaining <= 0) {
+				throw new DeadlineExceededException("Zeitbudget der Anfrage vor Zugriff auf CouchDB aufgebraucht.");
+			}
+			connect = (connect <= 0) ? remaining : Math.min(connect, remaining);
+			read = (read <= 0) ? remaining : Math.min(read, remaining);
+		}
+		connection.setConnectTimeout((int) Math.min(connect, Integer.MAX_VALUE));
+		connection.setReadTimeout((int) Math.min(read, Integer.MAX_VALUE));
+	}
+
+	/**
+	 * Liefert den Read-Timeout einer Operation.
+	 * 
+	 * @param operation
+	 *            Name der Operation, z.B. 'get' oder 'find'.
+	 * @return Read-Timeout in Millisekunden, 0 für unbegrenzt.
+	 */
+	public static int readTimeout(String operation) {
+		String value = properties.getProperty("couchdb.readTimeout." + operation);
+		if (value != null) {
+			try {
+				return Integer.valueOf(value.trim());
+			} catch (NumberFormatException e) {
+				return readTimeout;
+			}
+		}
+		return readTimeout;
+	}
+}
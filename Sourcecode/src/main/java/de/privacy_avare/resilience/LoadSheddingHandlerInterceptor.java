@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.resilience;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.handler.HandlerInterceptorAdapter;
+
+import de.privacy_avare.config.DefaultProperties;
+
+/**
+ * Interceptor, welcher jeder Anfrage an die REST-Schnittstellen eine
+ * RequestPriority zuweist und Anfragen bereits vor ihrer Bearbeitung mit 503
+ * und Retry-After abweist, falls das Limit der CouchDB-Zugriffe für ihre
+ * Priorität ausgeschöpft ist.
+ * 
+ * Die Endpunkte aus 'server.highPriorityEndpoints' und
+ * 'server.lowPriorityEndpoints' werden in der Form {Controller}.{Methode} bzw.
+ * {Controller}.* angegeben. Alle übrigen Endpunkte erhalten die Priorität
+ * NORMAL.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.config.ResilienceConfig
+ */
+@Component
+public class LoadSheddingHandlerInterceptor extends HandlerInterceptorAdapter {
+
+	private static Set<String> highPriorityEndpoints;
+	private static Set<String> lowPriorityEndpoints;
+
+	/**
+	 * Static-Block, welcher aus application.properties die Prioritäten der
+	 * Endpunkte ausliest.
+	 */
+	static {
+		InputStream inputStream = null;
+		Properties properties = new Properties(new DefaultProperties());
+		try {
+			inputStream = LoadSheddingHandlerInterceptor.class.getResourceAsStream("/application.properties");
+			properties.load(inputStream);
+		} catch (Exception e) {
+			e.printStackTrace();
+		} finally {
+			try {
+				inputStream.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			highPriorityEndpoints = parse(properties.getProperty("server.highPriorityEndpoints"));
+			lowPriorityEndpoints = parse(properties.getProperty("server.lowPriorityEndpoints"));
+			System.out.println("Folgende Prioritaeten der Endpunkte wurden festgelegt:");
+			System.out.println("\t HIGH: " + highPriorityEndpoints);
+			System.out.println("\t LOW: " + lowPriorityEndpoints);
+			System.out.println("************************************************");
+		}
+	}
+
+	@Autowired
+	private ConcurrencyLimitInterceptor concurrencyLimitInterceptor;
+
+	@Override
+	public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+		RequestPriority priority = RequestPriority.NORMAL;
+		if (handler instanceof HandlerMethod) {
+			HandlerMethod handlerMethod = (HandlerMethod) handler;
+			priority = priority(handlerMethod.getBeanType().getSimpleName(), handlerMethod.getMethod().getName());
+		}
+		// Erst nach erfolgreicher Zulassung setzen: bei abgewiesenen Anfragen wird
+		// afterCompletion nicht aufgerufen und die Priorität bliebe am Thread hängen.
+		concurrencyLimitInterceptor.checkAdmission(priority);
+		RequestPriority.set(priority);
+		return true;
+	}
+
+	@Override
+	public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler,
+			Exception ex) {
+		RequestPriority.clear();
+	}
+
+	/**
+	 * Bestimmt die Priorität eines Endpunkts.
+	 * 
+	 * @param controller
+	 *            Einfacher Klassenname des Controllers.
+	 * @param method
+	 *            Name der Handler-Methode.
+	 * @return Priorität des Endpunkts.
+	 */
+	public static RequestPriority priority(String controller, String method) {
+		String endpoint = controller + "." + method;
+		String wildcard = controller + ".*";
+		if (highPriorityEndpoints.contains(endpoint) || highPriorityEndpoints.contains(wildcard)) {
+			return RequestPriority.HIGH;
+		}
+		if (lowPriorityEndpoints.contains(endpoint) || lowPriorityEndpoints.contains(wildcard)) {
+			return RequestPriority.LOW;
+		}
+		return RequestPriority.NORMAL;
+	}
+
+	/**
+	 * Zerlegt eine kommagetrennte Liste von Endpunkten.
+	 */
+	private static Set<String> parse(String value) {
+		Set<String> endpoints = new HashSet<String>();
+		if (value != null) {
+			for (String endpoint : Arrays.asList(value.split(","))) {
+				if (endpoint.trim().isEmpty() == false) {
+					endpoints.add(endpoint.trim());
+				}
+			}
+		}
+		return endpoints;
+	}
+}
@@ -0,0 +1,697 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.resilience;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import de.privacy_avare.config.DefaultProperties;
+
+/**
+ * RequestFactory, welche die Zugriffe auf CouchDB auf mehrere Knoten eines
+ * Clusters verteilt. Die Knoten werden in 'couchdb.nodes' als kommagetrennte
+ * Liste von Adressen angegeben, z.B. 'http://couchdb1:5984,http://couchdb2:5984'.
+ * Die Services bilden ihre URLs weiterhin aus 'couchdb.adress' und
+ * 'couchdb.port', Schema, Host und Port werden erst hier durch den gewählten
+ * Knoten ersetzt. Ist keine Liste angegeben, so werden alle Zugriffe
+ * unverändert weitergereicht.
+ * 
+ * Lesende Zugriffe (GET und HEAD) gehen an den gesunden Knoten mit der
+ * geringsten geglätteten Latenz. Schlägt ein lesender Zugriff fehl, so wird er
+ * an einem anderen Knoten wiederholt. Ist 'couchdb.hedgedReads' aktiviert und
+ * hat der erste Knoten nach der Hedge-Verzögerung noch nicht geantwortet, so
+ * wird derselbe Zugriff zusätzlich an einen zweiten Knoten gesendet und die
+ * erste erfolgreiche Antwort verwendet. Die Verzögerung entspricht dem
+ * Perzentil 'couchdb.hedgePercentile' der zuletzt gemessenen Leselatenzen,
+ * mindestens jedoch 'couchdb.hedgeMinDelay' Millisekunden.
+ * 
+ * Schreibende Zugriffe gehen immer an genau einen Knoten, den ersten gesunden
+ * Knoten der Liste, und werden nicht wiederholt. Ihr Knoten wird daher bereits
+ * beim Erzeugen des Zugriffs gewählt, sodass der Body ohne Zwischenspeichern
+ * an die RequestFactory des Knotens geht. Ein Knoten gilt nach einem
+ * Verbindungsfehler oder einem Statuscode ab 500 für
+ * 'couchdb.nodeRetryInterval' Millisekunden als ungesund.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.config.CouchDBClientConfig
+ */
+public class NodeRoutingRequestFactory implements ClientHttpRequestFactory, PublicMetrics {
+
+	private static List<String> configuredNodes;
+	private static boolean configuredHedging;
+	private static double configuredPercentile;
+	private static long configuredMinDelay;
+	private static long configuredRetryInterval;
+
+	/**
+	 * Static-Block, welcher aus application.properties die Knoten des Clusters
+	 * sowie die Einstellungen der Hedged Reads ausliest.
+	 */
+	static {
+		InputStream inputStream = null;
+		try {
+			inputStream = NodeRoutingRequestFactory.class.getResourceAsStream("/application.properties");
+			Properties properties = new Properties(new DefaultProperties());
+			properties.load(inputStream);
+
+			configuredNodes = new ArrayList<String>();
+			for (String node : Arrays.asList(properties.getProperty("couchdb.nodes").split(","))) {
+				if (node.trim().isEmpty() == false) {
+					configuredNodes.add(node.trim());
+				}
+			}
+			configuredHedging = Boolean.valueOf(properties.getProperty("couchdb.hedgedReads").trim());
+			configuredPercentile = Double.valueOf(properties.getProperty("couchdb.hedgePercentile"));
+			configuredMinDelay = Long.valueOf(properties.getProperty("couchdb.hedgeMinDelay"));
+			configuredRetryInterval = Long.valueOf(properties.getProperty("couchdb.nodeRetryInterval"));
+		} catch (Exception e) {
+			e.printStackTrace();
+			configuredNodes = Collections.emptyList();
+			configuredHedging = false;
+			configuredPercentile = 95;
+			configuredMinDelay = 10;
+			configuredRetryInterval = 5000;
+		} finally {
+			try {
+				inputStream.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			if (configuredNodes.isEmpty() == false) {
+				System.out.println("Folgende CouchDB-Knoten wurden festgelegt:");
+				System.out.println("\t Knoten: " + configuredNodes);
+				System.out.println("\t Hedged Reads: " + configuredHedging + ", Perzentil: " + configuredPercentile
+						+ ", minimale Verzoegerung in Millisekunden: " + configuredMinDelay);
+				System.out.println("************************************************");
+			}
+		}
+	}
+
+	/**
+	 * Anzahl an Messwerten, ab welcher die Hedge-Verzögerung aus den Messwerten
+	 * bestimmt wird.
+	 */
+	private static final long MIN_SAMPLES = 20;
+
+	/**
+	 * Abstand, in welchem die Hedge-Verzögerung neu bestimmt wird.
+	 */
+	private static final long DELAY_UPDATE_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+	private final ClientHttpRequestFactory delegate;
+	private final List<Node> nodes;
+	private final boolean hedging;
+	private final double percentile;
+	private final long minDelayNanos;
+	private final long retryIntervalNanos;
+
+	/**
+	 * Threads, welche die Zugriffe bei aktivierten Hedged Reads ausführen.
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Gemessene Latenzen lesender Zugriffe seit der letzten Bestimmung der
+	 * Hedge-Verzögerung.
+	 */
+	private final Recorder readLatencies = new Recorder(3);
+	private Histogram intervalHistogram;
+	private volatile long hedgeDelayNanos;
+	private long lastDelayUpdate = System.nanoTime();
+
+	private final AtomicLong hedges = new AtomicLong();
+	private final AtomicLong hedgeWins = new AtomicLong();
+	private final AtomicLong failovers = new AtomicLong();
+
+	/**
+	 * Erzeugt eine RequestFactory mit den Einstellungen aus application.properties.
+	 * 
+	 * @param delegate
+	 *            RequestFactory, welche die Verbindungen zu den Knoten aufbaut.
+	 */
+	public NodeRoutingRequestFactory(ClientHttpRequestFactory delegate) {
+		this(delegate, configuredNodes, configuredHedging, configuredPercentile, configuredMinDelay,
+				configuredRetryInterval);
+	}
+
+	/**
+	 * Erzeugt eine RequestFactory für die angegebenen Knoten.
+	 * 
+	 * @param delegate
+	 *            RequestFactory, welche die Verbindungen zu den Knoten aufbaut.
+	 * @param nodes
+	 *            Adressen der Knoten, z.B. 'http://couchdb1:5984'. Der erste
+	 *            gesunde Knoten erhält die schreibenden Zugriffe.
+	 * @param hedging
+	 *            true, falls lesende Zugriffe nach der Hedge-Verzögerung an einen
+	 *            zweiten Knoten gesendet werden.
+	 * @param percentile
+	 *            Perzentil der Leselatenz, welches als Hedge-Verzögerung dient.
+	 * @param minDelayMillis
+	 *            Minimale Hedge-Verzögerung in Millisekunden.
+	 * @param retryIntervalMillis
+	 *            Dauer in Millisekunden, für welche ein Knoten nach einem Fehler
+	 *            gemieden wird.
+	 */
+	public NodeRoutingRequestFactory(ClientHttpRequestFactory delegate, List<String> nodes, boolean hedging,
+			double percentile, long minDelayMillis, long retryIntervalMillis) {
+		this.delegate = delegate;
+		this.nodes = new ArrayList<Node>();
+		for (String node : nodes) {
+			this.nodes.add(new Node(URI.create(node)));
+		}
+		this.hedging = hedging && this.nodes.size() > 1;
+		this.percentile = percentile;
+		this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMillis);
+		this.retryIntervalNanos = TimeUnit.MILLISECONDS.toNanos(retryIntervalMillis);
+		this.hedgeDelayNanos = this.minDelayNanos;
+		if (this.hedging) {
+			final AtomicInteger threadNumber = new AtomicInteger();
+			this.executor = Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "couchdb-hedge-" + threadNumber.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		} else {
+			this.executor = null;
+		}
+	}
+
+	@Override
+	public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+		if (nodes.isEmpty()) {
+			return delegate.createRequest(uri, httpMethod);
+		}
+		if (httpMethod != HttpMethod.GET && httpMethod != HttpMethod.HEAD) {
+			return new WriteRequest(delegate, uri, httpMethod);
+		}
+		return new RoutedRequest(uri, httpMethod);
+	}
+
+	/**
+	 * Liefert eine RequestFactory für schreibende Zugriffe, welche wie diese
+	 * RequestFactory an den ersten gesunden Knoten gehen und dessen Zustand
+	 * fortschreiben, die Verbindungen jedoch über eine andere RequestFactory
+	 * aufbauen, z.B. eine ohne Pufferung des Body.
+	 * 
+	 * @param writeDelegate
+	 *            RequestFactory, welche die Verbindungen zu den Knoten aufbaut.
+	 * @return RequestFactory für schreibende Zugriffe.
+	 */
+	public ClientHttpRequestFactory forWrites(ClientHttpRequestFactory writeDelegate) {
+		return (uri, httpMethod) -> nodes.isEmpty() ? writeDelegate.createRequest(uri, httpMethod)
+				: new WriteRequest(writeDelegate, uri, httpMethod);
+	}
+
+	/**
+	 * Ersetzt Schema, Host und Port einer URI durch die eines Knotens.
+	 * 
+	 * @param uri
+	 *            URI des Zugriffs.
+	 * @param node
+	 *            Adresse des Knotens.
+	 * @return URI des Zugriffs auf dem Knoten.
+	 */
+	public static URI rewrite(URI uri, URI node) {
+		return UriComponentsBuilder.fromUri(uri).scheme(node.getScheme()).host(node.getHost()).port(node.getPort())
+				.build(true).toUri();
+	}
+
+	/**
+	 * Liefert die aktuelle Hedge-Verzögerung.
+	 * 
+	 * @return Verzögerung in Millisekunden.
+	 */
+	public long getHedgeDelayMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(hedgeDelayNanos);
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<>();
+		if (nodes.isEmpty()) {
+			return metrics;
+		}
+		long now = System.nanoTime();
+		for (int i = 0; i < nodes.size(); i++) {
+			Node node = nodes.get(i);
+			metrics.add(new Metric<Integer>("couchdb.node." + i + ".healthy", node.isHealthy(now) ? 1 : 0));
+			metrics.add(new Metric<Double>("couchdb.node." + i + ".latency", node.latencyNanos / 1e6));
+			metrics.add(new Metric<Long>("couchdb.node." + i + ".failures", node.failures.get()));
+		}
+		metrics.add(new Metric<Long>("couchdb.hedge.delay", getHedgeDelayMillis()));
+		metrics.add(new Metric<Long>("couchdb.hedge.requests", hedges.get()));
+		metrics.add(new Metric<Long>("couchdb.hedge.wins", hedgeWins.get()));
+		metrics.add(new Metric<Long>("couchdb.failovers", failovers.get()));
+		return metrics;
+	}
+
+	/**
+	 * Wählt den Knoten für einen schreibenden Zugriff: den ersten gesunden Knoten
+	 * der Liste oder, falls alle Knoten ungesund sind, den ersten Knoten.
+	 */
+	private Node writeNode() {
+		long now = System.nanoTime();
+		for (Node node : nodes) {
+			if (node.isHealthy(now)) {
+				return node;
+			}
+		}
+		return nodes.get(0);
+	}
+
+	/**
+	 * Wählt den Knoten für einen lesenden Zugriff: den gesunden Knoten mit der
+	 * geringsten geglätteten Latenz, welcher nicht ausgeschlossen ist.
+	 * 
+	 * @param excluded
+	 *            Bereits verwendeter Knoten oder null.
+	 * @param healthyOnly
+	 *            true, falls nur gesunde Knoten in Frage kommen.
+	 * @return Gewählter Knoten oder null.
+	 */
+	private Node readNode(Node excluded, boolean healthyOnly) {
+		long now = System.nanoTime();
+		Node best = null;
+		for (Node node : nodes) {
+			if (node == excluded || (healthyOnly && node.isHealthy(now) == false)) {
+				continue;
+			}
+			if (best == null || (best.isHealthy(now) == false && node.isHealthy(now))
+					|| (best.isHealthy(now) == node.isHealthy(now) && node.latencyNanos < best.latencyNanos)) {
+				best = node;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Erfasst die Latenz eines erfolgreichen lesenden Zugriffs und bestimmt in
+	 * regelmäßigen Abständen die Hedge-Verzögerung neu.
+	 */
+	private void recordReadLatency(long nanos) {
+		readLatencies.recordValue(Math.max(1, nanos));
+		long now = System.nanoTime();
+		synchronized (readLatencies) {
+			if (now - lastDelayUpdate < DELAY_UPDATE_INTERVAL) {
+				return;
+			}
+			lastDelayUpdate = now;
+			intervalHistogram = readLatencies.getIntervalHistogram(intervalHistogram);
+			if (intervalHistogram.getTotalCount() >= MIN_SAMPLES) {
+				hedgeDelayNanos = Math.max(minDelayNanos, intervalHistogram.getValueAtPercentile(percentile));
+			}
+		}
+	}
+
+	/**
+	 * Knoten des Clusters mit seinem Zustand.
+	 */
+	private class Node {
+		private final URI address;
+
+		/**
+		 * Geglättete Latenz der erfolgreichen Zugriffe in Nanosekunden.
+		 */
+		private volatile double latencyNanos;
+
+		/**
+		 * Zeitpunkt (System.nanoTime()) des letzten Fehlers.
+		 */
+		private volatile long lastFailure;
+		private volatile boolean failed;
+		private final AtomicLong failures = new AtomicLong();
+
+		Node(URI address) {
+			this.address = address;
+		}
+
+		boolean isHealthy(long now) {
+			return failed == false || now - lastFailure >= retryIntervalNanos;
+		}
+
+		void recordSuccess(long nanos) {
+			latencyNanos = (latencyNanos == 0) ? nanos : 0.8 * latencyNanos + 0.2 * nanos;
+			failed = false;
+		}
+
+		void recordFailure() {
+			lastFailure = System.nanoTime();
+			failed = true;
+			failures.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Ergebnis eines Zugriffs auf einen einzelnen Knoten.
+	 */
+	private static class Attempt {
+		private final Node node;
+		private final boolean hedge;
+		private final ClientHttpResponse response;
+		private final IOException error;
+
+		Attempt(Node node, boolean hedge, ClientHttpResponse response, IOException error) {
+			this.node = node;
+			this.hedge = hedge;
+			this.response = response;
+			this.error = error;
+		}
+
+		boolean isSuccess() throws IOException {
+			return response != null && response.getRawStatusCode() < 500;
+		}
+
+		/**
+		 * Liefert die Antwort des Zugriffs oder wirft dessen Fehler.
+		 */
+		ClientHttpResponse result() throws IOException {
+			if (error != null) {
+				throw error;
+			}
+			return response;
+		}
+
+		/**
+		 * Schließt die nicht verwendete Antwort des Zugriffs.
+		 */
+		void discard() {
+			if (response != null) {
+				response.close();
+			}
+		}
+	}
+
+	/**
+	 * Schreibender Zugriff auf dem ersten gesunden Knoten. Header und Body gehen
+	 * direkt an den Zugriff der RequestFactory des Knotens.
+	 */
+	private class WriteRequest implements ClientHttpRequest {
+		private final URI uri;
+		private final Node node;
+		private final ClientHttpRequest request;
+
+		WriteRequest(ClientHttpRequestFactory factory, URI uri, HttpMethod method) throws IOException {
+			this.uri = uri;
+			this.node = writeNode();
+			try {
+				this.request = factory.createRequest(rewrite(uri, node.address), method);
+			} catch (IOException e) {
+				node.recordFailure();
+				throw e;
+			}
+		}
+
+		@Override
+		public HttpMethod getMethod() {
+			return request.getMethod();
+		}
+
+		@Override
+		public URI getURI() {
+			return uri;
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return request.getHeaders();
+		}
+
+		@Override
+		public OutputStream getBody() throws IOException {
+			try {
+				return request.getBody();
+			} catch (IOException e) {
+				node.recordFailure();
+				throw e;
+			}
+		}
+
+		@Override
+		public ClientHttpResponse execute() throws IOException {
+			long start = System.nanoTime();
+			try {
+				ClientHttpResponse response = request.execute();
+				if (response.getRawStatusCode() >= 500) {
+					node.recordFailure();
+				} else {
+					node.recordSuccess(System.nanoTime() - start);
+				}
+				return response;
+			} catch (IOException e) {
+				node.recordFailure();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Lesender Zugriff, dessen Knoten erst bei der Ausführung gewählt wird.
+	 * Header und Body werden bis dahin zwischengespeichert.
+	 */
+	private class RoutedRequest implements ClientHttpRequest {
+		private final URI uri;
+		private final HttpMethod method;
+		private final HttpHeaders headers = new HttpHeaders();
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream(1024);
+
+		RoutedRequest(URI uri, HttpMethod method) {
+			this.uri = uri;
+			this.method = method;
+		}
+
+		@Override
+		public HttpMethod getMethod() {
+			return method;
+		}
+
+		@Override
+		public URI getURI() {
+			return uri;
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return headers;
+		}
+
+		@Override
+		public OutputStream getBody() {
+			return body;
+		}
+
+		@Override
+		public ClientHttpResponse execute() throws IOException {
+			// Longpolls des _changes-Feeds werden nicht abgesichert
+			if (hedging == false || uri.getRawPath().contains("/_changes")) {
+				return executeWithFailover();
+			}
+			return executeHedged();
+		}
+
+		/**
+		 * Führt einen lesenden Zugriff aus und wiederholt ihn bei einem Fehler an
+		 * einem anderen Knoten.
+		 */
+		private ClientHttpResponse executeWithFailover() throws IOException {
+			Node first = readNode(null, false);
+			Attempt attempt = attempt(first, false);
+			if (attempt.isSuccess()) {
+				return attempt.response;
+			}
+			Node second = readNode(first, true);
+			if (second == null || RequestDeadline.isExpired()) {
+				return attempt.result();
+			}
+			attempt.discard();
+			failovers.incrementAndGet();
+			return attempt(second, false).result();
+		}
+
+		/**
+		 * Führt einen lesenden Zugriff aus und sendet ihn nach der
+		 * Hedge-Verzögerung oder bei einem Fehler zusätzlich an einen zweiten
+		 * Knoten. Die erste erfolgreiche Antwort wird verwendet, die übrigen
+		 * Antworten werden geschlossen.
+		 */
+		private ClientHttpResponse executeHedged() throws IOException {
+			BlockingQueue<Attempt> completed = new LinkedBlockingQueue<Attempt>();
+			Node first = readNode(null, false);
+			submit(first, false, completed);
+			int pending = 1;
+			boolean hedged = false;
+			Attempt failed = null;
+			try {
+				while (pending > 0) {
+					Attempt attempt;
+					if (hedged) {
+						attempt = completed.take();
+					} else {
+						attempt = completed.poll(hedgeDelayNanos, TimeUnit.NANOSECONDS);
+					}
+					if (attempt != null) {
+						pending--;
+						if (attempt.isSuccess()) {
+							if (attempt.hedge) {
+								hedgeWins.incrementAndGet();
+							}
+							discardLater(completed, pending);
+							if (failed != null) {
+								failed.discard();
+							}
+							return attempt.response;
+						}
+						if (failed != null) {
+							failed.discard();
+						}
+						failed = attempt;
+					}
+					if (hedged == false) {
+						hedged = true;
+						Node second = readNode(first, true);
+						if (second != null && RequestDeadline.isExpired() == false) {
+							if (attempt == null) {
+								hedges.incrementAndGet();
+							} else {
+								failovers.incrementAndGet();
+							}
+							submit(second, true, completed);
+							pending++;
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				discardLater(completed, pending);
+				throw new InterruptedIOException("Zugriff auf CouchDB unterbrochen");
+			}
+			return failed.result();
+		}
+
+		/**
+		 * Führt einen Zugriff auf einem Thread des Executors aus. Der Zugriff wird
+		 * im aktuellen Thread erzeugt, damit die Timeouts der RequestDeadline
+		 * gesetzt werden.
+		 */
+		private void submit(Node node, boolean hedge, BlockingQueue<Attempt> completed) {
+			ClientHttpRequest request;
+			try {
+				request = prepare(node);
+			} catch (IOException e) {
+				node.recordFailure();
+				completed.add(new Attempt(node, hedge, null, e));
+				return;
+			}
+			CompletableFuture.runAsync(() -> completed.add(execute(node, hedge, request)), executor);
+		}
+
+		/**
+		 * Schließt die Antworten der noch laufenden Zugriffe, sobald sie vorliegen.
+		 */
+		private void discardLater(BlockingQueue<Attempt> completed, int pending) {
+			if (pending > 0) {
+				CompletableFuture.runAsync(() -> {
+					try {
+						for (int i = 0; i < pending; i++) {
+							completed.take().discard();
+						}
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}, executor);
+			}
+		}
+
+		/**
+		 * Führt den Zugriff im aktuellen Thread auf dem angegebenen Knoten aus.
+		 */
+		private Attempt attempt(Node node, boolean hedge) {
+			try {
+				return execute(node, hedge, prepare(node));
+			} catch (IOException e) {
+				node.recordFailure();
+				return new Attempt(node, hedge, null, e);
+			}
+		}
+
+		/**
+		 * Erzeugt den Zugriff auf einem Knoten mit den zwischengespeicherten Headern
+		 * und dem Body.
+		 */
+		private ClientHttpRequest prepare(Node node) throws IOException {
+			ClientHttpRequest request = delegate.createRequest(rewrite(uri, node.address), method);
+			request.getHeaders().putAll(headers);
+			if (body.size() > 0) {
+				body.writeTo(request.getBody());
+			}
+			return request;
+		}
+
+		/**
+		 * Führt einen vorbereiteten Zugriff aus und erfasst Latenz und Zustand des
+		 * Knotens.
+		 */
+		private Attempt execute(Node node, boolean hedge, ClientHttpRequest request) {
+			long start = System.nanoTime();
+			try {
+				ClientHttpResponse response = request.execute();
+				long nanos = System.nanoTime() - start;
+				if (response.getRawStatusCode() >= 500) {
+					node.recordFailure();
+				} else {
+					node.recordSuccess(nanos);
+					recordReadLatency(nanos);
+				}
+				return new Attempt(node, hedge, response, null);
+			} catch (IOException e) {
+				node.recordFailure();
+				return new Attempt(node, hedge, null, e);
+			}
+		}
+	}
+}
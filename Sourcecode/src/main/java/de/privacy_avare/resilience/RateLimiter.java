@@ -0,0 +1,86 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Einfacher Rate Limiter, welcher die Anzahl an Operationen pro Sekunde
+ * begrenzt. Aufrufer von acquire() werden so lange blockiert, bis die nächste
+ * Operation gemäß der festgelegten Rate zulässig ist. Wartende Aufrufer werden
+ * in der Reihenfolge ihres Aufrufs gleichmäßig über die Zeit verteilt.
+ * 
+ * Wird eine Rate von 0 oder kleiner festgelegt, so findet keine Begrenzung
+ * statt.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ */
+public class RateLimiter {
+	/**
+	 * Zeitabstand zwischen zwei Operationen in Nanosekunden. 0 entspricht keiner
+	 * Begrenzung.
+	 */
+	private final long intervalNanos;
+
+	/**
+	 * Zeitpunkt (System.nanoTime()), ab welchem die nächste Operation zulässig
+	 * ist.
+	 */
+	private long nextFreeNanos;
+
+	/**
+	 * Erzeugt einen neuen Rate Limiter.
+	 * 
+	 * @param permitsPerSecond
+	 *            Maximale Anzahl an Operationen pro Sekunde.
+	 */
+	public RateLimiter(double permitsPerSecond) {
+		if (permitsPerSecond > 0) {
+			this.intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+		} else {
+			this.intervalNanos = 0L;
+		}
+		this.nextFreeNanos = System.nanoTime();
+	}
+
+	/**
+	 * Blockiert, bis die nächste Operation gemäß der festgelegten Rate zulässig
+	 * ist.
+	 * 
+	 * @throws InterruptedException
+	 *             Thread wurde während des Wartens unterbrochen.
+	 */
+	public void acquire() throws InterruptedException {
+		if (intervalNanos == 0L) {
+			return;
+		}
+		long waitNanos;
+		synchronized (this) {
+			long now = System.nanoTime();
+			if (nextFreeNanos - now < 0) {
+				nextFreeNanos = now;
+			}
+			waitNanos = nextFreeNanos - now;
+			nextFreeNanos += intervalNanos;
+		}
+		if (waitNanos > 0) {
+			TimeUnit.NANOSECONDS.sleep(waitNanos);
+		}
+	}
+}
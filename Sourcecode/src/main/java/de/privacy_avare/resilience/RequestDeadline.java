@@ -0,0 +1,111 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.resilience;
+
+import java.util.concurrent.TimeUnit;
+
+import de.privacy_avare.exeption.DeadlineExceededException;
+
+/**
+ * Zeitbudget der aktuell bearbeiteten Anfrage. Die Deadline wird zu Beginn
+ * einer Anfrage vom DeadlineHandlerInterceptor im aktuellen Thread abgelegt und
+ * gilt damit für alle Aufrufe von den Controllern über den ProfileService bis
+ * zu den einzelnen Zugriffen auf CouchDB. Threads ohne Deadline, z.B. die
+ * geplanten Aufgaben des Schedulers, sind nicht begrenzt.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see DeadlineHandlerInterceptor
+ * @see DeadlineRequestFactory
+ */
+public final class RequestDeadline {
+
+	/**
+	 * Deadline des aktuellen Threads als Zeitpunkt von System.nanoTime().
+	 */
+	private static final ThreadLocal<Long> DEADLINE = new ThreadLocal<Long>();
+
+	private RequestDeadline() {
+
+	}
+
+	/**
+	 * Legt für den aktuellen Thread eine Deadline fest, welche nach dem
+	 * angegebenen Zeitbudget abläuft.
+	 * 
+	 * @param budgetMillis
+	 *            Zeitbudget in Millisekunden.
+	 */
+	public static void start(long budgetMillis) {
+		DEADLINE.set(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis));
+	}
+
+	/**
+	 * Entfernt die Deadline des aktuellen Threads.
+	 */
+	public static void clear() {
+		DEADLINE.remove();
+	}
+
+	/**
+	 * Prüft, ob für den aktuellen Thread eine Deadline festgelegt ist.
+	 * 
+	 * @return true, falls eine Deadline festgelegt ist.
+	 */
+	public static boolean isSet() {
+		return DEADLINE.get() != null;
+	}
+
+	/**
+	 * Liefert das verbleibende Zeitbudget des aktuellen Threads.
+	 * 
+	 * @return Verbleibende Zeit in Millisekunden, 0 falls die Deadline abgelaufen
+	 *         ist, Long.MAX_VALUE falls keine Deadline festgelegt ist.
+	 */
+	public static long remainingMillis() {
+		Long deadline = DEADLINE.get();
+		if (deadline == null) {
+			return Long.MAX_VALUE;
+		}
+		long remaining = deadline - System.nanoTime();
+		return remaining <= 0 ? 0L : TimeUnit.NANOSECONDS.toMillis(remaining);
+	}
+
+	/**
+	 * Prüft, ob die Deadline des aktuellen Threads abgelaufen ist.
+	 * 
+	 * @return true, falls eine Deadline festgelegt und abgelaufen ist.
+	 */
+	public static boolean isExpired() {
+		Long deadline = DEADLINE.get();
+		return deadline != null && deadline - System.nanoTime() <= 0;
+	}
+
+	/**
+	 * Bricht die weitere Bearbeitung ab, falls die Deadline des aktuellen Threads
+	 * abgelaufen ist.
+	 * 
+	 * @throws DeadlineExceededException
+	 *             Deadline ist abgelaufen.
+	 */
+	public static void check() throws DeadlineExceededException {
+		if (isExpired()) {
+			throw new DeadlineExceededException("Zeitbudget der Anfrage aufgebraucht.");
+		}
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.resilience;
+
+/**
+ * Priorität, mit welcher die Zugriffe auf CouchDB im aktuellen Thread vom
+ * AdaptiveConcurrencyLimiter zugelassen werden. Jede Priorität darf nur einen
+ * Anteil des aktuellen Limits belegen, sodass bei Überlast zuerst Zugriffe
+ * niedriger Priorität abgewiesen werden.
+ * 
+ * Die Priorität einer Anfrage wird vom LoadSheddingHandlerInterceptor
+ * festgelegt. Threads ohne Anfrage, z.B. der Aufräumprozess, erhalten die
+ * Priorität LOW.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see AdaptiveConcurrencyLimiter
+ */
+public enum RequestPriority {
+
+	/**
+	 * Löschen und Hochladen von Profilen.
+	 */
+	HIGH(1.0),
+
+	/**
+	 * Übrige Anfragen der Clients.
+	 */
+	NORMAL(0.9),
+
+	/**
+	 * Entwicklungsschnittstellen und Hintergrundprozesse.
+	 */
+	LOW(0.5);
+
+	/**
+	 * Priorität des aktuellen Threads.
+	 */
+	private static final ThreadLocal<RequestPriority> CURRENT = new ThreadLocal<RequestPriority>();
+
+	/**
+	 * Anteil des Limits, welcher von Zugriffen dieser Priorität belegt werden darf.
+	 */
+	private final double share;
+
+	private RequestPriority(double share) {
+		this.share = share;
+	}
+
+	/**
+	 * Liefert den Anteil des Limits, welcher von Zugriffen dieser Priorität
+	 * belegt werden darf.
+	 * 
+	 * @return Anteil zwischen 0 und 1.
+	 */
+	public double getShare() {
+		return share;
+	}
+
+	/**
+	 * Legt die Priorität des aktuellen Threads fest.
+	 * 
+	 * @param priority
+	 *            Priorität der Anfrage.
+	 */
+	public static void set(RequestPriority priority) {
+		CURRENT.set(priority);
+	}
+
+	/**
+	 * Entfernt die Priorität des aktuellen Threads.
+	 */
+	public static void clear() {
+		CURRENT.remove();
+	}
+
+	/**
+	 * Prüft, ob der aktuelle Thread eine Anfrage eines Clients bearbeitet.
+	 * 
+	 * @return true, falls eine Priorität festgelegt ist.
+	 */
+	public static boolean isSet() {
+		return CURRENT.get() != null;
+	}
+
+	/**
+	 * Liefert die Priorität des aktuellen Threads.
+	 * 
+	 * @return Festgelegte Priorität oder LOW für Threads ohne Anfrage.
+	 */
+	public static RequestPriority current() {
+		RequestPriority priority = CURRENT.get();
+		return priority == null ? LOW : priority;
+	}
+}
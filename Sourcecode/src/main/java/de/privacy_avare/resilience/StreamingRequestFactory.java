@@ -0,0 +1,249 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.resilience;
+
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+
+import de.privacy_avare.metrics.CouchDBMetricsInterceptor;
+
+/**
+ * RequestFactory für Zugriffe auf CouchDB, deren Body gestreamt wird, etwa das
+ * Speichern großer Preferences. Die Interceptoren des RestTemplates erhalten
+ * den Body als byte[] und puffern ihn daher vollständig. Diese RequestFactory
+ * wendet RequestDeadline, Begrenzung gleichzeitiger Zugriffe und CouchDBMetrics
+ * stattdessen auf Ebene der Zugriffe an, sodass der Body über eine
+ * RequestFactory ohne Pufferung (chunked) direkt an CouchDB geht.
+ *
+ * Der Platz des Limiters wird beim Öffnen des Body belegt und mit der Antwort
+ * freigegeben. Wird der Zugriff vorher abgebrochen, etwa weil das Lesen der
+ * Preferences fehlschlägt, so gibt close() den Platz frei. Aufrufer schließen
+ * die Zugriffe dieser RequestFactory daher nach der Verwendung.
+ *
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.config.CouchDBClientConfig
+ */
+public class StreamingRequestFactory implements ClientHttpRequestFactory {
+
+	private final ClientHttpRequestFactory delegate;
+	private final ConcurrencyLimitInterceptor concurrencyLimitInterceptor;
+	private final CouchDBMetricsInterceptor metricsInterceptor;
+
+	/**
+	 * Erzeugt eine RequestFactory für gestreamte Zugriffe.
+	 *
+	 * @param delegate
+	 *            RequestFactory, welche die Verbindungen ohne Pufferung des Body
+	 *            aufbaut.
+	 * @param concurrencyLimitInterceptor
+	 *            Begrenzung gleichzeitiger Zugriffe.
+	 * @param metricsInterceptor
+	 *            Erfassung der Kennzahlen.
+	 */
+	public StreamingRequestFactory(ClientHttpRequestFactory delegate,
+			ConcurrencyLimitInterceptor concurrencyLimitInterceptor, CouchDBMetricsInterceptor metricsInterceptor) {
+		this.delegate = delegate;
+		this.concurrencyLimitInterceptor = concurrencyLimitInterceptor;
+		this.metricsInterceptor = metricsInterceptor;
+	}
+
+	@Override
+	public ClientHttpRequest createRequest(URI uri, HttpMethod httpMethod) throws IOException {
+		RequestDeadline.check();
+		return new StreamingRequest(delegate.createRequest(uri, httpMethod), uri, httpMethod);
+	}
+
+	/**
+	 * Zugriff, welcher Limiter und Kennzahlen um den gestreamten Body und die
+	 * Antwort legt.
+	 */
+	private class StreamingRequest implements ClientHttpRequest, Closeable {
+		private final ClientHttpRequest request;
+		private final URI uri;
+		private final HttpMethod method;
+		private final String operation;
+		private CountingOutputStream body;
+		private long start;
+		private boolean started;
+		private boolean acquired;
+		private boolean completed;
+
+		/**
+		 * Fehler beim Schreiben des Body, welcher beim Schließen als Überlast
+		 * gewertet wird.
+		 */
+		private IOException bodyError;
+
+		StreamingRequest(ClientHttpRequest request, URI uri, HttpMethod method) {
+			this.request = request;
+			this.uri = uri;
+			this.method = method;
+			this.operation = CouchDBMetricsInterceptor.operation(method.name(), uri);
+		}
+
+		@Override
+		public HttpMethod getMethod() {
+			return method;
+		}
+
+		@Override
+		public URI getURI() {
+			return uri;
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return request.getHeaders();
+		}
+
+		@Override
+		public OutputStream getBody() throws IOException {
+			if (body == null) {
+				begin();
+				try {
+					body = new CountingOutputStream(request.getBody());
+				} catch (IOException e) {
+					throw fail(e);
+				}
+			}
+			return body;
+		}
+
+		@Override
+		public ClientHttpResponse execute() throws IOException {
+			begin();
+			ClientHttpResponse response;
+			try {
+				response = request.execute();
+			} catch (IOException e) {
+				throw fail(e);
+			} catch (RuntimeException e) {
+				close();
+				throw e;
+			}
+			completed = true;
+			if (acquired) {
+				concurrencyLimitInterceptor.release(System.nanoTime() - start,
+						ConcurrencyLimitInterceptor.isOverloaded(response.getRawStatusCode()));
+			}
+			return metricsInterceptor.recordResponse(operation, response, bytesOut(), start);
+		}
+
+		/**
+		 * Gibt den Platz eines nicht ausgeführten Zugriffs frei.
+		 */
+		@Override
+		public void close() {
+			if (started == false || completed) {
+				return;
+			}
+			completed = true;
+			if (bodyError != null) {
+				if (acquired) {
+					concurrencyLimitInterceptor.release(System.nanoTime() - start, true);
+				}
+				metricsInterceptor.recordFailure(operation, bodyError, bytesOut(), start);
+			} else if (acquired) {
+				concurrencyLimitInterceptor.cancel();
+			}
+		}
+
+		/**
+		 * Belegt beim ersten Aufruf den Platz des Limiters.
+		 */
+		private void begin() {
+			if (started) {
+				return;
+			}
+			RequestDeadline.check();
+			acquired = concurrencyLimitInterceptor.acquire(method, uri);
+			started = true;
+			start = System.nanoTime();
+		}
+
+		/**
+		 * Erfasst einen Verbindungsfehler und gibt den Platz frei.
+		 */
+		private IOException fail(IOException e) {
+			completed = true;
+			if (acquired) {
+				concurrencyLimitInterceptor.release(System.nanoTime() - start, true);
+			}
+			metricsInterceptor.recordFailure(operation, e, bytesOut(), start);
+			return DeadlineClientInterceptor.translate(e);
+		}
+
+		private long bytesOut() {
+			return body == null ? 0 : body.count;
+		}
+
+		/**
+		 * OutputStream, welcher die geschriebenen Bytes zählt und Fehler der
+		 * Verbindung vermerkt.
+		 */
+		private class CountingOutputStream extends FilterOutputStream {
+			private long count;
+
+			CountingOutputStream(OutputStream out) {
+				super(out);
+			}
+
+			@Override
+			public void write(int b) throws IOException {
+				try {
+					out.write(b);
+				} catch (IOException e) {
+					bodyError = e;
+					throw e;
+				}
+				count++;
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				try {
+					out.write(b, off, len);
+				} catch (IOException e) {
+					bodyError = e;
+					throw e;
+				}
+				count += len;
+			}
+
+			@Override
+			public void flush() throws IOException {
+				try {
+					out.flush();
+				} catch (IOException e) {
+					bodyError = e;
+					throw e;
+				}
+			}
+		}
+	}
+}
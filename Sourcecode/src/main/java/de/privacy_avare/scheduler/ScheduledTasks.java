@@ -21,6 +21,10 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import de.privacy_avare.service.ClearanceService;
+import de.privacy_avare.service.CompactionService;
+import de.privacy_avare.service.ContactService;
+import de.privacy_avare.service.NodeIdLeaseService;
+import de.privacy_avare.service.ProfilePoolService;
 
 /**
  * Klasse enthält zeitgesteuerte Aufgaben. Zur Aktivierung der Zeitsteuerung ist
@@ -30,10 +34,14 @@ import de.privacy_avare.service.ClearanceService;
  * Informationen zur Festlegung von zeitgesteuerten Methodenaufrufen sind der
  * CronSequenceGenerator-API zu entnehmen.
  * 
+ * Die Aufgaben werden vom TaskScheduler aus SchedulingConfig in eigenen
+ * Threads ausgeführt, sodass ein langer Aufräumprozess die übrigen Aufgaben
+ * nicht verzögert.
  * 
  * @author Lukas Struppek
  * @version 1.0
  * @see de.privacy_avare.SyncServerMain
+ * @see de.privacy_avare.config.SchedulingConfig
  * @see <a href=
  *      "https://docs.spring.io/spring/docs/current/javadoc-api/org/springframework/scheduling/support/CronSequenceGenerator.html">CronSequenceGenerator
  *      </a>
@@ -49,6 +57,30 @@ public class ScheduledTasks {
 	@Autowired
 	private ClearanceService clearanceService;
 
+	/**
+	 * Instanz des Services, welcher Profilkontakte in der Kontakt-Datenbank verfolgt.
+	 */
+	@Autowired
+	private ContactService contactService;
+
+	/**
+	 * Instanz des Services, welcher die Compaction der Datenbanken anstößt.
+	 */
+	@Autowired
+	private CompactionService compactionService;
+
+	/**
+	 * Instanz des Services, welcher den Vorrat angelegter Profile verwaltet.
+	 */
+	@Autowired
+	private ProfilePoolService profilePoolService;
+
+	/**
+	 * Instanz des Services, welcher die Kennung des Knotens vergibt.
+	 */
+	@Autowired
+	private NodeIdLeaseService nodeIdLeaseService;
+
 	/**
 	 * Löschen deaktivierte Profile aus der Datenbank. Aufruf jeden Montag, 03:00:00
 	 * Uhr. Es werden alle Profile in der Datenbank gesucht und gelöscht, deren
@@ -57,9 +89,67 @@ public class ScheduledTasks {
 	 * 
 	 * Eine Überprüfung der Profile auf unSync erfolgt nicht. Diese Profile werden
 	 * ebenso nach der festgelegten Anzahl an Monaten ohne Kontakt gelöscht.
+	 * 
+	 * Bei inkrementellem Aufräumprozess ohne Wirkung.
 	 */
 	@Scheduled(cron = "0 0 3 * * MON", zone = "Europe/Berlin")
 	public void cleanDataBase() {
-		clearanceService.cleanDatabase();
+		if (clearanceService.isIncrementalClearance() == false) {
+			clearanceService.cleanDatabase();
+		}
+	}
+
+	/**
+	 * Führt bei inkrementellem Aufräumprozess einen weiteren Ausschnitt der
+	 * Aufräumarbeiten durch. Der Abstand zwischen zwei Aufrufen wird über
+	 * 'server.clearanceInterval' in Millisekunden festgelegt, Default-Wert sind 10
+	 * Minuten. Bei wöchentlichem Aufräumprozess ohne Wirkung.
+	 */
+	@Scheduled(fixedDelayString = "${server.clearanceInterval:600000}", initialDelay = 60000)
+	public void cleanDataBaseIncrementally() {
+		if (clearanceService.isIncrementalClearance() == true) {
+			clearanceService.cleanDatabaseIncrementally();
+		}
+	}
+
+	/**
+	 * Schreibt die im Speicher gepufferten Profilkontakte in die Kontaktdokumente
+	 * der Kontakt-Datenbank. Aufruf jede Minute nach Abschluss des vorherigen
+	 * Aufrufs. Ohne aktivierte Kontaktverfolgung ohne Wirkung.
+	 */
+	@Scheduled(fixedDelay = 60000)
+	public void flushContacts() {
+		contactService.flushContacts();
+	}
+
+	/**
+	 * Überprüft die Fragmentierung der Datenbanken und startet bei Überschreiten
+	 * des festgelegten Schwellwerts die Compaction. Der Abstand zwischen zwei
+	 * Aufrufen wird über 'server.compactionInterval' in Millisekunden festgelegt,
+	 * Default-Wert sind 15 Minuten.
+	 */
+	@Scheduled(fixedDelayString = "${server.compactionInterval:900000}", initialDelay = 120000)
+	public void compactDataBase() {
+		compactionService.compactIfFragmented();
+	}
+
+	/**
+	 * Füllt den Vorrat angelegter Profile auf, falls er nicht bereits beim
+	 * Unterschreiten des Mindestbestands aufgefüllt wurde, etwa weil die Datenbank
+	 * zwischenzeitlich nicht erreichbar war. Aufruf alle 10 Sekunden nach
+	 * Abschluss des vorherigen Aufrufs. Ohne aktivierten Vorrat ohne Wirkung.
+	 */
+	@Scheduled(fixedDelay = 10000)
+	public void refillProfilePool() {
+		profilePoolService.refill();
+	}
+
+	/**
+	 * Verlängert die Vergabe der Kennung des Knotens, sofern 'server.nodeId' nicht
+	 * festgelegt ist. Aufruf jede Minute nach Abschluss des vorherigen Aufrufs.
+	 */
+	@Scheduled(fixedDelay = 60000)
+	public void renewNodeIdLease() {
+		nodeIdLeaseService.renew();
 	}
 }
@@ -0,0 +1,318 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.service;
+
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import de.privacy_avare.config.DefaultProperties;
+import de.privacy_avare.couchDBDomain.ChangesFeedCheckpoint;
+import de.privacy_avare.repository.ProfileCache;
+import de.privacy_avare.resilience.DeadlineRequestFactory;
+
+/**
+ * Der Service verfolgt den _changes-Feed der Profil-Datenbank und invalidiert
+ * für jedes geänderte oder gelöschte Profil den Eintrag im ProfileCache. Damit
+ * bleibt der Cache auch dann aktuell, wenn Profile über andere Serverinstanzen
+ * geändert werden.
+ * 
+ * Der Feed wird in einem eigenen Hintergrund-Thread per Longpoll abgefragt,
+ * sodass Änderungen ohne Verzögerung durch ein Abfrageintervall ankommen. Die
+ * zuletzt verarbeitete Sequenznummer wird je Serverinstanz
+ * ('server.instanceName', standardmäßig der Hostname) als lokales Dokument
+ * gespeichert. Nach einem Neustart wird der Feed ab dieser Sequenznummer
+ * fortgesetzt, ohne gespeicherte Sequenznummer ab dem aktuellen Stand.
+ * 
+ * Der Cache liefert erst Profile, nachdem der Feed vollständig nachgeholt
+ * wurde. Schlägt eine Abfrage fehl, so wird der Cache geleert und umgangen,
+ * bis der Feed wieder verfolgt wird. Ist der Cache deaktiviert, so wird auch
+ * der Feed nicht abgefragt.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see ProfileCache
+ */
+
+@Service
+public class ChangesFeedService {
+
+	/**
+	 * Mindestabstand in Millisekunden zwischen zwei Speicherungen der
+	 * Sequenznummer.
+	 */
+	private static final long CHECKPOINT_INTERVAL = 10000;
+
+	/**
+	 * Maximale Wartezeit in Millisekunden nach wiederholten Fehlern.
+	 */
+	private static final long MAX_BACKOFF = 30000;
+
+	private static String adress;
+	private static int port;
+	private static String databaseName;
+	private static long feedTimeout;
+	private static int batchSize;
+	private static String instanceName;
+
+	/**
+	 * Static-Block, welcher aus application.properties die Einstellungen des
+	 * _changes-Feeds sowie die Verbindungsdetails der Datenbank ausliest.
+	 */
+	static {
+		InputStream inputStream = null;
+		try {
+			inputStream = ChangesFeedService.class.getResourceAsStream("/application.properties");
+			Properties properties = new Properties(new DefaultProperties());
+			properties.load(inputStream);
+
+			adress = properties.getProperty("couchdb.adress");
+			port = Integer.valueOf(properties.getProperty("couchdb.port"));
+			databaseName = properties.getProperty("couchdb.databaseName");
+			feedTimeout = Long.valueOf(properties.getProperty("server.changesFeedTimeout"));
+			batchSize = Integer.valueOf(properties.getProperty("server.changesFeedBatchSize"));
+			instanceName = properties.getProperty("server.instanceName").trim();
+		} catch (Exception e) {
+			e.printStackTrace();
+			adress = "http://localhost";
+			port = 5984;
+			databaseName = "profiles";
+			feedTimeout = 30000;
+			batchSize = 500;
+			instanceName = "";
+		} finally {
+			try {
+				inputStream.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			if (instanceName.isEmpty()) {
+				try {
+					instanceName = InetAddress.getLocalHost().getHostName();
+				} catch (Exception e) {
+					instanceName = "default";
+				}
+			}
+			// Longpoll muss vor dem Read-Timeout der Verbindung beendet sein
+			int readTimeout = DeadlineRequestFactory.readTimeout("changes");
+			if (readTimeout > 0) {
+				feedTimeout = Math.max(1000, Math.min(feedTimeout, readTimeout - 5000));
+			}
+		}
+	}
+
+	@Autowired
+	private ProfileCache profileCache;
+
+	/**
+	 * RestTemplate für die Zugriffe auf CouchDB.
+	 */
+	@Autowired
+	private RestTemplate restTemplate;
+
+	private volatile boolean running;
+	private Thread thread;
+
+	/**
+	 * Zuletzt verarbeitete Sequenznummer.
+	 */
+	private volatile String lastSeq;
+
+	/**
+	 * Zuletzt geladener bzw. gespeicherter Checkpoint.
+	 */
+	private ChangesFeedCheckpoint checkpoint;
+
+	/**
+	 * default-Konstruktor ohne erweiterte Funktion.
+	 */
+	public ChangesFeedService() {
+
+	}
+
+	/**
+	 * Startet den Hintergrund-Thread, falls der ProfileCache aktiviert ist.
+	 */
+	@PostConstruct
+	public void start() {
+		if (profileCache.isEnabled() == false) {
+			return;
+		}
+		System.out.println("Folgende Einstellungen des _changes-Feeds wurden festgelegt:");
+		System.out.println("\t Instanz: " + instanceName + ", Longpoll-Timeout in Millisekunden: " + feedTimeout
+				+ ", Aenderungen pro Abfrage: " + batchSize);
+		System.out.println("************************************************");
+		running = true;
+		thread = new Thread(this::consume, "changes-feed");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Beendet den Hintergrund-Thread und speichert die zuletzt verarbeitete
+	 * Sequenznummer.
+	 */
+	@PreDestroy
+	public void stop() {
+		if (thread == null) {
+			return;
+		}
+		running = false;
+		thread.interrupt();
+		try {
+			thread.join(1000);
+			if (lastSeq != null && checkpoint != null) {
+				saveCheckpoint(lastSeq);
+			}
+		} catch (Exception e) {
+			System.err.println("Sequenznummer des _changes-Feeds konnte nicht gespeichert werden: " + e.getMessage());
+		}
+		profileCache.setActive(false);
+	}
+
+	/**
+	 * Liefert die zuletzt verarbeitete Sequenznummer.
+	 * 
+	 * @return Sequenznummer oder null, falls der Feed noch nicht abgefragt wurde.
+	 */
+	public String getLastSeq() {
+		return lastSeq;
+	}
+
+	/**
+	 * Fragt den Feed fortlaufend ab, bis der Service beendet wird.
+	 */
+	private void consume() {
+		String since = null;
+		boolean synced = false;
+		long lastSave = System.currentTimeMillis();
+		String savedSeq = null;
+		long backoff = 1000;
+		while (running) {
+			try {
+				if (since == null) {
+					since = loadCheckpoint();
+					savedSeq = since;
+				}
+				String url = adress + ":" + port + "/" + databaseName
+						+ "/_changes?feed={feed}&since={since}&timeout={timeout}&limit={limit}";
+				JsonNode changes = restTemplate.getForObject(url, JsonNode.class, synced ? "longpoll" : "normal",
+						since, feedTimeout, batchSize);
+				for (JsonNode change : changes.path("results")) {
+					String id = change.path("id").asText();
+					if (id.startsWith("_") == false) {
+						profileCache.invalidate(id);
+					}
+				}
+				since = seq(changes.get("last_seq"), since);
+				lastSeq = since;
+				if (synced == false && changes.path("pending").asLong(0) == 0) {
+					synced = true;
+					profileCache.setActive(true);
+					System.out.println("_changes-Feed ab Sequenznummer " + since + " verfolgt, Profil-Cache aktiv");
+				}
+				if (since.equals(savedSeq) == false && System.currentTimeMillis() - lastSave >= CHECKPOINT_INTERVAL) {
+					saveCheckpoint(since);
+					savedSeq = since;
+					lastSave = System.currentTimeMillis();
+				}
+				backoff = 1000;
+			} catch (Exception e) {
+				if (running == false) {
+					break;
+				}
+				if (synced == true || backoff == 1000) {
+					System.err.println("_changes-Feed unterbrochen, Profil-Cache deaktiviert: " + e.getMessage());
+				}
+				synced = false;
+				profileCache.setActive(false);
+				try {
+					Thread.sleep(backoff);
+				} catch (InterruptedException ie) {
+					break;
+				}
+				backoff = Math.min(backoff * 2, MAX_BACKOFF);
+			}
+		}
+	}
+
+	/**
+	 * Wandelt eine Sequenznummer in eine Zeichenkette um. CouchDB 1.x liefert
+	 * Zahlen, ab Version 2 undurchsichtige Zeichenketten.
+	 */
+	private static String seq(JsonNode seq, String fallback) {
+		if (seq == null || seq.isNull()) {
+			return fallback;
+		}
+		return seq.isTextual() ? seq.asText() : seq.toString();
+	}
+
+	/**
+	 * Lädt den gespeicherten Checkpoint dieser Instanz.
+	 * 
+	 * @return Gespeicherte Sequenznummer oder 'now', falls keine vorhanden ist.
+	 */
+	private String loadCheckpoint() {
+		try {
+			checkpoint = restTemplate.getForObject(checkpointUrl(), ChangesFeedCheckpoint.class);
+		} catch (HttpClientErrorException e) {
+			if (e.getStatusCode() != HttpStatus.NOT_FOUND) {
+				throw e;
+			}
+			checkpoint = new ChangesFeedCheckpoint();
+			checkpoint.set_id("_local/changes-feed-" + instanceName);
+		}
+		return checkpoint.getLastSeq() != null ? checkpoint.getLastSeq() : "now";
+	}
+
+	/**
+	 * Speichert die zuletzt verarbeitete Sequenznummer dieser Instanz.
+	 * 
+	 * @param seq
+	 *            Zu speichernde Sequenznummer.
+	 */
+	private synchronized void saveCheckpoint(String seq) {
+		checkpoint.setLastSeq(seq);
+		checkpoint.setLastUpdate(new Date());
+		Map<?, ?> response = restTemplate
+				.exchange(checkpointUrl(), HttpMethod.PUT, new HttpEntity<>(checkpoint), Map.class).getBody();
+		checkpoint.set_rev(String.valueOf(response.get("rev")));
+	}
+
+	/**
+	 * URL des lokalen Dokuments mit der Sequenznummer dieser Instanz.
+	 */
+	private static String checkpointUrl() {
+		return adress + ":" + port + "/" + databaseName + "/_local/changes-feed-" + instanceName;
+	}
+}
@@ -17,27 +17,53 @@
 package de.privacy_avare.service;
 
 import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
-import org.springframework.http.MediaType;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import de.privacy_avare.config.DefaultProperties;
+import de.privacy_avare.couchDBDomain.ClearanceCheckpoint;
 import de.privacy_avare.domain.Profile;
 import de.privacy_avare.repository.ProfileRepository;
+import de.privacy_avare.resilience.RateLimiter;
 
 /**
  * Der Service dient zum endgültigen Löschen von Profilen aus der Datenbank. Der
  * Service ist hauptsächlich für die Anwendung in einem Scheduler gedacht.
  * 
+ * Veraltete Profile werden seitenweise gesucht und mit einer begrenzten Anzahl
+ * paralleler Threads gelöscht. Die Anzahl an Löschvorgängen pro Sekunde ist
+ * begrenzt, damit der Aufräumprozess die Synchronisation der Clients nicht
+ * beeinträchtigt. Seitengröße, Parallelität und Rate werden in den
+ * application.properties festgelegt.
+ * 
+ * Alternativ zum wöchentlichen Gesamtdurchlauf kann der Aufräumprozess
+ * inkrementell erfolgen ('server.clearanceMode = incremental'). Dabei wird bei
+ * jedem Aufruf lediglich ein begrenzter Ausschnitt der Profile verarbeitet und
+ * der Fortschritt in einem Checkpoint in der Datenbank gespeichert, sodass der
+ * Durchlauf nach einem Neustart fortgesetzt wird.
+ * 
  * @author Lukas Struppek
  * @version 1.0
  *
@@ -52,7 +78,30 @@ public class ClearanceService {
 	@Autowired
 	private ProfileRepository profileRepository;
 
+	/**
+	 * Service zur Abfrage der in der Kontakt-Datenbank verfolgten Profilkontakte.
+	 */
+	@Autowired
+	private ContactService contactService;
+
+	/**
+	 * Service zum Anstoßen der Compaction nach dem Löschen der Profile.
+	 */
+	@Autowired
+	private CompactionService compactionService;
+
+	/**
+	 * RestTemplate für die Zugriffe auf CouchDB.
+	 */
+	@Autowired
+	private RestTemplate restTemplate;
+
 	private static int monthsBeforeDeletion;
+	private static int pageSize;
+	private static int parallelism;
+	private static double rateLimit;
+	private static boolean incrementalClearance;
+	private static int sliceSize;
 	private static String adress;
 	private static int port;
 	private static String databaseName;
@@ -65,12 +114,22 @@ public class ClearanceService {
 			properties.load(inputStream);
 
 			monthsBeforeDeletion = Integer.valueOf(properties.getProperty("server.monthsBeforeDeletion"));
+			pageSize = Integer.valueOf(properties.getProperty("server.clearancePageSize"));
+			parallelism = Integer.valueOf(properties.getProperty("server.clearanceParallelism"));
+			rateLimit = Double.valueOf(properties.getProperty("server.clearanceRateLimit"));
+			incrementalClearance = properties.getProperty("server.clearanceMode").trim().equalsIgnoreCase("incremental");
+			sliceSize = Integer.valueOf(properties.getProperty("server.clearanceSliceSize"));
 			adress = properties.getProperty("couchdb.adress");
 			port = Integer.valueOf(properties.getProperty("couchdb.port"));
 			databaseName = properties.getProperty("couchdb.databaseName");
 		} catch (Exception e) {
 			e.printStackTrace();
 			monthsBeforeDeletion = 18;
+			pageSize = 200;
+			parallelism = 2;
+			rateLimit = 20;
+			incrementalClearance = false;
+			sliceSize = 500;
 			adress = "http://localhost";
 			port = 5984;
 			databaseName = "profiles";
@@ -83,10 +142,25 @@ public class ClearanceService {
 			}
 			System.out.println("Folgender Zeitraum ohne Profilkontakt vor dem Loeschen wurde festgelegt:");
 			System.out.println("\t Zeitraum in Monaten: " + monthsBeforeDeletion);
+			System.out.println("\t Seitengroesse: " + pageSize + ", Parallelitaet: " + parallelism
+					+ ", Loeschvorgaenge pro Sekunde: " + (rateLimit > 0 ? rateLimit : "unbegrenzt"));
+			System.out.println("\t Inkrementeller Aufraeumprozess: " + incrementalClearance
+					+ (incrementalClearance ? ", Profile pro Durchlauf: " + sliceSize : ""));
 			System.out.println("************************************************");
 		}
 	}
 
+	/**
+	 * _id des lokalen Dokuments, in welchem der Fortschritt des inkrementellen
+	 * Aufräumprozesses gespeichert wird.
+	 */
+	private static final String CHECKPOINT_ID = "_local/clearance-checkpoint";
+
+	/**
+	 * Verhindert, dass mehrere Aufräumprozesse gleichzeitig ausgeführt werden.
+	 */
+	private final AtomicBoolean running = new AtomicBoolean(false);
+
 	/**
 	 * Konstruktor zum Festlegen des Zeitraums, nach dem ein Profil ohne Kontakt
 	 * gelöscht wird. Zeitraum wird in application.properties festgelegt.
@@ -96,12 +170,40 @@ public class ClearanceService {
 
 	}
 
+	/**
+	 * Prüft, ob der Aufräumprozess inkrementell durchgeführt wird.
+	 * 
+	 * @return true, falls 'server.clearanceMode = incremental' gesetzt ist.
+	 */
+	public boolean isIncrementalClearance() {
+		return incrementalClearance;
+	}
+
 	/**
 	 * Löscht alle Profile in der Datenbank endgültig, auf welche länger als 18
 	 * Monate nicht zugegriffen wurde. Der Zugriffszeitpunkt wird anhand der
 	 * Eigenschaft lastProfileContact geprüft.
+	 * 
+	 * Werden Kontakte in der Kontakt-Datenbank verfolgt, so werden zusätzlich
+	 * alle Profile beibehalten, deren Kontaktdokument einen Kontakt innerhalb des
+	 * Zeitraums enthält. Ältere Kontaktdokumente werden anschließend gelöscht.
 	 */
 	public void cleanDatabase() {
+		if (running.compareAndSet(false, true) == false) {
+			System.out.println("\t Clearance-Prozess laeuft bereits");
+			return;
+		}
+		try {
+			cleanCompleteDatabase();
+		} finally {
+			running.set(false);
+		}
+	}
+
+	/**
+	 * Führt einen vollständigen Durchlauf des Aufräumprozesses durch.
+	 */
+	private void cleanCompleteDatabase() {
 		// Berechnung Zeitpunkt vor 'monthsBeforeDeletion' Monaten
 		Calendar cal = GregorianCalendar.getInstance(Locale.GERMANY);
 		cal.set(Calendar.DATE, cal.get(Calendar.DATE) - (30 * monthsBeforeDeletion));
@@ -111,29 +213,235 @@ public class ClearanceService {
 		System.out.println("************************************************");
 		System.out.println("\t Clearance-Prozess gestartet um " + GregorianCalendar.getInstance(Locale.GERMANY).getTime());
 
-		Iterable<Profile> unusedProfiles = profileRepository.findAllByLastProfileContactBefore(cal.getTime());
-
-		System.out.println("\t Anzahl geloeschter Profile: " + unusedProfiles.spliterator().getExactSizeIfKnown());
+		if (contactService.isBucketTracking() == true) {
+			contactService.flushContacts();
+		}
+		ExecutorService executor = createExecutor();
+		RateLimiter rateLimiter = new RateLimiter(rateLimit);
+		int foundProfiles = 0;
+		int deletedProfiles = 0;
+		try {
+			List<Profile> page;
+			String startAfterId = "";
+			do {
+				page = profileRepository.findPageByLastProfileContactBefore(cal.getTime(), startAfterId, pageSize);
+				foundProfiles += page.size();
+				deletedProfiles += deleteUnusedProfiles(page, findContactedIds(page, cal.getTime()), executor,
+						rateLimiter);
+				if (page.isEmpty() == false) {
+					startAfterId = page.get(page.size() - 1).get_id();
+				}
+			} while (page.size() == pageSize && Thread.currentThread().isInterrupted() == false);
+		} finally {
+			executor.shutdownNow();
+		}
 
-		profileRepository.delete(unusedProfiles);
+		System.out.println("\t Anzahl gefundener Profile ohne Kontakt: " + foundProfiles);
+		System.out.println("\t Anzahl geloeschter Profile: " + deletedProfiles);
 
-		// Aufruf des _compact-Befehls von CouchDB
-		try {
-			RestTemplate restTemplate = new RestTemplate();
-			String url = adress + ":" + port + "/" + databaseName + "/" + "_compact";
-			HttpHeaders headers = new HttpHeaders();
-			headers.setContentType(MediaType.APPLICATION_JSON);
-			HttpEntity<String> entity = new HttpEntity<String>("", headers);
-			restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
-			System.out.println("\t Compact-Befehl durchgeführt: true");
-		} catch (Exception e) {
-			System.out.println("\t Compact-Befehl durchgeführt: false");
-			e.printStackTrace();
+		if (contactService.isBucketTracking() == true) {
+			System.out.println("\t Anzahl geloeschter Kontaktdokumente: " + contactService.deleteContactsBefore(cal.getTime()));
 		}
 
+		// Compaction nur bei ausreichender Fragmentierung der Datenbank
+		System.out.println("\t Compaction gestartet: " + (compactionService.compactIfFragmented() > 0));
+
 		System.out.println("\t Clearance-Prozess beendet um " + GregorianCalendar.getInstance(Locale.GERMANY).getTime());
 		System.out.println("************************************************");
 
 	}
 
+	/**
+	 * Führt einen inkrementellen Durchlauf des Aufräumprozesses durch. Ausgehend
+	 * vom gespeicherten Checkpoint werden höchstens 'server.clearanceSliceSize'
+	 * veraltete Profile verarbeitet. Nach jeder Seite wird der Checkpoint
+	 * aktualisiert, sodass ein unterbrochener Durchlauf nach einem Neustart an
+	 * derselben Stelle fortgesetzt wird. Ist das Ende der Profile erreicht, so
+	 * wird der Checkpoint zurückgesetzt und der nächste Aufruf beginnt einen
+	 * neuen Durchlauf.
+	 */
+	public void cleanDatabaseIncrementally() {
+		if (running.compareAndSet(false, true) == false) {
+			return;
+		}
+		try {
+			Calendar cal = GregorianCalendar.getInstance(Locale.GERMANY);
+			cal.set(Calendar.DATE, cal.get(Calendar.DATE) - (30 * monthsBeforeDeletion));
+
+			ClearanceCheckpoint checkpoint = loadCheckpoint();
+			if (contactService.isBucketTracking() == true) {
+				contactService.flushContacts();
+			}
+			ExecutorService executor = createExecutor();
+			RateLimiter rateLimiter = new RateLimiter(rateLimit);
+			int processedProfiles = 0;
+			int deletedProfiles = 0;
+			boolean finished = false;
+			try {
+				while (processedProfiles < sliceSize && Thread.currentThread().isInterrupted() == false) {
+					int limit = Math.min(pageSize, sliceSize - processedProfiles);
+					List<Profile> page = profileRepository.findPageByLastProfileContactBefore(cal.getTime(),
+							checkpoint.getLastProcessedId(), limit);
+					processedProfiles += page.size();
+					deletedProfiles += deleteUnusedProfiles(page, findContactedIds(page, cal.getTime()), executor,
+							rateLimiter);
+					if (page.size() < limit) {
+						finished = true;
+						checkpoint.setLastProcessedId("");
+					} else {
+						checkpoint.setLastProcessedId(page.get(page.size() - 1).get_id());
+					}
+					checkpoint = saveCheckpoint(checkpoint);
+					if (finished == true) {
+						break;
+					}
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+
+			if (deletedProfiles > 0 || finished == true) {
+				System.out.println("\t Inkrementeller Clearance-Prozess: " + deletedProfiles + " von "
+						+ processedProfiles + " Profilen geloescht" + (finished ? ", Durchlauf abgeschlossen" : ""));
+			}
+			if (finished == true && contactService.isBucketTracking() == true) {
+				contactService.deleteContactsBefore(cal.getTime());
+			}
+		} finally {
+			running.set(false);
+		}
+	}
+
+	/**
+	 * Lädt den Checkpoint des inkrementellen Aufräumprozesses aus der Datenbank.
+	 * Ist noch kein Checkpoint vorhanden, so wird ein Checkpoint am Beginn eines
+	 * neuen Durchlaufs zurückgeliefert.
+	 * 
+	 * @return Gespeicherter oder neuer Checkpoint.
+	 */
+	private ClearanceCheckpoint loadCheckpoint() {
+		String url = adress + ":" + port + "/" + databaseName + "/" + CHECKPOINT_ID;
+		try {
+			return restTemplate.getForObject(url, ClearanceCheckpoint.class);
+		} catch (HttpClientErrorException e) {
+			if (e.getStatusCode() != HttpStatus.NOT_FOUND) {
+				throw e;
+			}
+			ClearanceCheckpoint checkpoint = new ClearanceCheckpoint();
+			checkpoint.set_id(CHECKPOINT_ID);
+			return checkpoint;
+		}
+	}
+
+	/**
+	 * Speichert den Checkpoint des inkrementellen Aufräumprozesses in der
+	 * Datenbank.
+	 * 
+	 * @param checkpoint
+	 *            Zu speichernder Checkpoint.
+	 * @return Checkpoint mit aktualisierter Revision.
+	 */
+	private ClearanceCheckpoint saveCheckpoint(ClearanceCheckpoint checkpoint) {
+		String url = adress + ":" + port + "/" + databaseName + "/" + CHECKPOINT_ID;
+		checkpoint.setLastUpdate(new Date());
+		Map<?, ?> response = restTemplate.exchange(url, HttpMethod.PUT, new HttpEntity<>(checkpoint), Map.class)
+				.getBody();
+		checkpoint.set_rev(String.valueOf(response.get("rev")));
+		return checkpoint;
+	}
+
+	/**
+	 * Liefert bei aktivierter Kontaktverfolgung in der Kontakt-Datenbank die
+	 * ProfileIds derjenigen Profile einer Seite, welche seit dem übergebenen
+	 * Zeitpunkt kontaktiert wurden. Je Seite werden lediglich die
+	 * Kontaktdokumente der Profile dieser Seite gelesen.
+	 * 
+	 * @param page
+	 *            Seite veralteter Profile.
+	 * @param date
+	 *            Zeitpunkt, ab welchem Kontakte berücksichtigt werden.
+	 * @return Menge der kontaktierten ProfileIds oder null, falls Kontakte im
+	 *         Profildokument gespeichert werden.
+	 */
+	private Set<String> findContactedIds(List<Profile> page, Date date) {
+		if (contactService.isBucketTracking() == false || page.isEmpty()) {
+			return null;
+		}
+		List<String> ids = new ArrayList<String>(page.size());
+		for (Profile profile : page) {
+			ids.add(profile.get_id());
+		}
+		return contactService.findContactedIds(ids, date);
+	}
+
+	/**
+	 * Erzeugt den Thread-Pool, mit welchem Profile parallel gelöscht werden. Die
+	 * Anzahl der Threads entspricht der Einstellung 'server.clearanceParallelism'.
+	 * 
+	 * @return Thread-Pool für Löschvorgänge.
+	 */
+	private ExecutorService createExecutor() {
+		final AtomicInteger threadCounter = new AtomicInteger();
+		return Executors.newFixedThreadPool(Math.max(1, parallelism), runnable -> {
+			Thread thread = new Thread(runnable, "clearance-" + threadCounter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Löscht die Profile einer Seite parallel mithilfe des übergebenen
+	 * Thread-Pools. Vor jedem Löschvorgang wird der Rate Limiter abgefragt. Profile,
+	 * welche in der Menge contactedIds enthalten sind, werden nicht gelöscht. Die
+	 * Methode kehrt erst zurück, nachdem alle Löschvorgänge der Seite beendet
+	 * sind.
+	 * 
+	 * Schlägt ein Löschvorgang fehl, z.B. weil das Profil zwischenzeitlich
+	 * verändert wurde, so wird das Profil übersprungen.
+	 * 
+	 * @param page
+	 *            Zu löschende Profile.
+	 * @param contactedIds
+	 *            Kürzlich kontaktierte ProfileIds oder null.
+	 * @param executor
+	 *            Thread-Pool für die Löschvorgänge.
+	 * @param rateLimiter
+	 *            Begrenzung der Löschvorgänge pro Sekunde.
+	 * @return Anzahl der tatsächlich gelöschten Profile.
+	 */
+	private int deleteUnusedProfiles(List<Profile> page, Set<String> contactedIds, ExecutorService executor,
+			RateLimiter rateLimiter) {
+		List<Callable<Boolean>> tasks = new ArrayList<Callable<Boolean>>(page.size());
+		for (Profile profile : page) {
+			if (contactedIds != null && contactedIds.contains(profile.get_id())) {
+				continue;
+			}
+			tasks.add(() -> {
+				rateLimiter.acquire();
+				try {
+					profileRepository.delete(profile);
+					return true;
+				} catch (Exception e) {
+					System.err.println("\t Profil " + profile.get_id() + " nicht geloescht: " + e.getMessage());
+					return false;
+				}
+			});
+		}
+
+		int deletedProfiles = 0;
+		try {
+			for (Future<Boolean> result : executor.invokeAll(tasks)) {
+				try {
+					if (result.get() == true) {
+						++deletedProfiles;
+					}
+				} catch (ExecutionException e) {
+					e.printStackTrace();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return deletedProfiles;
+	}
 }
@@ -0,0 +1,260 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.service;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import de.privacy_avare.config.DefaultProperties;
+
+/**
+ * Der Service überwacht die Fragmentierung der Datenbanken und stößt bei
+ * Bedarf die Compaction von CouchDB an. Durch Löschvorgänge und die
+ * Aktualisierung von lastProfileContact entstehen fortlaufend veraltete
+ * Revisionen, welche erst durch eine Compaction aus der Datenbankdatei entfernt
+ * werden.
+ * 
+ * Die Fragmentierung ergibt sich aus dem Verhältnis von 'sizes.active' zu
+ * 'sizes.file' der Datenbankinformationen. Überschreitet sie den in
+ * 'server.compactionThreshold' festgelegten Anteil und ist die Datei größer als
+ * 'server.compactionMinFileSize' Bytes, so werden Datenbank und Views
+ * komprimiert. Eine bereits laufende Compaction wird anhand von _active_tasks
+ * erkannt und nicht erneut gestartet.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see de.privacy_avare.scheduler.ScheduledTasks
+ */
+
+@Service
+public class CompactionService {
+
+	/**
+	 * Service zur Abfrage, ob die Kontakt-Datenbank verwendet wird.
+	 */
+	@Autowired
+	private ContactService contactService;
+
+	/**
+	 * RestTemplate für die Zugriffe auf CouchDB.
+	 */
+	@Autowired
+	private RestTemplate restTemplate;
+
+	private static double threshold;
+	private static long minFileSize;
+	private static String adress;
+	private static int port;
+	private static String databaseName;
+	private static String contactsDatabaseName;
+
+	/**
+	 * Static-Block, welcher aus application.properties die Schwellwerte der
+	 * Compaction sowie die Verbindungsdetails der Datenbanken ausliest.
+	 */
+	static {
+		InputStream inputStream = null;
+		try {
+			inputStream = CompactionService.class.getResourceAsStream("/application.properties");
+			Properties properties = new Properties(new DefaultProperties());
+			properties.load(inputStream);
+
+			threshold = Double.valueOf(properties.getProperty("server.compactionThreshold"));
+			minFileSize = Long.valueOf(properties.getProperty("server.compactionMinFileSize"));
+			adress = properties.getProperty("couchdb.adress");
+			port = Integer.valueOf(properties.getProperty("couchdb.port"));
+			databaseName = properties.getProperty("couchdb.databaseName");
+			contactsDatabaseName = properties.getProperty("couchdb.contactsDatabaseName");
+		} catch (Exception e) {
+			e.printStackTrace();
+			threshold = 0.3;
+			minFileSize = 1048576;
+			adress = "http://localhost";
+			port = 5984;
+			databaseName = "profiles";
+			contactsDatabaseName = "contacts";
+		} finally {
+			try {
+				inputStream.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			System.out.println("Folgende Einstellungen der Compaction wurden festgelegt:");
+			System.out.println("\t Fragmentierung: " + threshold + ", Mindestgroesse in Bytes: " + minFileSize);
+			System.out.println("************************************************");
+		}
+	}
+
+	/**
+	 * Verhindert, dass sich mehrere Überprüfungen überschneiden.
+	 */
+	private final AtomicBoolean running = new AtomicBoolean(false);
+
+	/**
+	 * default-Konstruktor ohne erweiterte Funktion.
+	 */
+	public CompactionService() {
+
+	}
+
+	/**
+	 * Überprüft die Fragmentierung der Profil-Datenbank sowie bei aktivierter
+	 * Kontaktverfolgung der Kontakt-Datenbank und startet bei
+	 * Bedarf die Compaction. Läuft bereits eine Überprüfung, so kehrt die Methode
+	 * sofort zurück.
+	 * 
+	 * @return Anzahl der Datenbanken, für welche eine Compaction gestartet wurde.
+	 */
+	public int compactIfFragmented() {
+		if (running.compareAndSet(false, true) == false) {
+			return 0;
+		}
+		try {
+			int started = 0;
+			if (compactIfFragmented(databaseName) == true) {
+				started++;
+			}
+			if (contactService.isBucketTracking() == true && compactIfFragmented(contactsDatabaseName) == true) {
+				started++;
+			}
+			return started;
+		} finally {
+			running.set(false);
+		}
+	}
+
+	/**
+	 * Berechnet die Fragmentierung einer Datenbank als Anteil der nicht mehr
+	 * benötigten Bytes an der Dateigröße.
+	 * 
+	 * @param fileSize
+	 *            Größe der Datenbankdatei in Bytes.
+	 * @param activeSize
+	 *            Größe der aktuellen Daten in Bytes.
+	 * @return Fragmentierung zwischen 0 und 1.
+	 */
+	public static double fragmentation(long fileSize, long activeSize) {
+		if (fileSize <= 0 || activeSize >= fileSize) {
+			return 0;
+		}
+		return (double) (fileSize - Math.max(activeSize, 0)) / fileSize;
+	}
+
+	/**
+	 * Überprüft die Fragmentierung einer einzelnen Datenbank und startet bei
+	 * Bedarf die Compaction der Datenbank und ihrer Views.
+	 * 
+	 * @param database
+	 *            Name der Datenbank.
+	 * @return true, falls eine Compaction gestartet wurde.
+	 */
+	private boolean compactIfFragmented(String database) {
+		String url = adress + ":" + port + "/" + database;
+		try {
+			JsonNode info = restTemplate.getForObject(url, JsonNode.class);
+			if (info.path("compact_running").asBoolean(false) == true || isCompactionActive(database)) {
+				return false;
+			}
+			// CouchDB 2.x liefert 'sizes', CouchDB 1.x 'disk_size' und 'data_size'
+			long fileSize = info.path("sizes").path("file").asLong(info.path("disk_size").asLong(0));
+			long activeSize = info.path("sizes").path("active").asLong(info.path("data_size").asLong(fileSize));
+			double fragmentation = fragmentation(fileSize, activeSize);
+			if (fileSize < minFileSize || fragmentation < threshold) {
+				return false;
+			}
+
+			HttpHeaders headers = new HttpHeaders();
+			headers.setContentType(MediaType.APPLICATION_JSON);
+			HttpEntity<String> entity = new HttpEntity<String>("", headers);
+			restTemplate.exchange(url + "/_compact", HttpMethod.POST, entity, String.class);
+			for (String designDoc : getDesignDocuments(database)) {
+				restTemplate.exchange(url + "/_compact/" + designDoc, HttpMethod.POST, entity, String.class);
+			}
+			System.out.println("Compaction der Datenbank " + database + " gestartet, Fragmentierung: "
+					+ Math.round(fragmentation * 100) + "%, Dateigroesse in Bytes: " + fileSize);
+			return true;
+		} catch (RestClientException e) {
+			System.out.println("Compaction der Datenbank " + database + " nicht moeglich: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Prüft anhand von _active_tasks, ob für die angegebene Datenbank bereits
+	 * eine Compaction der Datenbank oder ihrer Views läuft, und gibt deren
+	 * Fortschritt aus. Ist _active_tasks mangels Administratorrechten nicht
+	 * abrufbar, so wird keine laufende Compaction angenommen.
+	 * 
+	 * @param database
+	 *            Name der Datenbank.
+	 * @return true, falls eine Compaction läuft.
+	 */
+	private boolean isCompactionActive(String database) {
+		JsonNode tasks;
+		try {
+			tasks = restTemplate.getForObject(adress + ":" + port + "/_active_tasks", JsonNode.class);
+		} catch (RestClientException e) {
+			return false;
+		}
+		boolean active = false;
+		for (JsonNode task : tasks) {
+			String type = task.path("type").asText();
+			// Bei CouchDB 2.x enthält 'database' den Pfad des Shards
+			String taskDatabase = task.path("database").asText();
+			if ((type.equals("database_compaction") || type.equals("view_compaction"))
+					&& (taskDatabase.equals(database) || taskDatabase.contains("/" + database + "."))) {
+				System.out.println("Compaction der Datenbank " + database + " laeuft bereits (" + type + ", "
+						+ task.path("progress").asInt() + "%)");
+				active = true;
+			}
+		}
+		return active;
+	}
+
+	/**
+	 * Liefert die Namen der Design-Dokumente einer Datenbank ohne Präfix
+	 * '_design/'.
+	 * 
+	 * @param database
+	 *            Name der Datenbank.
+	 * @return Liste der Namen.
+	 */
+	private List<String> getDesignDocuments(String database) {
+		String url = adress + ":" + port + "/" + database
+				+ "/_all_docs?startkey=\"_design/\"&endkey=\"_design0\"";
+		JsonNode result = restTemplate.getForObject(url, JsonNode.class);
+		List<String> designDocs = new ArrayList<>();
+		for (JsonNode row : result.path("rows")) {
+			designDocs.add(row.path("id").asText().substring("_design/".length()));
+		}
+		return designDocs;
+	}
+}
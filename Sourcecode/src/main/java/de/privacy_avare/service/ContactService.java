@@ -0,0 +1,458 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.service;
+
+import java.io.InputStream;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import de.privacy_avare.config.DefaultProperties;
+import de.privacy_avare.couchDBDomain.AllProfileContacts;
+import de.privacy_avare.couchDBDomain.ProfileContact;
+import de.privacy_avare.couchDBDomain.ProfileContactRow;
+import de.privacy_avare.util.SyncClock;
+
+/**
+ * Der Service verwaltet die Kontaktzeitpunkte von Profilen außerhalb der
+ * eigentlichen Profildokumente. Ist in den application.properties die
+ * Einstellung 'server.contactTracking = buckets' gesetzt, so werden Zugriffe
+ * auf Profile nicht mehr durch Überschreiben des Profildokuments vermerkt,
+ * sondern je Profil in einem kleinen Kontaktdokument einer separaten
+ * CouchDB-Datenbank gesammelt, welches lediglich den Tag des letzten Kontakts
+ * enthält.
+ * 
+ * Kontakte werden zunächst im Speicher gepuffert und durch den Scheduler in
+ * regelmäßigen Abständen mit _bulk_docs geschrieben. Der Aufwand eines
+ * Durchlaufs hängt damit nur von der Anzahl der seit dem letzten Durchlauf
+ * kontaktierten Profile ab, nicht von der Anzahl aller am Tag kontaktierten
+ * Profile. Der ClearanceService kann anhand der Kontaktdokumente bestimmen,
+ * welche Profile noch genutzt werden, ohne die Profildokumente selbst lesen
+ * oder schreiben zu müssen.
+ * 
+ * Bei der Einstellung 'server.contactTracking = document' (Standard) ist der
+ * Service inaktiv und lastProfileContact wird weiterhin im Profildokument
+ * gepflegt.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see ProfileContact
+ * @see de.privacy_avare.scheduler.ScheduledTasks
+ */
+
+@Service
+public class ContactService {
+
+	/**
+	 * Format der Kontakttage. Tage werden stets in UTC bestimmt, damit mehrere
+	 * Serverinstanzen dieselben Tage vermerken.
+	 */
+	private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ISO_LOCAL_DATE.withZone(ZoneOffset.UTC);
+
+	/**
+	 * Maximale Anzahl an Versuchen beim Schreiben von Kontaktdokumenten, falls
+	 * eine andere Serverinstanz diese zwischenzeitlich verändert hat (409
+	 * Conflict).
+	 */
+	private static final int MAX_FLUSH_ATTEMPTS = 5;
+
+	/**
+	 * Maximale Anzahl an Kontaktdokumenten je Anfrage an CouchDB.
+	 */
+	private static final int BATCH_SIZE = 500;
+
+	private static boolean bucketTracking;
+	private static String adress;
+	private static int port;
+	private static String contactsDatabaseName;
+	private static String url;
+
+	/**
+	 * Static-Block, welcher aus application.properties die Art der
+	 * Kontaktverfolgung sowie die Verbindungsdetails der Kontakt-Datenbank
+	 * ausliest.
+	 */
+	static {
+		InputStream inputStream = null;
+		try {
+			inputStream = ContactService.class.getResourceAsStream("/application.properties");
+			Properties properties = new Properties(new DefaultProperties());
+			properties.load(inputStream);
+
+			bucketTracking = properties.getProperty("server.contactTracking").trim().equalsIgnoreCase("buckets");
+			adress = properties.getProperty("couchdb.adress");
+			port = Integer.valueOf(properties.getProperty("couchdb.port"));
+			contactsDatabaseName = properties.getProperty("couchdb.contactsDatabaseName");
+		} catch (Exception e) {
+			e.printStackTrace();
+			bucketTracking = false;
+			adress = "http://localhost";
+			port = 5984;
+			contactsDatabaseName = "contacts";
+		} finally {
+			try {
+				inputStream.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			url = adress + ":" + port + "/" + contactsDatabaseName + "/";
+			System.out.println("Folgende Art der Kontaktverfolgung wurde festgelegt:");
+			System.out.println("\t Kontakte in Kontakt-Datenbank: " + bucketTracking);
+			if (bucketTracking == true) {
+				System.out.println("\t URL: " + url);
+			}
+			System.out.println("************************************************");
+		}
+	}
+
+	/**
+	 * Im Speicher gepufferte Kontakte, welche noch nicht in die Datenbank
+	 * geschrieben wurden. Schlüssel ist der Tag im Format yyyy-MM-dd.
+	 */
+	private Map<String, Set<String>> pendingContacts;
+
+	/**
+	 * Schützt den Austausch der gepufferten Kontakte beim Schreiben in die
+	 * Datenbank. Das Vermerken von Kontakten verwendet die geteilte Sperre und
+	 * blockiert sich daher nicht gegenseitig.
+	 */
+	private final ReadWriteLock pendingLock;
+
+	/**
+	 * Gibt an, ob die Kontakt-Datenbank bereits angelegt bzw. gefunden wurde.
+	 */
+	private volatile boolean databaseChecked;
+
+	/**
+	 * RestTemplate für die Zugriffe auf CouchDB.
+	 */
+	@Autowired
+	private RestTemplate restTemplate;
+
+	/**
+	 * default-Konstruktor, welcher den Puffer für Kontakte anlegt.
+	 */
+	public ContactService() {
+		this.pendingContacts = new ConcurrentHashMap<String, Set<String>>();
+		this.pendingLock = new ReentrantReadWriteLock();
+		this.databaseChecked = false;
+	}
+
+	/**
+	 * Prüft, ob Kontakte in der Kontakt-Datenbank verfolgt werden.
+	 * 
+	 * @return true, falls 'server.contactTracking = buckets' gesetzt ist.
+	 */
+	public boolean isBucketTracking() {
+		return bucketTracking;
+	}
+
+	/**
+	 * Vermerkt einen Zugriff auf das Profil mit der übergebenen ProfileId. Der
+	 * Kontakt wird zunächst lediglich im Speicher gepuffert.
+	 * 
+	 * @param id
+	 *            ProfileId des kontaktierten Profils.
+	 */
+	public void recordContact(String id) {
+		String day = DAY_FORMAT.format(SyncClock.now().toInstant());
+		pendingLock.readLock().lock();
+		try {
+			pendingContacts.computeIfAbsent(day, key -> ConcurrentHashMap.newKeySet()).add(id);
+		} finally {
+			pendingLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Schreibt alle gepufferten Kontakte in die Kontaktdokumente der
+	 * Kontakt-Datenbank. Je Profil wird lediglich der späteste gepufferte Tag
+	 * geschrieben, und nur dann, wenn das Kontaktdokument nicht bereits diesen
+	 * oder einen späteren Tag enthält. Schlägt das Schreiben fehl, so verbleiben
+	 * die Kontakte im Puffer und werden beim nächsten Aufruf erneut geschrieben.
+	 */
+	@PreDestroy
+	public void flushContacts() {
+		if (bucketTracking == false) {
+			return;
+		}
+		Map<String, Set<String>> contacts;
+		pendingLock.writeLock().lock();
+		try {
+			if (pendingContacts.isEmpty()) {
+				return;
+			}
+			contacts = pendingContacts;
+			pendingContacts = new ConcurrentHashMap<String, Set<String>>();
+		} finally {
+			pendingLock.writeLock().unlock();
+		}
+
+		Map<String, String> latestContacts = new HashMap<String, String>();
+		for (Map.Entry<String, Set<String>> entry : contacts.entrySet()) {
+			for (String id : entry.getValue()) {
+				latestContacts.merge(id, entry.getKey(), (a, b) -> a.compareTo(b) >= 0 ? a : b);
+			}
+		}
+
+		ensureDatabaseExists();
+		Iterator<Map.Entry<String, String>> iterator = latestContacts.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map<String, String> batch = new HashMap<String, String>();
+			while (iterator.hasNext() && batch.size() < BATCH_SIZE) {
+				Map.Entry<String, String> entry = iterator.next();
+				batch.put(entry.getKey(), entry.getValue());
+			}
+			try {
+				writeContacts(batch);
+			} catch (Exception e) {
+				System.err.println("Kontakte von " + batch.size() + " Profilen konnten nicht gespeichert werden: "
+						+ e.getMessage());
+				pendingLock.readLock().lock();
+				try {
+					for (Map.Entry<String, String> entry : batch.entrySet()) {
+						pendingContacts.computeIfAbsent(entry.getValue(), key -> ConcurrentHashMap.newKeySet())
+								.add(entry.getKey());
+					}
+				} finally {
+					pendingLock.readLock().unlock();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Liefert diejenigen der übergebenen ProfileIds, deren Profile seit dem
+	 * übergebenen Zeitpunkt kontaktiert wurden. Die Kontaktdokumente werden
+	 * gezielt über _all_docs mit keys gelesen, der Speicherbedarf hängt somit
+	 * lediglich von der Anzahl der übergebenen ProfileIds ab. Berücksichtigt
+	 * werden außerdem die noch nicht geschriebenen Kontakte dieser Instanz.
+	 * 
+	 * @param ids
+	 *            Zu prüfende ProfileIds.
+	 * @param date
+	 *            Zeitpunkt, ab welchem Kontakte berücksichtigt werden.
+	 * @return Menge der kontaktierten ProfileIds.
+	 */
+	public Set<String> findContactedIds(Collection<String> ids, Date date) {
+		String firstDay = DAY_FORMAT.format(date.toInstant());
+		Set<String> contacted = new HashSet<String>();
+		List<String> batch = new ArrayList<String>(Math.min(ids.size(), BATCH_SIZE));
+		Iterator<String> iterator = ids.iterator();
+		try {
+			while (iterator.hasNext()) {
+				batch.clear();
+				while (iterator.hasNext() && batch.size() < BATCH_SIZE) {
+					batch.add(iterator.next());
+				}
+				AllProfileContacts contacts = restTemplate.postForObject(url + "_all_docs?include_docs=true",
+						Collections.singletonMap("keys", batch), AllProfileContacts.class);
+				for (ProfileContactRow row : contacts.getRows()) {
+					ProfileContact contact = row.getDoc();
+					if (contact != null && contact.getDay() != null && contact.getDay().compareTo(firstDay) >= 0) {
+						contacted.add(row.getKey());
+					}
+				}
+			}
+		} catch (HttpClientErrorException e) {
+			if (e.getStatusCode() != HttpStatus.NOT_FOUND) {
+				throw e;
+			}
+		}
+		pendingLock.readLock().lock();
+		try {
+			for (Map.Entry<String, Set<String>> entry : pendingContacts.entrySet()) {
+				if (entry.getKey().compareTo(firstDay) < 0) {
+					continue;
+				}
+				for (String id : ids) {
+					if (entry.getValue().contains(id)) {
+						contacted.add(id);
+					}
+				}
+			}
+		} finally {
+			pendingLock.readLock().unlock();
+		}
+		return contacted;
+	}
+
+	/**
+	 * Löscht alle Kontaktdokumente, deren letzter Kontakt vor dem übergebenen
+	 * Zeitpunkt liegt. Die Methode wird vom ClearanceService aufgerufen, da
+	 * entsprechende Profile zu diesem Zeitpunkt bereits gelöscht sind bzw.
+	 * anhand von lastProfileContact beurteilt werden. Wurde ein Dokument
+	 * zwischenzeitlich aktualisiert, so schlägt dessen Löschung mit einem
+	 * Konflikt fehl und es bleibt erhalten.
+	 * 
+	 * @param date
+	 *            Zeitpunkt, vor welchem alle Kontaktdokumente gelöscht werden.
+	 * @return Anzahl der gelöschten Kontaktdokumente.
+	 */
+	public int deleteContactsBefore(Date date) {
+		String firstDay = DAY_FORMAT.format(date.toInstant());
+		int counter = 0;
+		try {
+			JsonNode docs;
+			do {
+				docs = find(Collections.singletonMap("day", Collections.singletonMap("$lt", firstDay)),
+						Arrays.asList("_id", "_rev"));
+				List<Map<String, Object>> deletions = new ArrayList<Map<String, Object>>();
+				for (JsonNode doc : docs) {
+					Map<String, Object> deletion = new HashMap<String, Object>();
+					deletion.put("_id", doc.path("_id").asText());
+					deletion.put("_rev", doc.path("_rev").asText());
+					deletion.put("_deleted", true);
+					deletions.add(deletion);
+				}
+				if (deletions.isEmpty()) {
+					break;
+				}
+				JsonNode results = restTemplate.postForObject(url + "_bulk_docs",
+						Collections.singletonMap("docs", deletions), JsonNode.class);
+				int deleted = 0;
+				for (JsonNode result : results) {
+					if (result.has("error") == false) {
+						++deleted;
+					}
+				}
+				counter += deleted;
+				// Ohne Fortschritt würde dieselbe Seite erneut gefunden
+				if (deleted == 0) {
+					break;
+				}
+			} while (docs.size() == BATCH_SIZE);
+		} catch (HttpClientErrorException e) {
+			if (e.getStatusCode() != HttpStatus.NOT_FOUND) {
+				throw e;
+			}
+		}
+		return counter;
+	}
+
+	/**
+	 * Fragt höchstens BATCH_SIZE Kontaktdokumente über _find ab, aufsteigend nach
+	 * ProfileId sortiert.
+	 */
+	private JsonNode find(Map<String, Object> selector, List<String> fields) {
+		HashMap<String, Object> query = new HashMap<String, Object>();
+		query.put("selector", selector);
+		query.put("fields", fields);
+		query.put("sort", Collections.singletonList(Collections.singletonMap("_id", "asc")));
+		query.put("limit", BATCH_SIZE);
+		return restTemplate.postForObject(url + "_find", query, JsonNode.class).path("docs");
+	}
+
+	/**
+	 * Schreibt die übergebenen Kontakte mit einem Aufruf von _all_docs zur
+	 * Ermittlung der aktuellen Revisionen und einem Aufruf von _bulk_docs.
+	 * Kontaktdokumente, welche zwischenzeitlich von einer anderen Serverinstanz
+	 * verändert wurden, werden erneut gelesen und geschrieben.
+	 * 
+	 * @param contacts
+	 *            Tag des Kontakts je ProfileId.
+	 */
+	private void writeContacts(Map<String, String> contacts) {
+		Map<String, String> remaining = contacts;
+		for (int attempt = 1;; ++attempt) {
+			AllProfileContacts current = restTemplate.postForObject(url + "_all_docs?include_docs=true",
+					Collections.singletonMap("keys", remaining.keySet()), AllProfileContacts.class);
+			List<ProfileContact> updates = new ArrayList<ProfileContact>();
+			for (ProfileContactRow row : current.getRows()) {
+				String day = remaining.get(row.getKey());
+				ProfileContact stored = row.getDoc();
+				if (day == null || (stored != null && stored.getDay() != null && stored.getDay().compareTo(day) >= 0)) {
+					continue;
+				}
+				ProfileContact contact = new ProfileContact(row.getKey(), day);
+				if (stored != null) {
+					contact.set_rev(stored.get_rev());
+				}
+				updates.add(contact);
+			}
+			if (updates.isEmpty()) {
+				return;
+			}
+			JsonNode results = restTemplate.postForObject(url + "_bulk_docs",
+					Collections.singletonMap("docs", updates), JsonNode.class);
+			Map<String, String> conflicts = new HashMap<String, String>();
+			for (JsonNode result : results) {
+				if (result.has("error") == false) {
+					continue;
+				}
+				if ("conflict".equals(result.path("error").asText()) == false) {
+					throw new IllegalStateException(result.path("id").asText() + ": " + result.path("reason").asText());
+				}
+				String id = result.path("id").asText();
+				conflicts.put(id, remaining.get(id));
+			}
+			if (conflicts.isEmpty()) {
+				return;
+			}
+			if (attempt >= MAX_FLUSH_ATTEMPTS) {
+				throw new HttpClientErrorException(HttpStatus.CONFLICT,
+						conflicts.size() + " Kontaktdokumente nach " + attempt + " Versuchen in Konflikt");
+			}
+			remaining = conflicts;
+		}
+	}
+
+	/**
+	 * Legt die Kontakt-Datenbank an, falls diese noch nicht vorhanden ist. Eine
+	 * bereits bestehende Datenbank (412 Precondition Failed) wird ignoriert.
+	 */
+	private void ensureDatabaseExists() {
+		if (databaseChecked == true) {
+			return;
+		}
+		try {
+			restTemplate.put(url, null, new HashMap<String, Object>());
+			databaseChecked = true;
+		} catch (HttpClientErrorException e) {
+			if (e.getStatusCode() == HttpStatus.PRECONDITION_FAILED) {
+				databaseChecked = true;
+			} else {
+				System.err.println("Kontakt-Datenbank konnte nicht angelegt werden: " + e.getMessage());
+			}
+		}
+	}
+}
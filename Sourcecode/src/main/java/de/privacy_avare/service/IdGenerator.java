@@ -0,0 +1,38 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.service;
+
+/**
+ * Erzeugt ohne Abfrage der Datenbank eindeutige ProfileIds in einem bestimmten
+ * Format.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see IdService
+ */
+public interface IdGenerator {
+
+	/**
+	 * Erzeugt eine neue ProfileId.
+	 * 
+	 * @param currentMillis
+	 *            Aktueller Zeitpunkt in Millisekunden.
+	 * @return Neue ProfileId.
+	 */
+	String next(long currentMillis);
+}
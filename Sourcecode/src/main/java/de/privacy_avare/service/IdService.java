@@ -16,19 +16,19 @@
 
 package de.privacy_avare.service;
 
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Locale;
-import java.util.Random;
+import java.io.InputStream;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import de.privacy_avare.config.DefaultProperties;
 import de.privacy_avare.repository.ProfileRepository;
 
 /**
  * Klasse stellt statische Methode zur Generierung und Überprüfung einer
- * 16-stelligen, eindeutigen ProfileID bereit.
+ * 16-stelligen (v1) bzw. 20-stelligen (v2), eindeutigen ProfileID bereit.
  * 
  * @author Lukas Struppek
  * @version 1.0
@@ -37,49 +37,79 @@ import de.privacy_avare.repository.ProfileRepository;
 @Service
 public class IdService {
 
+	private static String idFormat;
+
+	/**
+	 * Static-Block, welcher aus application.properties das Format neu
+	 * generierter ProfileIds ausliest.
+	 */
+	static {
+		InputStream inputStream = null;
+		try {
+			inputStream = IdService.class.getResourceAsStream("/application.properties");
+			Properties properties = new Properties(new DefaultProperties());
+			properties.load(inputStream);
+			idFormat = properties.getProperty("server.idFormat").trim();
+		} catch (Exception e) {
+			e.printStackTrace();
+			idFormat = "v1";
+		} finally {
+			try {
+				inputStream.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+	}
+
 	@Autowired
 	private ProfileRepository profileRepository;
 
+	@Autowired
+	private NodeIdLeaseService nodeIdLeaseService;
+
+	/**
+	 * Generatoren der ProfileIds dieser Serverinstanz je Kennung des Knotens.
+	 * Wird eine Kennung erneut vergeben, so wird ihr bisheriger Generator
+	 * weiterverwendet.
+	 */
+	private final AtomicReferenceArray<IdGenerator> generators = new AtomicReferenceArray<IdGenerator>(
+			NodeIdLeaseService.NODE_IDS);
+
 	/**
 	 * Erzeugt unter Verwendung des aktuellen Datum, der aktuellen Uhrzeit und
-	 * zufälligen Buchstaben eine eindeutige ProfileId. Die ProfileID besteht dabei
-	 * aus 10 Zahlen, welche mit dem Zeitpunkt der Erzeugung zusammenhängen sowie 6
-	 * zufällig gewählten Buchstaben.
+	 * zufällig platzierter Buchstaben eine eindeutige ProfileId. Die ProfileID
+	 * besteht dabei aus 10 Zahlen, welche mit dem Zeitpunkt der Erzeugung
+	 * zusammenhängen sowie 6 Buchstaben, welche Knoten und einen Zähler innerhalb
+	 * der Minute kodieren. Die Eindeutigkeit muss nicht in der Datenbank geprüft
+	 * werden.
+	 * 
+	 * Ist 'server.idFormat' auf v2 gesetzt, so werden stattdessen nach dem
+	 * Zeitpunkt der Erzeugung sortierte ProfileIds aus 20 Zeichen zur Basis 36
+	 * erzeugt.
 	 * 
 	 * @return generierte UserID
+	 * @see ProfileIdGenerator
+	 * @see OrderedProfileIdGenerator
 	 */
 	public String generateId() {
-		Random random = new Random();
-		Calendar calendar = Calendar.getInstance(Locale.GERMANY);
-		calendar.setTime(new Date());
-		StringBuffer id = new StringBuffer();
-		final String lowerCase = "abcdefghijklmnopqrstuvwxyz";
-
-		// Abruf des aktuellen Datums und der Uhrzeit in Zahlenform
-		int day = calendar.get(Calendar.DATE);
-		int month = calendar.get(Calendar.MONTH);
-		int year = calendar.get(Calendar.YEAR);
-		int hour = calendar.get(Calendar.HOUR_OF_DAY);
-		int minute = calendar.get(Calendar.MINUTE);
-
-		// Aufbau der ID aus dem aktuellen Datum und der Uhrzeit
-		id.append(day + 25);
-		id.append(month + 56);
-		id.append(year - 2000 + 7);
-		id.append(hour + 71);
-		id.append(minute + 10);
-
-		// Einfügen von sechs zufälligen Kleinbuchstaben an zufälligen Positionen der
-		// UserID
-		for (int i = 0; i < 6; ++i) {
-			int position = random.nextInt(id.length() + 1);
-			char c = lowerCase.charAt(random.nextInt(lowerCase.length()));
-			id.insert(position, c);
-		}
+		return generator(nodeIdLeaseService.getNodeId()).next(System.currentTimeMillis());
+	}
 
-		// Konvertierung und Rückgabe der UserID in String (immutable)
-		String result = id.toString();
-		return result;
+	/**
+	 * Liefert den Generator einer Kennung des Knotens und erzeugt ihn bei Bedarf.
+	 */
+	private IdGenerator generator(int nodeId) {
+		IdGenerator generator = generators.get(nodeId);
+		if (generator == null) {
+			generator = "v2".equalsIgnoreCase(idFormat)
+					? new OrderedProfileIdGenerator(nodeId, System.currentTimeMillis())
+					: new ProfileIdGenerator(nodeId, System.currentTimeMillis());
+			if (generators.compareAndSet(nodeId, null, generator) == false) {
+				generator = generators.get(nodeId);
+			}
+		}
+		return generator;
 	}
 
 	/**
@@ -96,12 +126,18 @@ public class IdService {
 
 	/**
 	 * Prüft, ob ein String dem Aufbau einer gültigen ProfileId entspricht.
+	 * Unabhängig von 'server.idFormat' werden ProfileIds beider Formate
+	 * akzeptiert: 10 Zahlen und 6 Buchstaben (v1) oder 20 Zeichen zur Basis 36
+	 * (v2).
 	 * 
 	 * @param id
 	 *            Zu prüfender String.
 	 * @return Ergebnis der Prüfung.
 	 */
 	public boolean validateId(String id) {
+		if (OrderedProfileIdGenerator.matches(id)) {
+			return true;
+		}
 		char[] chars = id.toCharArray();
 		int numbers = 0;
 		int characters = 0;
@@ -0,0 +1,315 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.service;
+
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.util.Date;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import de.privacy_avare.config.DefaultProperties;
+import de.privacy_avare.couchDBDomain.NodeIdLease;
+
+/**
+ * Der Service legt die Kennung des Knotens fest, mit welcher diese
+ * Serverinstanz ProfileIds erzeugt. Ist 'server.nodeId' gesetzt, so wird diese
+ * Kennung verwendet. Andernfalls wird eine freie Kennung über ein lokales
+ * Dokument je Kennung in der Profil-Datenbank vergeben, sodass gleichzeitig
+ * laufende Serverinstanzen ohne weitere Konfiguration verschiedene Kennungen
+ * verwenden.
+ * 
+ * Die Vergabe gilt für 10 Minuten und wird über renew() regelmäßig verlängert.
+ * Schlägt die Verlängerung fehl, so wird die Kennung 5 Minuten nach der
+ * letzten erfolgreichen Verlängerung nicht mehr verwendet, also deutlich bevor
+ * eine andere Serverinstanz sie übernehmen darf. Die Differenz gleicht
+ * Abweichungen der Uhren der Serverinstanzen aus. Wurde die Kennung
+ * zwischenzeitlich übernommen, so wird eine andere freie Kennung vergeben.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see NodeIdLease
+ */
+@Service
+public class NodeIdLeaseService {
+
+	/**
+	 * Anzahl der verfügbaren Kennungen.
+	 */
+	public static final int NODE_IDS = 26;
+
+	/**
+	 * Dauer einer Vergabe in Millisekunden.
+	 */
+	private static final long LEASE_DURATION = 600000;
+
+	/**
+	 * Zeitraum in Millisekunden nach der letzten erfolgreichen Verlängerung, in
+	 * welchem die Kennung verwendet wird.
+	 */
+	private static final long LEASE_USABLE = LEASE_DURATION / 2;
+
+	private static String adress;
+	private static int port;
+	private static String databaseName;
+	private static int configuredNodeId;
+	private static String instanceName;
+
+	/**
+	 * Static-Block, welcher aus application.properties die Kennung des Knotens
+	 * sowie die Verbindungsdetails der Datenbank ausliest.
+	 */
+	static {
+		InputStream inputStream = null;
+		try {
+			inputStream = NodeIdLeaseService.class.getResourceAsStream("/application.properties");
+			Properties properties = new Properties(new DefaultProperties());
+			properties.load(inputStream);
+
+			adress = properties.getProperty("couchdb.adress");
+			port = Integer.valueOf(properties.getProperty("couchdb.port"));
+			databaseName = properties.getProperty("couchdb.databaseName");
+			String nodeId = properties.getProperty("server.nodeId").trim();
+			configuredNodeId = nodeId.isEmpty() ? -1 : Integer.valueOf(nodeId);
+			instanceName = properties.getProperty("server.instanceName").trim();
+		} catch (Exception e) {
+			e.printStackTrace();
+			adress = "http://localhost";
+			port = 5984;
+			databaseName = "profiles";
+			configuredNodeId = -1;
+			instanceName = "";
+		} finally {
+			try {
+				inputStream.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			if (instanceName.isEmpty()) {
+				try {
+					instanceName = InetAddress.getLocalHost().getHostName();
+				} catch (Exception e) {
+					instanceName = "default";
+				}
+			}
+			System.out.println("Folgende Kennung des Knotens wurde festgelegt:");
+			System.out.println("\t Kennung: "
+					+ (configuredNodeId >= 0 ? configuredNodeId : "Vergabe ueber die Datenbank je Serverinstanz"));
+			System.out.println("************************************************");
+		}
+	}
+
+	/**
+	 * RestTemplate für die Zugriffe auf CouchDB.
+	 */
+	@Autowired
+	private RestTemplate restTemplate;
+
+	/**
+	 * Gehaltene Vergabe oder null.
+	 */
+	private NodeIdLease lease;
+
+	/**
+	 * Vergebene Kennung oder -1.
+	 */
+	private volatile int leasedNodeId = -1;
+
+	/**
+	 * Zeitpunkt gemäß System.nanoTime(), bis zu welchem die vergebene Kennung
+	 * verwendet wird.
+	 */
+	private volatile long usableUntil;
+
+	/**
+	 * default-Konstruktor ohne erweiterte Funktion.
+	 */
+	public NodeIdLeaseService() {
+
+	}
+
+	/**
+	 * Prüft beim Start die in application.properties festgelegte Kennung.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             Kennung liegt nicht zwischen 0 und 25.
+	 */
+	@PostConstruct
+	public void checkNodeId() {
+		if (configuredNodeId >= NODE_IDS) {
+			throw new IllegalArgumentException("server.nodeId muss zwischen 0 und 25 liegen: " + configuredNodeId);
+		}
+	}
+
+	/**
+	 * Liefert die Kennung des Knotens dieser Serverinstanz. Ist keine Kennung
+	 * festgelegt und keine gültige Kennung vergeben, so wird eine freie Kennung
+	 * in der Datenbank vergeben.
+	 * 
+	 * @return Kennung zwischen 0 und 25.
+	 * @throws IllegalStateException
+	 *             Alle Kennungen sind an andere Serverinstanzen vergeben.
+	 */
+	public int getNodeId() {
+		if (configuredNodeId >= 0) {
+			return configuredNodeId;
+		}
+		int nodeId = leasedNodeId;
+		if (nodeId >= 0 && System.nanoTime() - usableUntil < 0) {
+			return nodeId;
+		}
+		return acquire();
+	}
+
+	/**
+	 * Verlängert die gehaltene Vergabe. Wurde die Kennung zwischenzeitlich an
+	 * eine andere Serverinstanz vergeben, so wird sie nicht weiter verwendet.
+	 */
+	public synchronized void renew() {
+		if (lease == null) {
+			return;
+		}
+		try {
+			write(lease, System.currentTimeMillis() + LEASE_DURATION);
+		} catch (HttpClientErrorException e) {
+			if (e.getStatusCode() != HttpStatus.CONFLICT) {
+				System.err.println("Vergabe der Kennung " + leasedNodeId + " konnte nicht verlaengert werden: "
+						+ e.getMessage());
+				return;
+			}
+			System.err.println("Kennung " + leasedNodeId + " wurde an eine andere Serverinstanz vergeben");
+			lease = null;
+			leasedNodeId = -1;
+		} catch (RestClientException e) {
+			System.err.println(
+					"Vergabe der Kennung " + leasedNodeId + " konnte nicht verlaengert werden: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Gibt die gehaltene Kennung beim Beenden der Serverinstanz frei.
+	 */
+	@PreDestroy
+	public synchronized void release() {
+		if (lease == null) {
+			return;
+		}
+		leasedNodeId = -1;
+		try {
+			write(lease, 0);
+		} catch (RestClientException e) {
+			System.err.println("Kennung konnte nicht freigegeben werden: " + e.getMessage());
+		}
+		lease = null;
+	}
+
+	/**
+	 * Vergibt eine Kennung. Zunächst wird versucht, die bisherige Vergabe zu
+	 * verlängern, anschließend wird die erste freie oder abgelaufene Kennung
+	 * übernommen.
+	 */
+	private synchronized int acquire() {
+		if (lease != null) {
+			renew();
+			if (lease != null && System.nanoTime() - usableUntil < 0) {
+				return leasedNodeId;
+			}
+		}
+		leasedNodeId = -1;
+		lease = null;
+		for (int nodeId = 0; nodeId < NODE_IDS; ++nodeId) {
+			NodeIdLease candidate = load(nodeId);
+			if (candidate.getExpires() != null && candidate.getExpires().getTime() > System.currentTimeMillis()) {
+				continue;
+			}
+			try {
+				write(candidate, System.currentTimeMillis() + LEASE_DURATION);
+			} catch (HttpClientErrorException e) {
+				if (e.getStatusCode() != HttpStatus.CONFLICT) {
+					throw e;
+				}
+				continue;
+			}
+			lease = candidate;
+			leasedNodeId = nodeId;
+			System.out.println("Kennung des Knotens " + nodeId + " an Serverinstanz " + instanceName + " vergeben");
+			return nodeId;
+		}
+		throw new IllegalStateException("Keine freie Kennung des Knotens, server.nodeId muss festgelegt werden.");
+	}
+
+	/**
+	 * Lädt die Vergabe einer Kennung.
+	 * 
+	 * @param nodeId
+	 *            Kennung des Knotens.
+	 * @return Gespeicherte Vergabe oder neue Vergabe ohne Revision.
+	 */
+	private NodeIdLease load(int nodeId) {
+		String id = "_local/node-id-" + nodeId;
+		try {
+			return restTemplate.getForObject(url(id), NodeIdLease.class);
+		} catch (HttpClientErrorException e) {
+			if (e.getStatusCode() != HttpStatus.NOT_FOUND) {
+				throw e;
+			}
+			NodeIdLease lease = new NodeIdLease();
+			lease.set_id(id);
+			return lease;
+		}
+	}
+
+	/**
+	 * Speichert eine Vergabe mit der Revision, unter welcher sie gelesen wurde.
+	 * Bei erfolgreicher Speicherung wird die Kennung bis LEASE_USABLE
+	 * Millisekunden nach Beginn des Zugriffs verwendet.
+	 * 
+	 * @param lease
+	 *            Zu speichernde Vergabe.
+	 * @param expires
+	 *            Ablauf der Vergabe in Millisekunden seit 1970.
+	 * @throws HttpClientErrorException
+	 *             409, falls die Vergabe zwischenzeitlich geändert wurde.
+	 */
+	private void write(NodeIdLease lease, long expires) {
+		long start = System.nanoTime();
+		lease.setInstanceName(instanceName);
+		lease.setExpires(new Date(expires));
+		Map<?, ?> response = restTemplate
+				.exchange(url(lease.get_id()), HttpMethod.PUT, new HttpEntity<>(lease), Map.class).getBody();
+		lease.set_rev(String.valueOf(response.get("rev")));
+		usableUntil = start + TimeUnit.MILLISECONDS.toNanos(LEASE_USABLE);
+	}
+
+	private static String url(String id) {
+		return adress + ":" + port + "/" + databaseName + "/" + id;
+	}
+}
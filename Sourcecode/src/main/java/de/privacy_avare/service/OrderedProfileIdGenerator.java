@@ -0,0 +1,157 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.service;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Erzeugt ProfileIds im Format v2 aus 20 Zeichen zur Basis 36 (Ziffern und
+ * Kleinbuchstaben), welche nach dem Zeitpunkt ihrer Erzeugung sortiert sind.
+ * 
+ * Aufbau einer ProfileId:
+ * <ul>
+ * <li>9 Zeichen: Millisekunden seit 1970</li>
+ * <li>1 Zeichen: Kennung des Knotens ('server.nodeId')</li>
+ * <li>3 Zeichen: Zähler innerhalb der Millisekunde</li>
+ * <li>7 Zeichen: Zufall</li>
+ * </ul>
+ * 
+ * Neue ProfileIds eines Knotens sind damit lexikographisch aufsteigend und
+ * werden in CouchDB am rechten Rand des B-Baums der Dokument-Ids eingefügt,
+ * anstatt verstreut über den gesamten Baum. Die Eindeutigkeit ergibt sich wie
+ * bei ProfileIdGenerator aus Zeitpunkt, Knoten und Zähler, welche ohne Sperren
+ * per compareAndSet vergeben werden. Der Zeitpunkt läuft nie zurück, sind alle
+ * 36^3 Zählerwerte einer Millisekunde vergeben, so wird auf die folgende
+ * Millisekunde ausgewichen.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see IdService
+ * @see ProfileIdGenerator
+ */
+public class OrderedProfileIdGenerator implements IdGenerator {
+
+	/**
+	 * Länge einer ProfileId im Format v2.
+	 */
+	public static final int LENGTH = 20;
+
+	private static final int TIME_DIGITS = 9;
+	private static final int COUNTER_DIGITS = 3;
+	private static final int RANDOM_DIGITS = 7;
+
+	/**
+	 * Anzahl der Zählerwerte je Millisekunde und Knoten (36^3).
+	 */
+	static final int CAPACITY = 36 * 36 * 36;
+
+	/**
+	 * Anzahl der Bits für den Zähler im Zustand.
+	 */
+	private static final int COUNTER_BITS = 16;
+
+	/**
+	 * Wertebereich des zufälligen Anteils (36^7).
+	 */
+	private static final long RANDOM_RANGE = 36L * 36 * 36 * 36 * 36 * 36 * 36;
+
+	private static final char[] DIGITS = "0123456789abcdefghijklmnopqrstuvwxyz".toCharArray();
+
+	private final char nodeDigit;
+
+	/**
+	 * Nächste freie Kombination aus Millisekunde (obere Bits) und Zähler (untere
+	 * 16 Bits).
+	 */
+	private final AtomicLong state;
+
+	/**
+	 * Erzeugt einen Generator.
+	 * 
+	 * @param nodeId
+	 *            Kennung des Knotens zwischen 0 und 25, muss unter allen
+	 *            gleichzeitig laufenden Serverinstanzen eindeutig sein.
+	 * @param startMillis
+	 *            Zeitpunkt der Erzeugung in Millisekunden.
+	 */
+	public OrderedProfileIdGenerator(int nodeId, long startMillis) {
+		if (nodeId < 0 || nodeId >= 26) {
+			throw new IllegalArgumentException("server.nodeId muss zwischen 0 und 25 liegen: " + nodeId);
+		}
+		this.nodeDigit = DIGITS[nodeId];
+		this.state = new AtomicLong((startMillis + 1) << COUNTER_BITS);
+	}
+
+	@Override
+	public String next(long currentMillis) {
+		long now = currentMillis << COUNTER_BITS;
+		long issued;
+		while (true) {
+			long current = state.get();
+			issued = Math.max(current, now);
+			long next = (issued & (1L << COUNTER_BITS) - 1) + 1 < CAPACITY ? issued + 1
+					: ((issued >>> COUNTER_BITS) + 1) << COUNTER_BITS;
+			if (state.compareAndSet(current, next)) {
+				break;
+			}
+		}
+
+		char[] id = new char[LENGTH];
+		int position = LENGTH;
+		position = encode(id, position, ThreadLocalRandom.current().nextLong(RANDOM_RANGE), RANDOM_DIGITS);
+		position = encode(id, position, issued & (1L << COUNTER_BITS) - 1, COUNTER_DIGITS);
+		id[--position] = nodeDigit;
+		encode(id, position, issued >>> COUNTER_BITS, TIME_DIGITS);
+		return new String(id);
+	}
+
+	/**
+	 * Schreibt einen Wert mit fester Anzahl an Stellen zur Basis 36 rechtsbündig
+	 * vor die übergebene Position.
+	 * 
+	 * @return Position der ersten geschriebenen Stelle.
+	 */
+	private static int encode(char[] id, int end, long value, int digits) {
+		for (int i = 0; i < digits; ++i) {
+			id[--end] = DIGITS[(int) (value % 36)];
+			value /= 36;
+		}
+		return end;
+	}
+
+	/**
+	 * Prüft, ob ein String dem Aufbau einer ProfileId im Format v2 entspricht.
+	 * 
+	 * @param id
+	 *            Zu prüfender String.
+	 * @return Ergebnis der Prüfung.
+	 */
+	public static boolean matches(String id) {
+		if (id.length() != LENGTH) {
+			return false;
+		}
+		for (int i = 0; i < LENGTH; ++i) {
+			char c = id.charAt(i);
+			if ((c < '0' || c > '9') && (c < 'a' || c > 'z')) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
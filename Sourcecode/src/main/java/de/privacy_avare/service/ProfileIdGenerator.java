@@ -0,0 +1,215 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.service;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.TimeZone;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Erzeugt ProfileIds im bisherigen Format aus 10 Ziffern und 6 Kleinbuchstaben,
+ * welche ohne Abfrage der Datenbank eindeutig sind.
+ * 
+ * Die Ziffern beschreiben wie bisher die Minute der Erzeugung. Der erste der
+ * sechs Buchstaben kennzeichnet den Knoten ('server.nodeId', 0 bis 25), die
+ * übrigen fünf Buchstaben einen Zähler innerhalb der Minute, welcher vor der
+ * Kodierung permutiert wird. Die Buchstaben werden in dieser Reihenfolge an
+ * zufälligen Positionen eingefügt. Ziffern, Knoten und Zähler lassen sich damit
+ * eindeutig aus einer ProfileId ablesen, sodass sich zwei ProfileIds
+ * unterscheiden, solange sich Minute, Knoten oder Zähler unterscheiden.
+ * 
+ * Minute und Zähler werden gemeinsam in einem AtomicLong gehalten und ohne
+ * Sperren per compareAndSet vergeben. Die vergebene Minute läuft nie zurück,
+ * auch nicht bei einer Zeitumstellung oder einer zurückgestellten Uhr. Sind alle
+ * 26^5 Zählerwerte einer Minute vergeben, so wird auf die folgende Minute
+ * ausgewichen. Die erste vergebene Minute liegt nach der Minute der Erzeugung
+ * des Generators, sodass ein neu gestarteter Server keine Minute eines zuvor
+ * beendeten Servers desselben Knotens erneut verwendet, sofern zwischen zwei
+ * Starts mindestens eine Minute liegt.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see IdService
+ */
+public class ProfileIdGenerator implements IdGenerator {
+
+	/**
+	 * Anzahl der Zählerwerte je Minute und Knoten (26^5).
+	 */
+	static final int CAPACITY = 26 * 26 * 26 * 26 * 26;
+
+	/**
+	 * Anzahl der Bits für den Zähler im Zustand.
+	 */
+	private static final int COUNTER_BITS = 24;
+
+	/**
+	 * Zu 2 und 13 teilerfremder Faktor der Permutation des Zählers.
+	 */
+	private static final long PERMUTATION_FACTOR = 7_368_787;
+
+	private static final int LENGTH = 16;
+	private static final int LETTERS = 6;
+
+	private final char nodeLetter;
+	private final TimeZone timeZone;
+
+	/**
+	 * Nächste freie Kombination aus lokaler Minute (obere Bits) und Zähler (untere
+	 * 24 Bits).
+	 */
+	private final AtomicLong state;
+
+	/**
+	 * Ziffern der zuletzt verwendeten Minute.
+	 */
+	private volatile Stamp stamp;
+
+	/**
+	 * Erzeugt einen Generator für die Zeitzone des Servers.
+	 * 
+	 * @param nodeId
+	 *            Kennung des Knotens zwischen 0 und 25, muss unter allen
+	 *            gleichzeitig laufenden Serverinstanzen eindeutig sein.
+	 * @param startMillis
+	 *            Zeitpunkt der Erzeugung in Millisekunden.
+	 */
+	public ProfileIdGenerator(int nodeId, long startMillis) {
+		this(nodeId, startMillis, TimeZone.getDefault());
+	}
+
+	/**
+	 * Erzeugt einen Generator für eine bestimmte Zeitzone.
+	 * 
+	 * @param nodeId
+	 *            Kennung des Knotens zwischen 0 und 25.
+	 * @param startMillis
+	 *            Zeitpunkt der Erzeugung in Millisekunden.
+	 * @param timeZone
+	 *            Zeitzone, in welcher die Ziffern der ProfileId bestimmt werden.
+	 */
+	public ProfileIdGenerator(int nodeId, long startMillis, TimeZone timeZone) {
+		if (nodeId < 0 || nodeId >= 26) {
+			throw new IllegalArgumentException("server.nodeId muss zwischen 0 und 25 liegen: " + nodeId);
+		}
+		this.nodeLetter = (char) ('a' + nodeId);
+		this.timeZone = timeZone;
+		this.state = new AtomicLong((localMinute(startMillis) + 1) << COUNTER_BITS);
+	}
+
+	@Override
+	public String next(long currentMillis) {
+		long now = localMinute(currentMillis) << COUNTER_BITS;
+		long issued;
+		while (true) {
+			long current = state.get();
+			issued = Math.max(current, now);
+			long next = (issued & (1L << COUNTER_BITS) - 1) + 1 < CAPACITY ? issued + 1
+					: ((issued >>> COUNTER_BITS) + 1) << COUNTER_BITS;
+			if (state.compareAndSet(current, next)) {
+				break;
+			}
+		}
+		long minute = issued >>> COUNTER_BITS;
+		int counter = (int) (issued & (1L << COUNTER_BITS) - 1);
+		return format(digits(minute), permute(counter, minute));
+	}
+
+	/**
+	 * Setzt die ProfileId aus Ziffern, Knoten und permutiertem Zähler zusammen.
+	 */
+	private String format(char[] digits, int value) {
+		// Zufällige Auswahl der sechs Positionen der Buchstaben
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int positions = 0;
+		int chosen = 0;
+		while (chosen < LETTERS) {
+			int bit = 1 << random.nextInt(LENGTH);
+			if ((positions & bit) == 0) {
+				positions |= bit;
+				++chosen;
+			}
+		}
+
+		char[] id = new char[LENGTH];
+		int digit = 0;
+		int letter = 0;
+		int divisor = CAPACITY / 26;
+		for (int i = 0; i < LENGTH; ++i) {
+			if ((positions & (1 << i)) == 0) {
+				id[i] = digits[digit++];
+			} else if (letter++ == 0) {
+				id[i] = nodeLetter;
+			} else {
+				id[i] = (char) ('a' + value / divisor % 26);
+				divisor /= 26;
+			}
+		}
+		return new String(id);
+	}
+
+	/**
+	 * Bijektive Abbildung des Zählers auf [0, 26^5), damit aufeinanderfolgende
+	 * ProfileIds nicht fortlaufend aussehen.
+	 */
+	private static int permute(int counter, long minute) {
+		long offset = (minute * 0x9E3779B97F4A7C15L >>> 40) % CAPACITY;
+		return (int) ((counter * PERMUTATION_FACTOR + offset) % CAPACITY);
+	}
+
+	/**
+	 * Bestimmt die Minute seit 1970 in der lokalen Zeit, deren Ziffern in die
+	 * ProfileId eingehen.
+	 */
+	private long localMinute(long millis) {
+		return Math.floorDiv(millis + timeZone.getOffset(millis), 60000L);
+	}
+
+	/**
+	 * Liefert die 10 Ziffern einer lokalen Minute. Die Ziffern werden nur beim
+	 * Wechsel der Minute neu berechnet.
+	 */
+	private char[] digits(long minute) {
+		Stamp current = stamp;
+		if (current != null && current.minute == minute) {
+			return current.digits;
+		}
+		LocalDateTime time = LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+		// Aufbau wie bisher aus Tag, Monat, Jahr, Stunde und Minute
+		String digits = "" + (time.getDayOfMonth() + 25) + (time.getMonthValue() - 1 + 56)
+				+ (time.getYear() - 2000 + 7) + (time.getHour() + 71) + (time.getMinute() + 10);
+		current = new Stamp(minute, digits.toCharArray());
+		stamp = current;
+		return current.digits;
+	}
+
+	/**
+	 * Ziffern einer lokalen Minute.
+	 */
+	private static class Stamp {
+		private final long minute;
+		private final char[] digits;
+
+		Stamp(long minute, char[] digits) {
+			this.minute = minute;
+			this.digits = digits;
+		}
+	}
+}
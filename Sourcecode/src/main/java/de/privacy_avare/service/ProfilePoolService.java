@@ -0,0 +1,302 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.service;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.stereotype.Service;
+
+import de.privacy_avare.config.DefaultProperties;
+import de.privacy_avare.domain.Profile;
+import de.privacy_avare.repository.ProfileRepository;
+
+/**
+ * Service hält einen Vorrat bereits in der Datenbank angelegter, leerer
+ * Profile, sodass neue Profile ohne Datenbankzugriff vergeben werden können.
+ * Der Vorrat umfasst höchstens 'server.profilePoolSize' Profile (0 deaktiviert
+ * den Vorrat). Sinkt er unter 'server.profilePoolLowWater', so wird er in einem
+ * Hintergrund-Thread mit Aufrufen von _bulk_docs wieder aufgefüllt. Zusätzlich
+ * wird der Vorrat regelmäßig über die ScheduledTasks aufgefüllt, etwa nachdem
+ * die Datenbank zwischenzeitlich nicht erreichbar war.
+ * 
+ * Der Vorrat wird nur im Arbeitsspeicher der Serverinstanz geführt, sodass ein
+ * Profil nie von zwei Instanzen vergeben wird. Beim Beenden des Servers nicht
+ * vergebene Profile verbleiben als leere Profile in der Datenbank und werden
+ * vom Aufräumprozess wie ungenutzte Profile gelöscht. Profile, welche länger als
+ * einen Tag im Vorrat liegen, werden nicht mehr vergeben, sondern im
+ * Hintergrund bzw. beim nächsten Auffüllen aus der Datenbank gelöscht.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see ProfileService#createNewProfile()
+ * @see de.privacy_avare.scheduler.ScheduledTasks
+ */
+
+@Service
+public class ProfilePoolService implements PublicMetrics {
+
+	/**
+	 * Maximale Anzahl an Profilen je Aufruf von _bulk_docs.
+	 */
+	private static final int BATCH_SIZE = 100;
+
+	/**
+	 * Maximales Alter eines Profils im Vorrat in Millisekunden.
+	 */
+	private static final long MAX_AGE = TimeUnit.DAYS.toMillis(1);
+
+	private static int poolSize;
+	private static int lowWater;
+
+	/**
+	 * Static-Block, welcher aus application.properties Größe und Mindestbestand
+	 * des Vorrats ausliest.
+	 */
+	static {
+		InputStream inputStream = null;
+		try {
+			inputStream = ProfilePoolService.class.getResourceAsStream("/application.properties");
+			Properties properties = new Properties(new DefaultProperties());
+			properties.load(inputStream);
+
+			poolSize = Integer.valueOf(properties.getProperty("server.profilePoolSize").trim());
+			lowWater = Integer.valueOf(properties.getProperty("server.profilePoolLowWater").trim());
+		} catch (Exception e) {
+			e.printStackTrace();
+			poolSize = 0;
+			lowWater = 50;
+		} finally {
+			try {
+				inputStream.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+			lowWater = Math.min(lowWater, poolSize);
+			System.out.println("Folgende Einstellungen des Profil-Vorrats wurden festgelegt:");
+			System.out.println("\t Maximale Anzahl Profile: " + poolSize + ", Mindestbestand: " + lowWater);
+			System.out.println("************************************************");
+		}
+	}
+
+	@Autowired
+	private ProfileRepository profileRepository;
+
+	@Autowired
+	private IdService idService;
+
+	/**
+	 * Vorrat angelegter, noch nicht vergebener Profile.
+	 */
+	private final BlockingQueue<Profile> pool = new ArrayBlockingQueue<>(Math.max(1, poolSize));
+
+	/**
+	 * true, solange der Vorrat aufgefüllt wird.
+	 */
+	private final AtomicBoolean refilling = new AtomicBoolean();
+
+	private final AtomicLong claimed = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong created = new AtomicLong();
+	private final AtomicLong expired = new AtomicLong();
+
+	private ExecutorService executor;
+
+	/**
+	 * default-Konstruktor ohne erweiterte Funktionalität.
+	 */
+	public ProfilePoolService() {
+
+	}
+
+	/**
+	 * Startet das erste Auffüllen des Vorrats im Hintergrund.
+	 */
+	@PostConstruct
+	public void start() {
+		if (isEnabled() == false) {
+			return;
+		}
+		executor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "profile-pool");
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.execute(this::refill);
+	}
+
+	/**
+	 * Beendet den Hintergrund-Thread.
+	 */
+	@PreDestroy
+	public void stop() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Prüft, ob der Vorrat in application.properties aktiviert ist.
+	 * 
+	 * @return true, falls 'server.profilePoolSize' größer 0 ist.
+	 */
+	public boolean isEnabled() {
+		return poolSize > 0;
+	}
+
+	/**
+	 * Entnimmt ein bereits angelegtes Profil aus dem Vorrat. Sinkt der Vorrat
+	 * dadurch unter den Mindestbestand, so wird er im Hintergrund aufgefüllt.
+	 * 
+	 * @return Angelegtes Profil oder null, falls der Vorrat leer oder deaktiviert
+	 *         ist.
+	 */
+	public Profile claim() {
+		if (isEnabled() == false) {
+			return null;
+		}
+		long now = System.currentTimeMillis();
+		List<Profile> expiredProfiles = new ArrayList<>();
+		Profile profile;
+		while ((profile = pool.poll()) != null && isExpired(profile, now)) {
+			expiredProfiles.add(profile);
+		}
+
+		if (executor.isShutdown() == false) {
+			if (expiredProfiles.isEmpty() == false) {
+				executor.execute(() -> delete(expiredProfiles));
+			}
+			if (pool.size() < lowWater && refilling.get() == false) {
+				executor.execute(this::refill);
+			}
+		}
+		if (profile == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		claimed.incrementAndGet();
+		return profile;
+	}
+
+	/**
+	 * Füllt den Vorrat bis zur maximalen Anzahl an Profilen auf. Zuvor werden
+	 * abgelaufene Profile aus dem Vorrat entfernt und aus der Datenbank gelöscht.
+	 * Läuft bereits ein Auffüllen, so kehrt der Aufruf sofort zurück. Schlägt ein
+	 * Datenbankzugriff fehl, so wird das Auffüllen beim nächsten Aufruf
+	 * fortgesetzt.
+	 */
+	public void refill() {
+		if (isEnabled() == false || refilling.compareAndSet(false, true) == false) {
+			return;
+		}
+		try {
+			// Profile werden in der Reihenfolge ihrer Erzeugung entnommen, die
+			// ältesten Profile liegen somit am Anfang des Vorrats
+			long now = System.currentTimeMillis();
+			List<Profile> expiredProfiles = new ArrayList<>();
+			Profile head;
+			while ((head = pool.peek()) != null && isExpired(head, now) && pool.remove(head)) {
+				expiredProfiles.add(head);
+			}
+			delete(expiredProfiles);
+
+			int missing;
+			while ((missing = poolSize - pool.size()) > 0) {
+				List<Profile> batch = new ArrayList<>();
+				for (int i = 0; i < Math.min(missing, BATCH_SIZE); ++i) {
+					batch.add(new Profile(idService.generateId()));
+				}
+				Map<String, Profile> byId = new HashMap<>();
+				for (Profile profile : batch) {
+					byId.put(profile.get_id(), profile);
+				}
+				List<String> inserted = profileRepository.insertAll(batch);
+				for (String id : inserted) {
+					if (pool.offer(byId.get(id)) == false) {
+						break;
+					}
+					created.incrementAndGet();
+				}
+				if (inserted.isEmpty()) {
+					break;
+				}
+			}
+		} catch (Exception e) {
+			System.err.println("Profil-Vorrat konnte nicht aufgefüllt werden: " + e.getMessage());
+		} finally {
+			refilling.set(false);
+		}
+	}
+
+	/**
+	 * Prüft, ob ein Profil länger als einen Tag im Vorrat liegt.
+	 */
+	private static boolean isExpired(Profile profile, long now) {
+		return now - profile.getLastProfileContact().getTime() > MAX_AGE;
+	}
+
+	/**
+	 * Löscht abgelaufene Profile aus der Datenbank. Schlägt das Löschen fehl, so
+	 * verbleiben die Profile als ungenutzte Profile in der Datenbank.
+	 * 
+	 * @param profiles
+	 *            Aus dem Vorrat entfernte Profile.
+	 */
+	private void delete(List<Profile> profiles) {
+		for (Profile profile : profiles) {
+			try {
+				profileRepository.delete(profile.get_id());
+				expired.incrementAndGet();
+			} catch (Exception e) {
+				System.err.println("Abgelaufenes Profil des Vorrats konnte nicht gelöscht werden: " + e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public Collection<Metric<?>> metrics() {
+		List<Metric<?>> metrics = new ArrayList<>();
+		if (isEnabled() == false) {
+			return metrics;
+		}
+		metrics.add(new Metric<Integer>("profilePool.size", pool.size()));
+		metrics.add(new Metric<Long>("profilePool.claimed", claimed.get()));
+		metrics.add(new Metric<Long>("profilePool.misses", misses.get()));
+		metrics.add(new Metric<Long>("profilePool.created", created.get()));
+		metrics.add(new Metric<Long>("profilePool.expired", expired.get()));
+		return metrics;
+	}
+}
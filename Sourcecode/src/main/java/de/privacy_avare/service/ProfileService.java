@@ -16,7 +16,10 @@
 
 package de.privacy_avare.service;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -36,6 +39,8 @@ import de.privacy_avare.exeption.ProfileSetOnDeletionException;
 import de.privacy_avare.exeption.ServerPreferencesOutdatedException;
 import de.privacy_avare.exeption.ProfileNotFoundException;
 import de.privacy_avare.repository.ProfileRepository;
+import de.privacy_avare.resilience.RequestDeadline;
+import de.privacy_avare.util.SyncClock;
 
 /**
  * Klasse stellt verschiedene Services zur Interaktion mit Profilen in der
@@ -53,13 +58,33 @@ public class ProfileService {
 	private ProfileRepository profileRepository;
 	@Autowired
 	private IdService idService;
+	@Autowired
+	private ContactService contactService;
+	@Autowired
+	private ProfilePoolService profilePoolService;
+
+	/**
+	 * Maximale Anzahl an Versuchen, ein Profil mit einer generierten ProfileId
+	 * anzulegen.
+	 */
+	private static final int MAX_ID_ATTEMPTS = 3;
 
 	private static int minTimeDifference;
 
+	/**
+	 * minTimeDifference in Millisekunden für den Vergleich von Zeitstempeln.
+	 */
+	private static long minTimeDifferenceMillis;
+
+	private static int contactGranularity;
+
 	/**
 	 * Static-Block, welcher aus application.properties die Einstellung
 	 * minTimeDifference ausliest, mithilfe welcher die Aktualität von Client- und
-	 * Serverprofilen verglichen wird.
+	 * Serverprofilen verglichen wird. Zusätzlich wird die Einstellung
+	 * contactGranularity ausgelesen, welche festlegt, in welchen Abständen der
+	 * Zeitpunkt lastProfileContact bei reinen Lesezugriffen in die Datenbank
+	 * geschrieben wird.
 	 */
 	static {
 		InputStream inputStream = null;
@@ -68,16 +93,21 @@ public class ProfileService {
 			Properties properties = new Properties(new DefaultProperties());
 			properties.load(inputStream);
 			minTimeDifference = Integer.valueOf(properties.getProperty("server.minTimeDifference"));
+			contactGranularity = Integer.valueOf(properties.getProperty("server.contactGranularity"));
 		} catch (Exception e) {
 			e.printStackTrace();
 			minTimeDifference = 5;
+			contactGranularity = 1440;
 		} finally {
 			System.out.println("************************************************");
 			System.out.println(
 					"Folgender minimaler Zeitunterschied zwischen Server-Profil und Client-Profil beim TimeStamp-Vergleich wurde festgelegt:");
 			System.out.println("\t Minimaler Zeitunterschied in Minuten: " + minTimeDifference);
+			System.out.println("Folgende Granularitaet fuer das Speichern von lastProfileContact wurde festgelegt:");
+			System.out.println("\t Granularitaet in Minuten: " + contactGranularity);
 			System.out.println("************************************************");
 		}
+		minTimeDifferenceMillis = minTimeDifference * 60000L;
 	}
 
 	/**
@@ -93,28 +123,41 @@ public class ProfileService {
 	 * lastProfileChange auf 0 gesetzt wird. Das DB-Profil enthält noch keine
 	 * preferences.
 	 * 
+	 * Ist der Vorrat des ProfilePoolService aktiviert, so wird ein dort bereits
+	 * angelegtes Profil ohne Datenbankzugriff vergeben. Ansonsten wird ein Profil
+	 * mit einer generierten ProfileId angelegt. Ist die generierte ProfileId wider
+	 * Erwarten bereits vergeben, so wird das Anlegen mit einer neu generierten
+	 * ProfileId wiederholt.
 	 * 
 	 * @return Neu erzeugtes Profil.
 	 * @throws ProfileAlreadyExistsException
-	 *             ProfileId bereits vergeben.
+	 *             Alle generierten ProfileIds bereits vergeben.
 	 * 
 	 */
 	public Profile createNewProfile() throws ProfileAlreadyExistsException {
-		String id = idService.generateId();
-		id = id.toLowerCase();
-		if (idService.isIdAlreadyTaken(id) == true) {
-			throw new ProfileAlreadyExistsException("UserID wird bereits in einem bestehenden Profil verwendet.");
+		Profile pooled = profilePoolService.claim();
+		if (pooled != null) {
+			return pooled;
+		}
+		for (int attempt = 1;; ++attempt) {
+			Profile profile = new Profile(idService.generateId());
+			try {
+				insertProfile(profile);
+				return profile;
+			} catch (ProfileAlreadyExistsException e) {
+				if (attempt >= MAX_ID_ATTEMPTS) {
+					throw e;
+				}
+			}
 		}
-		Profile profile = new Profile(id);
-		updateProfile(profile);
-		return profile;
 	}
 
 	/**
 	 * Erzeugt ein neues Profil mit einer gegebenen ProfileId. Bei erfolgreicher
 	 * Erzeugung wird ein entsprechendes DB-Profil angelegt, wobei die Eigenschaft
 	 * lastProfileChangeTimestamp auf 0 gesetzt wird. Das DB-Profil enthält noch
-	 * keine preferences.
+	 * keine preferences. Ob die ProfileId bereits vergeben ist, ergibt sich aus
+	 * dem Anlegen selbst, eine vorherige Abfrage der Datenbank entfällt.
 	 * 
 	 * @param id
 	 *            Bestehende ProfileID.
@@ -130,18 +173,16 @@ public class ProfileService {
 			throw new MalformedProfileIdException(
 					"Ungültiges ProfileID-Format - Entspricht nicht dem Aufbau einer üblichen Id.");
 		}
-		if (idService.isIdAlreadyTaken(id) == true) {
-			throw new ProfileAlreadyExistsException("UserID wird bereits in einem bestehenden Profil verwendet.");
-		}
 		Profile profile = new Profile(id);
-		updateProfile(profile);
+		insertProfile(profile);
 		return profile;
 	}
 
 	/**
 	 * Sucht in der Datenbank nach einem Profil mit einer bestimmten ProfileId.
-	 * Eigenschaft lastProfileContact wird in der Datenbank aktualisiert. Das
-	 * zurückgelieferte Profil weist jedoch noch den ursprünglichen Zeitstempel auf.
+	 * Eigenschaft lastProfileContact wird gemäß touchProfile(Profile) nur dann in
+	 * der Datenbank aktualisiert, wenn der gespeicherte Zeitpunkt älter als die
+	 * festgelegte Granularität ist.
 	 * 
 	 * @param id
 	 *            ProfileId, nach welcher in der Datenbank gesucht werden soll.
@@ -150,12 +191,25 @@ public class ProfileService {
 	 *             Kein Profil mit entsprechender ID gefunden.
 	 */
 	public Profile getProfileById(String id) throws ProfileNotFoundException {
-		id = id.toLowerCase();
-		Profile dbProfile = profileRepository.findOne(id);
+		Profile dbProfile = findProfile(id);
 		if (dbProfile == null) {
 			throw new ProfileNotFoundException("Kein Profil mit entsprechender ID gefunden.");
-		} else {
-			updateProfile(dbProfile);
+		}
+		return dbProfile;
+	}
+
+	/**
+	 * Sucht in der Datenbank nach einem Profil mit einer bestimmten ProfileId und
+	 * vermerkt den Zugriff gemäß touchProfile(Profile).
+	 * 
+	 * @param id
+	 *            ProfileId, nach welcher in der Datenbank gesucht werden soll.
+	 * @return Vorhandenes Profil der Datenbank oder null.
+	 */
+	private Profile findProfile(String id) {
+		Profile dbProfile = profileRepository.findOne(id.toLowerCase());
+		if (dbProfile != null) {
+			touchProfile(dbProfile);
 		}
 		return dbProfile;
 	}
@@ -192,23 +246,110 @@ public class ProfileService {
 	 */
 	public Profile getProfileByIdComparingLastChange(String id, Date clientLastProfileChange)
 			throws ProfileNotFoundException, ProfileSetOnDeletionException, ServerPreferencesOutdatedException {
-		id = id.toLowerCase();
-		Profile dbProfile = getProfileById(id);
-		GregorianCalendar dbLastProfileChange = new GregorianCalendar();
-		dbLastProfileChange.setTime(dbProfile.getLastProfileChange());
-		dbLastProfileChange.set(Calendar.MINUTE, dbLastProfileChange.get(Calendar.MINUTE) - ProfileService.minTimeDifference);
-		if (dbLastProfileChange.getTime().after(clientLastProfileChange)) {
-			return dbProfile;
-		} else {
+		SyncResult result = tryPullProfile(id, clientLastProfileChange);
+		switch (result.getOutcome()) {
+		case NOT_FOUND:
+			throw new ProfileNotFoundException("Kein Profil mit entsprechender ID gefunden.");
+		case SERVER_OUTDATED:
 			throw new ServerPreferencesOutdatedException("Profil in DB älter als Clientprofil");
+		default:
+			return result.getProfile();
+		}
+	}
+
+	/**
+	 * Entspricht getProfileByIdComparingLastChange(String, Date), liefert
+	 * reguläre Ausgänge wie ein veraltetes Serverprofil jedoch als SyncResult,
+	 * anstatt eine Exception zu werfen.
+	 * 
+	 * Der Wert lastProfileContact wird in der Datenbank gemäß
+	 * touchProfile(Profile) angepasst.
+	 * 
+	 * @param id
+	 *            ProfileId, nach welcher in der Datenbank gesucht werden soll.
+	 * @param clientLastProfileChange
+	 *            Entspricht der Aktualität des Profils auf dem Clientgerät.
+	 * @return OK mit dem aktuelleren Datenbankprofil, NOT_FOUND oder
+	 *         SERVER_OUTDATED.
+	 */
+	public SyncResult tryPullProfile(String id, Date clientLastProfileChange) {
+		return tryPullProfile(id, clientLastProfileChange.getTime());
+	}
+
+	/**
+	 * Entspricht tryPullProfile(String, Date), der Zeitpunkt der letzten
+	 * Änderung auf dem Client wird jedoch in Millisekunden seit 1970 übergeben.
+	 * 
+	 * @param id
+	 *            ProfileId, nach welcher in der Datenbank gesucht werden soll.
+	 * @param clientLastProfileChange
+	 *            Aktualität des Profils auf dem Clientgerät in Millisekunden seit
+	 *            1970.
+	 * @return OK mit dem aktuelleren Datenbankprofil, NOT_FOUND oder
+	 *         SERVER_OUTDATED.
+	 */
+	public SyncResult tryPullProfile(String id, long clientLastProfileChange) {
+		Profile dbProfile = findProfile(id);
+		if (dbProfile == null) {
+			return SyncResult.NOT_FOUND;
+		}
+		if (isServerNewer(dbProfile, clientLastProfileChange)) {
+			return SyncResult.ok(dbProfile);
+		} else {
+			return SyncResult.SERVER_OUTDATED;
 		}
 	}
 
+	/**
+	 * Entspricht tryPullProfile(String, long), die Preferences werden jedoch
+	 * direkt in den übergebenen Stream geschrieben, ohne sie als String
+	 * aufzubauen. Der Vergleich der Zeitstempel erfolgt vor dem Lesen der
+	 * Preferences; bei SERVER_OUTDATED oder NOT_FOUND wird nichts geschrieben.
+	 * 
+	 * Der Zugriff wird anschließend gemäß touchProfile(Profile) vermerkt. Da
+	 * dabei lediglich lastProfileContact geschrieben wird, muss das Profil hierfür
+	 * nicht vollständig gelesen werden.
+	 * 
+	 * @param id
+	 *            ProfileId, nach welcher in der Datenbank gesucht werden soll.
+	 * @param clientLastProfileChange
+	 *            Aktualität des Profils auf dem Clientgerät in Millisekunden seit
+	 *            1970.
+	 * @param out
+	 *            Ziel der UTF-8 kodierten Preferences.
+	 * @return OK mit dem Profil ohne Preferences, NOT_FOUND oder
+	 *         SERVER_OUTDATED.
+	 * @throws IOException
+	 *             Fehler beim Schreiben der Preferences.
+	 */
+	public SyncResult tryPullProfile(String id, long clientLastProfileChange, OutputStream out) throws IOException {
+		Profile dbProfile = profileRepository.streamPreferences(id.toLowerCase(),
+				profile -> isServerNewer(profile, clientLastProfileChange), out);
+		if (dbProfile == null) {
+			return SyncResult.NOT_FOUND;
+		}
+		touchProfile(dbProfile);
+		if (isServerNewer(dbProfile, clientLastProfileChange)) {
+			return SyncResult.ok(dbProfile);
+		} else {
+			return SyncResult.SERVER_OUTDATED;
+		}
+	}
+
+	/**
+	 * Prüft, ob das Profil in der Datenbank mindestens 'minTimeDifference'
+	 * Minuten neuer ist als das Profil des Clients.
+	 */
+	private static boolean isServerNewer(Profile dbProfile, long clientLastProfileChange) {
+		return dbProfile.getLastProfileChange().getTime() - minTimeDifferenceMillis > clientLastProfileChange;
+	}
+
 	/**
 	 * Liefert eine Liste aller in der Datenbank vorhandenen Profilen, absteigend
 	 * nach der ProfileId sortiert, zurück. Dabei werden die Profile unabhängig
 	 * ihrer gesetzten Eigenschaften zurückgeliefert. Bei allen gefundenen Profilen
-	 * wird die Eigenschaft lastProfileContactTimestamp aktualisiert.
+	 * wird die Eigenschaft lastProfileContact gemäß touchProfile(Profile)
+	 * aktualisiert.
 	 * 
 	 * @return Liste mit allen Profilen.
 	 * @throws NoProfilesInDatabaseException
@@ -219,7 +360,10 @@ public class ProfileService {
 		if (list.iterator().hasNext() == false) {
 			throw new NoProfilesInDatabaseException("Keine Profile in der DB vorhanden.");
 		}
-		updateProfiles(list);
+		for (Profile profile : list) {
+			RequestDeadline.check();
+			touchProfile(profile);
+		}
 		return list;
 	}
 
@@ -312,32 +456,130 @@ public class ProfileService {
 	 */
 	public void pushProfile(String id, Date clientLastProfileChange, String clientPreferences, boolean overwrite)
 			throws ProfileNotFoundException, ProfileSetOnDeletionException, ClientPreferencesOutdatedException {
-		// Abrufen des entsprechenden Profils aus der Datenbank, wirft eventuell
-		// Exceptions
-		id = id.toLowerCase();
-		Profile dbProfile = getProfileById(id);
-		{
-			if (overwrite == true) {
-				dbProfile.setPreferences(clientPreferences);
-				dbProfile.setLastProfileChange(clientLastProfileChange);
-				updateProfile(dbProfile);
-			} else {
-				GregorianCalendar dbProfileLastProfileChange = new GregorianCalendar();
-				dbProfileLastProfileChange.setTime(dbProfile.getLastProfileChange());
-				dbProfileLastProfileChange.set(Calendar.MINUTE,
-						dbProfileLastProfileChange.get(Calendar.MINUTE) + ProfileService.minTimeDifference);
-
-				if (dbProfileLastProfileChange.getTime().before(clientLastProfileChange) || overwrite == true) {
-					dbProfile.setPreferences(clientPreferences);
-					dbProfile.setLastProfileChange(clientLastProfileChange);
-					updateProfile(dbProfile);
-				} else {
-					throw new ClientPreferencesOutdatedException("Profil in DB aktueller als Clientprofile.");
-				}
-			}
+		SyncResult result = tryPushProfile(id, clientLastProfileChange, clientPreferences, overwrite);
+		switch (result.getOutcome()) {
+		case NOT_FOUND:
+			throw new ProfileNotFoundException("Kein Profil mit entsprechender ID gefunden.");
+		case CLIENT_OUTDATED:
+			throw new ClientPreferencesOutdatedException("Profil in DB aktueller als Clientprofile.");
+		default:
+			return;
 		}
 	}
 
+	/**
+	 * Entspricht pushProfile(String, Date, String, boolean), liefert reguläre
+	 * Ausgänge wie ein veraltetes Clientprofil jedoch als SyncResult, anstatt
+	 * eine Exception zu werfen.
+	 * 
+	 * @param id
+	 *            ProfileId des zu aktualisierenden Profils.
+	 * @param clientLastProfileChange
+	 *            Zeitpunkt der letzten Änderung der Preferences auf dem Client.
+	 * @param clientPreferences
+	 *            Zu speichernde Preferences.
+	 * @param overwrite
+	 *            Legt fest, ob ein neueres Profil in DB überschrieben werden soll.
+	 * @return OK mit dem gespeicherten Profil, NOT_FOUND oder CLIENT_OUTDATED.
+	 */
+	public SyncResult tryPushProfile(String id, Date clientLastProfileChange, String clientPreferences,
+			boolean overwrite) {
+		return tryPushProfile(id, clientLastProfileChange.getTime(), clientPreferences, overwrite);
+	}
+
+	/**
+	 * Entspricht tryPushProfile(String, Date, String, boolean), der Zeitpunkt der
+	 * letzten Änderung auf dem Client wird jedoch in Millisekunden seit 1970
+	 * übergeben.
+	 * 
+	 * @param id
+	 *            ProfileId des zu aktualisierenden Profils.
+	 * @param clientLastProfileChange
+	 *            Zeitpunkt der letzten Änderung der Preferences auf dem Client in
+	 *            Millisekunden seit 1970.
+	 * @param clientPreferences
+	 *            Zu speichernde Preferences.
+	 * @param overwrite
+	 *            Legt fest, ob ein neueres Profil in DB überschrieben werden soll.
+	 * @return OK mit dem gespeicherten Profil, NOT_FOUND oder CLIENT_OUTDATED.
+	 */
+	public SyncResult tryPushProfile(String id, long clientLastProfileChange, String clientPreferences,
+			boolean overwrite) {
+		SyncResult result = preparePush(id, clientLastProfileChange, overwrite);
+		if (result.isOk()) {
+			Profile dbProfile = result.getProfile();
+			dbProfile.setPreferences(clientPreferences);
+			updateProfile(dbProfile);
+		}
+		return result;
+	}
+
+	/**
+	 * Entspricht tryPushProfile(String, long, String, boolean), die Preferences
+	 * werden jedoch erst beim Schreiben in die Datenbank aus dem Reader gelesen.
+	 * Ist das Clientprofil veraltet oder das Profil nicht vorhanden, so wird der
+	 * Reader nicht gelesen. Das zurückgelieferte Profil enthält keine
+	 * Preferences.
+	 * 
+	 * @param id
+	 *            ProfileId des zu aktualisierenden Profils.
+	 * @param clientLastProfileChange
+	 *            Zeitpunkt der letzten Änderung der Preferences auf dem Client in
+	 *            Millisekunden seit 1970.
+	 * @param clientPreferences
+	 *            Zu speichernde Preferences.
+	 * @param overwrite
+	 *            Legt fest, ob ein neueres Profil in DB überschrieben werden soll.
+	 * @return OK mit dem gespeicherten Profil, NOT_FOUND oder CLIENT_OUTDATED.
+	 * @throws IOException
+	 *             Fehler beim Lesen der Preferences.
+	 */
+	public SyncResult tryPushProfile(String id, long clientLastProfileChange, Reader clientPreferences,
+			boolean overwrite) throws IOException {
+		SyncResult result = preparePush(id, clientLastProfileChange, overwrite);
+		if (result.isOk()) {
+			Profile dbProfile = result.getProfile();
+			dbProfile.set_id(dbProfile.get_id().toLowerCase());
+			dbProfile.setLastProfileContact(SyncClock.now());
+			profileRepository.save(dbProfile, clientPreferences);
+		}
+		return result;
+	}
+
+	/**
+	 * Sucht das Profil eines Pushs und vergleicht dessen Eigenschaft
+	 * lastProfileChange mit dem Zeitpunkt des Clients. Ist der Push zulässig, so
+	 * wird lastProfileChange des gelieferten Profils bereits auf den Zeitpunkt
+	 * des Clients gesetzt.
+	 * 
+	 * Gelesen werden lediglich die Metadaten, die gespeicherten Preferences
+	 * werden für den Vergleich nicht benötigt. Ein zulässiger Push schreibt das
+	 * Profil ohnehin mit aktuellem lastProfileContact, lediglich ein abgelehnter
+	 * Push wird gemäß touchProfile(Profile) vermerkt.
+	 * 
+	 * @param id
+	 *            ProfileId des zu aktualisierenden Profils.
+	 * @param clientLastProfileChange
+	 *            Zeitpunkt der letzten Änderung auf dem Client in Millisekunden
+	 *            seit 1970.
+	 * @param overwrite
+	 *            Legt fest, ob ein neueres Profil in DB überschrieben werden soll.
+	 * @return OK mit dem zu speichernden Profil, NOT_FOUND oder CLIENT_OUTDATED.
+	 */
+	private SyncResult preparePush(String id, long clientLastProfileChange, boolean overwrite) {
+		Profile dbProfile = profileRepository.findMetadataById(id.toLowerCase());
+		if (dbProfile == null) {
+			return SyncResult.NOT_FOUND;
+		}
+		if (overwrite == false
+				&& dbProfile.getLastProfileChange().getTime() + minTimeDifferenceMillis >= clientLastProfileChange) {
+			touchProfile(dbProfile);
+			return SyncResult.CLIENT_OUTDATED;
+		}
+		dbProfile.setLastProfileChange(new Date(clientLastProfileChange));
+		return SyncResult.ok(dbProfile);
+	}
+
 	/**
 	 * Fügt ein Profil in die Datenbank ein. Bereits bestehende Profile mit
 	 * identischer ProfileId werden überschrieben.
@@ -353,10 +595,81 @@ public class ProfileService {
 	 */
 	public void updateProfile(Profile profile) {
 		profile.set_id(profile.get_id().toLowerCase());
-		profile.setLastProfileContact(GregorianCalendar.getInstance(Locale.GERMANY).getTime());
+		profile.setLastProfileContact(SyncClock.now());
 		profileRepository.save(profile);
 	}
 
+	/**
+	 * Legt ein neues Profil in der Datenbank an, ohne ein bestehendes Profil zu
+	 * überschreiben. Der Wert lastProfileContact wird auf die aktuelle Zeit
+	 * gesetzt.
+	 * 
+	 * @param profile
+	 *            Das in der Datenbank anzulegende Profil.
+	 * @throws ProfileAlreadyExistsException
+	 *             ProfileId bereits vergeben.
+	 */
+	private void insertProfile(Profile profile) throws ProfileAlreadyExistsException {
+		profile.set_id(profile.get_id().toLowerCase());
+		profile.setLastProfileContact(SyncClock.now());
+		profileRepository.insert(profile);
+	}
+
+	/**
+	 * Vermerkt einen lesenden Zugriff auf ein Profil. Der Zeitpunkt
+	 * lastProfileContact wird nur dann in die Datenbank geschrieben, wenn der
+	 * gespeicherte Zeitpunkt mindestens 'contactGranularity' Minuten zurückliegt.
+	 * Da lastProfileContact lediglich für das Löschen ungenutzter Profile nach
+	 * mehreren Monaten ausgewertet wird, bleiben die meisten Lesezugriffe somit
+	 * reine Lesezugriffe, welche keine neue Revision in der Datenbank erzeugen.
+	 * 
+	 * Bei einer Granularität von 0 wird lastProfileContact bei jedem Zugriff
+	 * geschrieben. Geschrieben wird dabei lediglich der Zeitpunkt, sodass das
+	 * übergebene Profil keine Preferences enthalten muss. Wurde das Profil
+	 * zwischenzeitlich gelöscht, so wird kein Kontakt vermerkt. Werden Kontakte
+	 * in der Kontakt-Datenbank verfolgt, so wird das Profildokument nie
+	 * geschrieben und der Kontakt lediglich über den ContactService vermerkt.
+	 * 
+	 * @param profile
+	 *            Profil, auf welches zugegriffen wurde.
+	 * @return true, falls das Profil in die Datenbank geschrieben wurde.
+	 * @see ContactService
+	 */
+	public boolean touchProfile(Profile profile) {
+		if (contactService.isBucketTracking() == true) {
+			contactService.recordContact(profile.get_id().toLowerCase());
+			return false;
+		}
+		if (isContactOutdated(profile)) {
+			profile.setLastProfileContact(SyncClock.now());
+			try {
+				profileRepository.updateLastProfileContactById(profile.get_id().toLowerCase(),
+						profile.getLastProfileContact());
+			} catch (ProfileNotFoundException e) {
+				return false;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Prüft, ob ein Zugriff auf das Profil gemäß touchProfile(Profile) ein
+	 * Schreiben von lastProfileContact in die Datenbank erfordert.
+	 * 
+	 * @param profile
+	 *            Profil, auf welches zugegriffen wird.
+	 * @return true, falls lastProfileContact geschrieben werden muss.
+	 */
+	private boolean isContactOutdated(Profile profile) {
+		if (contactService.isBucketTracking() == true) {
+			return false;
+		}
+		Date lastProfileContact = profile.getLastProfileContact();
+		return contactGranularity <= 0 || lastProfileContact == null
+				|| SyncClock.millis() - lastProfileContact.getTime() >= contactGranularity * 60000L;
+	}
+
 	/**
 	 * Fügt eine Menge von Profilen in die Datenbank ein. Bereits bestehende Profile
 	 * mit identischer ProfileId werden überschrieben. Bei jedem Methodenaufruf wird
@@ -371,7 +684,7 @@ public class ProfileService {
 	 */
 	public void updateProfiles(Iterable<Profile> profileList) {
 		for (Profile profile : profileList) {
-			profile.setLastProfileContact(GregorianCalendar.getInstance(Locale.GERMANY).getTime());
+			profile.setLastProfileContact(SyncClock.now());
 			profileRepository.save(profile);
 		}
 	}
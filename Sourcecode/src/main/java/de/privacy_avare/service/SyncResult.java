@@ -0,0 +1,124 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.service;
+
+import de.privacy_avare.domain.Profile;
+
+/**
+ * Ergebnis eines Abrufs oder einer Speicherung von Preferences. Anstatt für
+ * reguläre Ausgänge wie ein veraltetes Server- oder Clientprofil eine Exception
+ * zu werfen, liefern die Methoden tryPullProfile und tryPushProfile des
+ * ProfileService ein SyncResult, welches die Controller direkt in eine Antwort
+ * umsetzen.
+ * 
+ * Ergebnisse ohne Profil sind unveränderliche Konstanten und werden nicht bei
+ * jedem Aufruf neu erzeugt.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see ProfileService#tryPullProfile(String, java.util.Date)
+ * @see ProfileService#tryPushProfile(String, java.util.Date, String, boolean)
+ */
+public final class SyncResult {
+
+	/**
+	 * Mögliche Ausgänge eines Abrufs oder einer Speicherung.
+	 */
+	public enum Outcome {
+		/**
+		 * Preferences erfolgreich abgerufen bzw. gespeichert.
+		 */
+		OK,
+
+		/**
+		 * Kein Profil mit entsprechender ProfileId gefunden.
+		 */
+		NOT_FOUND,
+
+		/**
+		 * Profil in der Datenbank nicht aktueller als das Clientprofil (Abruf).
+		 */
+		SERVER_OUTDATED,
+
+		/**
+		 * Profil in der Datenbank aktueller als das Clientprofil (Speicherung).
+		 */
+		CLIENT_OUTDATED
+	}
+
+	/**
+	 * Kein Profil mit entsprechender ProfileId gefunden.
+	 */
+	public static final SyncResult NOT_FOUND = new SyncResult(Outcome.NOT_FOUND, null);
+
+	/**
+	 * Profil in der Datenbank nicht aktueller als das Clientprofil.
+	 */
+	public static final SyncResult SERVER_OUTDATED = new SyncResult(Outcome.SERVER_OUTDATED, null);
+
+	/**
+	 * Profil in der Datenbank aktueller als das Clientprofil.
+	 */
+	public static final SyncResult CLIENT_OUTDATED = new SyncResult(Outcome.CLIENT_OUTDATED, null);
+
+	private final Outcome outcome;
+	private final Profile profile;
+
+	private SyncResult(Outcome outcome, Profile profile) {
+		this.outcome = outcome;
+		this.profile = profile;
+	}
+
+	/**
+	 * Erzeugt ein erfolgreiches Ergebnis.
+	 * 
+	 * @param profile
+	 *            Abgerufenes bzw. gespeichertes Profil.
+	 * @return Erfolgreiches Ergebnis.
+	 */
+	public static SyncResult ok(Profile profile) {
+		return new SyncResult(Outcome.OK, profile);
+	}
+
+	/**
+	 * Liefert den Ausgang des Abrufs bzw. der Speicherung.
+	 * 
+	 * @return Ausgang.
+	 */
+	public Outcome getOutcome() {
+		return outcome;
+	}
+
+	/**
+	 * Prüft, ob der Abruf bzw. die Speicherung erfolgreich war.
+	 * 
+	 * @return true bei Ausgang OK.
+	 */
+	public boolean isOk() {
+		return outcome == Outcome.OK;
+	}
+
+	/**
+	 * Liefert das abgerufene bzw. gespeicherte Profil.
+	 * 
+	 * @return Profil oder null, falls der Ausgang nicht OK ist.
+	 */
+	public Profile getProfile() {
+		return profile;
+	}
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.util;
+
+import java.io.InputStream;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Properties;
+import java.util.function.LongSupplier;
+
+import de.privacy_avare.config.DefaultProperties;
+
+/**
+ * Gemeinsame Zeitquelle für alle Zeitstempel des Synchronisationspfads. Die
+ * Zeit wird als Millisekunden seit 1970 geliefert, Vergleiche erfolgen somit
+ * ohne Calendar-Objekte.
+ * 
+ * Ist in application.properties eine Auflösung server.clockResolution größer 0
+ * festgelegt, so liefert die Uhr einen zwischengespeicherten Zeitpunkt, welcher
+ * von einem Hintergrund-Thread im entsprechenden Abstand aktualisiert wird. Für
+ * Tests kann mittels setClock(Clock) eine beliebige Uhr, beispielsweise
+ * Clock.fixed(Instant, ZoneId), hinterlegt werden.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ * @see Clock
+ */
+public final class SyncClock {
+
+	private static volatile Clock clock;
+
+	/**
+	 * Static-Block, welcher aus application.properties die Auflösung der Uhr in
+	 * Millisekunden ausliest.
+	 */
+	static {
+		InputStream inputStream = null;
+		long resolution;
+		try {
+			inputStream = SyncClock.class.getResourceAsStream("/application.properties");
+			Properties properties = new Properties(new DefaultProperties());
+			properties.load(inputStream);
+			resolution = Long.valueOf(properties.getProperty("server.clockResolution").trim());
+		} catch (Exception e) {
+			e.printStackTrace();
+			resolution = 10;
+		} finally {
+			try {
+				inputStream.close();
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		clock = resolution > 0 ? new CoarseClock(System::currentTimeMillis).start(resolution)
+				: Clock.systemDefaultZone();
+	}
+
+	private SyncClock() {
+
+	}
+
+	/**
+	 * Liefert den aktuellen Zeitpunkt.
+	 * 
+	 * @return Millisekunden seit 1970.
+	 */
+	public static long millis() {
+		return clock.millis();
+	}
+
+	/**
+	 * Liefert den aktuellen Zeitpunkt als Date-Objekt.
+	 * 
+	 * @return Aktueller Zeitpunkt.
+	 */
+	public static Date now() {
+		return new Date(clock.millis());
+	}
+
+	/**
+	 * Getter für die verwendete Uhr.
+	 * 
+	 * @return Verwendete Uhr.
+	 */
+	public static Clock getClock() {
+		return clock;
+	}
+
+	/**
+	 * Ersetzt die verwendete Uhr.
+	 * 
+	 * @param clock
+	 *            Zu verwendende Uhr.
+	 */
+	public static void setClock(Clock clock) {
+		SyncClock.clock = clock;
+	}
+
+	/**
+	 * Uhr mit grober Auflösung. Der aktuelle Zeitpunkt der Zeitquelle wird bei
+	 * jedem Aufruf von tick() in ein volatile-Feld geschrieben, Aufrufe von
+	 * millis() lesen lediglich dieses Feld. Nach start(long) ruft ein
+	 * Daemon-Thread tick() in festen Abständen auf, Tests können tick() selbst
+	 * aufrufen.
+	 */
+	public static final class CoarseClock extends Clock {
+
+		private final ZoneId zone;
+		private final LongSupplier source;
+		private volatile long now;
+
+		/**
+		 * Erzeugt eine Uhr, welche den aktuellen Zeitpunkt der Zeitquelle liefert,
+		 * bis tick() erneut aufgerufen wird.
+		 * 
+		 * @param source
+		 *            Zeitquelle in Millisekunden seit 1970.
+		 */
+		public CoarseClock(LongSupplier source) {
+			this.zone = ZoneId.systemDefault();
+			this.source = source;
+			this.now = source.getAsLong();
+		}
+
+		/**
+		 * Übernimmt den aktuellen Zeitpunkt der Zeitquelle.
+		 */
+		public void tick() {
+			now = source.getAsLong();
+		}
+
+		/**
+		 * Startet den Daemon-Thread, welcher tick() im Abstand der Auflösung
+		 * aufruft.
+		 * 
+		 * @param resolution
+		 *            Auflösung in Millisekunden.
+		 * @return Diese Uhr.
+		 */
+		public CoarseClock start(final long resolution) {
+			Thread ticker = new Thread("sync-clock") {
+				@Override
+				public void run() {
+					while (true) {
+						try {
+							Thread.sleep(resolution);
+						} catch (InterruptedException e) {
+							return;
+						}
+						tick();
+					}
+				}
+			};
+			ticker.setDaemon(true);
+			ticker.start();
+			return this;
+		}
+
+		@Override
+		public long millis() {
+			return now;
+		}
+
+		@Override
+		public Instant instant() {
+			return Instant.ofEpochMilli(now);
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return zone;
+		}
+
+		@Override
+		public Clock withZone(final ZoneId zone) {
+			final CoarseClock source = this;
+			return new Clock() {
+				@Override
+				public long millis() {
+					return source.millis();
+				}
+
+				@Override
+				public Instant instant() {
+					return source.instant();
+				}
+
+				@Override
+				public ZoneId getZone() {
+					return zone;
+				}
+
+				@Override
+				public Clock withZone(ZoneId other) {
+					return source.withZone(other);
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.errorHandlerTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.privacy_avare.dto.ErrorInformation;
+import de.privacy_avare.errorHandler.ErrorResponseTemplate;
+import de.privacy_avare.exeption.ProfileNotFoundException;
+
+/**
+ * Unittest für vorkodierte Fehlerantworten. Geprüft wird, dass der erzeugte
+ * Body byteweise der Jackson-Serialisierung von ErrorInformation entspricht.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class ErrorResponseTemplateTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	private final ErrorResponseTemplate template = new ErrorResponseTemplate("Profil nicht gefunden",
+			ProfileNotFoundException.class, HttpStatus.NOT_FOUND, "Kein Profil mit entsprechender ID gefunden.", "");
+
+	@Test
+	public void bodyEqualsJacksonSerialization() throws Exception {
+		assertSameAsJackson("/v1/profiles/abc/2017-01-01T00-00-00-000");
+	}
+
+	@Test
+	public void uriWithSpecialCharactersIsEscaped() throws Exception {
+		assertSameAsJackson("/v1/profiles/\"ä\\ö\"/x");
+	}
+
+	@Test
+	public void matchesOnlyIdenticalDetail() {
+		assertThat(template.matches("Kein Profil mit entsprechender ID gefunden.")).isTrue();
+		assertThat(template.matches("Anderer Fehler")).isFalse();
+		assertThat(template.matches(null)).isFalse();
+	}
+
+	private void assertSameAsJackson(String uri) throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", uri);
+		ResponseEntity<byte[]> response = template.render(request);
+		assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+		assertThat(response.getHeaders().getContentType()).isEqualTo(MediaType.APPLICATION_JSON_UTF8);
+
+		String timestamp = mapper.readTree(response.getBody()).get("timestamp").asText();
+		ErrorInformation expected = new ErrorInformation();
+		expected.setTitle("Profil nicht gefunden");
+		expected.setException(ProfileNotFoundException.class.getName());
+		expected.setStatus(HttpStatus.NOT_FOUND.value());
+		expected.setDetail("Kein Profil mit entsprechender ID gefunden.");
+		expected.setRequestedURI(uri);
+		expected.setTimestamp(timestamp);
+		expected.setAdditionalInformation("");
+		assertThat(response.getBody()).isEqualTo(mapper.writeValueAsBytes(expected));
+	}
+}
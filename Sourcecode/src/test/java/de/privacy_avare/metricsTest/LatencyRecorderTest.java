@@ -0,0 +1,56 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.metricsTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import de.privacy_avare.metrics.LatencyRecorder;
+
+/**
+ * Unittest für den LatencyRecorder. Der Test benötigt keine Datenbank.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class LatencyRecorderTest {
+
+	/**
+	 * Messwerte werden getrennt nach Operation und Ergebnis zusammengefasst.
+	 */
+	@Test
+	public void testSnapshot() {
+		LatencyRecorder latencyRecorder = new LatencyRecorder();
+		for (int i = 1; i <= 100; i++) {
+			latencyRecorder.record("ExistingProfileController.getProfile", "200", TimeUnit.MILLISECONDS.toNanos(i));
+		}
+		latencyRecorder.record("ExistingProfileController.getProfile", "404", TimeUnit.MILLISECONDS.toNanos(5));
+
+		Map<String, Map<String, Map<String, Object>>> snapshot = latencyRecorder.snapshot();
+		Map<String, Object> ok = snapshot.get("ExistingProfileController.getProfile").get("200");
+		assertThat(ok.get("count")).isEqualTo(100L);
+		assertThat((Double) ok.get("p50")).isBetween(49.0, 51.0);
+		assertThat((Double) ok.get("p99")).isBetween(98.0, 100.0);
+		assertThat((Double) ok.get("max")).isBetween(99.0, 101.0);
+		assertThat(snapshot.get("ExistingProfileController.getProfile").get("404").get("count")).isEqualTo(1L);
+	}
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.repositoryTest;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * RequestFactory, welche die Dokument- und Attachment-Zugriffe von CouchDB auf
+ * eine Datenbank im Arbeitsspeicher abbildet. Dokumente werden als JSON-Text
+ * abgelegt, sodass Tests die Reihenfolge der Felder selbst festlegen können.
+ * Revisionen werden wie bei CouchDB geprüft und fortgeschrieben, Attachments
+ * können als Stub beibehalten, mit 'data' im Dokument oder mit einem eigenen
+ * PUT geschrieben werden. Frühere Revisionen werden wie nach einer Compaction
+ * nicht aufbewahrt: Ein GET auf ein Attachment mit abweichender Revision
+ * liefert 404.
+ *
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class FakeCouchDB implements ClientHttpRequestFactory {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	/**
+	 * Gespeicherte Dokumente als JSON-Text je Id.
+	 */
+	private final Map<String, String> documents = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Gespeicherte Attachments je Pfad 'id/name'.
+	 */
+	private final Map<String, Attachment> attachments = new ConcurrentHashMap<String, Attachment>();
+
+	/**
+	 * Ausgeführte Anfragen in der Form 'METHOD pfad' in der Reihenfolge der
+	 * Zugriffe.
+	 */
+	private final List<String> requests = new CopyOnWriteArrayList<String>();
+
+	/**
+	 * Inhalt und Content-Type eines gespeicherten Attachments.
+	 */
+	public static class Attachment {
+		private final String contentType;
+		private final byte[] content;
+
+		Attachment(String contentType, byte[] content) {
+			this.contentType = contentType;
+			this.content = content;
+		}
+
+		public String getContentType() {
+			return contentType;
+		}
+
+		public byte[] getContent() {
+			return content;
+		}
+	}
+
+	/**
+	 * Legt ein Dokument unverändert als JSON-Text ab.
+	 *
+	 * @param id
+	 *            Id des Dokuments.
+	 * @param json
+	 *            Dokument einschließlich _id und _rev.
+	 */
+	public void putDocument(String id, String json) {
+		documents.put(id, json);
+	}
+
+	/**
+	 * @return Gespeichertes Dokument oder null.
+	 */
+	public JsonNode getDocument(String id) throws IOException {
+		String json = documents.get(id);
+		return json == null ? null : MAPPER.readTree(json);
+	}
+
+	/**
+	 * @return Gespeichertes Attachment oder null.
+	 */
+	public Attachment getAttachment(String id, String name) {
+		return attachments.get(id + "/" + name);
+	}
+
+	/**
+	 * @return Ausgeführte Anfragen in der Form 'METHOD pfad'.
+	 */
+	public List<String> getRequests() {
+		return requests;
+	}
+
+	@Override
+	public ClientHttpRequest createRequest(URI uri, HttpMethod method) throws IOException {
+		// Pfad ohne führenden Datenbanknamen
+		String path = uri.getPath().replaceFirst("^/[^/]+/", "");
+		requests.add(method + " " + path);
+		return new MockClientHttpRequest(method, uri) {
+			@Override
+			protected ClientHttpResponse executeInternal() throws IOException {
+				synchronized (FakeCouchDB.this) {
+					return handle(method, path, uri.getQuery(), getHeaders().getContentType(), getBodyAsBytes());
+				}
+			}
+		};
+	}
+
+	private ClientHttpResponse handle(HttpMethod method, String path, String query, MediaType contentType,
+			byte[] body) throws IOException {
+		int slash = path.indexOf('/');
+		String id = slash < 0 ? path : path.substring(0, slash);
+		String json = documents.get(id);
+		if (slash >= 0) {
+			String rev = query == null ? null : query.replaceFirst("^.*rev=([^&]*).*$", "$1");
+			if (method == HttpMethod.GET) {
+				Attachment attachment = attachments.get(path);
+				if (attachment == null
+						|| (rev != null && rev.equals(MAPPER.readTree(json).path("_rev").asText()) == false)) {
+					return json(HttpStatus.NOT_FOUND, "{\"error\":\"not_found\"}");
+				}
+				MockClientHttpResponse response = new MockClientHttpResponse(attachment.content, HttpStatus.OK);
+				response.getHeaders().set("Content-Type", attachment.contentType);
+				return response;
+			}
+			ObjectNode document = json == null ? MAPPER.createObjectNode().put("_id", id)
+					: (ObjectNode) MAPPER.readTree(json);
+			if (document.path("_rev").asText(null) != null && document.path("_rev").asText().equals(rev) == false) {
+				return json(HttpStatus.CONFLICT, "{\"error\":\"conflict\"}");
+			}
+			String name = path.substring(slash + 1);
+			attachments.put(path, new Attachment(contentType.toString(), body));
+			document.with("_attachments").set(name, stub(contentType.toString(), body));
+			return store(id, document);
+		}
+		if (method == HttpMethod.GET || method == HttpMethod.HEAD) {
+			if (json == null) {
+				return json(HttpStatus.NOT_FOUND, "{\"error\":\"not_found\"}");
+			}
+			MockClientHttpResponse response = json(HttpStatus.OK, method == HttpMethod.GET ? json : "");
+			response.getHeaders().setETag("\"" + MAPPER.readTree(json).path("_rev").asText() + "\"");
+			return response;
+		}
+		if (method == HttpMethod.PUT) {
+			ObjectNode document = (ObjectNode) MAPPER.readTree(body);
+			String stored = json == null ? null : MAPPER.readTree(json).path("_rev").asText();
+			if ((stored == null && document.has("_rev"))
+					|| (stored != null && stored.equals(document.path("_rev").asText()) == false)) {
+				return json(HttpStatus.CONFLICT, "{\"error\":\"conflict\"}");
+			}
+			JsonNode documentAttachments = document.remove("_attachments");
+			ObjectNode kept = MAPPER.createObjectNode();
+			if (documentAttachments != null) {
+				for (Map.Entry<String, JsonNode> entry : (Iterable<Map.Entry<String, JsonNode>>) documentAttachments::fields) {
+					String attachmentPath = id + "/" + entry.getKey();
+					JsonNode attachment = entry.getValue();
+					if (attachment.has("data")) {
+						String type = attachment.path("content_type").asText();
+						byte[] content = Base64.getDecoder().decode(attachment.path("data").asText());
+						attachments.put(attachmentPath, new Attachment(type, content));
+						kept.set(entry.getKey(), stub(type, content));
+					} else if (attachment.path("stub").asBoolean() && attachments.containsKey(attachmentPath)) {
+						Attachment existing = attachments.get(attachmentPath);
+						kept.set(entry.getKey(), stub(existing.contentType, existing.content));
+					} else {
+						return json(HttpStatus.PRECONDITION_FAILED, "{\"error\":\"missing_stub\"}");
+					}
+				}
+			}
+			attachments.keySet().removeIf(key -> key.startsWith(id + "/") && kept.has(key.substring(id.length() + 1)) == false);
+			if (kept.size() > 0) {
+				document.set("_attachments", kept);
+			}
+			return store(id, document);
+		}
+		if (method == HttpMethod.DELETE) {
+			documents.remove(id);
+			attachments.keySet().removeIf(key -> key.startsWith(id + "/"));
+			return json(HttpStatus.OK, "{\"ok\":true}");
+		}
+		return json(HttpStatus.METHOD_NOT_ALLOWED, "{\"error\":\"method_not_allowed\"}");
+	}
+
+	/**
+	 * Schreibt die Revision fort und legt das Dokument ab.
+	 */
+	private ClientHttpResponse store(String id, ObjectNode document) throws IOException {
+		String previous = document.path("_rev").asText("0-");
+		int generation = Integer.parseInt(previous.substring(0, previous.indexOf('-'))) + 1;
+		String rev = generation + "-" + Integer.toHexString(document.hashCode());
+		ObjectNode stored = MAPPER.createObjectNode();
+		stored.put("_id", id);
+		stored.put("_rev", rev);
+		document.remove("_id");
+		document.remove("_rev");
+		stored.setAll(document);
+		documents.put(id, MAPPER.writeValueAsString(stored));
+		return json(HttpStatus.CREATED, "{\"ok\":true,\"id\":\"" + id + "\",\"rev\":\"" + rev + "\"}");
+	}
+
+	private static ObjectNode stub(String contentType, byte[] content) {
+		ObjectNode stub = MAPPER.createObjectNode();
+		stub.put("content_type", contentType);
+		stub.put("digest", digest(content));
+		stub.put("length", content.length);
+		stub.put("stub", true);
+		return stub;
+	}
+
+	private static String digest(byte[] content) {
+		try {
+			return "md5-" + Base64.getEncoder().encodeToString(MessageDigest.getInstance("MD5").digest(content));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static MockClientHttpResponse json(HttpStatus status, String body) {
+		MockClientHttpResponse response = new MockClientHttpResponse(body.getBytes(StandardCharsets.UTF_8), status);
+		response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+		return response;
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.repositoryTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import de.privacy_avare.repository.JsonStringCopier;
+
+/**
+ * Unittest für das Kopieren von JSON-Strings ohne Maskierung. Kleine
+ * Lesepuffer sorgen dafür, dass Maskierungen über Blockgrenzen verteilt sind.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class JsonStringCopierTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void copiesJacksonEncodedStrings() throws Exception {
+		StringBuilder value = new StringBuilder();
+		for (int i = 0; i < 2000; i++) {
+			value.append("a\"b\\c\n\t\u0001/äöü€😀");
+		}
+		for (String expected : new String[] { "", "plain", "\"quoted\"", value.toString() }) {
+			assertThat(copy(mapper.writeValueAsString(expected) + ",\"next\":1}")).isEqualTo(expected);
+		}
+	}
+
+	@Test
+	public void decodesUnicodeEscapes() throws Exception {
+		assertThat(copy("\\u00e4\\u20AC\\ud83d\\ude00\\/\"")).isEqualTo("ä€😀/");
+	}
+
+	@Test
+	public void replacesUnpairedSurrogates() throws Exception {
+		assertThat(copy("x\\ud83dy\\ude00\"")).isEqualTo("x?y?");
+	}
+
+	@Test(expected = EOFException.class)
+	public void rejectsUnterminatedString() throws Exception {
+		copy("\"abc");
+	}
+
+	/**
+	 * Kopiert einen JSON-String; ein führendes Anführungszeichen wird wie von
+	 * einem Parser übersprungen.
+	 */
+	private static String copy(String json) throws Exception {
+		if (json.startsWith("\"")) {
+			json = json.substring(1);
+		}
+		InputStream in = new BufferedInputStream(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), 5);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		JsonStringCopier.copy(new SmallReads(in), out);
+		return new String(out.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Liefert je Aufruf höchstens drei Bytes.
+	 */
+	private static class SmallReads extends FilterInputStream {
+		SmallReads(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			return super.read(b, off, Math.min(len, 3));
+		}
+	}
+}
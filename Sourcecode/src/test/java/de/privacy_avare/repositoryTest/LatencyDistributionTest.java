@@ -0,0 +1,81 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.repositoryTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import de.privacy_avare.repository.FaultInjectingProfileRepository.LatencyDistribution;
+
+/**
+ * Unittest für die Latenzverteilungen der Fault Injection. Der Test benötigt
+ * keine Datenbank.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class LatencyDistributionTest {
+
+	/**
+	 * Konstante und fehlende Latenzen.
+	 */
+	@Test
+	public void testFixedAndNone() {
+		Random random = new Random(42);
+		assertThat(LatencyDistribution.parse("none").sampleMillis(random)).isEqualTo(0);
+		assertThat(LatencyDistribution.parse("fixed:25").sampleMillis(random)).isEqualTo(25);
+	}
+
+	/**
+	 * Gleichverteilte Latenzen liegen innerhalb der Grenzen.
+	 */
+	@Test
+	public void testUniformBounds() {
+		Random random = new Random(42);
+		LatencyDistribution distribution = LatencyDistribution.parse("uniform:5-50");
+		for (int i = 0; i < 1000; i++) {
+			assertThat(distribution.sampleMillis(random)).isBetween(5L, 50L);
+		}
+	}
+
+	/**
+	 * Der Mittelwert der Exponentialverteilung entspricht dem Parameter.
+	 */
+	@Test
+	public void testExponentialMean() {
+		Random random = new Random(42);
+		LatencyDistribution distribution = LatencyDistribution.parse("exponential:20");
+		long sum = 0;
+		for (int i = 0; i < 100000; i++) {
+			sum += distribution.sampleMillis(random);
+		}
+		assertThat(sum / 100000.0).isBetween(19.0, 21.0);
+	}
+
+	/**
+	 * Ungültige Beschreibungen werden abgelehnt.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSpec() {
+		LatencyDistribution.parse("uniform:50");
+	}
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.repositoryTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import de.privacy_avare.domain.Profile;
+import de.privacy_avare.repository.ProfileCache;
+
+/**
+ * Unittest für den Profil-Cache. Die Größe des Caches wird für den Test auf
+ * zwei Profile festgelegt. Der Test benötigt keine Datenbank.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class ProfileCacheTest {
+
+	private ProfileCache cache;
+
+	@Before
+	public void createCache() {
+		ReflectionTestUtils.setField(ProfileCache.class, "maxSize", 2);
+		cache = new ProfileCache();
+		cache.setActive(true);
+	}
+
+	@After
+	public void resetSize() {
+		ReflectionTestUtils.setField(ProfileCache.class, "maxSize", 0);
+	}
+
+	private static Profile profile(String id) {
+		return new Profile(id, new Date(1000), new Date(2000), "{\"id\":\"" + id + "\"}");
+	}
+
+	/**
+	 * Ein Lesezugriff, welcher vor einer Invalidierung begonnen hat, legt keinen
+	 * veralteten Stand im Cache ab.
+	 */
+	@Test
+	public void testStalePutAfterInvalidation() {
+		long readEpoch = cache.epoch();
+		cache.invalidate("a");
+		cache.put("a", profile("a"), readEpoch);
+		assertThat(cache.get("a")).isNull();
+
+		cache.put("a", profile("a"), cache.epoch());
+		assertThat(cache.get("a")).isNotNull();
+	}
+
+	/**
+	 * Die Invalidierung eines anderen Profils verwirft ebenfalls laufende
+	 * Lesezugriffe, da die Epoche für den gesamten Cache gilt.
+	 */
+	@Test
+	public void testStalePutAfterInvalidationOfOtherProfile() {
+		long readEpoch = cache.epoch();
+		cache.invalidate("b");
+		cache.put("a", profile("a"), readEpoch);
+		assertThat(cache.get("a")).isNull();
+	}
+
+	/**
+	 * Ist der Cache voll, so wird das am längsten nicht verwendete Profil
+	 * verdrängt.
+	 */
+	@Test
+	public void testLeastRecentlyUsedEviction() {
+		cache.put("a", profile("a"), cache.epoch());
+		cache.put("b", profile("b"), cache.epoch());
+		assertThat(cache.get("a")).isNotNull();
+		cache.put("c", profile("c"), cache.epoch());
+
+		assertThat(cache.get("b")).isNull();
+		assertThat(cache.get("a")).isNotNull();
+		assertThat(cache.get("c")).isNotNull();
+	}
+
+	/**
+	 * Änderungen am abgelegten oder gelieferten Profil wirken sich nicht auf den
+	 * Cache aus.
+	 */
+	@Test
+	public void testCopyOnPutAndGet() {
+		Profile stored = profile("a");
+		cache.put("a", stored, cache.epoch());
+		stored.getLastProfileChange().setTime(5000);
+		stored.setPreferences("{}");
+
+		Profile first = cache.get("a");
+		assertThat(first).isNotSameAs(stored);
+		assertThat(first.getLastProfileChange()).isEqualTo(new Date(1000));
+		assertThat(first.getPreferences()).isEqualTo("{\"id\":\"a\"}");
+
+		first.getLastProfileContact().setTime(7000);
+		first.setLastProfileChange(new Date(9000));
+		Profile second = cache.get("a");
+		assertThat(second).isNotSameAs(first);
+		assertThat(second.getLastProfileChange()).isEqualTo(new Date(1000));
+		assertThat(second.getLastProfileContact()).isEqualTo(new Date(2000));
+	}
+
+	/**
+	 * Wird der _changes-Feed nicht verfolgt, so ist der Cache leer und nimmt
+	 * keine Profile auf.
+	 */
+	@Test
+	public void testInactiveCache() {
+		cache.put("a", profile("a"), cache.epoch());
+		cache.setActive(false);
+		assertThat(cache.isActive()).isFalse();
+		assertThat(cache.get("a")).isNull();
+
+		cache.put("a", profile("a"), cache.epoch());
+		cache.setActive(true);
+		assertThat(cache.get("a")).isNull();
+	}
+}
@@ -0,0 +1,502 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.repositoryTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.util.StreamUtils;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import de.privacy_avare.domain.Profile;
+import de.privacy_avare.exeption.ProfileNotFoundException;
+import de.privacy_avare.metrics.CouchDBMetrics;
+import de.privacy_avare.metrics.CouchDBMetricsInterceptor;
+import de.privacy_avare.metrics.LatencyRecorder;
+import de.privacy_avare.repository.ProfileCache;
+import de.privacy_avare.repository.ProfileRepositoryCouchDBImpl;
+import de.privacy_avare.resilience.ConcurrencyLimitInterceptor;
+import de.privacy_avare.resilience.StreamingRequestFactory;
+
+/**
+ * Unittest für das Lesen und Schreiben von Profildokumenten mit
+ * ProfileRepositoryCouchDBImpl. Die Datenbank wird durch FakeCouchDB simuliert,
+ * sodass der Test keine laufende CouchDB benötigt.
+ *
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class ProfileRepositoryCouchDBImplTest {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static final long CHANGE = 1500000000000L;
+	private static final long CONTACT = 1500000060000L;
+
+	private FakeCouchDB couchDB;
+	private CouchDBMetrics metrics;
+	private ConcurrencyLimitInterceptor concurrencyLimitInterceptor;
+	private ProfileRepositoryCouchDBImpl repository;
+	private Object previousAttachmentThreshold;
+
+	@Before
+	public void createRepository() {
+		previousAttachmentThreshold = ReflectionTestUtils.getField(ProfileRepositoryCouchDBImpl.class,
+				"attachmentThreshold");
+		couchDB = new FakeCouchDB();
+		metrics = new CouchDBMetrics();
+		ReflectionTestUtils.setField(metrics, "latencyRecorder", new LatencyRecorder());
+		CouchDBMetricsInterceptor metricsInterceptor = new CouchDBMetricsInterceptor();
+		ReflectionTestUtils.setField(metricsInterceptor, "couchDBMetrics", metrics);
+		concurrencyLimitInterceptor = new ConcurrencyLimitInterceptor();
+		repository = new ProfileRepositoryCouchDBImpl();
+		ReflectionTestUtils.setField(repository, "restTemplate", new RestTemplate(couchDB));
+		ReflectionTestUtils.setField(repository, "profileCache", new ProfileCache());
+		ReflectionTestUtils.setField(repository, "streamingRequestFactory",
+				new StreamingRequestFactory(couchDB, concurrencyLimitInterceptor, metricsInterceptor));
+	}
+
+	@After
+	public void restoreAttachmentThreshold() {
+		ReflectionTestUtils.setField(ProfileRepositoryCouchDBImpl.class, "attachmentThreshold",
+				previousAttachmentThreshold);
+	}
+
+	/**
+	 * Setzt den Schwellwert, ab welchem Preferences als Attachment gespeichert
+	 * werden.
+	 */
+	private static void setAttachmentThreshold(int threshold) {
+		ReflectionTestUtils.setField(ProfileRepositoryCouchDBImpl.class, "attachmentThreshold", threshold);
+	}
+
+	/**
+	 * Preferences mit maskierten Zeichen, Umlauten und Surrogatpaaren, welche
+	 * deutlich größer als der Lesepuffer des Parsers sind.
+	 */
+	private static String largePreferences() {
+		StringBuilder preferences = new StringBuilder();
+		for (int i = 0; preferences.length() < 40000; ++i) {
+			preferences.append("{\"key").append(i).append("\":\"Wert \\\\ mit\n\tÄnderung \u00e9 \uD83D\uDE00\"}");
+		}
+		return preferences.toString();
+	}
+
+	/**
+	 * Preferences mit allen Zeichen, welche in JSON-Strings maskiert werden,
+	 * sowie Zeichen außerhalb von ASCII. Die Zeichen wiederholen sich über die
+	 * Grenzen des Kopierpuffers hinweg.
+	 */
+	private static String escapedPreferences() {
+		StringBuilder preferences = new StringBuilder();
+		while (preferences.length() < 20000) {
+			for (char c = 0; c < 0x80; ++c) {
+				preferences.append(c);
+			}
+			preferences.append("\u00e4\u2028\uD83D\uDE00\\\"");
+		}
+		return preferences.toString();
+	}
+
+	/**
+	 * Entpackter Inhalt des Attachments 'preferences'.
+	 */
+	private String attachedPreferences(String id) throws IOException {
+		FakeCouchDB.Attachment attachment = couchDB.getAttachment(id, "preferences");
+		assertThat(attachment.getContentType()).isEqualTo("application/gzip");
+		return StreamUtils.copyToString(new GZIPInputStream(new ByteArrayInputStream(attachment.getContent())),
+				StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Prüft, dass das Dokument die Preferences entweder inline oder als
+	 * Attachment enthält, und liefert true für ein Attachment.
+	 */
+	private boolean isAttached(String id) throws IOException {
+		JsonNode document = couchDB.getDocument(id);
+		boolean inline = document.path("preferences").isTextual();
+		boolean attached = document.path("_attachments").has("preferences");
+		assertThat(inline).isNotEqualTo(attached);
+		assertThat(couchDB.getAttachment(id, "preferences") != null).isEqualTo(attached);
+		return attached;
+	}
+
+	/**
+	 * Leitet die Zugriffe des Repositories an FakeCouchDB weiter und speichert
+	 * vor dem ersten Abruf eines Attachments das übergebene Profil, wie es ein
+	 * gleichzeitiger Push tun würde.
+	 */
+	private void replaceBeforeAttachmentRead(Profile replacement) {
+		ProfileRepositoryCouchDBImpl writer = new ProfileRepositoryCouchDBImpl();
+		ReflectionTestUtils.setField(writer, "restTemplate", new RestTemplate(couchDB));
+		ReflectionTestUtils.setField(writer, "profileCache", new ProfileCache());
+		boolean[] replaced = new boolean[1];
+		ReflectionTestUtils.setField(repository, "restTemplate", new RestTemplate((uri, method) -> {
+			if (replaced[0] == false && uri.getPath().endsWith("/preferences")) {
+				replaced[0] = true;
+				writer.save(replacement);
+			}
+			return couchDB.createRequest(uri, method);
+		}));
+	}
+
+	/**
+	 * Dokument mit den Feldern in der übergebenen Reihenfolge.
+	 */
+	private void putDocument(String id, String preferences, String... order) throws Exception {
+		ObjectNode document = MAPPER.createObjectNode();
+		for (String field : order) {
+			switch (field) {
+			case "_id":
+				document.put("_id", id);
+				break;
+			case "_rev":
+				document.put("_rev", "1-abc");
+				break;
+			case "lastProfileChange":
+				document.put("lastProfileChange", CHANGE);
+				break;
+			case "lastProfileContact":
+				document.put("lastProfileContact", CONTACT);
+				break;
+			case "preferences":
+				document.put("preferences", preferences);
+				break;
+			default:
+				// Füllfeld, welches die Position der Preferences im Lesepuffer verschiebt
+				document.put(field, field);
+			}
+		}
+		couchDB.putDocument(id, MAPPER.writeValueAsString(document));
+	}
+
+	@Test
+	public void streamPreferencesCopiesPreferencesAfterTimestamps() throws Exception {
+		String preferences = largePreferences();
+		List<String> paddings = new ArrayList<String>();
+		for (int length = 1; length < 9000; length += 997) {
+			paddings.add(new String(new char[length]).replace('\0', 'x'));
+		}
+		for (String padding : paddings) {
+			putDocument("profile", preferences, "_id", "_rev", padding, "lastProfileChange", "lastProfileContact",
+					"preferences", "trailing");
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+			Profile profile = repository.streamPreferences("profile", p -> true, out);
+
+			assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(preferences);
+			assertThat(profile.get_id()).isEqualTo("profile");
+			assertThat(profile.getLastProfileChange()).isEqualTo(new Date(CHANGE));
+			assertThat(profile.getLastProfileContact()).isEqualTo(new Date(CONTACT));
+			assertThat(profile.getPreferences()).isNull();
+		}
+	}
+
+	@Test
+	public void streamPreferencesBuffersPreferencesBeforeTimestamps() throws Exception {
+		String preferences = largePreferences();
+		putDocument("profile", preferences, "_id", "_rev", "preferences", "lastProfileContact", "lastProfileChange");
+		List<Profile> filtered = new ArrayList<Profile>();
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		Profile profile = repository.streamPreferences("profile", p -> filtered.add(p), out);
+
+		assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(preferences);
+		// Der Filter erhält die Zeitstempel trotz der Reihenfolge der Felder
+		assertThat(filtered).hasSize(1);
+		assertThat(filtered.get(0).getLastProfileChange()).isEqualTo(new Date(CHANGE));
+		assertThat(filtered.get(0).getLastProfileContact()).isEqualTo(new Date(CONTACT));
+		assertThat(profile.getPreferences()).isNull();
+	}
+
+	@Test
+	public void streamPreferencesWritesNothingIfFilterRejects() throws Exception {
+		for (String[] order : new String[][] {
+				{ "_id", "_rev", "lastProfileChange", "lastProfileContact", "preferences" },
+				{ "_id", "_rev", "preferences", "lastProfileChange", "lastProfileContact" } }) {
+			putDocument("profile", largePreferences(), order);
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+			Profile profile = repository.streamPreferences("profile", p -> false, out);
+
+			assertThat(out.size()).isZero();
+			assertThat(profile.getLastProfileChange()).isEqualTo(new Date(CHANGE));
+		}
+	}
+
+	@Test
+	public void streamPreferencesReturnsNullForMissingProfile() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		assertThat(repository.streamPreferences("missing", p -> true, out)).isNull();
+		assertThat(out.size()).isZero();
+	}
+
+	@Test
+	public void saveWithReaderStreamsEscapedPreferences() throws Exception {
+		String preferences = escapedPreferences();
+		Profile profile = new Profile("profile", new Date(CHANGE), new Date(CONTACT), null);
+
+		repository.save(profile, new StringReader(preferences));
+
+		JsonNode document = couchDB.getDocument("profile");
+		assertThat(document.path("_rev").asText()).startsWith("1-");
+		assertThat(document.path("lastProfileChange").asLong()).isEqualTo(CHANGE);
+		assertThat(document.path("lastProfileContact").asLong()).isEqualTo(CONTACT);
+		assertThat(document.path("preferences").asText()).isEqualTo(preferences);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		repository.streamPreferences("profile", p -> true, out);
+		assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(preferences);
+	}
+
+	@Test
+	public void saveWithReaderUpdatesCurrentRevision() throws Exception {
+		putDocument("profile", "alt", "_id", "_rev", "lastProfileChange", "lastProfileContact", "preferences");
+		Profile profile = new Profile("profile", new Date(CHANGE + 1), new Date(CONTACT + 1), null);
+
+		repository.save(profile, new StringReader("{\"neu\":\"\u00e4\"}"));
+
+		JsonNode document = couchDB.getDocument("profile");
+		assertThat(document.path("_rev").asText()).startsWith("2-");
+		assertThat(document.path("lastProfileChange").asLong()).isEqualTo(CHANGE + 1);
+		assertThat(document.path("preferences").asText()).isEqualTo("{\"neu\":\"\u00e4\"}");
+		assertThat(couchDB.getRequests()).containsExactly("HEAD profile", "PUT profile");
+		// Der PUT läuft über die StreamingRequestFactory
+		assertThat(concurrencyLimitInterceptor.getLimiter().getInFlight()).isZero();
+		assertThat(metrics.getCounters()).containsEntry("couchdb.put.requests", 1L)
+				.containsEntry("couchdb.put.status.201", 1L);
+	}
+
+	@Test
+	public void metadataReadsDoNotLoadAttachment() throws Exception {
+		setAttachmentThreshold(1000);
+		String preferences = largePreferences();
+		repository.save(new Profile("profile", new Date(CHANGE), new Date(CONTACT), null),
+				new StringReader(preferences));
+		couchDB.getRequests().clear();
+
+		assertThat(repository.exists("profile")).isTrue();
+		assertThat(repository.exists("missing")).isFalse();
+		assertThat(repository.findLastProfileContactById("profile")).isEqualTo(new Date(CONTACT));
+		assertThat(repository.findLastProfileChangeById("profile")).isEqualTo(new Date(CHANGE));
+
+		assertThat(couchDB.getRequests()).containsExactly("HEAD profile", "HEAD missing", "GET profile",
+				"GET profile");
+		assertThat(repository.findPreferencesById("profile")).isEqualTo(preferences);
+	}
+
+	@Test
+	public void updateLastProfileContactKeepsAttachment() throws Exception {
+		setAttachmentThreshold(1000);
+		repository.save(new Profile("profile", new Date(CHANGE), new Date(CONTACT), null),
+				new StringReader(largePreferences()));
+		JsonNode stub = couchDB.getDocument("profile").path("_attachments").path("preferences");
+		couchDB.getRequests().clear();
+
+		repository.updateLastProfileContactById("profile", new Date(CONTACT + 1));
+
+		assertThat(couchDB.getRequests()).containsExactly("GET profile", "PUT profile");
+		JsonNode document = couchDB.getDocument("profile");
+		assertThat(document.path("lastProfileContact").asLong()).isEqualTo(CONTACT + 1);
+		assertThat(document.path("lastProfileChange").asLong()).isEqualTo(CHANGE);
+		assertThat(document.path("preferences").isTextual()).isFalse();
+		assertThat(document.path("_attachments").path("preferences").path("digest"))
+				.isEqualTo(stub.path("digest"));
+	}
+
+	@Test(expected = ProfileNotFoundException.class)
+	public void updateLastProfileContactOfMissingProfileThrows() {
+		repository.updateLastProfileContactById("missing", new Date(CONTACT));
+	}
+
+	@Test
+	public void saveWithReaderSwitchesToAttachmentAboveThreshold() throws Exception {
+		setAttachmentThreshold(1000);
+		String atThreshold = escapedPreferences().substring(0, 1000);
+		String aboveThreshold = escapedPreferences().substring(0, 1001);
+
+		repository.save(new Profile("inline", new Date(CHANGE), new Date(CONTACT), null),
+				new StringReader(atThreshold));
+		repository.save(new Profile("attached", new Date(CHANGE), new Date(CONTACT), null),
+				new StringReader(aboveThreshold));
+
+		assertThat(isAttached("inline")).isFalse();
+		assertThat(couchDB.getDocument("inline").path("preferences").asText()).isEqualTo(atThreshold);
+		assertThat(isAttached("attached")).isTrue();
+		assertThat(attachedPreferences("attached")).isEqualTo(aboveThreshold);
+		assertThat(repository.findPreferencesById("attached")).isEqualTo(aboveThreshold);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		repository.streamPreferences("attached", p -> true, out);
+		assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(aboveThreshold);
+	}
+
+	@Test
+	public void saveWithReaderWritesDocumentAndAttachmentInOnePut() throws Exception {
+		setAttachmentThreshold(1000);
+		String preferences = largePreferences();
+		putDocument("profile", "alt", "_id", "_rev", "lastProfileChange", "lastProfileContact", "preferences");
+
+		repository.save(new Profile("profile", new Date(CHANGE + 1), new Date(CONTACT + 1), null),
+				new StringReader(preferences));
+
+		assertThat(couchDB.getRequests()).containsExactly("HEAD profile", "PUT profile");
+		JsonNode document = couchDB.getDocument("profile");
+		assertThat(document.path("_rev").asText()).startsWith("2-");
+		assertThat(document.path("lastProfileChange").asLong()).isEqualTo(CHANGE + 1);
+		assertThat(isAttached("profile")).isTrue();
+		assertThat(attachedPreferences("profile")).isEqualTo(preferences);
+		assertThat(concurrencyLimitInterceptor.getLimiter().getInFlight()).isZero();
+	}
+
+	@Test
+	public void saveSkipsAttachmentWithUnchangedDigest() throws Exception {
+		setAttachmentThreshold(1000);
+		String preferences = largePreferences();
+		repository.save(new Profile("profile", new Date(CHANGE), new Date(CONTACT), preferences));
+		FakeCouchDB.Attachment attachment = couchDB.getAttachment("profile", "preferences");
+		couchDB.getRequests().clear();
+
+		repository.save(new Profile("profile", new Date(CHANGE + 1), new Date(CONTACT + 1), preferences));
+
+		assertThat(couchDB.getRequests()).containsExactly("GET profile", "PUT profile");
+		assertThat(couchDB.getDocument("profile").path("lastProfileChange").asLong()).isEqualTo(CHANGE + 1);
+		// Das Dokument wurde mit dem Stub geschrieben, das Attachment nicht erneut übertragen
+		assertThat(couchDB.getAttachment("profile", "preferences")).isSameAs(attachment);
+		assertThat(isAttached("profile")).isTrue();
+
+		String changed = preferences + "x";
+		repository.save(new Profile("profile", new Date(CHANGE + 2), new Date(CONTACT + 2), changed));
+
+		assertThat(couchDB.getAttachment("profile", "preferences")).isNotSameAs(attachment);
+		assertThat(attachedPreferences("profile")).isEqualTo(changed);
+	}
+
+	@Test
+	public void saveMovesPreferencesBetweenDocumentAndAttachment() throws Exception {
+		setAttachmentThreshold(1000);
+		String large = largePreferences();
+		putDocument("profile", "klein", "_id", "_rev", "lastProfileChange", "lastProfileContact", "preferences");
+
+		// inline -> Attachment
+		repository.save(new Profile("profile", new Date(CHANGE), new Date(CONTACT), large));
+		assertThat(isAttached("profile")).isTrue();
+		assertThat(attachedPreferences("profile")).isEqualTo(large);
+		assertThat(repository.findPreferencesById("profile")).isEqualTo(large);
+
+		// Attachment -> inline
+		repository.save(new Profile("profile", new Date(CHANGE), new Date(CONTACT), "klein"));
+		assertThat(isAttached("profile")).isFalse();
+		assertThat(repository.findPreferencesById("profile")).isEqualTo("klein");
+
+		// inline -> Attachment über save(Profile, Reader) und zurück
+		repository.save(new Profile("profile", new Date(CHANGE), new Date(CONTACT), null), new StringReader(large));
+		assertThat(isAttached("profile")).isTrue();
+		repository.save(new Profile("profile", new Date(CHANGE), new Date(CONTACT), null),
+				new StringReader("klein"));
+		assertThat(isAttached("profile")).isFalse();
+		assertThat(repository.findPreferencesById("profile")).isEqualTo("klein");
+	}
+
+	@Test
+	public void preferencesInDocumentTakePrecedenceOverAttachment() throws Exception {
+		setAttachmentThreshold(1000);
+		repository.save(new Profile("profile", new Date(CHANGE), new Date(CONTACT), largePreferences()));
+		// Dokument mit Preferences und Stub, wie es ein unterbrochener Schreibvorgang
+		// früherer Versionen hinterlassen konnte
+		ObjectNode document = (ObjectNode) couchDB.getDocument("profile");
+		document.put("preferences", "inline");
+		couchDB.putDocument("profile", MAPPER.writeValueAsString(document));
+
+		assertThat(repository.findPreferencesById("profile")).isEqualTo("inline");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		repository.streamPreferences("profile", p -> true, out);
+		assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo("inline");
+	}
+
+	@Test
+	public void streamPreferencesRereadsDocumentIfAttachmentRevisionIsReplaced() throws Exception {
+		setAttachmentThreshold(1000);
+		for (String replacement : new String[] { "klein", largePreferences() + "neu" }) {
+			repository.save(new Profile("profile", new Date(CHANGE), new Date(CONTACT), largePreferences()));
+			replaceBeforeAttachmentRead(new Profile("profile", new Date(CHANGE + 1), new Date(CONTACT), replacement));
+			List<Profile> filtered = new ArrayList<Profile>();
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+			Profile profile = repository.streamPreferences("profile", p -> filtered.add(p), out);
+
+			// Preferences und Zeitstempel stammen aus derselben Revision
+			assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(replacement);
+			assertThat(profile.getLastProfileChange()).isEqualTo(new Date(CHANGE + 1));
+			assertThat(filtered).extracting(Profile::getLastProfileChange).containsExactly(new Date(CHANGE),
+					new Date(CHANGE + 1));
+			ReflectionTestUtils.setField(repository, "restTemplate", new RestTemplate(couchDB));
+		}
+	}
+
+	@Test
+	public void findPreferencesRereadsDocumentIfAttachmentRevisionIsReplaced() throws Exception {
+		setAttachmentThreshold(1000);
+		repository.save(new Profile("profile", new Date(CHANGE), new Date(CONTACT), largePreferences()));
+		replaceBeforeAttachmentRead(new Profile("profile", new Date(CHANGE + 1), new Date(CONTACT), "klein"));
+
+		Profile profile = repository.findOne("profile");
+
+		assertThat(profile.getPreferences()).isEqualTo("klein");
+		assertThat(profile.getLastProfileChange()).isEqualTo(new Date(CHANGE + 1));
+	}
+
+	@Test
+	public void missingAttachmentIsNotReportedAsMissingProfile() throws Exception {
+		ObjectNode document = MAPPER.createObjectNode();
+		document.put("_id", "profile");
+		document.put("_rev", "1-abc");
+		document.put("lastProfileChange", CHANGE);
+		document.put("lastProfileContact", CONTACT);
+		document.putObject("_attachments").putObject("preferences").put("stub", true);
+		couchDB.putDocument("profile", MAPPER.writeValueAsString(document));
+
+		try {
+			repository.streamPreferences("profile", p -> true, new ByteArrayOutputStream());
+			fail("ResourceAccessException erwartet");
+		} catch (ResourceAccessException e) {
+			// erwartet
+		}
+		assertThat(couchDB.getRequests()).containsExactly("GET profile", "GET profile/preferences", "GET profile",
+				"GET profile/preferences", "GET profile", "GET profile/preferences");
+	}
+}
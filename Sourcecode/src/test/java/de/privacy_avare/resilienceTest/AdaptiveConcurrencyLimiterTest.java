@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.resilienceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import de.privacy_avare.resilience.AdaptiveConcurrencyLimiter;
+import de.privacy_avare.resilience.RequestPriority;
+
+/**
+ * Unittest für die adaptive Begrenzung gleichzeitiger Zugriffe. Der Test
+ * benötigt keine Datenbank.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class AdaptiveConcurrencyLimiterTest {
+
+	/**
+	 * Zugriffe niedriger Priorität werden zuerst abgewiesen.
+	 */
+	@Test
+	public void testPriorityShares() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 1, 10, 250, 0.5);
+		for (int i = 0; i < 5; i++) {
+			assertThat(limiter.tryAcquire(RequestPriority.LOW)).isTrue();
+		}
+		assertThat(limiter.tryAcquire(RequestPriority.LOW)).isFalse();
+		for (int i = 0; i < 4; i++) {
+			assertThat(limiter.tryAcquire(RequestPriority.NORMAL)).isTrue();
+		}
+		assertThat(limiter.admits(RequestPriority.NORMAL)).isFalse();
+		assertThat(limiter.tryAcquire(RequestPriority.HIGH)).isTrue();
+		assertThat(limiter.tryAcquire(RequestPriority.HIGH)).isFalse();
+		assertThat(limiter.getInFlight()).isEqualTo(10);
+	}
+
+	/**
+	 * Langsame Zugriffe reduzieren das Limit multiplikativ, schnelle Zugriffe
+	 * erhöhen es additiv.
+	 */
+	@Test
+	public void testIncreaseAndDecrease() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 2, 20, 250, 0.5);
+		assertThat(limiter.tryAcquire(RequestPriority.HIGH)).isTrue();
+		limiter.release(TimeUnit.MILLISECONDS.toNanos(500), false);
+		assertThat(limiter.getLimit()).isEqualTo(5);
+
+		for (int i = 0; i < 5; i++) {
+			assertThat(limiter.tryAcquire(RequestPriority.HIGH)).isTrue();
+		}
+		for (int i = 0; i < 5; i++) {
+			limiter.release(TimeUnit.MILLISECONDS.toNanos(10), false);
+		}
+		assertThat(limiter.getLimit()).isEqualTo(5);
+		assertThat(limiter.getInFlight()).isEqualTo(0);
+	}
+
+	/**
+	 * Mehrere Überlastsignale innerhalb einer Latenzschwelle reduzieren das Limit
+	 * nur einmal.
+	 */
+	@Test
+	public void testSingleDecreasePerThreshold() {
+		AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(16, 1, 16, 10000, 0.5);
+		for (int i = 0; i < 3; i++) {
+			assertThat(limiter.tryAcquire(RequestPriority.HIGH)).isTrue();
+		}
+		for (int i = 0; i < 3; i++) {
+			limiter.release(0, true);
+		}
+		assertThat(limiter.getLimit()).isEqualTo(8);
+	}
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.resilienceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.util.StreamUtils;
+
+import de.privacy_avare.resilience.NodeRoutingRequestFactory;
+
+/**
+ * Unittest für die Verteilung der Zugriffe auf mehrere CouchDB-Knoten. Die
+ * Knoten werden durch eine RequestFactory simuliert, welche als Antwort den Host
+ * des Knotens liefert. Der Test benötigt keine Datenbank.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class NodeRoutingRequestFactoryTest {
+
+	private static final URI LOGICAL = URI.create("http://couchdb:5984/profiles/abc?rev=1-x");
+	private static final List<String> NODES = Arrays.asList("http://node1:5984", "http://node2:6984");
+
+	/**
+	 * Aufgerufene Hosts in der Reihenfolge der Zugriffe.
+	 */
+	private final List<String> calls = new CopyOnWriteArrayList<String>();
+
+	/**
+	 * Simuliert Knoten, von welchen 'slow' verzögert antwortet und 'down' nicht
+	 * erreichbar ist.
+	 */
+	private ClientHttpRequestFactory cluster(String slow, String down) {
+		return (uri, method) -> new MockClientHttpRequest(method, uri) {
+			@Override
+			protected ClientHttpResponse executeInternal() throws IOException {
+				calls.add(uri.getHost());
+				if (uri.getHost().equals(down)) {
+					throw new ConnectException("Connection refused");
+				}
+				if (uri.getHost().equals(slow)) {
+					try {
+						Thread.sleep(500);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				return new MockClientHttpResponse(uri.getHost().getBytes(), HttpStatus.OK);
+			}
+		};
+	}
+
+	private String read(NodeRoutingRequestFactory factory, HttpMethod method) throws IOException {
+		ClientHttpResponse response = factory.createRequest(LOGICAL, method).execute();
+		return StreamUtils.copyToString(response.getBody(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Schema, Host und Port werden ersetzt, Pfad und Query bleiben erhalten.
+	 */
+	@Test
+	public void testRewrite() {
+		assertThat(NodeRoutingRequestFactory.rewrite(LOGICAL, URI.create("https://node2:6984")))
+				.isEqualTo(URI.create("https://node2:6984/profiles/abc?rev=1-x"));
+	}
+
+	/**
+	 * Ohne Knoten werden die Zugriffe unverändert weitergereicht.
+	 */
+	@Test
+	public void testWithoutNodes() throws IOException {
+		NodeRoutingRequestFactory factory = new NodeRoutingRequestFactory(cluster(null, null),
+				Collections.<String>emptyList(), false, 95, 10, 5000);
+		assertThat(read(factory, HttpMethod.GET)).isEqualTo("couchdb");
+	}
+
+	/**
+	 * Schreibende Zugriffe gehen an den ersten gesunden Knoten und werden nicht
+	 * wiederholt.
+	 */
+	@Test
+	public void testWritesGoToSingleNode() throws IOException {
+		NodeRoutingRequestFactory factory = new NodeRoutingRequestFactory(cluster(null, "node1"), NODES, true, 95, 10,
+				5000);
+		try {
+			read(factory, HttpMethod.PUT);
+		} catch (ConnectException e) {
+			// Erster Knoten ist nicht erreichbar
+		}
+		assertThat(calls).containsExactly("node1");
+		assertThat(read(factory, HttpMethod.PUT)).isEqualTo("node2");
+	}
+
+	/**
+	 * Der Body schreibender Zugriffe geht ohne Zwischenspeichern an den Zugriff
+	 * des Knotens, auch über eine RequestFactory aus forWrites().
+	 */
+	@Test
+	public void testWritesAreNotBuffered() throws IOException {
+		List<MockClientHttpRequest> created = new CopyOnWriteArrayList<MockClientHttpRequest>();
+		ClientHttpRequestFactory node = (uri, method) -> {
+			MockClientHttpRequest request = new MockClientHttpRequest(method, uri);
+			created.add(request);
+			return request;
+		};
+		NodeRoutingRequestFactory factory = new NodeRoutingRequestFactory(cluster(null, null), NODES, false, 95, 10,
+				5000);
+		for (ClientHttpRequestFactory writes : Arrays.asList(
+				new NodeRoutingRequestFactory(node, NODES, false, 95, 10, 5000), factory.forWrites(node))) {
+			created.clear();
+			ClientHttpRequest request = writes.createRequest(LOGICAL, HttpMethod.PUT);
+			request.getBody().write("{}".getBytes(StandardCharsets.UTF_8));
+
+			assertThat(created).hasSize(1);
+			assertThat(created.get(0).getURI().getHost()).isEqualTo("node1");
+			assertThat(created.get(0).getBodyAsString()).isEqualTo("{}");
+		}
+	}
+
+	/**
+	 * Lesende Zugriffe werden bei einem Fehler an einem anderen Knoten wiederholt.
+	 */
+	@Test
+	public void testReadFailover() throws IOException {
+		NodeRoutingRequestFactory factory = new NodeRoutingRequestFactory(cluster(null, "node1"), NODES, false, 95, 10,
+				5000);
+		assertThat(read(factory, HttpMethod.GET)).isEqualTo("node2");
+		assertThat(read(factory, HttpMethod.GET)).isEqualTo("node2");
+		assertThat(calls).containsExactly("node1", "node2", "node2");
+	}
+
+	/**
+	 * Antwortet der erste Knoten nicht innerhalb der Hedge-Verzögerung, so wird
+	 * die Antwort des zweiten Knotens verwendet.
+	 */
+	@Test
+	public void testHedgedRead() throws IOException {
+		NodeRoutingRequestFactory factory = new NodeRoutingRequestFactory(cluster("node1", null), NODES, true, 95, 20,
+				5000);
+		long start = System.nanoTime();
+		assertThat(read(factory, HttpMethod.GET)).isEqualTo("node2");
+		assertThat((System.nanoTime() - start) / 1000000).isLessThan(400);
+		assertThat(calls).contains("node1", "node2");
+	}
+}
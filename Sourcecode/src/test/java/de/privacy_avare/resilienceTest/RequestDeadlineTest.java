@@ -0,0 +1,87 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.resilienceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.After;
+import org.junit.Test;
+
+import de.privacy_avare.exeption.DeadlineExceededException;
+import de.privacy_avare.resilience.DeadlineHandlerInterceptor;
+import de.privacy_avare.resilience.RequestDeadline;
+
+/**
+ * Unittest für das Zeitbudget von Anfragen. Der Test benötigt keine Datenbank.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class RequestDeadlineTest {
+
+	@After
+	public void clearDeadline() {
+		RequestDeadline.clear();
+	}
+
+	/**
+	 * Ohne Deadline ist das Zeitbudget unbegrenzt.
+	 */
+	@Test
+	public void testWithoutDeadline() {
+		assertThat(RequestDeadline.isSet()).isFalse();
+		assertThat(RequestDeadline.isExpired()).isFalse();
+		assertThat(RequestDeadline.remainingMillis()).isEqualTo(Long.MAX_VALUE);
+		RequestDeadline.check();
+	}
+
+	/**
+	 * Das verbleibende Zeitbudget überschreitet nie das festgelegte Budget.
+	 */
+	@Test
+	public void testRemainingBudget() {
+		RequestDeadline.start(1000);
+		assertThat(RequestDeadline.isSet()).isTrue();
+		assertThat(RequestDeadline.remainingMillis()).isBetween(1L, 1000L);
+		RequestDeadline.check();
+	}
+
+	/**
+	 * Nach Ablauf der Deadline wird die Bearbeitung abgebrochen.
+	 */
+	@Test(expected = DeadlineExceededException.class)
+	public void testExpiredDeadline() {
+		RequestDeadline.start(-1);
+		assertThat(RequestDeadline.remainingMillis()).isEqualTo(0);
+		RequestDeadline.check();
+	}
+
+	/**
+	 * Clients können das Zeitbudget nur verkürzen.
+	 */
+	@Test
+	public void testClientHeader() {
+		long configured = DeadlineHandlerInterceptor.budget("UnknownController.method", null);
+		assertThat(DeadlineHandlerInterceptor.budget("UnknownController.method", "100")).isEqualTo(100);
+		assertThat(DeadlineHandlerInterceptor.budget("UnknownController.method", String.valueOf(configured + 1000)))
+				.isEqualTo(configured);
+		assertThat(DeadlineHandlerInterceptor.budget("UnknownController.method", "abc")).isEqualTo(configured);
+		assertThat(DeadlineHandlerInterceptor.budget("UnknownController.method", "0")).isEqualTo(configured);
+	}
+}
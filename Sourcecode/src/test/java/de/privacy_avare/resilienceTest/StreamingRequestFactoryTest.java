@@ -0,0 +1,165 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.resilienceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.URI;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequest;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import de.privacy_avare.metrics.CouchDBMetrics;
+import de.privacy_avare.metrics.CouchDBMetricsInterceptor;
+import de.privacy_avare.metrics.LatencyRecorder;
+import de.privacy_avare.resilience.ConcurrencyLimitInterceptor;
+import de.privacy_avare.resilience.StreamingRequestFactory;
+
+/**
+ * Unittest für die RequestFactory der gestreamten Zugriffe. Geprüft wird, dass
+ * der Platz des Limiters während des Sendens belegt und in allen Fällen wieder
+ * freigegeben wird und die Kennzahlen erfasst werden. Der Test benötigt keine
+ * Datenbank.
+ *
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class StreamingRequestFactoryTest {
+
+	private static final URI PROFILE = URI.create("http://couchdb:5984/profiles/abc");
+
+	private CouchDBMetrics metrics;
+	private ConcurrencyLimitInterceptor concurrencyLimitInterceptor;
+	private CouchDBMetricsInterceptor metricsInterceptor;
+
+	/**
+	 * Während des Sendens gemessene Anzahl laufender Zugriffe.
+	 */
+	private int inFlightWhileSending;
+
+	@Before
+	public void createInterceptors() {
+		metrics = new CouchDBMetrics();
+		ReflectionTestUtils.setField(metrics, "latencyRecorder", new LatencyRecorder());
+		metricsInterceptor = new CouchDBMetricsInterceptor();
+		ReflectionTestUtils.setField(metricsInterceptor, "couchDBMetrics", metrics);
+		concurrencyLimitInterceptor = new ConcurrencyLimitInterceptor();
+	}
+
+	private int inFlight() {
+		return concurrencyLimitInterceptor.getLimiter().getInFlight();
+	}
+
+	@Test
+	public void streamedRequestHoldsSlotAndRecordsMetrics() throws IOException {
+		StreamingRequestFactory factory = new StreamingRequestFactory(
+				(uri, method) -> new MockClientHttpRequest(method, uri) {
+					@Override
+					protected ClientHttpResponse executeInternal() throws IOException {
+						inFlightWhileSending = inFlight();
+						return new MockClientHttpResponse("{\"ok\":true}".getBytes(), HttpStatus.CREATED);
+					}
+				}, concurrencyLimitInterceptor, metricsInterceptor);
+
+		ClientHttpRequest request = factory.createRequest(PROFILE, HttpMethod.PUT);
+		assertThat(inFlight()).isZero();
+		request.getBody().write(new byte[10000]);
+		assertThat(inFlight()).isEqualTo(1);
+		request.execute().close();
+		((Closeable) request).close();
+
+		assertThat(inFlightWhileSending).isEqualTo(1);
+		assertThat(inFlight()).isZero();
+		assertThat(metrics.getCounters()).containsEntry("couchdb.put.requests", 1L)
+				.containsEntry("couchdb.put.status.201", 1L).containsEntry("couchdb.put.bytesOut", 10000L);
+	}
+
+	@Test
+	public void connectionErrorReleasesSlot() throws IOException {
+		StreamingRequestFactory factory = new StreamingRequestFactory(
+				(uri, method) -> new MockClientHttpRequest(method, uri) {
+					@Override
+					protected ClientHttpResponse executeInternal() throws IOException {
+						throw new ConnectException("Connection refused");
+					}
+				}, concurrencyLimitInterceptor, metricsInterceptor);
+
+		ClientHttpRequest request = factory.createRequest(PROFILE, HttpMethod.PUT);
+		request.getBody().write(new byte[100]);
+		try {
+			request.execute();
+			fail("ConnectException erwartet");
+		} catch (ConnectException e) {
+			// erwartet
+		}
+		((Closeable) request).close();
+
+		assertThat(inFlight()).isZero();
+		assertThat(metrics.getCounters()).containsEntry("couchdb.put.ioErrors", 1L);
+	}
+
+	@Test
+	public void abortedBodyReleasesSlotOnClose() throws IOException {
+		StreamingRequestFactory factory = new StreamingRequestFactory(
+				(uri, method) -> new MockClientHttpRequest(method, uri) {
+					@Override
+					public OutputStream getBody() throws IOException {
+						return new OutputStream() {
+							@Override
+							public void write(int b) throws IOException {
+								throw new IOException("Broken pipe");
+							}
+						};
+					}
+				}, concurrencyLimitInterceptor, metricsInterceptor);
+
+		// Abbruch beim Lesen des Body, etwa durch den Client
+		ClientHttpRequest aborted = factory.createRequest(PROFILE, HttpMethod.PUT);
+		aborted.getBody();
+		assertThat(inFlight()).isEqualTo(1);
+		((Closeable) aborted).close();
+		assertThat(inFlight()).isZero();
+		assertThat(metrics.getCounters()).doesNotContainKey("couchdb.put.requests");
+
+		// Abbruch beim Senden des Body
+		ClientHttpRequest broken = factory.createRequest(PROFILE, HttpMethod.PUT);
+		try {
+			broken.getBody().write(1);
+			fail("IOException erwartet");
+		} catch (IOException e) {
+			// erwartet
+		}
+		((Closeable) broken).close();
+		((Closeable) broken).close();
+		assertThat(inFlight()).isZero();
+		assertThat(metrics.getCounters()).containsEntry("couchdb.put.ioErrors", 1L);
+	}
+}
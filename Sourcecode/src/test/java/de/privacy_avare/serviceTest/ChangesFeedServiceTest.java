@@ -0,0 +1,231 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import de.privacy_avare.domain.Profile;
+import de.privacy_avare.repository.ProfileCache;
+import de.privacy_avare.service.ChangesFeedService;
+
+/**
+ * Unittest für die Verfolgung des _changes-Feeds. Die Datenbank wird durch eine
+ * RequestFactory simuliert, welche die Antworten des Feeds aus einer
+ * Warteschlange liefert. Ist die Warteschlange leer, so wartet der Longpoll
+ * wie bei CouchDB auf die nächste Änderung. Der Test benötigt keine Datenbank.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class ChangesFeedServiceTest {
+
+	/**
+	 * Eintrag der Warteschlange, welcher einen Verbindungsfehler auslöst.
+	 */
+	private static final String FAIL = "FAIL";
+
+	private final BlockingQueue<String> feed = new LinkedBlockingQueue<String>();
+
+	/**
+	 * Aufgerufene URLs des Feeds in der Reihenfolge der Zugriffe.
+	 */
+	private final List<String> feedCalls = new CopyOnWriteArrayList<String>();
+
+	/**
+	 * Gespeicherte Checkpoints in der Reihenfolge der Zugriffe.
+	 */
+	private final List<String> savedCheckpoints = new CopyOnWriteArrayList<String>();
+
+	/**
+	 * Gespeicherter Checkpoint, welcher beim Start geladen wird, oder null.
+	 */
+	private volatile String storedCheckpoint;
+
+	private ProfileCache cache;
+	private ChangesFeedService service;
+
+	@Before
+	public void createService() {
+		ReflectionTestUtils.setField(ProfileCache.class, "maxSize", 10);
+		cache = new ProfileCache();
+		service = new ChangesFeedService();
+		ReflectionTestUtils.setField(service, "profileCache", cache);
+		ReflectionTestUtils.setField(service, "restTemplate", new RestTemplate(couchDB()));
+	}
+
+	@After
+	public void stopService() {
+		service.stop();
+		ReflectionTestUtils.setField(ProfileCache.class, "maxSize", 0);
+	}
+
+	/**
+	 * Simuliert den _changes-Feed und das lokale Dokument des Checkpoints.
+	 */
+	private ClientHttpRequestFactory couchDB() {
+		return (uri, method) -> {
+			String url = uri.toString();
+			if (url.contains("/_changes?")) {
+				feedCalls.add(url);
+				String changes;
+				try {
+					changes = feed.take();
+				} catch (InterruptedException e) {
+					throw new InterruptedIOException();
+				}
+				if (changes.equals(FAIL)) {
+					throw new IOException("Connection reset");
+				}
+				return request(method, uri, changes, HttpStatus.OK);
+			}
+			if (method == HttpMethod.PUT) {
+				return new MockClientHttpRequest(method, uri) {
+					@Override
+					protected ClientHttpResponse executeInternal() throws IOException {
+						savedCheckpoints.add(getBodyAsString());
+						return response("{\"ok\":true,\"rev\":\"0-2\"}", HttpStatus.CREATED);
+					}
+				};
+			}
+			if (storedCheckpoint == null) {
+				return request(method, uri, "{\"error\":\"not_found\"}", HttpStatus.NOT_FOUND);
+			}
+			return request(method, uri, storedCheckpoint, HttpStatus.OK);
+		};
+	}
+
+	private static MockClientHttpRequest request(HttpMethod method, URI uri, String body,
+			HttpStatus status) {
+		MockClientHttpRequest request = new MockClientHttpRequest(method, uri);
+		request.setResponse(response(body, status));
+		return request;
+	}
+
+	private static ClientHttpResponse response(String body, HttpStatus status) {
+		MockClientHttpResponse response = new MockClientHttpResponse(body.getBytes(StandardCharsets.UTF_8), status);
+		response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+		return response;
+	}
+
+	private static String changes(String lastSeq, String... ids) {
+		StringBuilder results = new StringBuilder();
+		for (String id : ids) {
+			results.append(results.length() == 0 ? "" : ",").append("{\"id\":\"").append(id).append("\"}");
+		}
+		return "{\"results\":[" + results + "],\"last_seq\":\"" + lastSeq + "\",\"pending\":0}";
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (condition.getAsBoolean() == false) {
+			assertThat(System.currentTimeMillis()).as("Zeitüberschreitung").isLessThan(deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	private void cache(String id) {
+		cache.put(id, new Profile(id, new Date(), new Date(), "{}"), cache.epoch());
+	}
+
+	/**
+	 * Der Feed wird ab dem gespeicherten Checkpoint fortgesetzt, invalidiert
+	 * geänderte Profile und speichert beim Beenden die zuletzt verarbeitete
+	 * Sequenznummer.
+	 */
+	@Test
+	public void testResumesFromCheckpointAndSavesLastSeq() throws InterruptedException {
+		storedCheckpoint = "{\"_id\":\"_local/changes-feed-test\",\"_rev\":\"0-1\",\"lastSeq\":\"3-abc\"}";
+		feed.add(changes("4-abc"));
+		service.start();
+		await(() -> cache.isActive());
+		assertThat(feedCalls.get(0)).contains("feed=normal").contains("since=3-abc");
+
+		cache("a");
+		cache("b");
+		feed.add(changes("5-abc", "a", "_design/profiles"));
+		await(() -> service.getLastSeq().equals("5-abc"));
+		assertThat(cache.get("a")).isNull();
+		assertThat(cache.get("b")).isNotNull();
+		assertThat(feedCalls.get(1)).contains("feed=longpoll").contains("since=4-abc");
+
+		service.stop();
+		assertThat(savedCheckpoints).hasSize(1);
+		assertThat(savedCheckpoints.get(0)).contains("\"lastSeq\":\"5-abc\"").contains("\"_rev\":\"0-1\"");
+		assertThat(cache.isActive()).isFalse();
+	}
+
+	/**
+	 * Ohne gespeicherten Checkpoint beginnt der Feed beim aktuellen Stand der
+	 * Datenbank.
+	 */
+	@Test
+	public void testStartsAtCurrentStateWithoutCheckpoint() throws InterruptedException {
+		feed.add(changes("7-abc"));
+		service.start();
+		await(() -> cache.isActive());
+		assertThat(feedCalls.get(0)).contains("since=now");
+	}
+
+	/**
+	 * Schlägt eine Abfrage des Feeds fehl, so wird der Cache geleert und
+	 * deaktiviert, bis der Feed ab derselben Sequenznummer wieder verfolgt wird.
+	 */
+	@Test
+	public void testDisablesCacheOnError() throws InterruptedException {
+		feed.add(changes("1-abc"));
+		service.start();
+		await(() -> cache.isActive());
+		cache("a");
+
+		feed.add(FAIL);
+		await(() -> cache.isActive() == false);
+		assertThat(cache.get("a")).isNull();
+		cache("a");
+		assertThat(cache.get("a")).isNull();
+
+		feed.add(changes("2-abc"));
+		await(() -> cache.isActive());
+		assertThat(feedCalls.stream().anyMatch(url -> url.contains("feed=normal&since=1-abc"))).isTrue();
+		assertThat(savedCheckpoints).isEmpty();
+	}
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.privacy_avare.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import org.junit.Test;
+
+import de.privacy_avare.service.CompactionService;
+
+/**
+ * Unittest für die Berechnung der Fragmentierung im CompactionService. Der Test
+ * benötigt keine Datenbank.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class CompactionServiceTest {
+
+	/**
+	 * Anteil veralteter Daten an der Dateigröße.
+	 */
+	@Test
+	public void testFragmentation() {
+		assertThat(CompactionService.fragmentation(1000, 250)).isCloseTo(0.75, within(0.0001));
+		assertThat(CompactionService.fragmentation(1000, 1000)).isEqualTo(0);
+	}
+
+	/**
+	 * Leere Datenbanken oder unvollständige Größenangaben führen zu keiner
+	 * Fragmentierung.
+	 */
+	@Test
+	public void testFragmentationWithoutSizes() {
+		assertThat(CompactionService.fragmentation(0, 0)).isEqualTo(0);
+		assertThat(CompactionService.fragmentation(1000, 2000)).isEqualTo(0);
+		assertThat(CompactionService.fragmentation(1000, -1)).isEqualTo(1);
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import de.privacy_avare.service.ContactService;
+import de.privacy_avare.util.SyncClock;
+
+/**
+ * Unittest für das Puffern von Kontakten im ContactService. Der Tag eines
+ * Kontakts wird über SyncClock bestimmt, der Test benötigt keine Datenbank.
+ *
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class ContactServiceTest {
+
+	private Clock previousClock;
+
+	@Before
+	public void saveClock() {
+		previousClock = SyncClock.getClock();
+	}
+
+	@After
+	public void restoreClock() {
+		SyncClock.setClock(previousClock);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Set<String>> pendingContacts(ContactService contactService) {
+		return (Map<String, Set<String>>) ReflectionTestUtils.getField(contactService, "pendingContacts");
+	}
+
+	@Test
+	public void contactDayFollowsSyncClock() {
+		ContactService contactService = new ContactService();
+
+		SyncClock.setClock(Clock.fixed(Instant.parse("2017-07-13T23:59:59Z"), ZoneOffset.UTC));
+		contactService.recordContact("abc");
+		SyncClock.setClock(Clock.fixed(Instant.parse("2017-07-14T00:00:00Z"), ZoneOffset.UTC));
+		contactService.recordContact("def");
+
+		assertThat(pendingContacts(contactService)).containsOnlyKeys("2017-07-13", "2017-07-14");
+		assertThat(pendingContacts(contactService).get("2017-07-13")).containsExactly("abc");
+		assertThat(pendingContacts(contactService).get("2017-07-14")).containsExactly("def");
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import de.privacy_avare.service.NodeIdLeaseService;
+
+/**
+ * Unittest für die Vergabe der Kennung des Knotens über die Datenbank. Die
+ * lokalen Dokumente der Vergaben werden durch eine RequestFactory simuliert,
+ * welche Revisionen wie CouchDB prüft. Der Test setzt voraus, dass
+ * 'server.nodeId' nicht festgelegt ist, und benötigt keine Datenbank.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class NodeIdLeaseServiceTest {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	/**
+	 * Gespeicherte Vergaben je _id.
+	 */
+	private final Map<String, ObjectNode> leases = new ConcurrentHashMap<String, ObjectNode>();
+
+	/**
+	 * _ids, deren nächste Speicherung wie bei einem gleichzeitigen Zugriff einer
+	 * anderen Serverinstanz mit 409 abgewiesen wird.
+	 */
+	private final Set<String> conflicts = ConcurrentHashMap.newKeySet();
+
+	private NodeIdLeaseService service;
+
+	@Before
+	public void createService() {
+		service = new NodeIdLeaseService();
+		ReflectionTestUtils.setField(service, "restTemplate", new RestTemplate(couchDB()));
+	}
+
+	/**
+	 * Simuliert die lokalen Dokumente der Vergaben.
+	 */
+	private ClientHttpRequestFactory couchDB() {
+		return (uri, method) -> new MockClientHttpRequest(method, uri) {
+			@Override
+			protected ClientHttpResponse executeInternal() throws IOException {
+				String id = uri.getPath().substring(uri.getPath().indexOf("_local/"));
+				ObjectNode stored = leases.get(id);
+				if (method == HttpMethod.GET) {
+					return stored == null ? response("{\"error\":\"not_found\"}", HttpStatus.NOT_FOUND)
+							: response(stored.toString(), HttpStatus.OK);
+				}
+				ObjectNode lease = (ObjectNode) MAPPER.readTree(getBodyAsString());
+				String storedRev = stored == null ? null : stored.path("_rev").asText();
+				String rev = lease.path("_rev").asText(null);
+				if (conflicts.remove(id) || (storedRev == null ? rev != null : storedRev.equals(rev) == false)) {
+					return response("{\"error\":\"conflict\"}", HttpStatus.CONFLICT);
+				}
+				rev = "0-" + (storedRev == null ? 1 : Integer.valueOf(storedRev.substring(2)) + 1);
+				lease.put("_rev", rev);
+				leases.put(id, lease);
+				return response("{\"ok\":true,\"id\":\"" + id + "\",\"rev\":\"" + rev + "\"}", HttpStatus.CREATED);
+			}
+		};
+	}
+
+	private static ClientHttpResponse response(String body, HttpStatus status) {
+		MockClientHttpResponse response = new MockClientHttpResponse(body.getBytes(StandardCharsets.UTF_8), status);
+		response.getHeaders().setContentType(MediaType.APPLICATION_JSON);
+		return response;
+	}
+
+	/**
+	 * Legt eine Vergabe an, welche zum übergebenen Zeitpunkt abläuft.
+	 */
+	private void store(int nodeId, long expires) {
+		ObjectNode lease = MAPPER.createObjectNode();
+		lease.put("_id", "_local/node-id-" + nodeId);
+		lease.put("_rev", "0-1");
+		lease.put("instanceName", "other");
+		lease.put("expires", expires);
+		leases.put("_local/node-id-" + nodeId, lease);
+	}
+
+	/**
+	 * Gültige Vergaben anderer Serverinstanzen werden übersprungen, die erste
+	 * freie Kennung wird vergeben und anschließend ohne Datenbankzugriff
+	 * weiterverwendet.
+	 */
+	@Test
+	public void testSkipsLeasedNodeIds() {
+		store(0, System.currentTimeMillis() + 60000);
+		store(1, System.currentTimeMillis() + 60000);
+		assertThat(service.getNodeId()).isEqualTo(2);
+		assertThat(leases.get("_local/node-id-2").path("_rev").asText()).isEqualTo("0-1");
+
+		leases.clear();
+		assertThat(service.getNodeId()).isEqualTo(2);
+	}
+
+	/**
+	 * Abgelaufene Vergaben werden unter ihrer Revision übernommen.
+	 */
+	@Test
+	public void testTakesOverExpiredLease() {
+		store(0, System.currentTimeMillis() - 1000);
+		assertThat(service.getNodeId()).isEqualTo(0);
+		assertThat(leases.get("_local/node-id-0").path("_rev").asText()).isEqualTo("0-2");
+	}
+
+	/**
+	 * Übernimmt eine andere Serverinstanz dieselbe Kennung gleichzeitig, so wird
+	 * die nächste freie Kennung vergeben.
+	 */
+	@Test
+	public void testConflictMovesToNextNodeId() {
+		conflicts.add("_local/node-id-0");
+		assertThat(service.getNodeId()).isEqualTo(1);
+		assertThat(leases).doesNotContainKey("_local/node-id-0");
+	}
+
+	/**
+	 * Die Verlängerung aktualisiert die Vergabe. Wurde die Kennung
+	 * zwischenzeitlich an eine andere Serverinstanz vergeben, so wird eine neue
+	 * Kennung vergeben.
+	 */
+	@Test
+	public void testRenewAndLoseLease() {
+		assertThat(service.getNodeId()).isEqualTo(0);
+		service.renew();
+		assertThat(leases.get("_local/node-id-0").path("_rev").asText()).isEqualTo("0-2");
+
+		store(0, System.currentTimeMillis() + 60000);
+		service.renew();
+		assertThat(service.getNodeId()).isEqualTo(1);
+	}
+
+	/**
+	 * Beim Beenden wird die Kennung zur erneuten Vergabe freigegeben.
+	 */
+	@Test
+	public void testRelease() {
+		assertThat(service.getNodeId()).isEqualTo(0);
+		service.release();
+		service.renew();
+		assertThat(leases.get("_local/node-id-0").path("_rev").asText()).isEqualTo("0-2");
+
+		NodeIdLeaseService other = new NodeIdLeaseService();
+		ReflectionTestUtils.setField(other, "restTemplate", new RestTemplate(couchDB()));
+		assertThat(other.getNodeId()).isEqualTo(0);
+	}
+}
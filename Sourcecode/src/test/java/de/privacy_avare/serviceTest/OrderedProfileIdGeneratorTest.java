@@ -0,0 +1,91 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import de.privacy_avare.service.IdService;
+import de.privacy_avare.service.OrderedProfileIdGenerator;
+
+/**
+ * Unittest für die Erzeugung sortierter ProfileIds im Format v2. Der Test
+ * benötigt keine Datenbank.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class OrderedProfileIdGeneratorTest {
+
+	/**
+	 * ProfileIds sind in der Reihenfolge ihrer Erzeugung lexikographisch
+	 * sortiert, auch innerhalb derselben Millisekunde.
+	 */
+	@Test
+	public void testOrdering() {
+		long now = 1500000000000L;
+		OrderedProfileIdGenerator generator = new OrderedProfileIdGenerator(5, now - 1);
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < 1000; i++) {
+			ids.add(generator.next(now + i / 100));
+		}
+		List<String> sorted = new ArrayList<>(ids);
+		sorted.sort(null);
+		assertThat(sorted).isEqualTo(ids);
+		assertThat(new HashSet<>(ids)).hasSize(ids.size());
+		assertThat(ids.get(0)).hasSize(20).matches("[0-9a-z]{20}");
+		assertThat(ids.get(0).charAt(9)).isEqualTo('5');
+	}
+
+	/**
+	 * Sind alle Zählerwerte einer Millisekunde vergeben, so wird auf die folgende
+	 * Millisekunde ausgewichen.
+	 */
+	@Test
+	public void testCounterOverflow() {
+		long now = 1500000000000L;
+		OrderedProfileIdGenerator generator = new OrderedProfileIdGenerator(0, now - 1);
+		String first = generator.next(now);
+		String last = null;
+		for (int i = 1; i < 36 * 36 * 36; i++) {
+			last = generator.next(now);
+		}
+		String overflow = generator.next(now);
+		assertThat(last.substring(0, 9)).isEqualTo(first.substring(0, 9));
+		assertThat(overflow.substring(0, 9).compareTo(first.substring(0, 9))).isPositive();
+		assertThat(overflow.compareTo(last)).isPositive();
+	}
+
+	/**
+	 * validateId akzeptiert ProfileIds beider Formate.
+	 */
+	@Test
+	public void testValidateBothFormats() {
+		IdService idService = new IdService();
+		assertThat(idService.validateId(new OrderedProfileIdGenerator(0, 0).next(1500000000000L))).isTrue();
+		assertThat(idService.validateId("2530247110abcdef")).isTrue();
+		assertThat(idService.validateId("0123456789abcdefghiJ")).isFalse();
+		assertThat(idService.validateId("0123456789abcdefghi")).isFalse();
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import de.privacy_avare.service.IdService;
+import de.privacy_avare.service.ProfileIdGenerator;
+
+/**
+ * Unittest für die Erzeugung von ProfileIds ohne Abfrage der Datenbank. Der
+ * Test benötigt keine Datenbank.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class ProfileIdGeneratorTest {
+
+	private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+	private static long millis(int year, int month, int day, int hour, int minute) {
+		return LocalDateTime.of(year, month, day, hour, minute).toInstant(ZoneOffset.UTC).toEpochMilli();
+	}
+
+	private static String digits(String id) {
+		return id.replaceAll("[a-z]", "");
+	}
+
+	private static String letters(String id) {
+		return id.replaceAll("[0-9]", "");
+	}
+
+	/**
+	 * Die Ziffern entsprechen dem bisherigen Aufbau aus Tag, Monat, Jahr, Stunde
+	 * und Minute, die ProfileId wird von validateId akzeptiert.
+	 */
+	@Test
+	public void testFormat() {
+		ProfileIdGenerator generator = new ProfileIdGenerator(3, millis(2017, 3, 5, 10, 20), UTC);
+		String id = generator.next(millis(2017, 3, 5, 10, 30));
+		assertThat(id).hasSize(16);
+		assertThat(digits(id)).isEqualTo("3058248140");
+		assertThat(letters(id)).hasSize(6).startsWith("d");
+		assertThat(new IdService().validateId(id)).isTrue();
+	}
+
+	/**
+	 * Innerhalb einer Minute werden keine ProfileIds doppelt vergeben.
+	 */
+	@Test
+	public void testUniqueWithinMinute() {
+		long now = millis(2017, 3, 5, 10, 30);
+		ProfileIdGenerator generator = new ProfileIdGenerator(0, now - 60000, UTC);
+		Set<String> keys = new HashSet<>();
+		for (int i = 0; i < 100000; i++) {
+			String id = generator.next(now);
+			assertThat(digits(id)).isEqualTo("3058248140");
+			assertThat(keys.add(letters(id))).isTrue();
+		}
+	}
+
+	/**
+	 * Die Minute der Erzeugung des Generators wird nicht vergeben und die
+	 * vergebene Minute läuft bei einer zurückgestellten Uhr nicht zurück.
+	 */
+	@Test
+	public void testMinuteIsMonotonic() {
+		long start = millis(2017, 3, 5, 10, 30);
+		ProfileIdGenerator generator = new ProfileIdGenerator(0, start, UTC);
+		assertThat(digits(generator.next(start))).isEqualTo("3058248141");
+		assertThat(digits(generator.next(millis(2017, 3, 5, 10, 35)))).isEqualTo("3058248145");
+		assertThat(digits(generator.next(millis(2017, 3, 5, 10, 32)))).isEqualTo("3058248145");
+	}
+
+	/**
+	 * Knoten außerhalb von 0 bis 25 werden abgelehnt.
+	 */
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidNode() {
+		new ProfileIdGenerator(26, 0, UTC);
+	}
+}
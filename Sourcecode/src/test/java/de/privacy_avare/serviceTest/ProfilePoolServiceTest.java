@@ -0,0 +1,206 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.boot.actuate.metrics.Metric;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import de.privacy_avare.domain.Profile;
+import de.privacy_avare.repository.ProfileRepository;
+import de.privacy_avare.service.IdService;
+import de.privacy_avare.service.NodeIdLeaseService;
+import de.privacy_avare.service.ProfilePoolService;
+
+/**
+ * Unittest für den Vorrat angelegter Profile. Der Vorrat umfasst im Test vier
+ * Profile mit einem Mindestbestand von zwei Profilen. Das Repository wird durch
+ * einen Proxy ersetzt, welcher angelegte und gelöschte Profile festhält. Der
+ * Test benötigt keine Datenbank.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class ProfilePoolServiceTest {
+
+	private final int originalPoolSize = (Integer) ReflectionTestUtils.getField(ProfilePoolService.class,
+			"poolSize");
+	private final int originalLowWater = (Integer) ReflectionTestUtils.getField(ProfilePoolService.class,
+			"lowWater");
+
+	/**
+	 * In der Datenbank angelegte Profile in der Reihenfolge ihrer Erzeugung.
+	 */
+	private final List<Profile> inserted = Collections.synchronizedList(new ArrayList<Profile>());
+
+	/**
+	 * Aus der Datenbank gelöschte ProfileIds.
+	 */
+	private final List<String> deleted = Collections.synchronizedList(new ArrayList<String>());
+
+	private ProfilePoolService service;
+
+	@Before
+	public void createService() {
+		ReflectionTestUtils.setField(ProfilePoolService.class, "poolSize", 4);
+		ReflectionTestUtils.setField(ProfilePoolService.class, "lowWater", 2);
+
+		IdService idService = new IdService();
+		ReflectionTestUtils.setField(idService, "nodeIdLeaseService", new NodeIdLeaseService() {
+			@Override
+			public int getNodeId() {
+				return 0;
+			}
+		});
+		ProfileRepository profileRepository = (ProfileRepository) Proxy.newProxyInstance(
+				getClass().getClassLoader(), new Class<?>[] { ProfileRepository.class }, (proxy, method, args) -> {
+					if (method.getName().equals("insertAll")) {
+						List<String> insertedIds = new ArrayList<String>();
+						for (Object profile : (List<?>) args[0]) {
+							inserted.add((Profile) profile);
+							insertedIds.add(((Profile) profile).get_id());
+						}
+						return insertedIds;
+					}
+					if (method.getName().equals("delete") && args[0] instanceof String) {
+						deleted.add((String) args[0]);
+						return null;
+					}
+					if (method.getName().equals("toString")) {
+						return "ProfileRepository";
+					}
+					throw new UnsupportedOperationException(method.getName());
+				});
+
+		// Ohne start() wird der Vorrat nur durch refill() und claim() aufgefüllt
+		service = new ProfilePoolService();
+		ReflectionTestUtils.setField(service, "profileRepository", profileRepository);
+		ReflectionTestUtils.setField(service, "idService", idService);
+		ReflectionTestUtils.setField(service, "executor", Executors.newSingleThreadExecutor());
+	}
+
+	@After
+	public void stopService() {
+		service.stop();
+		ReflectionTestUtils.setField(ProfilePoolService.class, "poolSize", originalPoolSize);
+		ReflectionTestUtils.setField(ProfilePoolService.class, "lowWater", originalLowWater);
+	}
+
+	private long metric(String name) {
+		for (Metric<?> metric : service.metrics()) {
+			if (metric.getName().equals("profilePool." + name)) {
+				return metric.getValue().longValue();
+			}
+		}
+		throw new IllegalArgumentException(name);
+	}
+
+	private static void await(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 5000;
+		while (condition.getAsBoolean() == false) {
+			assertThat(System.currentTimeMillis()).as("Zeitüberschreitung").isLessThan(deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	/**
+	 * Setzt den Zeitpunkt der Erzeugung eines Profils im Vorrat zwei Tage zurück.
+	 */
+	private void expire(int index) {
+		inserted.get(index).setLastProfileContact(new Date(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2)));
+	}
+
+	/**
+	 * Profile werden in der Reihenfolge ihrer Erzeugung vergeben. Unterschreitet
+	 * der Vorrat den Mindestbestand, so wird er im Hintergrund aufgefüllt.
+	 */
+	@Test
+	public void testClaimAndRefill() throws InterruptedException {
+		service.refill();
+		assertThat(metric("size")).isEqualTo(4);
+		assertThat(inserted).hasSize(4);
+
+		assertThat(service.claim()).isSameAs(inserted.get(0));
+		assertThat(service.claim()).isSameAs(inserted.get(1));
+		assertThat(metric("size")).isEqualTo(2);
+		assertThat(metric("created")).isEqualTo(4);
+
+		assertThat(service.claim()).isSameAs(inserted.get(2));
+		await(() -> metric("size") == 4);
+		assertThat(metric("created")).isEqualTo(7);
+		assertThat(metric("claimed")).isEqualTo(3);
+	}
+
+	/**
+	 * Ist der Vorrat leer, so liefert claim() kein Profil und der Vorrat wird im
+	 * Hintergrund aufgefüllt.
+	 */
+	@Test
+	public void testClaimFromEmptyPool() throws InterruptedException {
+		assertThat(service.claim()).isNull();
+		assertThat(metric("misses")).isEqualTo(1);
+		await(() -> metric("size") == 4);
+	}
+
+	/**
+	 * Abgelaufene Profile werden nicht vergeben, sondern im Hintergrund aus der
+	 * Datenbank gelöscht.
+	 */
+	@Test
+	public void testClaimSkipsAndDeletesExpiredProfiles() throws InterruptedException {
+		service.refill();
+		expire(0);
+		expire(1);
+
+		assertThat(service.claim()).isSameAs(inserted.get(2));
+		await(() -> metric("expired") == 2);
+		assertThat(deleted).containsExactly(inserted.get(0).get_id(), inserted.get(1).get_id());
+	}
+
+	/**
+	 * Beim Auffüllen werden abgelaufene Profile am Anfang des Vorrats gelöscht und
+	 * ersetzt.
+	 */
+	@Test
+	public void testRefillReplacesExpiredProfiles() {
+		service.refill();
+		expire(0);
+		expire(1);
+
+		service.refill();
+		assertThat(deleted).containsExactly(inserted.get(0).get_id(), inserted.get(1).get_id());
+		assertThat(metric("expired")).isEqualTo(2);
+		assertThat(metric("size")).isEqualTo(4);
+		assertThat(metric("created")).isEqualTo(6);
+		assertThat(service.claim()).isSameAs(inserted.get(2));
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import de.privacy_avare.repository.ProfileCache;
+import de.privacy_avare.repository.ProfileRepositoryCouchDBImpl;
+import de.privacy_avare.repositoryTest.FakeCouchDB;
+import de.privacy_avare.service.ContactService;
+import de.privacy_avare.service.ProfileService;
+import de.privacy_avare.service.SyncResult;
+import de.privacy_avare.util.SyncClock;
+
+/**
+ * Unittest für tryPullProfile(String, long, OutputStream) mit gestreamten
+ * Preferences. Die Datenbank wird durch FakeCouchDB simuliert, Kontakte werden
+ * im Profildokument vermerkt ('server.contactTracking = document').
+ *
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class ProfileServicePullTest {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private static final long NOW = 1500000000000L;
+	private static final long CHANGE = NOW - TimeUnit.HOURS.toMillis(1);
+	private static final String PREFERENCES = "{\"theme\":\"dunkel \\\"Ä\\\"\",\"größe\":12}";
+
+	private Clock previousClock;
+	private FakeCouchDB couchDB;
+	private ProfileService service;
+
+	@Before
+	public void createService() {
+		previousClock = SyncClock.getClock();
+		SyncClock.setClock(Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC));
+		couchDB = new FakeCouchDB();
+		ProfileRepositoryCouchDBImpl repository = new ProfileRepositoryCouchDBImpl();
+		ReflectionTestUtils.setField(repository, "restTemplate", new RestTemplate(couchDB));
+		ReflectionTestUtils.setField(repository, "profileCache", new ProfileCache());
+		service = new ProfileService();
+		ReflectionTestUtils.setField(service, "profileRepository", repository);
+		ReflectionTestUtils.setField(service, "contactService", new ContactService());
+	}
+
+	@After
+	public void restoreClock() {
+		SyncClock.setClock(previousClock);
+	}
+
+	private void putProfile(long lastProfileContact) throws Exception {
+		ObjectNode document = MAPPER.createObjectNode();
+		document.put("_id", "profile");
+		document.put("_rev", "1-abc");
+		document.put("lastProfileChange", CHANGE);
+		document.put("lastProfileContact", lastProfileContact);
+		document.put("preferences", PREFERENCES);
+		couchDB.putDocument("profile", MAPPER.writeValueAsString(document));
+	}
+
+	@Test
+	public void currentContactStreamsWithoutWriting() throws Exception {
+		putProfile(NOW - TimeUnit.MINUTES.toMillis(5));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		SyncResult result = service.tryPullProfile("profile", 0, out);
+
+		assertThat(result.isOk()).isTrue();
+		assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(PREFERENCES);
+		assertThat(couchDB.getRequests()).containsExactly("GET profile");
+	}
+
+	@Test
+	public void outdatedContactIsWrittenAfterStreaming() throws Exception {
+		putProfile(NOW - TimeUnit.DAYS.toMillis(2));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		SyncResult result = service.tryPullProfile("profile", 0, out);
+
+		assertThat(result.isOk()).isTrue();
+		assertThat(new String(out.toByteArray(), StandardCharsets.UTF_8)).isEqualTo(PREFERENCES);
+		// Die Preferences werden nur einmal gelesen, geschrieben wird lediglich der Kontakt
+		assertThat(couchDB.getRequests()).containsExactly("GET profile", "GET profile", "PUT profile");
+		assertThat(couchDB.getDocument("profile").path("lastProfileContact").asLong()).isEqualTo(NOW);
+		assertThat(couchDB.getDocument("profile").path("preferences").asText()).isEqualTo(PREFERENCES);
+	}
+
+	@Test
+	public void outdatedContactOfOutdatedServerWritesOnlyContact() throws Exception {
+		putProfile(NOW - TimeUnit.DAYS.toMillis(2));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		SyncResult result = service.tryPullProfile("profile", CHANGE, out);
+
+		assertThat(result).isSameAs(SyncResult.SERVER_OUTDATED);
+		assertThat(out.size()).isZero();
+		assertThat(couchDB.getDocument("profile").path("lastProfileContact").asLong()).isEqualTo(NOW);
+	}
+
+	@Test
+	public void missingProfileIsNotFound() throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		assertThat(service.tryPullProfile("missing", 0, out)).isSameAs(SyncResult.NOT_FOUND);
+		assertThat(out.size()).isZero();
+	}
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.serviceTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.StringReader;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.RestTemplate;
+
+import de.privacy_avare.domain.Profile;
+import de.privacy_avare.metrics.CouchDBMetrics;
+import de.privacy_avare.metrics.CouchDBMetricsInterceptor;
+import de.privacy_avare.metrics.LatencyRecorder;
+import de.privacy_avare.repository.ProfileCache;
+import de.privacy_avare.repository.ProfileRepositoryCouchDBImpl;
+import de.privacy_avare.repositoryTest.FakeCouchDB;
+import de.privacy_avare.resilience.ConcurrencyLimitInterceptor;
+import de.privacy_avare.resilience.StreamingRequestFactory;
+import de.privacy_avare.service.ContactService;
+import de.privacy_avare.service.ProfileService;
+import de.privacy_avare.service.SyncResult;
+import de.privacy_avare.util.SyncClock;
+
+/**
+ * Unittest für tryPushProfile(String, long, Reader, boolean) mit gestreamten
+ * Preferences. Die gespeicherten Preferences liegen als Attachment vor und
+ * dürfen für den Vergleich der Zeitstempel nicht gelesen werden. Die Datenbank
+ * wird durch FakeCouchDB simuliert.
+ *
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class ProfileServicePushTest {
+
+	private static final long NOW = 1500000000000L;
+	private static final long CHANGE = NOW - TimeUnit.HOURS.toMillis(1);
+
+	private Clock previousClock;
+	private Object previousAttachmentThreshold;
+	private FakeCouchDB couchDB;
+	private ProfileRepositoryCouchDBImpl repository;
+	private ProfileService service;
+
+	@Before
+	public void createService() {
+		previousClock = SyncClock.getClock();
+		SyncClock.setClock(Clock.fixed(Instant.ofEpochMilli(NOW), ZoneOffset.UTC));
+		previousAttachmentThreshold = ReflectionTestUtils.getField(ProfileRepositoryCouchDBImpl.class,
+				"attachmentThreshold");
+		ReflectionTestUtils.setField(ProfileRepositoryCouchDBImpl.class, "attachmentThreshold", 100);
+		couchDB = new FakeCouchDB();
+		CouchDBMetrics metrics = new CouchDBMetrics();
+		ReflectionTestUtils.setField(metrics, "latencyRecorder", new LatencyRecorder());
+		CouchDBMetricsInterceptor metricsInterceptor = new CouchDBMetricsInterceptor();
+		ReflectionTestUtils.setField(metricsInterceptor, "couchDBMetrics", metrics);
+		repository = new ProfileRepositoryCouchDBImpl();
+		ReflectionTestUtils.setField(repository, "restTemplate", new RestTemplate(couchDB));
+		ReflectionTestUtils.setField(repository, "profileCache", new ProfileCache());
+		ReflectionTestUtils.setField(repository, "streamingRequestFactory",
+				new StreamingRequestFactory(couchDB, new ConcurrencyLimitInterceptor(), metricsInterceptor));
+		service = new ProfileService();
+		ReflectionTestUtils.setField(service, "profileRepository", repository);
+		ReflectionTestUtils.setField(service, "contactService", new ContactService());
+	}
+
+	@After
+	public void restore() {
+		SyncClock.setClock(previousClock);
+		ReflectionTestUtils.setField(ProfileRepositoryCouchDBImpl.class, "attachmentThreshold",
+				previousAttachmentThreshold);
+	}
+
+	/**
+	 * Legt das Profil mit Preferences oberhalb des Schwellwerts an.
+	 */
+	private void putProfile(long lastProfileContact) throws Exception {
+		StringBuilder preferences = new StringBuilder();
+		while (preferences.length() <= 1000) {
+			preferences.append("{\"alt\":\"ä\"}");
+		}
+		repository.save(new Profile("profile", new Date(CHANGE), new Date(lastProfileContact), null),
+				new StringReader(preferences.toString()));
+		couchDB.getRequests().clear();
+	}
+
+	@Test
+	public void pushReadsOnlyMetadata() throws Exception {
+		putProfile(NOW - TimeUnit.DAYS.toMillis(2));
+
+		SyncResult result = service.tryPushProfile("profile", NOW, new StringReader("{\"neu\":1}"), false);
+
+		assertThat(result.isOk()).isTrue();
+		// Weder das Attachment gelesen noch der Kontakt vorab geschrieben
+		assertThat(couchDB.getRequests()).containsExactly("GET profile", "HEAD profile", "PUT profile");
+		assertThat(couchDB.getDocument("profile").path("lastProfileChange").asLong()).isEqualTo(NOW);
+		assertThat(couchDB.getDocument("profile").path("lastProfileContact").asLong()).isEqualTo(NOW);
+		assertThat(couchDB.getDocument("profile").path("preferences").asText()).isEqualTo("{\"neu\":1}");
+	}
+
+	@Test
+	public void outdatedPushWritesOnlyContact() throws Exception {
+		putProfile(NOW - TimeUnit.DAYS.toMillis(2));
+
+		SyncResult result = service.tryPushProfile("profile", CHANGE, new StringReader("{\"neu\":1}"), false);
+
+		assertThat(result).isSameAs(SyncResult.CLIENT_OUTDATED);
+		assertThat(couchDB.getRequests()).containsExactly("GET profile", "GET profile", "PUT profile");
+		assertThat(couchDB.getDocument("profile").path("lastProfileContact").asLong()).isEqualTo(NOW);
+		assertThat(couchDB.getDocument("profile").path("_attachments").has("preferences")).isTrue();
+	}
+
+	@Test
+	public void pushOfMissingProfileIsNotFound() throws Exception {
+		SyncResult result = service.tryPushProfile("missing", NOW, new StringReader("{\"neu\":1}"), false);
+
+		assertThat(result).isSameAs(SyncResult.NOT_FOUND);
+		assertThat(couchDB.getRequests()).containsExactly("GET missing");
+	}
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2017 Lukas Struppek.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package de.privacy_avare.utilTest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import de.privacy_avare.util.SyncClock;
+import de.privacy_avare.util.SyncClock.CoarseClock;
+
+/**
+ * Unittest für die gemeinsame Zeitquelle des Synchronisationspfads.
+ * 
+ * @author Lukas Struppek
+ * @version 1.0
+ *
+ */
+public class SyncClockTest {
+
+	@Test
+	public void replacedClockIsUsed() {
+		Clock original = SyncClock.getClock();
+		try {
+			SyncClock.setClock(Clock.fixed(Instant.ofEpochMilli(1500000000123L), ZoneId.of("UTC")));
+			assertThat(SyncClock.millis()).isEqualTo(1500000000123L);
+			assertThat(SyncClock.now().getTime()).isEqualTo(1500000000123L);
+		} finally {
+			SyncClock.setClock(original);
+		}
+	}
+
+	@Test
+	public void coarseClockFollowsSourceOnTick() {
+		AtomicLong source = new AtomicLong(1500000000000L);
+		CoarseClock clock = new CoarseClock(source::get);
+		assertThat(clock.millis()).isEqualTo(1500000000000L);
+
+		source.set(1500000000010L);
+		assertThat(clock.millis()).isEqualTo(1500000000000L);
+		clock.tick();
+		assertThat(clock.millis()).isEqualTo(1500000000010L);
+		assertThat(clock.instant()).isEqualTo(Instant.ofEpochMilli(1500000000010L));
+	}
+
+	@Test
+	public void coarseClockWithZoneSharesTime() {
+		AtomicLong source = new AtomicLong(1500000000000L);
+		CoarseClock clock = new CoarseClock(source::get);
+		Clock utc = clock.withZone(ZoneId.of("UTC"));
+		assertThat(utc.getZone()).isEqualTo(ZoneId.of("UTC"));
+
+		source.set(1500000000010L);
+		clock.tick();
+		assertThat(utc.millis()).isEqualTo(1500000000010L);
+	}
+}